@@ -0,0 +1,112 @@
+package ticket.booking.bench;
+
+import ticket.booking.analytics.AnalyticsReport;
+import ticket.booking.analytics.BookingAnalytics;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.repository.HistoryFilter;
+import ticket.booking.repository.TicketPage;
+import ticket.booking.repository.TicketRepository;
+import ticket.booking.services.TrainService;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+// Runs BookingAnalytics over synthetic trains and tickets. The tickets are made up
+// while a partition is scanned instead of being held in memory, so the scan of tens of
+// millions of them measures the counting, not the disk.
+//
+// usage: AnalyticsBenchmark [tickets] [trains] [rounds]
+public class AnalyticsBenchmark {
+
+    private static final int ROWS = 20;
+    private static final int COLS = 50;
+    private static final int PARTITIONS = 256;
+    private static final int DATES = 30;
+
+    public static void main(String[] args) throws IOException {
+        long ticketCount = BenchmarkSupport.intArg(args, 0, 50_000_000);
+        int trainCount = BenchmarkSupport.intArg(args, 1, 10_000);
+        int rounds = BenchmarkSupport.intArg(args, 2, 3);
+        System.out.printf("tickets=%d trains=%d rounds=%d cores=%d%n", ticketCount, trainCount, rounds,
+                Runtime.getRuntime().availableProcessors());
+
+        List<Train> trains = BenchmarkSupport.syntheticTrains(trainCount, ROWS, COLS, 42);
+        try (TrainService trainService = new TrainService(new InMemoryTrainRepository(trains, 0))) {
+            BookingAnalytics analytics = new BookingAnalytics(trainService, new SyntheticTickets(trains, ticketCount));
+            for (int round = 0; round < rounds; round++) {
+                AnalyticsReport report = analytics.run();
+                System.out.printf("round %d: %d tickets in %.2f s, %.1f M tickets/s, %d pairs, %d hours%n", round + 1,
+                        report.getTicketsScanned(), report.getElapsedNanos() / 1e9,
+                        report.getTicketsScanned() / (report.getElapsedNanos() / 1e9) / 1e6,
+                        report.getPopularPairs().size(), report.getBookingsPerHour().size());
+                if (round == rounds - 1) {
+                    report.print(5);
+                }
+            }
+        }
+    }
+
+    // Every partition makes the same tickets on every scan, from its own seed
+    private static class SyntheticTickets implements TicketRepository {
+        private final List<Train> trains;
+        private final long ticketCount;
+        private final String[] dates = new String[DATES];
+
+        SyntheticTickets(List<Train> trains, long ticketCount) {
+            this.trains = trains;
+            this.ticketCount = ticketCount;
+            for (int i = 0; i < DATES; i++) {
+                dates[i] = String.format("2025-01-%02d", i + 1);
+            }
+        }
+
+        @Override
+        public int partitionCount() {
+            return PARTITIONS;
+        }
+
+        @Override
+        public void forEachInPartition(int partition, TicketVisitor visitor) throws IOException {
+            Random random = new Random(partition);
+            long tickets = ticketCount / PARTITIONS + (partition < ticketCount % PARTITIONS ? 1 : 0);
+            // a month of issue times
+            long issued = 1_735_689_600_000L + random.nextInt(1000);
+            for (long i = 0; i < tickets; i++) {
+                Train train = trains.get(random.nextInt(trains.size()));
+                List<String> stations = train.getStations();
+                int from = random.nextInt(stations.size() - 1);
+                int to = from + 1 + random.nextInt(stations.size() - from - 1);
+                issued += random.nextInt(20_000);
+                Ticket ticket = new Ticket(Long.toString(issued), "u" + partition, stations.get(from), stations.get(to),
+                        dates[random.nextInt(DATES)], train);
+                visitor.visit(ticket);
+            }
+        }
+
+        @Override
+        public void save(Ticket ticket) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean delete(Ticket ticket) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Ticket> findByUserId(String userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public TicketPage findPage(String userId, HistoryFilter filter, String cursor, int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ticket.booking.bench;
+
+import ticket.booking.entities.Train;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Shared helpers for the benchmark mains in this package
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {}
+
+    static List<Train> syntheticTrains(int count, int rows, int cols, long seed) {
+        Random random = new Random(seed);
+        List<Train> trains = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            List<List<Integer>> seats = new ArrayList<>(rows);
+            for (int r = 0; r < rows; r++) {
+                List<Integer> row = new ArrayList<>(cols);
+                for (int c = 0; c < cols; c++) {
+                    row.add(0);
+                }
+                seats.add(row);
+            }
+            List<String> stations = new ArrayList<>();
+            Map<String, String> times = new LinkedHashMap<>();
+            int stops = 3 + random.nextInt(8);
+            int first = random.nextInt(200);
+            for (int s = 0; s < stops; s++) {
+                String station = "station" + (first + s * (1 + random.nextInt(3)));
+                if (!times.containsKey(station)) {
+                    stations.add(station);
+                    times.put(station, String.format("%02d:%02d", (6 + s) % 24, random.nextInt(60)));
+                }
+            }
+            trains.add(new Train("T" + i, String.valueOf(10000 + i), seats, times, stations));
+        }
+        return trains;
+    }
+
+    // Zipf distributed indexes in [0, n): index 0 is the most popular
+    static final class Zipf {
+        private final double[] cdf;
+
+        Zipf(int n, double exponent) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1.0 / Math.pow(i + 1, exponent);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cdf[i] /= sum;
+            }
+        }
+
+        int next(Random random) {
+            int index = Arrays.binarySearch(cdf, random.nextDouble());
+            return index >= 0 ? index : Math.min(-index - 1, cdf.length - 1);
+        }
+    }
+
+    static String percentiles(long[] latenciesNanos) {
+        long[] sorted = latenciesNanos.clone();
+        Arrays.sort(sorted);
+        return String.format("p50=%.1fus p99=%.1fus p99.9=%.1fus",
+                sorted[sorted.length / 2] / 1e3,
+                sorted[(int) (sorted.length * 0.99)] / 1e3,
+                sorted[(int) (sorted.length * 0.999)] / 1e3);
+    }
+
+    static int intArg(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+}
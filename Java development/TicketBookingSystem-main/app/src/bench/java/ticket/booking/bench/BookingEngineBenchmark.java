@@ -0,0 +1,204 @@
+package ticket.booking.bench;
+
+import ticket.booking.catalog.TrainCatalog;
+import ticket.booking.engine.BookingEngine;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.repository.JsonTicketRepository;
+import ticket.booking.repository.JsonUserRepository;
+import ticket.booking.repository.Repositories;
+import ticket.booking.services.UserBookingService;
+import ticket.booking.services.WaitlistService;
+import ticket.booking.storage.UserBucketStore;
+import ticket.booking.utils.UserServiceUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Compares the old style of booking, one global lock around "update seat, write file",
+// with the partitioned single-writer BookingEngine, under a Zipf skewed choice of trains.
+// Every operation books a seat, or frees it if it was booked. Writing a train costs
+// flushMicros in every run:
+//   global lock               - update and write under one lock, one write per change
+//   engine, write per change  - engine batches of one, one write per change like above,
+//                               so the difference is the partitioning alone
+//   engine, batched writes    - the engine as it runs, one write per train per batch
+//   production path           - UserBookingService.bookTrainSeat and cancelBooking: the
+//                               engine books, the ticket is issued and the user written
+//                               under the booking lock, users in a scratch directory
+// Every thread toggles seats of its own, so no run loses operations to another thread
+// having taken the seat. Admission control is off so no request is shed.
+//
+// usage: BookingEngineBenchmark [threads] [opsPerThread] [trains] [flushMicros]
+public class BookingEngineBenchmark {
+
+    private static final double SKEW = 1.1;
+    private static final int ROWS = 20;
+    private static final int COLS = 50;
+
+    public static void main(String[] args) throws Exception {
+        int threads = BenchmarkSupport.intArg(args, 0, 16);
+        int opsPerThread = BenchmarkSupport.intArg(args, 1, 20_000);
+        int trainCount = BenchmarkSupport.intArg(args, 2, 1_000);
+        int flushMicros = BenchmarkSupport.intArg(args, 3, 50);
+        System.out.printf("threads=%d ops/thread=%d trains=%d flush=%dus zipf=%.1f%n",
+                threads, opsPerThread, trainCount, flushMicros, SKEW);
+        System.setProperty("booking.admission", "false");
+
+        for (int round = 0; round < 2; round++) {
+            // first round warms up the JIT
+            String label = round == 0 ? " (warm-up)" : "";
+            TrainCatalog lockedCatalog = catalog(trainCount, flushMicros);
+            Object globalLock = new Object();
+            report("global lock" + label, threads, opsPerThread, trainCount, thread -> (trainId, row, seat) -> {
+                synchronized (globalLock) {
+                    boolean booked = lockedCatalog.updateSeat(trainId, row, seat, 0, 1)
+                            || lockedCatalog.updateSeat(trainId, row, seat, 1, 0);
+                    lockedCatalog.flush(List.of(trainId));
+                    return booked;
+                }
+            });
+
+            try (BookingEngine engine = new BookingEngine(catalog(trainCount, flushMicros), BookingEngine.DEFAULT_PARTITIONS, 1)) {
+                report("engine, write per change" + label, threads, opsPerThread, trainCount, thread -> (trainId, row, seat) ->
+                        engine.book(trainId, row, seat).join() || engine.cancel(trainId, row, seat).join());
+            }
+
+            try (BookingEngine engine = new BookingEngine(catalog(trainCount, flushMicros))) {
+                report("engine, batched writes" + label, threads, opsPerThread, trainCount, thread -> (trainId, row, seat) ->
+                        engine.book(trainId, row, seat).join() || engine.cancel(trainId, row, seat).join());
+            }
+
+            productionPath("production path" + label, threads, opsPerThread, trainCount, flushMicros);
+        }
+    }
+
+    private static TrainCatalog catalog(int trainCount, int flushMicros) {
+        return new TrainCatalog(repository(trainCount, flushMicros));
+    }
+
+    private static InMemoryTrainRepository repository(int trainCount, int flushMicros) {
+        List<Train> trains = BenchmarkSupport.syntheticTrains(trainCount, ROWS, COLS, 42);
+        return new InMemoryTrainRepository(trains, flushMicros * 1_000L);
+    }
+
+    private static void productionPath(String label, int threads, int opsPerThread, int trainCount, int flushMicros) throws Exception {
+        Path dir = Files.createTempDirectory("booking-bench");
+        try {
+            InMemoryTrainRepository trains = repository(trainCount, flushMicros);
+            UserBucketStore userStore = new UserBucketStore(dir.resolve("users"));
+            UserBookingService service = new UserBookingService(
+                    new Repositories(trains, new JsonUserRepository(userStore), new JsonTicketRepository(userStore)),
+                    new WaitlistService(dir.resolve("waitlists.json").toFile()));
+            Map<String, Train> trainsById = trains.findAllIds().stream()
+                    .collect(Collectors.toMap(trainId -> trainId, trainId -> trains.findById(trainId).orElseThrow()));
+            List<UserBookingService> sessions = new ArrayList<>();
+            List<User> users = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                User user = new User("bench" + t, "bench", UserServiceUtil.hashPassword("bench"), new ArrayList<>(), UUID.randomUUID().toString());
+                service.signUp(user);
+                UserBookingService session = service.newSession();
+                users.add(session.login(user.getUsername(), "bench").orElseThrow());
+                sessions.add(session);
+            }
+            // every ticket and cancellation prints a line, which is not what is measured here
+            PrintStream console = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            try {
+                report(label, threads, opsPerThread, trainCount, thread -> {
+                    UserBookingService session = sessions.get(thread);
+                    User user = users.get(thread);
+                    // "trainId:row:seat" -> ticket this thread holds for the seat
+                    Map<String, String> tickets = new HashMap<>();
+                    return (trainId, row, seat) -> {
+                        String seatKey = trainId + ":" + row + ":" + seat;
+                        String ticketId = tickets.remove(seatKey);
+                        if (ticketId != null) {
+                            return session.cancelBooking(ticketId);
+                        }
+                        if (!session.bookTrainSeat(trainsById.get(trainId), row, seat)) {
+                            return false;
+                        }
+                        tickets.put(seatKey, user.getTicketsBooked().getLast().getTicketId());
+                        return true;
+                    };
+                }, console);
+            } finally {
+                System.setOut(console);
+                service.getTrainService().close();
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private interface SeatToggle {
+        boolean toggle(String trainId, int row, int seat) throws Exception;
+    }
+
+    private static void report(String label, int threads, int opsPerThread, int trainCount, IntFunction<SeatToggle> clients) throws Exception {
+        report(label, threads, opsPerThread, trainCount, clients, System.out);
+    }
+
+    // clients gives the toggle of every thread, called before any thread starts
+    private static void report(String label, int threads, int opsPerThread, int trainCount, IntFunction<SeatToggle> clients,
+                               PrintStream out) throws Exception {
+        BenchmarkSupport.Zipf zipf = new BenchmarkSupport.Zipf(trainCount, SKEW);
+        long[] latencies = new long[threads * opsPerThread];
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            int offset = t * opsPerThread;
+            SeatToggle toggle = clients.apply(t);
+            Thread worker = new Thread(() -> {
+                Random random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    for (int i = 0; i < opsPerThread; i++) {
+                        String trainId = "T" + zipf.next(random);
+                        int seatIndex = ownSeat(thread, threads, random);
+                        long begin = System.nanoTime();
+                        toggle.toggle(trainId, seatIndex / COLS, seatIndex % COLS);
+                        latencies[offset + i] = System.nanoTime() - begin;
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    done.countDown();
+                }
+            });
+            worker.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        out.printf("%-36s %10.0f ops/s  %s%n", label, latencies.length / seconds, BenchmarkSupport.percentiles(latencies));
+    }
+
+    // row * COLS + seat of a seat only this thread toggles, on any train
+    private static int ownSeat(int thread, int threads, Random random) {
+        int seatsOfThread = (ROWS * COLS - thread + threads - 1) / threads;
+        return thread + threads * random.nextInt(seatsOfThread);
+    }
+}
@@ -0,0 +1,375 @@
+package ticket.booking.bench;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.mindrot.jbcrypt.BCrypt;
+import ticket.booking.serialization.SeatMapSerializer;
+import ticket.booking.storage.TrainShardStore;
+import ticket.booking.storage.UserBucketStore;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+// Writes a synthetic dataset of any size for scale tests. Every train, user and ticket
+// is streamed straight to disk with a JsonGenerator, so only the train routes (a few
+// ints per train) are kept in memory however many users and tickets are asked for.
+//
+// Trains run along shared corridors that meet at hub stations, so routes overlap the
+// way real lines do. Corridor, train and user popularity are skewed: a few trains get
+// most of the tickets and a few heavy users hold very long histories.
+//
+// The output directory gets the layout of localDb, in the legacy single-file format
+// (trains.json, users.json), the sharded format (trains/, users/buckets, users/index)
+// or both. Seat maps are filled to match each train's popularity but are not matched
+// seat by seat with the generated tickets.
+//
+// usage: DatasetGenerator <outDir> [trains] [users] [tickets] [legacy|sharded|both] [seed]
+public class DatasetGenerator {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("hh:mm a", Locale.ENGLISH);
+    private static final int ROWS = 10;
+    private static final int SEATS_PER_ROW = 8;
+    // every train has the same coaches over its ROWS rows: coach id, class, rows
+    private static final String[][] COACHES = {{"S1", "SL", "4"}, {"S2", "SL", "2"}, {"B1", "3A", "3"}, {"A1", "2A", "1"}};
+    // every user gets this hash, hashing millions of passwords would take hours
+    private static final String PASSWORD = "password";
+
+    private final Random random;
+    private final boolean legacy;
+    private final boolean sharded;
+    private final Path outDir;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    // route of train i as station numbers, kept so tickets can pick stops on it
+    private int[][] routes;
+    private BenchmarkSupport.Zipf trainPopularity;
+
+    private DatasetGenerator(Path outDir, String format, long seed) {
+        this.outDir = outDir;
+        this.random = new Random(seed);
+        this.legacy = format.equals("legacy") || format.equals("both");
+        this.sharded = format.equals("sharded") || format.equals("both");
+        if (!legacy && !sharded) {
+            throw new IllegalArgumentException("format must be legacy, sharded or both: " + format);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("usage: DatasetGenerator <outDir> [trains] [users] [tickets] [legacy|sharded|both] [seed]");
+            return;
+        }
+        Path outDir = Path.of(args[0]);
+        int trainCount = BenchmarkSupport.intArg(args, 1, 100_000);
+        int userCount = BenchmarkSupport.intArg(args, 2, 1_000_000);
+        long ticketCount = args.length > 3 ? Long.parseLong(args[3]) : 5L * userCount;
+        String format = args.length > 4 ? args[4] : "both";
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 42;
+        System.out.printf("Generating %,d trains, %,d users, ~%,d tickets (%s) into %s%n",
+                trainCount, userCount, ticketCount, format, outDir);
+
+        DatasetGenerator generator = new DatasetGenerator(outDir, format, seed);
+        long start = System.nanoTime();
+        generator.writeTrains(trainCount);
+        long trainsDone = System.nanoTime();
+        System.out.printf("trains: %,d in %d ms%n", trainCount, (trainsDone - start) / 1_000_000);
+        long tickets = generator.writeUsers(userCount, ticketCount);
+        long usersDone = System.nanoTime();
+        double seconds = (usersDone - trainsDone) / 1e9;
+        System.out.printf("users: %,d with %,d tickets in %d ms (%.0f users/s, %.0f tickets/s)%n",
+                userCount, tickets, (usersDone - trainsDone) / 1_000_000, userCount / seconds, tickets / seconds);
+    }
+
+    // ---- trains ----
+
+    private void writeTrains(int trainCount) throws IOException {
+        int stationCount = Math.max(50, trainCount / 10);
+        List<int[]> corridors = corridors(stationCount);
+        BenchmarkSupport.Zipf corridorPopularity = new BenchmarkSupport.Zipf(corridors.size(), 1.0);
+        routes = new int[trainCount][];
+        trainPopularity = new BenchmarkSupport.Zipf(trainCount, 1.0);
+
+        JsonGenerator trainsJson = null;
+        JsonGenerator manifest = null;
+        if (legacy) {
+            Files.createDirectories(outDir);
+            trainsJson = open(outDir.resolve("trains.json"));
+            trainsJson.writeStartArray();
+        }
+        Path shardDir = outDir.resolve("trains");
+        if (sharded) {
+            Files.createDirectories(shardDir);
+            manifest = open(shardDir.resolve("manifest.json"));
+            manifest.writeStartArray();
+        }
+        for (int i = 0; i < trainCount; i++) {
+            int[] route = routeOn(corridors.get(corridorPopularity.next(random)));
+            routes[i] = route;
+            String trainId = "T" + i;
+            String trainNo = String.valueOf(10_000 + i);
+            // popular trains are fuller, the top few are nearly sold out
+            double occupancy = Math.min(0.95, 0.05 + 0.9 / (1 + i / Math.max(1.0, trainCount / 50.0)));
+            int[][] seats = seats(occupancy);
+            String[] times = times(route.length);
+            if (legacy) {
+                writeTrain(trainsJson, trainId, trainNo, route, times, seats);
+            }
+            if (sharded) {
+                String file = TrainShardStore.shardFileName(trainId);
+                try (JsonGenerator shard = open(shardDir.resolve(file))) {
+                    writeTrain(shard, trainId, trainNo, route, times, seats);
+                }
+                manifest.writeStartObject();
+                manifest.writeStringField("train_id", trainId);
+                manifest.writeStringField("train_no", trainNo);
+                manifest.writeStringField("file", file);
+                writeStations(manifest, route);
+                manifest.writeEndObject();
+            }
+        }
+        if (legacy) {
+            trainsJson.writeEndArray();
+            trainsJson.close();
+        }
+        if (sharded) {
+            manifest.writeEndArray();
+            manifest.close();
+        }
+    }
+
+    // Corridors are long lines through the station pool. About one stop in six is one of
+    // a few hub stations, which is where corridors, and so train routes, overlap.
+    private List<int[]> corridors(int stationCount) {
+        int hubCount = Math.max(5, stationCount / 20);
+        int corridorCount = Math.max(5, stationCount / 40);
+        BenchmarkSupport.Zipf hubPopularity = new BenchmarkSupport.Zipf(hubCount, 1.0);
+        List<int[]> corridors = new ArrayList<>(corridorCount);
+        for (int c = 0; c < corridorCount; c++) {
+            int length = Math.min(stationCount, 20 + random.nextInt(41));
+            Set<Integer> used = new HashSet<>();
+            int[] corridor = new int[length];
+            for (int s = 0; s < length; s++) {
+                int station;
+                do {
+                    station = random.nextInt(6) == 0
+                            ? hubPopularity.next(random)
+                            : hubCount + random.nextInt(stationCount - hubCount);
+                } while (!used.add(station));
+                corridor[s] = station;
+            }
+            corridors.add(corridor);
+        }
+        return corridors;
+    }
+
+    // A stretch of the corridor in either direction; express trains skip some stops
+    private int[] routeOn(int[] corridor) {
+        int length = 3 + random.nextInt(Math.min(15, corridor.length - 3));
+        int first = random.nextInt(corridor.length - length + 1);
+        boolean express = random.nextInt(3) == 0;
+        boolean reverse = random.nextBoolean();
+        List<Integer> stops = new ArrayList<>(length);
+        for (int s = 0; s < length; s++) {
+            boolean endpoint = s == 0 || s == length - 1;
+            if (endpoint || !express || random.nextInt(2) == 0) {
+                stops.add(corridor[first + s]);
+            }
+        }
+        int[] route = new int[stops.size()];
+        for (int s = 0; s < route.length; s++) {
+            route[s] = stops.get(reverse ? route.length - 1 - s : s);
+        }
+        return route;
+    }
+
+    private String[] times(int stops) {
+        String[] times = new String[stops];
+        LocalTime time = LocalTime.of(random.nextInt(24), random.nextInt(4) * 15);
+        for (int s = 0; s < stops; s++) {
+            times[s] = time.format(TIME_FORMAT);
+            time = time.plusMinutes(15 + random.nextInt(76));
+        }
+        return times;
+    }
+
+    private int[][] seats(double occupancy) {
+        int[][] seats = new int[ROWS][SEATS_PER_ROW];
+        for (int[] row : seats) {
+            for (int s = 0; s < row.length; s++) {
+                row[s] = random.nextDouble() < occupancy ? 1 : 0;
+            }
+        }
+        return seats;
+    }
+
+    private static void writeTrain(JsonGenerator json, String trainId, String trainNo, int[] route,
+                                   String[] times, int[][] seats) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("train_id", trainId);
+        json.writeStringField("train_no", trainNo);
+        json.writeArrayFieldStart("seats");
+        // same layout the app writes, see SeatMapSerializer
+        for (int[] row : seats) {
+            json.writeString(SeatMapSerializer.encodeRow(row));
+        }
+        json.writeEndArray();
+        writeCoaches(json);
+        json.writeObjectFieldStart("station_times");
+        for (int s = 0; s < route.length; s++) {
+            json.writeStringField(stationName(route[s]), times[s]);
+        }
+        json.writeEndObject();
+        writeStations(json, route);
+        json.writeEndObject();
+    }
+
+    private static void writeCoaches(JsonGenerator json) throws IOException {
+        json.writeArrayFieldStart("coaches");
+        int firstRow = 0;
+        for (String[] coach : COACHES) {
+            json.writeStartObject();
+            json.writeStringField("coach_id", coach[0]);
+            json.writeStringField("travel_class", coach[1]);
+            json.writeNumberField("first_row", firstRow);
+            json.writeNumberField("row_count", Integer.parseInt(coach[2]));
+            json.writeEndObject();
+            firstRow += Integer.parseInt(coach[2]);
+        }
+        json.writeEndArray();
+    }
+
+    private static void writeStations(JsonGenerator json, int[] route) throws IOException {
+        json.writeArrayFieldStart("stations");
+        for (int station : route) {
+            json.writeString(stationName(station));
+        }
+        json.writeEndArray();
+    }
+
+    private static String stationName(int station) {
+        return "station" + station;
+    }
+
+    // ---- users and tickets ----
+
+    // Returns the number of tickets written
+    private long writeUsers(int userCount, long ticketTarget) throws IOException {
+        String hashedPassword = BCrypt.hashpw(PASSWORD, BCrypt.gensalt());
+        // Pareto(alpha 1.5) tickets per user: mean is 3 * scale, a long tail of heavy users
+        double scale = ticketTarget / (double) userCount / 3.0;
+        LocalDate today = LocalDate.now();
+
+        JsonGenerator usersJson = null;
+        JsonGenerator[] buckets = null;
+        JsonGenerator[] indexes = null;
+        if (legacy) {
+            Files.createDirectories(outDir);
+            usersJson = open(outDir.resolve("users.json"));
+            usersJson.writeStartArray();
+        }
+        if (sharded) {
+            Path bucketDir = outDir.resolve("users").resolve("buckets");
+            Path indexDir = outDir.resolve("users").resolve("index");
+            Files.createDirectories(bucketDir);
+            Files.createDirectories(indexDir);
+            buckets = new JsonGenerator[UserBucketStore.BUCKET_COUNT];
+            indexes = new JsonGenerator[UserBucketStore.BUCKET_COUNT];
+            for (int b = 0; b < UserBucketStore.BUCKET_COUNT; b++) {
+                buckets[b] = open(bucketDir.resolve(String.format("%03d.json", b)));
+                buckets[b].writeStartArray();
+                indexes[b] = open(indexDir.resolve(String.format("%03d.json", b)));
+                indexes[b].writeStartObject();
+            }
+        }
+
+        long ticketNo = 0;
+        for (int u = 0; u < userCount; u++) {
+            String username = "user" + u;
+            String userId = new UUID(random.nextLong(), random.nextLong()).toString();
+            double draw = Math.min(100_000, scale / Math.pow(1 - random.nextDouble(), 1 / 1.5));
+            // round randomly so small means are not lost to truncation
+            int tickets = (int) draw + (random.nextDouble() < draw - (int) draw ? 1 : 0);
+            long firstTicket = ticketNo;
+            ticketNo += tickets;
+            // the same tickets go to both formats, so draw them from a per-user seed
+            long ticketSeed = random.nextLong();
+            if (legacy) {
+                writeUser(usersJson, username, userId, hashedPassword, tickets, firstTicket, ticketSeed, today);
+            }
+            if (sharded) {
+                writeUser(buckets[UserBucketStore.bucketOf(userId)], username, userId, hashedPassword,
+                        tickets, firstTicket, ticketSeed, today);
+                indexes[UserBucketStore.bucketOf(username)].writeStringField(username, userId);
+            }
+            if ((u + 1) % 1_000_000 == 0) {
+                System.out.printf("  %,d users, %,d tickets%n", u + 1, ticketNo);
+            }
+        }
+
+        if (legacy) {
+            usersJson.writeEndArray();
+            usersJson.close();
+        }
+        if (sharded) {
+            for (int b = 0; b < UserBucketStore.BUCKET_COUNT; b++) {
+                buckets[b].writeEndArray();
+                buckets[b].close();
+                indexes[b].writeEndObject();
+                indexes[b].close();
+            }
+        }
+        return ticketNo;
+    }
+
+    private void writeUser(JsonGenerator json, String username, String userId, String hashedPassword,
+                           int tickets, long firstTicket, long ticketSeed, LocalDate today) throws IOException {
+        Random ticketRandom = new Random(ticketSeed);
+        json.writeStartObject();
+        json.writeStringField("username", username);
+        json.writeStringField("user_id", userId);
+        json.writeStringField("hashed_password", hashedPassword);
+        json.writeArrayFieldStart("tickets_booked");
+        for (int t = 0; t < tickets; t++) {
+            int train = trainPopularity.next(ticketRandom);
+            int[] route = routes[train];
+            int from = ticketRandom.nextInt(route.length - 1);
+            int to = from + 1 + ticketRandom.nextInt(route.length - from - 1);
+            json.writeStartObject();
+            json.writeStringField("ticket_id", String.valueOf(1_000_000_000_000L + firstTicket + t));
+            json.writeStringField("user_id", userId);
+            json.writeStringField("source", stationName(route[from]));
+            json.writeStringField("destination", stationName(route[to]));
+            // a year back and a year ahead
+            json.writeStringField("date_of_travel", today.plusDays(ticketRandom.nextInt(730) - 365).toString());
+            // only the id is needed to find the train again, the full train is not repeated
+            json.writeObjectFieldStart("train");
+            json.writeStringField("train_id", "T" + train);
+            json.writeStringField("train_no", String.valueOf(10_000 + train));
+            json.writeEndObject();
+            json.writeNumberField("row", ticketRandom.nextInt(ROWS));
+            json.writeNumberField("seat", ticketRandom.nextInt(SEATS_PER_ROW));
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    private JsonGenerator open(Path file) throws IOException {
+        return jsonFactory.createGenerator(new BufferedOutputStream(new FileOutputStream(file.toFile()), 1 << 16),
+                JsonEncoding.UTF8);
+    }
+}
@@ -0,0 +1,121 @@
+package ticket.booking.bench;
+
+import ticket.booking.entities.Train;
+import ticket.booking.repository.TrainRepository;
+import ticket.booking.utils.StationDictionary;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+// Trains held in memory only. Flushing parks for a fixed time per changed train to stand
+// in for writing its shard file, so benchmarks see the cost of persisting without
+// touching the disk, and a flush that writes several trains costs as much as one each.
+class InMemoryTrainRepository implements TrainRepository {
+
+    private final ConcurrentHashMap<String, Train> trains = new ConcurrentHashMap<>();
+    // trains with seat changes not flushed yet
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final long flushNanos;
+
+    InMemoryTrainRepository(List<Train> trains, long flushNanos) {
+        for (Train train : trains) {
+            this.trains.put(train.getTrainId(), train);
+        }
+        this.flushNanos = flushNanos;
+    }
+
+    @Override
+    public List<Train> findByRoute(String source, String destination) {
+        return findIdsByRoute(source, destination).stream().map(trains::get).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<String> findIdsByRoute(String source, String destination) {
+        int from = StationDictionary.lookup(source);
+        int to = StationDictionary.lookup(destination);
+        return trains.values().stream()
+                .filter(train -> train.servesInOrder(from, to))
+                .map(Train::getTrainId)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Optional<Train> findById(String trainId) {
+        return Optional.ofNullable(trains.get(trainId));
+    }
+
+    @Override
+    public boolean exists(String trainId) {
+        return trains.containsKey(trainId);
+    }
+
+    @Override
+    public List<String> findAllIds() {
+        return new ArrayList<>(trains.keySet());
+    }
+
+    @Override
+    public List<String> findAllStations() {
+        return trains.values().stream()
+                .flatMap(train -> train.getStations().stream())
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void save(Train train) {
+        trains.put(train.getTrainId(), train);
+    }
+
+    @Override
+    public void saveAll(List<Train> trains) {
+        trains.forEach(this::save);
+    }
+
+    @Override
+    public boolean updateSeat(String trainId, int row, int seat, int expectedValue, int newValue) {
+        Train train = trains.get(trainId);
+        if (train == null) {
+            return false;
+        }
+        synchronized (train) {
+            List<Integer> seatRow = train.getSeats().get(row);
+            if (seatRow.get(seat) != expectedValue) {
+                return false;
+            }
+            seatRow.set(seat, newValue);
+        }
+        dirty.add(trainId);
+        return true;
+    }
+
+    @Override
+    public void flush() {
+        flush(List.copyOf(dirty));
+    }
+
+    @Override
+    public void flush(Collection<String> trainIds) {
+        for (String trainId : trainIds) {
+            if (dirty.remove(trainId)) {
+                writeTime();
+            }
+        }
+    }
+
+    // The whole flushNanos: a single park returns early when the thread was unparked
+    // meanwhile, as engine writers are for every command submitted to them
+    private void writeTime() {
+        long deadline = System.nanoTime() + flushNanos;
+        long left;
+        while ((left = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(left);
+        }
+    }
+}
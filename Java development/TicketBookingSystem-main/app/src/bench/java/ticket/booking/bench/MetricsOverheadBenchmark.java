@@ -0,0 +1,148 @@
+package ticket.booking.bench;
+
+import ticket.booking.entities.Train;
+import ticket.booking.metrics.LatencyHistogram;
+import ticket.booking.metrics.Metrics;
+import ticket.booking.services.TrainService;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// What the instrumentation costs. Runs the same search and book/release mix on
+// TrainService over in-memory trains in child JVMs with -Dbooking.metrics=true and
+// =false, alternating, and compares their throughput. Metrics.ENABLED is a constant
+// the JIT folds away, so it can only be compared across JVMs. Also reports the raw
+// cost of one LatencyHistogram.record from one thread and from all threads at once.
+//
+// usage: MetricsOverheadBenchmark [threads] [seconds] [trains] [runs]
+public class MetricsOverheadBenchmark {
+
+    private static final int ROWS = 20;
+    private static final int COLS = 50;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--child")) {
+            runWorkload(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            return;
+        }
+        int threads = BenchmarkSupport.intArg(args, 0, 8);
+        int seconds = BenchmarkSupport.intArg(args, 1, 5);
+        int trainCount = BenchmarkSupport.intArg(args, 2, 1_000);
+        int runs = BenchmarkSupport.intArg(args, 3, 5);
+        System.out.printf("threads=%d seconds=%d trains=%d runs=%d%n", threads, seconds, trainCount, runs);
+
+        recordCost(1);
+        recordCost(threads);
+
+        double[][] results = new double[2][runs];
+        for (int run = 0; run < runs; run++) {
+            for (int enabled = 1; enabled >= 0; enabled--) {
+                double opsPerSecond = runChild(enabled == 1, threads, seconds, trainCount);
+                System.out.printf("run %d metrics %-3s %,12.0f ops/s%n", run + 1, enabled == 1 ? "on" : "off", opsPerSecond);
+                results[enabled][run] = opsPerSecond;
+            }
+        }
+        double on = median(results[1]);
+        double off = median(results[0]);
+        System.out.printf("median of %d: on %,.0f ops/s, off %,.0f ops/s, overhead %.2f%%%n",
+                runs, on, off, (off - on) / off * 100);
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static void recordCost(int threads) throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram("bench");
+        int perThread = 5_000_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                long value = ThreadLocalRandom.current().nextLong(1_000, 10_000_000);
+                for (int i = 0; i < perThread; i++) {
+                    histogram.record(value + i);
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("record from %d thread(s): %.1f ns per call, p50=%.0fus of %d values%n",
+                threads, (double) elapsed * threads / ((long) perThread * threads), histogram.getP50Micros(), histogram.getCount());
+    }
+
+    private static double runChild(boolean metrics, int threads, int seconds, int trainCount) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process child = new ProcessBuilder(java, "-Dbooking.metrics=" + metrics,
+                "-cp", System.getProperty("java.class.path"), MetricsOverheadBenchmark.class.getName(),
+                "--child", String.valueOf(threads), String.valueOf(seconds), String.valueOf(trainCount))
+                .redirectErrorStream(true)
+                .start();
+        double result = 0;
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(child.getInputStream()))) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                if (line.startsWith("RESULT ")) {
+                    result = Double.parseDouble(line.substring("RESULT ".length()));
+                }
+            }
+        }
+        if (child.waitFor() != 0 || result == 0) {
+            throw new IllegalStateException("benchmark child failed");
+        }
+        return result;
+    }
+
+    // One second of warm-up, then counts operations for the given time
+    private static void runWorkload(int threads, int seconds, int trainCount) throws InterruptedException {
+        List<Train> trains = BenchmarkSupport.syntheticTrains(trainCount, ROWS, COLS, 42);
+        TrainService trainService = new TrainService(new InMemoryTrainRepository(trains, 0));
+        List<String[]> routes = new ArrayList<>();
+        for (Train train : trains) {
+            routes.add(new String[]{train.getStations().getFirst(), train.getStations().getLast()});
+        }
+        LongAdder operations = new LongAdder();
+        long warmUpEnd = System.nanoTime() + 1_000_000_000L;
+        long end = warmUpEnd + seconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                Random random = ThreadLocalRandom.current();
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    int index = random.nextInt(trains.size());
+                    String[] route = routes.get(index);
+                    trainService.searchTrains(route[0], route[1]);
+                    Train train = trains.get(index);
+                    int row = random.nextInt(ROWS);
+                    int seat = random.nextInt(COLS);
+                    if (trainService.bookTickets(train, row, seat)) {
+                        trainService.releaseSeat(train.getTrainId(), row, seat);
+                    }
+                    if (now >= warmUpEnd) {
+                        operations.add(2);
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        if (Metrics.ENABLED) {
+            Metrics.dump();
+        }
+        System.out.println("RESULT " + operations.sum() / (double) seconds);
+        System.exit(0);
+    }
+}
@@ -0,0 +1,128 @@
+package ticket.booking.bench;
+
+import ticket.booking.entities.Train;
+import ticket.booking.metrics.Metrics;
+import ticket.booking.repository.JsonTrainRepository;
+import ticket.booking.repository.MappedTrainRepository;
+import ticket.booking.repository.TrainRepository;
+import ticket.booking.storage.MappedSeatInventory;
+import ticket.booking.storage.TrainShardStore;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// Books seats through the JSON shards and through the memory-mapped seat inventory, the
+// way the booking engine does: change one seat, then flush. Then starts both again and
+// reads back every train's seats, reporting the time and the heap the store keeps.
+//
+// usage: SeatInventoryBenchmark [trains] [bookings]
+public class SeatInventoryBenchmark {
+
+    private static final int ROWS = 20;
+    private static final int COLS = 50;
+    private static final double SKEW = 1.1;
+
+    public static void main(String[] args) throws Exception {
+        int trainCount = BenchmarkSupport.intArg(args, 0, 2_000);
+        int bookings = BenchmarkSupport.intArg(args, 1, 20_000);
+        System.out.printf("trains=%d seats/train=%d bookings=%d zipf=%.1f%n", trainCount, ROWS * COLS, bookings, SKEW);
+        Path dir = Files.createTempDirectory("seat-inventory");
+        try {
+            List<Train> trains = BenchmarkSupport.syntheticTrains(trainCount, ROWS, COLS, 42);
+
+            Path jsonDir = dir.resolve("json");
+            JsonTrainRepository json = new JsonTrainRepository(new TrainShardStore(jsonDir));
+            json.saveAll(trains);
+            book("json shards", json, trainCount, bookings);
+
+            Path mappedDir = dir.resolve("mapped");
+            MappedSeatInventory inventory = new MappedSeatInventory(mappedDir.resolve("seats.bin"));
+            MappedTrainRepository mapped = new MappedTrainRepository(new JsonTrainRepository(new TrainShardStore(mappedDir)), inventory);
+            mapped.saveAll(trains);
+            book("mapped inventory", mapped, trainCount, bookings);
+            long start = System.nanoTime();
+            inventory.force();
+            System.out.printf("  checkpoint (force) %.1f ms for a %d KB file%n",
+                    (System.nanoTime() - start) / 1e6, inventory.usedBytes() / 1024);
+            inventory.close();
+
+            System.out.println();
+            restart("json shards", trains, () -> {
+                TrainShardStore store = new TrainShardStore(jsonDir);
+                for (Train train : trains) {
+                    store.load(train.getTrainId()).orElseThrow();
+                }
+                return store;
+            });
+            restart("mapped inventory", trains, () -> {
+                MappedSeatInventory reopened = new MappedSeatInventory(mappedDir.resolve("seats.bin"));
+                // every seat is read through the mapping, nothing of it stays on the heap
+                for (Train train : trains) {
+                    List<List<Integer>> seats = reopened.seats(train.getTrainId());
+                    if (seats == null || seats.stream().mapToInt(row -> row.toArray().length).sum() != ROWS * COLS) {
+                        throw new IllegalStateException("no seats for " + train.getTrainId());
+                    }
+                }
+                return reopened;
+            });
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    // every booking takes a free seat or frees a taken one, then flushes like one engine batch
+    private static void book(String label, TrainRepository repository, int trainCount, int bookings) throws IOException {
+        BenchmarkSupport.Zipf zipf = new BenchmarkSupport.Zipf(trainCount, SKEW);
+        Random random = new Random(7);
+        long bytesBefore = Metrics.counter("store.trains.bytesWritten").getCount();
+        long[] latencies = new long[bookings];
+        long begin = System.nanoTime();
+        for (int i = 0; i < bookings; i++) {
+            String trainId = "T" + zipf.next(random);
+            int row = random.nextInt(ROWS);
+            int seat = random.nextInt(COLS);
+            long start = System.nanoTime();
+            if (!repository.updateSeat(trainId, row, seat, Train.SEAT_FREE, Train.SEAT_BOOKED)) {
+                repository.updateSeat(trainId, row, seat, Train.SEAT_BOOKED, Train.SEAT_FREE);
+            }
+            repository.flush();
+            latencies[i] = System.nanoTime() - start;
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        long written = Metrics.counter("store.trains.bytesWritten").getCount() - bytesBefore;
+        System.out.printf("%-18s %10.0f bookings/s  %s  %8.1f MB written%n", label, bookings / seconds,
+                BenchmarkSupport.percentiles(latencies), written / 1e6);
+    }
+
+    private interface Reopen {
+        Object open() throws IOException;
+    }
+
+    private static void restart(String label, List<Train> trains, Reopen reopen) throws IOException {
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        Object store = reopen.open();
+        double millis = (System.nanoTime() - start) / 1e6;
+        long retained = usedHeap() - heapBefore;
+        System.out.printf("%-18s restart reading the seats of %d trains: %8.1f ms, %7.1f MB of heap kept%n",
+                label, trains.size(), millis, Math.max(0, retained) / 1e6);
+        // the store must still be reachable when the heap is measured
+        Reference.reachabilityFence(store);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
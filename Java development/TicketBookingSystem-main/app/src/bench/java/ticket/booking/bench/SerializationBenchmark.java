@@ -0,0 +1,224 @@
+package ticket.booking.bench;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.serialization.JsonCodec;
+import ticket.booking.storage.UserBucketStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+// Bytes written and time per save and load of train shards and user buckets, the way
+// they used to be written (a mapper per store with INDENT_OUTPUT, seats as number
+// arrays, a full copy of the train in every ticket, a new TypeReference per read) and
+// the way JsonCodec writes them now. Files go to a temporary directory.
+//
+// usage: SerializationBenchmark [trains] [users] [ticketsPerUser] [rounds]
+public class SerializationBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int trainCount = BenchmarkSupport.intArg(args, 0, 2_000);
+        int userCount = BenchmarkSupport.intArg(args, 1, 5_000);
+        int ticketsPerUser = BenchmarkSupport.intArg(args, 2, 4);
+        int rounds = BenchmarkSupport.intArg(args, 3, 5);
+
+        List<Train> trains = BenchmarkSupport.syntheticTrains(trainCount, 20, 10, 42);
+        Random random = new Random(42);
+        for (Train train : trains) {
+            for (List<Integer> row : train.getSeats()) {
+                for (int seat = 0; seat < row.size(); seat++) {
+                    row.set(seat, random.nextInt(3) == 0 ? Train.SEAT_BOOKED : Train.SEAT_FREE);
+                }
+            }
+        }
+        List<List<User>> buckets = userBuckets(userCount, ticketsPerUser, trains, random);
+        System.out.printf("trains=%d users=%d tickets/user=%d rounds=%d%n", trainCount, userCount, ticketsPerUser, rounds);
+
+        Path dir = Files.createTempDirectory("serialization-bench");
+        try {
+            Codec legacy = new LegacyCodec();
+            Codec shared = new SharedCodec();
+            // the first round of each warms up the JIT and is not counted
+            for (Codec codec : List.of(legacy, shared, legacy, shared)) {
+                codec.reset();
+                for (int round = 0; round < rounds; round++) {
+                    run(codec, dir, trains, buckets);
+                }
+            }
+            legacy.print(trainCount, buckets.size(), rounds);
+            shared.print(trainCount, buckets.size(), rounds);
+            System.out.printf("train shards: %.1f%% of the bytes, user buckets: %.1f%% of the bytes%n",
+                    100.0 * shared.trainBytes / legacy.trainBytes, 100.0 * shared.userBytes / legacy.userBytes);
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    // Users spread over the store's buckets, every ticket carrying its train like
+    // UserBookingService issues them
+    private static List<List<User>> userBuckets(int userCount, int ticketsPerUser, List<Train> trains, Random random) {
+        Map<Integer, List<User>> buckets = new HashMap<>();
+        for (int i = 0; i < userCount; i++) {
+            String userId = UUID.randomUUID().toString();
+            List<Ticket> tickets = new ArrayList<>();
+            for (int t = 0; t < ticketsPerUser; t++) {
+                Train train = trains.get(random.nextInt(trains.size()));
+                Ticket ticket = new Ticket("T" + i + "-" + t, userId, train.getStations().getFirst(),
+                        train.getStations().getLast(), "2025-01-01", train);
+                ticket.setRow(random.nextInt(20));
+                ticket.setSeat(random.nextInt(10));
+                tickets.add(ticket);
+            }
+            User user = new User("user" + i, null, "$2a$10$abcdefghijklmnopqrstuuabcdefghijklmnopqrstuvwxyz12345", tickets, userId);
+            buckets.computeIfAbsent(UserBucketStore.bucketOf(userId), b -> new ArrayList<>()).add(user);
+        }
+        return new ArrayList<>(buckets.values());
+    }
+
+    private static void run(Codec codec, Path dir, List<Train> trains, List<List<User>> buckets) throws IOException {
+        long start = System.nanoTime();
+        long bytes = 0;
+        for (Train train : trains) {
+            File file = dir.resolve(train.getTrainId() + ".json").toFile();
+            codec.writeTrain(file, train);
+            bytes += file.length();
+        }
+        long trainsWritten = System.nanoTime();
+        for (Train train : trains) {
+            codec.readTrain(dir.resolve(train.getTrainId() + ".json").toFile());
+        }
+        long trainsRead = System.nanoTime();
+        long userBytes = 0;
+        for (int bucket = 0; bucket < buckets.size(); bucket++) {
+            File file = dir.resolve("bucket" + bucket + ".json").toFile();
+            codec.writeUsers(file, buckets.get(bucket));
+            userBytes += file.length();
+        }
+        long usersWritten = System.nanoTime();
+        for (int bucket = 0; bucket < buckets.size(); bucket++) {
+            codec.readUsers(dir.resolve("bucket" + bucket + ".json").toFile());
+        }
+        long usersRead = System.nanoTime();
+        codec.trainBytes = bytes;
+        codec.userBytes = userBytes;
+        codec.trainWriteNanos += trainsWritten - start;
+        codec.trainReadNanos += trainsRead - trainsWritten;
+        codec.userWriteNanos += usersWritten - trainsRead;
+        codec.userReadNanos += usersRead - usersWritten;
+    }
+
+    private abstract static class Codec {
+        final String name;
+        long trainBytes;
+        long userBytes;
+        long trainWriteNanos;
+        long trainReadNanos;
+        long userWriteNanos;
+        long userReadNanos;
+
+        Codec(String name) {
+            this.name = name;
+        }
+
+        abstract void writeTrain(File file, Train train) throws IOException;
+
+        abstract Train readTrain(File file) throws IOException;
+
+        abstract void writeUsers(File file, List<User> users) throws IOException;
+
+        abstract List<User> readUsers(File file) throws IOException;
+
+        void reset() {
+            trainWriteNanos = trainReadNanos = userWriteNanos = userReadNanos = 0;
+        }
+
+        void print(int trains, int buckets, int rounds) {
+            System.out.printf("%-8s shards %,11d bytes  save %6.1fus  load %6.1fus | buckets %,11d bytes  save %7.1fus  load %7.1fus%n",
+                    name, trainBytes, trainWriteNanos / 1e3 / trains / rounds, trainReadNanos / 1e3 / trains / rounds,
+                    userBytes, userWriteNanos / 1e3 / buckets / rounds, userReadNanos / 1e3 / buckets / rounds);
+        }
+    }
+
+    private static class LegacyCodec extends Codec {
+        private final ObjectMapper objectMapper = new ObjectMapper();
+
+        LegacyCodec() {
+            super("before");
+            objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+            // leaves out the custom serializers and @JsonIgnore, as the entities had neither
+            objectMapper.setAnnotationIntrospector(new JacksonAnnotationIntrospector() {
+                @Override
+                public Object findSerializer(Annotated annotated) {
+                    return null;
+                }
+
+                @Override
+                public Object findDeserializer(Annotated annotated) {
+                    return null;
+                }
+
+                @Override
+                public boolean hasIgnoreMarker(AnnotatedMember member) {
+                    return false;
+                }
+            });
+        }
+
+        void writeTrain(File file, Train train) throws IOException {
+            objectMapper.writeValue(file, train);
+        }
+
+        Train readTrain(File file) throws IOException {
+            return objectMapper.readValue(file, Train.class);
+        }
+
+        void writeUsers(File file, List<User> users) throws IOException {
+            objectMapper.writeValue(file, users);
+        }
+
+        List<User> readUsers(File file) throws IOException {
+            return objectMapper.readValue(file, new TypeReference<List<User>>() {});
+        }
+    }
+
+    private static class SharedCodec extends Codec {
+        SharedCodec() {
+            super("after");
+        }
+
+        void writeTrain(File file, Train train) throws IOException {
+            JsonCodec.FILE_WRITER.writeValue(file, train);
+        }
+
+        Train readTrain(File file) throws IOException {
+            return JsonCodec.TRAIN.readValue(file);
+        }
+
+        void writeUsers(File file, List<User> users) throws IOException {
+            JsonCodec.FILE_WRITER.writeValue(file, users);
+        }
+
+        List<User> readUsers(File file) throws IOException {
+            return JsonCodec.USER_LIST.readValue(file);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package ticket.booking.bench;
+
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.User;
+import ticket.booking.metrics.CacheStats;
+import ticket.booking.metrics.LatencyHistogram;
+import ticket.booking.metrics.Metrics;
+import ticket.booking.session.UserSessions;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Many logged in sessions of a large user base hitting UserSessions at once. Sessions
+// are picked with a Zipf skew, a few users are busy and most come back rarely. Users
+// come from a stand-in for UserBucketStore: maxCachedUsers recently used users behind
+// one lock, and a user missing from them is "read from storage" by building it again
+// after loadMicros of waiting, like a bucket file read. Prints throughput, the user
+// cache hit ratio, the time to load a user and how many users stay in memory.
+//
+// usage: SessionCacheBenchmark [sessions] [requests] [maxCachedUsers] [clients] [loadMicros]
+public class SessionCacheBenchmark {
+
+    private static final double SKEW = 1.1;
+    private static final int TICKETS_PER_USER = 5;
+
+    public static void main(String[] args) throws Exception {
+        int sessionCount = BenchmarkSupport.intArg(args, 0, 200_000);
+        int requests = BenchmarkSupport.intArg(args, 1, 2_000_000);
+        int maxCachedUsers = BenchmarkSupport.intArg(args, 2, 10_000);
+        int clients = BenchmarkSupport.intArg(args, 3, 64);
+        int loadMicros = BenchmarkSupport.intArg(args, 4, 200);
+        System.out.printf("sessions=%d requests=%d maxCachedUsers=%d clients=%d load=%dus zipf=%.1f%n",
+                sessionCount, requests, maxCachedUsers, clients, loadMicros, SKEW);
+
+        CachedUsers users = new CachedUsers(maxCachedUsers, loadMicros);
+        // room for twice the sessions, so none ends for lack of room and every miss is a user load
+        UserSessions sessions = new UserSessions(users::load, 2 * sessionCount, 3600);
+        String[] tokens = new String[sessionCount];
+        for (int i = 0; i < sessionCount; i++) {
+            tokens[i] = sessions.open(users.add(user("U" + i)));
+        }
+        System.out.printf("after login: %d users in memory%n", users.size());
+
+        BenchmarkSupport.Zipf popularity = new BenchmarkSupport.Zipf(sessionCount, SKEW);
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        List<Future<Integer>> ended = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            Random random = new Random(c);
+            int share = requests / clients;
+            ended.add(executor.submit(() -> {
+                int gone = 0;
+                for (int i = 0; i < share; i++) {
+                    if (sessions.user(tokens[popularity.next(random)]).isEmpty()) {
+                        gone++;
+                    }
+                }
+                return gone;
+            }));
+        }
+        int endedSessions = 0;
+        for (Future<Integer> client : ended) {
+            endedSessions += client.get();
+        }
+        executor.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        LatencyHistogram load = Metrics.latency("bench.userLoad");
+        System.out.printf("%.0f requests/s, user cache hit ratio %.1f%%, %d loads p50=%.0fus p99=%.0fus%n",
+                requests / seconds, Metrics.cache("bench.users").getHitRatio() * 100, load.getCount(), load.getP50Micros(), load.getP99Micros());
+        System.out.printf("%d sessions open (%d requests found theirs ended), %d users in memory, %,d bytes heap used%n",
+                sessions.activeSessions(), endedSessions, users.size(), usedAfterGc());
+        sessions.close();
+    }
+
+    // The user cache of UserBucketStore: least recently used users, one monitor, and the
+    // storage read done while holding it
+    private static final class CachedUsers {
+        private static final CacheStats STATS = Metrics.cache("bench.users");
+        private static final LatencyHistogram LOAD = Metrics.latency("bench.userLoad");
+
+        private final Map<String, User> cache;
+        private final long loadNanos;
+
+        CachedUsers(int maxCachedUsers, int loadMicros) {
+            cache = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, User> eldest) {
+                    return size() > maxCachedUsers;
+                }
+            };
+            loadNanos = TimeUnit.MICROSECONDS.toNanos(loadMicros);
+        }
+
+        synchronized Optional<User> load(String userId) {
+            User cached = cache.get(userId);
+            if (cached != null) {
+                STATS.hit();
+                return Optional.of(cached);
+            }
+            STATS.miss();
+            long start = Metrics.start();
+            LockSupport.parkNanos(loadNanos);
+            User user = user(userId);
+            LOAD.stop(start);
+            cache.put(userId, user);
+            return Optional.of(user);
+        }
+
+        // a user just signed up or logged in, cached without the storage read
+        synchronized User add(User user) {
+            cache.put(user.getUserId(), user);
+            return user;
+        }
+
+        synchronized int size() {
+            return cache.size();
+        }
+    }
+
+    private static User user(String userId) {
+        List<Ticket> tickets = new ArrayList<>(TICKETS_PER_USER);
+        for (int t = 0; t < TICKETS_PER_USER; t++) {
+            tickets.add(new Ticket(userId + "-" + t, userId, "kandivali", "malad", "2021-09-01", null));
+        }
+        return new User("user" + userId, null, "$2a$10$" + userId, tickets, userId);
+    }
+
+    private static long usedAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
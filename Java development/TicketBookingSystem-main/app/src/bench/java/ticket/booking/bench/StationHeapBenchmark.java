@@ -0,0 +1,109 @@
+package ticket.booking.bench;
+
+import ticket.booking.entities.Train;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Heap used by the routes of a large timetable, stored the old way (every train with its
+// own List<String> and Map<String,String> of freshly parsed strings) and dictionary
+// encoded (int[] route + interned times). Prints the used heap after GC and the top of a
+// class histogram for both.
+//
+// usage: StationHeapBenchmark [trains] [stationPool]
+public class StationHeapBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int trainCount = BenchmarkSupport.intArg(args, 0, 100_000);
+        int stationPool = BenchmarkSupport.intArg(args, 1, 2_000);
+        System.out.printf("trains=%d distinct stations=%d%n", trainCount, stationPool);
+
+        long baseline = usedAfterGc();
+        List<LegacyRoute> legacy = legacyRoutes(trainCount, stationPool);
+        long legacyBytes = usedAfterGc() - baseline;
+        System.out.printf("List<String> + Map<String,String>: %,d bytes (%d trains)%n", legacyBytes, legacy.size());
+        printHistogram(8);
+        legacy = null;
+
+        baseline = usedAfterGc();
+        List<Train> encoded = encodedRoutes(trainCount, stationPool);
+        long encodedBytes = usedAfterGc() - baseline;
+        System.out.printf("int[] route + dictionary:          %,d bytes (%d trains)%n", encodedBytes, encoded.size());
+        printHistogram(8);
+
+        System.out.printf("saving: %,d bytes (%.1f%%)%n", legacyBytes - encodedBytes,
+                100.0 * (legacyBytes - encodedBytes) / legacyBytes);
+    }
+
+    // What Jackson used to build for each train: new String objects for every name and time
+    private static final class LegacyRoute {
+        final List<String> stations;
+        final Map<String, String> stationTimes;
+
+        LegacyRoute(List<String> stations, Map<String, String> stationTimes) {
+            this.stations = stations;
+            this.stationTimes = stationTimes;
+        }
+    }
+
+    private static List<LegacyRoute> legacyRoutes(int trainCount, int stationPool) {
+        Random random = new Random(7);
+        List<LegacyRoute> routes = new ArrayList<>(trainCount);
+        for (int i = 0; i < trainCount; i++) {
+            List<String> stations = new ArrayList<>();
+            Map<String, String> times = new LinkedHashMap<>();
+            fillRoute(random, stationPool, stations, times);
+            routes.add(new LegacyRoute(stations, times));
+        }
+        return routes;
+    }
+
+    private static List<Train> encodedRoutes(int trainCount, int stationPool) {
+        Random random = new Random(7);
+        List<Train> trains = new ArrayList<>(trainCount);
+        for (int i = 0; i < trainCount; i++) {
+            List<String> stations = new ArrayList<>();
+            Map<String, String> times = new LinkedHashMap<>();
+            fillRoute(random, stationPool, stations, times);
+            trains.add(new Train("T" + i, String.valueOf(i), null, times, stations));
+        }
+        return trains;
+    }
+
+    private static void fillRoute(Random random, int stationPool, List<String> stations, Map<String, String> times) {
+        int stops = 8 + random.nextInt(20);
+        int first = random.nextInt(stationPool);
+        for (int s = 0; s < stops; s++) {
+            // new String(...) like a JSON parser, equal names are different objects
+            String station = new String(("station-" + (first + s * 3) % stationPool).toCharArray());
+            if (!times.containsKey(station)) {
+                stations.add(station);
+                times.put(station, new String(String.format("%02d:%02d AM", s % 12 + 1, (s * 7) % 60).toCharArray()));
+            }
+        }
+    }
+
+    private static long usedAfterGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    // Same output as jcmd <pid> GC.class_histogram
+    private static void printHistogram(int lines) throws Exception {
+        String histogram = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+                new ObjectName("com.sun.management:type=DiagnosticCommand"), "gcClassHistogram",
+                new Object[]{new String[0]}, new String[]{String[].class.getName()});
+        String[] rows = histogram.split("\n");
+        for (int i = 0; i < Math.min(rows.length, lines + 2); i++) {
+            System.out.println("  " + rows[i]);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package ticket.booking.bench;
+
+import ticket.booking.utils.StationIndex;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Lookup latency of the station index: completing the first letters of a name, as an
+// autocomplete does on every keystroke, and suggesting names for one with a letter
+// changed. Names are glued together from a few syllables so that, like real stations,
+// many of them share a beginning or an ending.
+//
+// usage: StationIndexBenchmark [stations] [lookups]
+public class StationIndexBenchmark {
+
+    private static final String[] SYLLABLES = {
+            "ra", "ma", "pur", "na", "gar", "ganj", "a", "bad", "ko", "li", "de", "hi", "ban", "ga",
+            "lore", "che", "nai", "sa", "ha", "ran", "pa", "tna", "jai", "shi", "vi", "le", "par",
+            "kal", "yan", "tha", "ne", "ro", "cant", "junction", "road", "city", "east", "west"};
+
+    public static void main(String[] args) {
+        int stationCount = BenchmarkSupport.intArg(args, 0, 8_000);
+        int lookups = BenchmarkSupport.intArg(args, 1, 100_000);
+        Random random = new Random(42);
+        List<String> stations = stationNames(stationCount, random);
+        long start = System.nanoTime();
+        StationIndex index = StationIndex.of(stations);
+        System.out.printf("stations=%d lookups=%d built in %.1f ms%n", index.size(), lookups, (System.nanoTime() - start) / 1e6);
+
+        for (int round = 0; round < 3; round++) {
+            long[] prefix = new long[lookups];
+            long[] typo = new long[lookups];
+            int found = 0;
+            for (int i = 0; i < lookups; i++) {
+                String name = stations.get(random.nextInt(stations.size()));
+                String typed = name.substring(0, 1 + random.nextInt(Math.min(4, name.length())));
+                start = System.nanoTime();
+                found += index.suggest(typed, 10).size();
+                prefix[i] = System.nanoTime() - start;
+
+                int at = random.nextInt(name.length());
+                String misspelt = name.substring(0, at) + (char) ('a' + random.nextInt(26)) + name.substring(at + 1);
+                start = System.nanoTime();
+                found += index.suggest(misspelt, 10).size();
+                typo[i] = System.nanoTime() - start;
+            }
+            System.out.printf("round %d prefix %s | typo %s (%d names offered)%n", round,
+                    BenchmarkSupport.percentiles(prefix), BenchmarkSupport.percentiles(typo), found);
+        }
+    }
+
+    private static List<String> stationNames(int count, Random random) {
+        Set<String> names = new LinkedHashSet<>();
+        while (names.size() < count) {
+            StringBuilder name = new StringBuilder();
+            int syllables = 2 + random.nextInt(3);
+            for (int i = 0; i < syllables; i++) {
+                name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            names.add(name.toString());
+        }
+        return new ArrayList<>(names);
+    }
+}
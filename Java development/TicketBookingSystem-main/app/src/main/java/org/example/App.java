@@ -3,25 +3,94 @@
  */
 package org.example;
 
+import ticket.booking.analytics.AnalyticsReport;
+import ticket.booking.analytics.BookingAnalytics;
+import ticket.booking.entities.Coach;
 import ticket.booking.entities.Train;
 import ticket.booking.entities.User;
+import ticket.booking.metrics.Metrics;
+import ticket.booking.replication.Journal;
+import ticket.booking.replication.JournalingRepositories;
+import ticket.booking.replication.ReplicationPrimary;
+import ticket.booking.repository.HistoryFilter;
+import ticket.booking.repository.Repositories;
+import ticket.booking.services.BatchCommandService;
+import ticket.booking.services.ConsistencyChecker;
+import ticket.booking.services.SeatHold;
+import ticket.booking.services.TimetableImportService;
+import ticket.booking.services.TrainService;
 import ticket.booking.services.UserBookingService;
+import ticket.booking.services.WaitlistService;
 import ticket.booking.utils.UserServiceUtil;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
 public class App {
 
     public static void main(String[] args) throws IOException {
 
+        // bulk timetable import: gradle run --args="import timetable.csv"
+        if (args.length == 2 && args[0].equals("import")) {
+            try (TrainService trainService = new TrainService()) {
+                new TimetableImportService(trainService).importCsv(Path.of(args[1]));
+            }
+            return;
+        }
+
+        // occupancy, popular routes and booking rate: gradle run --args="report [top]"
+        if (args.length >= 1 && args[0].equals("report")) {
+            Repositories repositories = Repositories.open();
+            try (TrainService trainService = new TrainService(repositories.trains())) {
+                AnalyticsReport report = new BookingAnalytics(trainService, repositories.tickets()).run();
+                report.print(args.length > 1 ? Integer.parseInt(args[1]) : 20);
+            }
+            return;
+        }
+
+        // seat maps against issued tickets: gradle run --args="check [--repair]"
+        if (args.length >= 1 && args[0].equals("check")) {
+            Repositories repositories = Repositories.open();
+            try (TrainService trainService = new TrainService(repositories.trains())) {
+                UserBookingService bookingService = new UserBookingService(repositories, trainService, new WaitlistService());
+                ConsistencyChecker checker = new ConsistencyChecker(bookingService, null, Arrays.asList(args).contains("--repair"));
+                checker.checkAll(true).print();
+            }
+            return;
+        }
+
+        // -Dbooking.metricsDumpSeconds=60 prints the timings once a minute, see Metrics
+        Metrics.startPeriodicDump();
+
+        // commands from a file or stdin instead of the menu, see BatchCommandService:
+        // gradle run --args="batch commands.txt [--parallel]", "-" or no file reads stdin
+        if (args.length >= 1 && args[0].equals("batch")) {
+            List<String> options = Arrays.asList(args).subList(1, args.length);
+            String file = options.stream().filter(o -> !o.startsWith("--")).findFirst().orElse("-");
+            UserBookingService bookingService = openBookingService();
+            BatchCommandService batch = new BatchCommandService(bookingService, options.contains("--parallel"));
+            try (BufferedReader input = file.equals("-")
+                    ? new BufferedReader(new InputStreamReader(System.in))
+                    : Files.newBufferedReader(Path.of(file))) {
+                batch.run(input);
+            } finally {
+                bookingService.getTrainService().close();
+            }
+            Metrics.dump();
+            return;
+        }
+
         System.out.println("Welcome to my Ticket Booking System!");
         Scanner scanner = new Scanner(System.in);
         int option = 0;
         UserBookingService userBookingService;
 
         try{
-            userBookingService = new UserBookingService();
+            userBookingService = openBookingService();
         }
         catch (IOException ex){
             System.out.println("There is something wrong!" + ex.getMessage());
@@ -83,18 +152,32 @@ public class App {
                     System.out.println("Enter your password: ");
                     String password = scanner.nextLine();
 
-                    Optional <User> foundUser = userBookingService.getUserByUsername(username);
-                    if(foundUser.isPresent() && UserServiceUtil.checkPassword(password,foundUser.get().getHashedPassword())){
+                    Optional <User> foundUser = userBookingService.login(username, password);
+                    if(foundUser.isPresent()){
                         System.out.println("Login successful! Welcome " + username);
-                        userBookingService.setUser(foundUser.get());
                     }
                     else{
                         System.out.println("Login failed!");
                     }
                     break;
                 case 3:
+                    if (!loggedIn(userBookingService)) {
+                        break;
+                    }
                     try{
-                        userBookingService.fetchBookings();
+                        System.out.println("Show (a)ll, (u)pcoming or (p)ast bookings?");
+                        String choice = scanner.nextLine().trim().toLowerCase();
+                        HistoryFilter filter = choice.startsWith("u") ? HistoryFilter.UPCOMING
+                                : choice.startsWith("p") ? HistoryFilter.PAST : HistoryFilter.ALL;
+                        // one page at a time so a long history does not flood the console
+                        String cursor = userBookingService.fetchBookings(filter, null, UserBookingService.HISTORY_PAGE_SIZE);
+                        while (cursor != null) {
+                            System.out.println("Press n for the next page, anything else to go back");
+                            if (!scanner.nextLine().trim().equalsIgnoreCase("n")) {
+                                break;
+                            }
+                            cursor = userBookingService.fetchBookings(filter, cursor, UserBookingService.HISTORY_PAGE_SIZE);
+                        }
                     }catch (Exception ex){
                         System.out.println("There is something wrong!");
                     }
@@ -106,13 +189,19 @@ public class App {
                     String source = scanner.nextLine().toLowerCase(); // Converting to lowercase for consistency
                     System.out.println("Enter the destination station: ");
                     String destination = scanner.nextLine().toLowerCase(); //here also converting to lowercase
+                    System.out.println("Enter the class (SL, 3A, ...) or press enter for any class: ");
+                    String travelClass = scanner.nextLine().trim();
 
-                    //this will fetch trains that are available
-                    List<Train> trains = userBookingService.getTrains(source, destination);
+                    //this will fetch trains that are available, with a free seat in that class if one was given
+                    List<Train> trains = userBookingService.getTrains(source, destination, travelClass.isEmpty() ? null : travelClass);
 
                     // if trains list is empty means no trains available then it will exit
                     if (trains.isEmpty()) {
-                        System.out.println("❌ No trains available between " + source + " and " + destination);
+                        System.out.println("❌ No trains available between " + source + " and " + destination
+                                + (travelClass.isEmpty() ? "" : " with free seats in " + travelClass));
+                        // maybe a station was misspelt, offering the names that come close
+                        printStationSuggestions(userBookingService, source);
+                        printStationSuggestions(userBookingService, destination);
                         break;
                     }
 
@@ -122,6 +211,12 @@ public class App {
                     for (Train t : trains) {
                         System.out.println(index + ". Train ID: " + t.getTrainId() + " | Train No: " + t.getTrainNo());
                         System.out.println("   Route: " + String.join(" ➝ ", t.getStations()));
+                        // kept per class as seats are booked, nothing is counted here
+                        StringBuilder free = new StringBuilder("   Free seats:");
+                        for (String trainClass : t.getTravelClasses()) {
+                            free.append(" ").append(trainClass).append(" ").append(userBookingService.availableSeats(t, trainClass));
+                        }
+                        System.out.println(free);
                         System.out.println("   Timings:");
                         for (Map.Entry<String, String> entry : t.getStationTimes().entrySet()) {
                             System.out.println("     ⏰ " + entry.getKey() + " - " + entry.getValue());
@@ -151,30 +246,22 @@ public class App {
                     System.out.println("✅ Train Selected: " + trainSelectedForBooking.getTrainId());
 
                     System.out.println("Available Seats:");
-                    for (List<Integer> row : trainSelectedForBooking.getSeats()) {
-                        for (Integer seat : row) {
-                            System.out.print(seat + " ");
-                        }
-                        System.out.println();
-                    }
+                    printSeats(trainSelectedForBooking, trainSelectedForBooking.getSeats());
                     break;
 
                 case 5:
 
+                    if (!loggedIn(userBookingService)) {
+                        break;
+                    }
                     if (trainSelectedForBooking == null) {
                         System.out.println("❌ Please select a train first in option 4!");
                         break;
                     }
-                    System.out.println("Select a seat out of these seats");
+                    System.out.println("Select a seat out of these seats (0 free, 1 booked, 2 held by someone)");
 
                     List<List<Integer>> seats = userBookingService.fetchSeats(trainSelectedForBooking);
-
-                    for (List<Integer> row: seats){
-                        for (Integer val: row){
-                            System.out.print(val +  " ");
-                        }
-                        System.out.println();
-                    }
+                    printSeats(trainSelectedForBooking, seats);
 
                     System.out.println("Select the seat by typing the row and column");
 
@@ -183,18 +270,44 @@ public class App {
 
                     System.out.println("Enter the column");
                     int col = scanner.nextInt();
+                    scanner.nextLine(); // Consuming the newline character
 
-                    System.out.println("Booking your seat....");
+                    System.out.println("Holding your seat....");
 
-                    Boolean booked = userBookingService.bookTrainSeat(trainSelectedForBooking, row, col);
+                    // the seat is kept for us while we decide, nobody else can take it
+                    Optional<SeatHold> hold = userBookingService.holdSeat(trainSelectedForBooking, row, col);
+                    boolean booked = false;
+                    if(hold.isPresent()){
+                        System.out.println("Seat held for " + hold.get().secondsLeft() + " seconds. Confirm booking? (y/n)");
+                        if(!scanner.nextLine().trim().equalsIgnoreCase("y")){
+                            userBookingService.releaseHold(hold.get());
+                            System.out.println("Seat released");
+                            break;
+                        }
+                        booked = userBookingService.confirmHold(hold.get());
+                        if(!booked){
+                            System.out.println("Your hold ran out and the seat was released");
+                        }
+                    }
 
-                    if(booked.equals(Boolean.TRUE)){
+                    if(booked){
                         System.out.println("Booked! Enjoy your journey");
                     }else{
                         System.out.println("Can't book this seat");
+                        boolean trainFull = userBookingService.availableSeats(trainSelectedForBooking) == 0;
+                        if(trainFull){
+                            System.out.println("This train is full. Join the waitlist? (y/n)");
+                            if(scanner.nextLine().trim().equalsIgnoreCase("y")){
+                                int position = userBookingService.joinWaitlist(trainSelectedForBooking);
+                                System.out.println("You are number " + position + " on the waitlist. A seat will be booked for you when one is cancelled.");
+                            }
+                        }
                     }
                     break;
                 case 6:
+                    if (!loggedIn(userBookingService)) {
+                        break;
+                    }
                     System.out.println("Enter the ticket id to cancel the booking");
                     String ticketId = scanner.nextLine();
                     boolean isCancelled = userBookingService.cancelBooking(ticketId);
@@ -208,8 +321,63 @@ public class App {
                     break;
             }
         }
+        // lets the booking engine write what is still queued
+        userBookingService.getTrainService().close();
+        Metrics.dump();
 
+    }
 
+    // the session ends after -Dbooking.sessionIdleSeconds without use, see UserSessions
+    private static boolean loggedIn(UserBookingService userBookingService) {
+        if (userBookingService.isLoggedIn()) {
+            return true;
+        }
+        System.out.println("❌ Please login first in option 2!");
+        return false;
+    }
+
+    // one line per row of seats, starting with the row number and the coach it is in
+    private static void printSeats(Train train, List<List<Integer>> seats) {
+        for (int row = 0; row < seats.size(); row++) {
+            String coach = train.coachOfRow(row).map(Coach::getCoachInfo).orElse(Coach.DEFAULT_CLASS);
+            System.out.print(row + " " + coach + ": ");
+            for (Integer seat : seats.get(row)) {
+                System.out.print(seat + " ");
+            }
+            System.out.println();
+        }
+    }
+
+    private static void printStationSuggestions(UserBookingService userBookingService, String typed) {
+        List<String> suggestions = userBookingService.suggestStations(typed, 5);
+        if (!suggestions.isEmpty() && !suggestions.get(0).equalsIgnoreCase(typed)) {
+            System.out.println("   Did you mean " + String.join(", ", suggestions) + " for " + typed + "?");
+        }
+    }
+
+    private static UserBookingService openBookingService() throws IOException {
+        // -Dbooking.replicationPort=9090 ships every change to followers, see ReplicationPrimary
+        String replicationPort = System.getProperty("booking.replicationPort");
+        // -Dbooking.consistencyCheckSeconds=60 checks seats against tickets in the background,
+        // following the same journal of changes the followers get, see ConsistencyChecker
+        String checkSeconds = System.getProperty("booking.consistencyCheckSeconds");
+        UserBookingService bookingService;
+        Journal journal = null;
+        if (replicationPort != null) {
+            ReplicationPrimary primary = ReplicationPrimary.start(Repositories.open(), Integer.parseInt(replicationPort));
+            bookingService = primary.getBookingService();
+            journal = primary.getJournal();
+        } else if (checkSeconds != null) {
+            journal = new Journal();
+            bookingService = new UserBookingService(JournalingRepositories.wrap(Repositories.open(), journal));
+        } else {
+            bookingService = new UserBookingService();
+        }
+        if (checkSeconds != null) {
+            new ConsistencyChecker(bookingService, journal, Boolean.getBoolean("booking.consistencyRepair"))
+                    .start(Long.parseLong(checkSeconds));
+        }
+        return bookingService;
     }
 }
 
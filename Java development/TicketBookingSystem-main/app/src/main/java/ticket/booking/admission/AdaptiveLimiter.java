@@ -0,0 +1,178 @@
+package ticket.booking.admission;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Concurrency limit that adapts to latency (AIMD): while requests finish close to the
+// fastest latency seen the limit creeps up by about one per limit's worth of requests,
+// and when they get much slower, i.e. work is queueing up somewhere inside, it is cut
+// by a fraction. Like TCP's congestion window it is cut at most once per round trip:
+// requests that started before the last cut ran under the old limit, so their slowness
+// is what the cut already answered, and only a request started after it can cut again.
+// Requests over the limit wait in a queue per client and the clients take turns, so one
+// client sending a flood cannot starve the others. A request that finds the queue
+// full, or waits longer than maxWait, is turned away.
+public class AdaptiveLimiter {
+
+    // a request this many times slower than the fastest one means we are overloaded
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double DECREASE_FACTOR = 0.9;
+    // how quickly the fastest latency seen forgets an old, unusually fast sample
+    private static final double MIN_LATENCY_DRIFT = 0.001;
+
+    public enum Outcome { ADMITTED, QUEUE_FULL, TIMED_OUT }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    // everything below is guarded by lock
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private double minLatencyNanos = Double.MAX_VALUE;
+    // System.nanoTime() of the last cut
+    private long lastDecreaseNanos = System.nanoTime();
+    // client -> its waiting requests; the first client in the map is served next
+    private final LinkedHashMap<String, ArrayDeque<Waiter>> waiting = new LinkedHashMap<>();
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueue, long maxWait, TimeUnit unit) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+    }
+
+    private static final class Waiter {
+        final Thread thread = Thread.currentThread();
+        volatile boolean admitted;
+    }
+
+    // Blocks up to maxWait for a slot. On ADMITTED the caller must call release.
+    public Outcome acquire(String client) {
+        Waiter waiter;
+        lock.lock();
+        try {
+            if (queued == 0 && inFlight < (int) limit) {
+                inFlight++;
+                return Outcome.ADMITTED;
+            }
+            if (queued >= maxQueue) {
+                return Outcome.QUEUE_FULL;
+            }
+            waiter = new Waiter();
+            waiting.computeIfAbsent(client, c -> new ArrayDeque<>()).addLast(waiter);
+            queued++;
+        } finally {
+            lock.unlock();
+        }
+
+        long deadline = System.nanoTime() + maxWaitNanos;
+        long left;
+        while (!waiter.admitted && (left = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, left);
+        }
+        if (waiter.admitted) {
+            return Outcome.ADMITTED;
+        }
+        lock.lock();
+        try {
+            // admitted between the last check and taking the lock
+            if (waiter.admitted) {
+                return Outcome.ADMITTED;
+            }
+            ArrayDeque<Waiter> queue = waiting.get(client);
+            if (queue != null && queue.remove(waiter)) {
+                queued--;
+                if (queue.isEmpty()) {
+                    waiting.remove(client);
+                }
+            }
+            return Outcome.TIMED_OUT;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Ends an admitted request that ran for latencyNanos, adapts the limit and lets
+    // waiting requests in if there is room now
+    public void release(long latencyNanos, boolean succeeded) {
+        release(latencyNanos, succeeded, System.nanoTime());
+    }
+
+    // the same at a given System.nanoTime(), for tests
+    void release(long latencyNanos, boolean succeeded, long nowNanos) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (latencyNanos < minLatencyNanos) {
+                minLatencyNanos = latencyNanos;
+            } else {
+                minLatencyNanos += (latencyNanos - minLatencyNanos) * MIN_LATENCY_DRIFT;
+            }
+            if (!succeeded || latencyNanos > minLatencyNanos * LATENCY_TOLERANCE) {
+                if (nowNanos - latencyNanos - lastDecreaseNanos >= 0) {
+                    limit = Math.max(minLimit, limit * DECREASE_FACTOR);
+                    lastDecreaseNanos = nowNanos;
+                }
+            } else if (inFlight * 2 >= limit) {
+                // only grow while the limit is actually in use, an idle system proves nothing
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            admitWaiting();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void admitWaiting() {
+        while (queued > 0 && inFlight < (int) limit) {
+            Iterator<Map.Entry<String, ArrayDeque<Waiter>>> clients = waiting.entrySet().iterator();
+            Map.Entry<String, ArrayDeque<Waiter>> next = clients.next();
+            Waiter waiter = next.getValue().pollFirst();
+            clients.remove();
+            if (!next.getValue().isEmpty()) {
+                // back of the line for this client's next request
+                waiting.put(next.getKey(), next.getValue());
+            }
+            queued--;
+            inFlight++;
+            waiter.admitted = true;
+            LockSupport.unpark(waiter.thread);
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ticket.booking.admission;
+
+import ticket.booking.metrics.LatencyHistogram;
+import ticket.booking.metrics.Metrics;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Sits in front of login and booking so a burst of requests is turned away quickly
+// instead of piling up behind the booking lock and the password hashing until
+// everybody times out. Every operation has its own gate: a token bucket caps the
+// request rate, then an adaptive concurrency limit decides how many run at once and
+// queues the rest fairly per client. Shed requests get the fallback value at once.
+//   -Dbooking.admission=false turns it off, every request is let straight through
+// Every gate is published through Metrics as admission.<op>.*: admitted and shed
+// counts (shedRate, shedQueueFull, shedTimedOut), the current limit, inFlight and
+// queued, and the time admitted requests waited in the queue (queueWait). Several
+// booking services each have a controller; their gauges add up while they live.
+public class AdmissionController {
+
+    public enum Operation { LOGIN, SEARCH, BOOK, CANCEL }
+
+    // Work that may fail with IOException like the rest of the services
+    public interface Work<T> {
+        T run() throws IOException;
+    }
+
+    private final boolean enabled;
+    private final Map<Operation, Gate> gates = new EnumMap<>(Operation.class);
+
+    public AdmissionController() {
+        enabled = !"false".equalsIgnoreCase(System.getProperty("booking.admission"));
+        int cpus = Runtime.getRuntime().availableProcessors();
+        // password hashing is slow on purpose, a few at a time per core is all the CPU can do
+        gates.put(Operation.LOGIN, new Gate(Operation.LOGIN, new TokenBucket(50, 100),
+                new AdaptiveLimiter(cpus, 1, cpus * 4, 200, 2, TimeUnit.SECONDS)));
+        gates.put(Operation.SEARCH, new Gate(Operation.SEARCH, new TokenBucket(2000, 4000),
+                new AdaptiveLimiter(cpus * 4, 2, 256, 1000, 1, TimeUnit.SECONDS)));
+        // bookings of one user share a lock, running many at once only makes them wait there
+        gates.put(Operation.BOOK, new Gate(Operation.BOOK, new TokenBucket(1000, 2000),
+                new AdaptiveLimiter(cpus * 2, 1, 128, 1000, 1, TimeUnit.SECONDS)));
+        gates.put(Operation.CANCEL, new Gate(Operation.CANCEL, new TokenBucket(1000, 2000),
+                new AdaptiveLimiter(cpus * 2, 1, 128, 1000, 1, TimeUnit.SECONDS)));
+    }
+
+    // Runs work if the gate of op lets it in, otherwise returns whenShed without running it.
+    // client is who sends the request (user id or username), queued requests of different
+    // clients are let in turn by turn.
+    public <T> T call(Operation op, String client, Work<T> work, T whenShed) throws IOException {
+        if (!enabled) {
+            return work.run();
+        }
+        Gate gate = gates.get(op);
+        if (!gate.bucket.tryAcquire()) {
+            gate.shedByRate.increment();
+            System.out.println("Too many " + op.name().toLowerCase() + " requests right now, please try again in a moment");
+            return whenShed;
+        }
+        long arrived = System.nanoTime();
+        AdaptiveLimiter.Outcome outcome = gate.limiter.acquire(client == null ? "" : client);
+        long started = System.nanoTime();
+        if (outcome != AdaptiveLimiter.Outcome.ADMITTED) {
+            if (outcome == AdaptiveLimiter.Outcome.QUEUE_FULL) {
+                gate.shedQueueFull.increment();
+            } else {
+                gate.shedTimedOut.increment();
+            }
+            System.out.println("The system is busy, your " + op.name().toLowerCase() + " request was not processed, please try again");
+            return whenShed;
+        }
+        gate.admitted.increment();
+        gate.queueWait.stop(arrived);
+        boolean succeeded = false;
+        try {
+            T result = work.run();
+            succeeded = true;
+            return result;
+        } finally {
+            gate.limiter.release(System.nanoTime() - started, succeeded);
+        }
+    }
+
+    private static class Gate {
+        final TokenBucket bucket;
+        final AdaptiveLimiter limiter;
+        final LongAdder admitted = new LongAdder();
+        final LongAdder shedByRate = new LongAdder();
+        final LongAdder shedQueueFull = new LongAdder();
+        final LongAdder shedTimedOut = new LongAdder();
+        final LatencyHistogram queueWait;
+
+        Gate(Operation op, TokenBucket bucket, AdaptiveLimiter limiter) {
+            this.bucket = bucket;
+            this.limiter = limiter;
+            String prefix = "admission." + op.name().toLowerCase(Locale.ROOT) + ".";
+            queueWait = Metrics.latency(prefix + "queueWait");
+            // read through the gate passed in, so the gauges do not keep this gate alive;
+            // the gates of all live controllers add up under one name
+            Metrics.gauge(prefix + "admitted", this, gate -> gate.admitted.sum());
+            Metrics.gauge(prefix + "shedRate", this, gate -> gate.shedByRate.sum());
+            Metrics.gauge(prefix + "shedQueueFull", this, gate -> gate.shedQueueFull.sum());
+            Metrics.gauge(prefix + "shedTimedOut", this, gate -> gate.shedTimedOut.sum());
+            Metrics.gauge(prefix + "limit", this, gate -> gate.limiter.getLimit());
+            Metrics.gauge(prefix + "inFlight", this, gate -> gate.limiter.getInFlight());
+            Metrics.gauge(prefix + "queued", this, gate -> gate.limiter.getQueued());
+        }
+    }
+
+    public long admitted(Operation op) {
+        return gates.get(op).admitted.sum();
+    }
+
+    // requests of op turned away so far, for any reason
+    public long shed(Operation op) {
+        Gate gate = gates.get(op);
+        return gate.shedByRate.sum() + gate.shedQueueFull.sum() + gate.shedTimedOut.sum();
+    }
+
+    public int currentLimit(Operation op) {
+        return gates.get(op).limiter.getLimit();
+    }
+}
@@ -0,0 +1,125 @@
+package ticket.booking.analytics;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+// Result of one BookingAnalytics run
+public class AnalyticsReport {
+
+    private static final long HOUR_MILLIS = 3_600_000L;
+    private static final DateTimeFormatter HOUR_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:00").withZone(ZoneOffset.UTC);
+
+    private final long catalogVersion;
+    private final long ticketsScanned;
+    // tickets whose train is no longer in the catalog, counted in pairs and rates only
+    private final long ticketsWithoutTrain;
+    private final long elapsedNanos;
+    private final List<TrainOccupancy> trains;
+    private final List<Map.Entry<String, Long>> popularPairs;
+    // start of the hour (epoch millis, UTC) -> tickets issued in that hour
+    private final NavigableMap<Long, Long> bookingsPerHour;
+
+    AnalyticsReport(long catalogVersion, long ticketsScanned, long ticketsWithoutTrain, long elapsedNanos,
+                    List<TrainOccupancy> trains, List<Map.Entry<String, Long>> popularPairs,
+                    NavigableMap<Long, Long> bookingsPerHour) {
+        this.catalogVersion = catalogVersion;
+        this.ticketsScanned = ticketsScanned;
+        this.ticketsWithoutTrain = ticketsWithoutTrain;
+        this.elapsedNanos = elapsedNanos;
+        this.trains = trains;
+        this.popularPairs = popularPairs;
+        this.bookingsPerHour = bookingsPerHour;
+    }
+
+    public long getCatalogVersion() {
+        return catalogVersion;
+    }
+
+    public long getTicketsScanned() {
+        return ticketsScanned;
+    }
+
+    public long getTicketsWithoutTrain() {
+        return ticketsWithoutTrain;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public List<TrainOccupancy> getTrains() {
+        return trains;
+    }
+
+    // source -> destination pairs with their ticket counts, most tickets first
+    public List<Map.Entry<String, Long>> getPopularPairs() {
+        return popularPairs;
+    }
+
+    public NavigableMap<Long, Long> getBookingsPerHour() {
+        return bookingsPerHour;
+    }
+
+    // tickets issued per day, from the hourly series
+    public NavigableMap<Long, Long> getBookingsPerDay() {
+        NavigableMap<Long, Long> perDay = new TreeMap<>();
+        for (Map.Entry<Long, Long> hour : bookingsPerHour.entrySet()) {
+            perDay.merge(hour.getKey() - Math.floorMod(hour.getKey(), 24 * HOUR_MILLIS), hour.getValue(), Long::sum);
+        }
+        return perDay;
+    }
+
+    // Prints the top trains by load, with their busiest leg and date, the top station
+    // pairs and the booking rate, hourly for up to two days of data and daily beyond
+    public void print(int top) {
+        System.out.printf("Scanned %d tickets and %d trains (catalog version %d) in %.2f s%n",
+                ticketsScanned, trains.size(), catalogVersion, elapsedNanos / 1e9);
+        if (ticketsWithoutTrain > 0) {
+            System.out.println(ticketsWithoutTrain + " tickets belong to trains no longer in the catalog");
+        }
+
+        System.out.println();
+        System.out.printf("%-10s %-8s %9s %7s %-26s %7s %-12s %7s%n", "train", "no", "booked", "load",
+                "busiest leg", "load", "busiest day", "load");
+        trains.stream()
+                .sorted(Comparator.comparingDouble(TrainOccupancy::getLoadFactor).reversed())
+                .limit(top)
+                .forEach(train -> {
+                    int busiestLeg = 0;
+                    for (int leg = 1; leg < train.getLegs().size(); leg++) {
+                        if (train.getLegTickets(leg) > train.getLegTickets(busiestLeg)) {
+                            busiestLeg = leg;
+                        }
+                    }
+                    String busiestDay = train.getTicketsPerDate().entrySet().stream()
+                            .max(Map.Entry.comparingByValue()).map(Map.Entry::getKey).orElse("-");
+                    System.out.printf("%-10s %-8s %4d/%-4d %6.1f%% %-26s %6.1f%% %-12s %6.1f%%%n",
+                            train.getTrainId(), train.getTrainNo(), train.getBookedSeats(), train.getCapacity(),
+                            train.getLoadFactor() * 100,
+                            train.getLegs().isEmpty() ? "-" : train.getLegs().get(busiestLeg),
+                            train.getLegs().isEmpty() ? 0.0 : train.getLegLoadFactor(busiestLeg) * 100,
+                            busiestDay, train.getDateLoadFactor(busiestDay) * 100);
+                });
+
+        System.out.println();
+        System.out.println("Most travelled station pairs:");
+        for (Map.Entry<String, Long> pair : popularPairs.subList(0, Math.min(top, popularPairs.size()))) {
+            System.out.printf("  %-40s %d%n", pair.getKey(), pair.getValue());
+        }
+
+        System.out.println();
+        boolean hourly = bookingsPerHour.isEmpty()
+                || bookingsPerHour.lastKey() - bookingsPerHour.firstKey() <= 48 * HOUR_MILLIS;
+        System.out.println(hourly ? "Tickets issued per hour (UTC):" : "Tickets issued per day (UTC):");
+        for (Map.Entry<Long, Long> point : (hourly ? bookingsPerHour : getBookingsPerDay()).entrySet()) {
+            String when = HOUR_FORMAT.format(Instant.ofEpochMilli(point.getKey()));
+            System.out.printf("  %s %d%n", hourly ? when : when.substring(0, 10), point.getValue());
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package ticket.booking.analytics;
+
+import ticket.booking.catalog.CatalogSnapshot;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.repository.TicketRepository;
+import ticket.booking.services.TrainService;
+import ticket.booking.utils.StationDictionary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Occupancy per train, per leg and per date of travel, the most travelled station
+// pairs and tickets issued per hour, in one pass over all trains and tickets.
+//
+// Trains come from one catalog version, which never changes once taken, so live
+// bookings go on while the report runs and every train is seen as of the same moment.
+// Tickets are read partition by partition (user buckets in the JSON layout) by one
+// worker per core on the fork/join pool; every worker counts into its own arrays and
+// maps, and those are added up once at the end, so workers never share a counter.
+public class BookingAnalytics {
+
+    private static final int MAX_PAIRS = 100;
+    private static final long HOUR_MILLIS = 3_600_000L;
+    // a station pair is counted under source id * PAIR_STRIDE + destination id. Not
+    // source << 32 | destination: Long.hashCode would then be source ^ destination and
+    // neighbouring pairs would pile up in a few hash buckets.
+    private static final long PAIR_STRIDE = 1 << 20;
+    // ticket ids are the time they were issued, anything outside these years is not
+    private static final long FIRST_TICKET_MILLIS = 946_684_800_000L; // 2000-01-01
+    private static final long LAST_TICKET_MILLIS = 4_102_444_800_000L; // 2100-01-01
+
+    private final TrainService trainService;
+    private final TicketRepository ticketRepository;
+
+    public BookingAnalytics(TrainService trainService, TicketRepository ticketRepository) {
+        this.trainService = trainService;
+        this.ticketRepository = ticketRepository;
+    }
+
+    // What the workers need to know about a train, indexed by its position in the scan
+    private static final class TrainLayout {
+        final Train train;
+        final int[] route;
+        // first slot of this train's legs in the workers' leg arrays
+        final int legOffset;
+        final int capacity;
+        final int booked;
+        final int held;
+
+        TrainLayout(Train train, int legOffset) {
+            this.train = train;
+            List<String> stations = train.getStations();
+            route = new int[stations.size()];
+            for (int i = 0; i < route.length; i++) {
+                route[i] = StationDictionary.idOf(stations.get(i));
+            }
+            this.legOffset = legOffset;
+            int seats = 0;
+            int bookedSeats = 0;
+            int heldSeats = 0;
+            for (List<Integer> row : train.getSeats()) {
+                for (int value : row) {
+                    seats++;
+                    if (value == Train.SEAT_BOOKED) {
+                        bookedSeats++;
+                    } else if (value == Train.SEAT_HELD) {
+                        heldSeats++;
+                    }
+                }
+            }
+            capacity = seats;
+            booked = bookedSeats;
+            held = heldSeats;
+        }
+
+        int legCount() {
+            return Math.max(0, route.length - 1);
+        }
+    }
+
+    public AnalyticsReport run() throws IOException {
+        long start = System.nanoTime();
+        // tickets still buffered in memory are written first so the scan sees them
+        ticketRepository.flush();
+        CatalogSnapshot snapshot = trainService.snapshotOfAll();
+
+        List<Train> trains = snapshot.trains().collect(Collectors.toList());
+        List<TrainLayout> layouts = new ArrayList<>(trains.size());
+        Map<String, Integer> trainIndex = new HashMap<>(trains.size() * 2);
+        int legs = 0;
+        for (Train train : trains) {
+            TrainLayout layout = new TrainLayout(train, legs);
+            legs += layout.legCount();
+            trainIndex.put(train.getTrainId(), layouts.size());
+            trainIndex.putIfAbsent(train.getTrainId().toLowerCase(Locale.ROOT), layouts.size());
+            layouts.add(layout);
+        }
+
+        int partitions = ticketRepository.partitionCount();
+        int workers = Math.min(partitions, ForkJoinPool.getCommonPoolParallelism() + 1);
+        AtomicInteger nextPartition = new AtomicInteger();
+        int legSlots = legs;
+        Counts total;
+        try {
+            total = IntStream.range(0, workers).parallel()
+                    .mapToObj(worker -> {
+                        Counts counts = new Counts(layouts.size(), legSlots);
+                        int partition;
+                        while ((partition = nextPartition.getAndIncrement()) < partitions) {
+                            try {
+                                ticketRepository.forEachInPartition(partition,
+                                        ticket -> counts.add(ticket, layouts, trainIndex));
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                        return counts;
+                    })
+                    .reduce(Counts::merge)
+                    .orElseGet(() -> new Counts(layouts.size(), legSlots));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        List<TrainOccupancy> occupancy = new ArrayList<>(layouts.size());
+        for (int i = 0; i < layouts.size(); i++) {
+            TrainLayout layout = layouts.get(i);
+            List<String> stations = layout.train.getStations();
+            List<String> legNames = new ArrayList<>(layout.legCount());
+            for (int leg = 0; leg < layout.legCount(); leg++) {
+                legNames.add(stations.get(leg) + " - " + stations.get(leg + 1));
+            }
+            long[] legTickets = new long[layout.legCount()];
+            System.arraycopy(total.legTickets, layout.legOffset, legTickets, 0, legTickets.length);
+            Map<String, Long> perDate = new TreeMap<>();
+            long[] dates = total.ticketsPerDate[i];
+            for (int date = 0; dates != null && date < dates.length; date++) {
+                if (dates[date] > 0) {
+                    perDate.put(total.dateNames.get(date), dates[date]);
+                }
+            }
+            occupancy.add(new TrainOccupancy(layout.train.getTrainId(), layout.train.getTrainNo(), layout.capacity,
+                    layout.booked, layout.held, Collections.unmodifiableList(legNames), legTickets,
+                    Collections.unmodifiableMap(perDate)));
+        }
+
+        List<Map.Entry<String, Long>> pairs = total.pairs.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]))
+                .limit(MAX_PAIRS)
+                .map(pair -> Map.entry(StationDictionary.nameOf((int) (pair.getKey() / PAIR_STRIDE))
+                        + " -> " + StationDictionary.nameOf((int) (pair.getKey() % PAIR_STRIDE)), pair.getValue()[0]))
+                .collect(Collectors.toList());
+        TreeMap<Long, Long> perHour = new TreeMap<>();
+        for (Map.Entry<Long, long[]> hour : total.perHour.entrySet()) {
+            perHour.put(hour.getKey() * HOUR_MILLIS, hour.getValue()[0]);
+        }
+
+        return new AnalyticsReport(snapshot.version(), total.tickets, total.withoutTrain, System.nanoTime() - start,
+                Collections.unmodifiableList(occupancy), Collections.unmodifiableList(pairs),
+                Collections.unmodifiableNavigableMap(perHour));
+    }
+
+    // One worker's counts. Map values are one-element arrays so a count is bumped in
+    // place instead of boxing a new Long for every ticket.
+    private static final class Counts {
+        final long[] legTickets;
+        // dates of travel seen by this worker, numbered in the order they were first seen
+        final HashMap<String, Integer> dateIds = new HashMap<>();
+        final List<String> dateNames = new ArrayList<>();
+        // per train index: date id -> tickets, created when the train has any. A few
+        // hundred dates in one small map, then an array, instead of a map per train.
+        final long[][] ticketsPerDate;
+        // source station id * PAIR_STRIDE + destination station id -> tickets
+        final HashMap<Long, long[]> pairs = new HashMap<>();
+        // hours since the epoch -> tickets issued
+        final HashMap<Long, long[]> perHour = new HashMap<>();
+        long tickets;
+        long withoutTrain;
+
+        Counts(int trains, int legs) {
+            legTickets = new long[legs];
+            ticketsPerDate = new long[trains][];
+        }
+
+        void add(Ticket ticket, List<TrainLayout> layouts, Map<String, Integer> trainIndex) {
+            tickets++;
+            int from = ticket.getSource() == null ? -1 : StationDictionary.lookup(ticket.getSource());
+            int to = ticket.getDestination() == null ? -1 : StationDictionary.lookup(ticket.getDestination());
+            if (from >= 0 && to >= 0 && to < PAIR_STRIDE) {
+                pairs.computeIfAbsent(from * PAIR_STRIDE + to, key -> new long[1])[0]++;
+            }
+            long issued = issuedAt(ticket.getTicketId());
+            if (issued >= 0) {
+                perHour.computeIfAbsent(issued / HOUR_MILLIS, key -> new long[1])[0]++;
+            }
+
+            Integer index = null;
+            if (ticket.getTrain() != null && ticket.getTrain().getTrainId() != null) {
+                String trainId = ticket.getTrain().getTrainId();
+                index = trainIndex.get(trainId);
+                if (index == null) {
+                    index = trainIndex.get(trainId.toLowerCase(Locale.ROOT));
+                }
+            }
+            if (index == null) {
+                withoutTrain++;
+                return;
+            }
+            TrainLayout layout = layouts.get(index);
+            int fromIndex = StationDictionary.indexOf(layout.route, from);
+            int toIndex = StationDictionary.indexOf(layout.route, to);
+            if (fromIndex >= 0 && toIndex > fromIndex) {
+                for (int leg = fromIndex; leg < toIndex; leg++) {
+                    legTickets[layout.legOffset + leg]++;
+                }
+            }
+            if (ticket.getDateOfTravel() != null) {
+                addDate(index, dateId(ticket.getDateOfTravel()), 1);
+            }
+        }
+
+        private int dateId(String date) {
+            Integer id = dateIds.get(date);
+            if (id == null) {
+                id = dateNames.size();
+                dateIds.put(date, id);
+                dateNames.add(date);
+            }
+            return id;
+        }
+
+        private void addDate(int train, int date, long tickets) {
+            long[] dates = ticketsPerDate[train];
+            if (dates == null || dates.length <= date) {
+                dates = dates == null ? new long[dateNames.size()] : Arrays.copyOf(dates, dateNames.size());
+                ticketsPerDate[train] = dates;
+            }
+            dates[date] += tickets;
+        }
+
+        Counts merge(Counts other) {
+            for (int i = 0; i < legTickets.length; i++) {
+                legTickets[i] += other.legTickets[i];
+            }
+            // the other worker numbered its dates its own way
+            int[] dateMapping = new int[other.dateNames.size()];
+            for (int date = 0; date < dateMapping.length; date++) {
+                dateMapping[date] = dateId(other.dateNames.get(date));
+            }
+            for (int i = 0; i < ticketsPerDate.length; i++) {
+                long[] dates = other.ticketsPerDate[i];
+                for (int date = 0; dates != null && date < dates.length; date++) {
+                    if (dates[date] > 0) {
+                        addDate(i, dateMapping[date], dates[date]);
+                    }
+                }
+            }
+            addAll(pairs, other.pairs);
+            addAll(perHour, other.perHour);
+            tickets += other.tickets;
+            withoutTrain += other.withoutTrain;
+            return this;
+        }
+
+        private static <K> void addAll(HashMap<K, long[]> into, HashMap<K, long[]> from) {
+            for (Map.Entry<K, long[]> entry : from.entrySet()) {
+                long[] count = into.putIfAbsent(entry.getKey(), entry.getValue());
+                if (count != null) {
+                    count[0] += entry.getValue()[0];
+                }
+            }
+        }
+    }
+
+    // The time a ticket was issued from its id (see UserServiceUtil.generateTicketId),
+    // -1 for ids that are not such a time
+    static long issuedAt(String ticketId) {
+        if (ticketId == null || ticketId.isEmpty() || ticketId.length() > 13) {
+            return -1;
+        }
+        long millis = 0;
+        for (int i = 0; i < ticketId.length(); i++) {
+            char c = ticketId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            millis = millis * 10 + (c - '0');
+        }
+        return millis >= FIRST_TICKET_MILLIS && millis < LAST_TICKET_MILLIS ? millis : -1;
+    }
+}
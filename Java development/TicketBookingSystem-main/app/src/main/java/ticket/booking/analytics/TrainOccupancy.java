@@ -0,0 +1,77 @@
+package ticket.booking.analytics;
+
+import java.util.List;
+import java.util.Map;
+
+// Load of one train: seats booked right now from its seat map, and how many tickets
+// cover each leg of the route and travel on each date
+public class TrainOccupancy {
+
+    private final String trainId;
+    private final String trainNo;
+    private final int capacity;
+    private final int bookedSeats;
+    private final int heldSeats;
+    // "from - to" of each leg, in route order, and the tickets covering it
+    private final List<String> legs;
+    private final long[] legTickets;
+    // date of travel -> tickets, in date order
+    private final Map<String, Long> ticketsPerDate;
+
+    TrainOccupancy(String trainId, String trainNo, int capacity, int bookedSeats, int heldSeats,
+                   List<String> legs, long[] legTickets, Map<String, Long> ticketsPerDate) {
+        this.trainId = trainId;
+        this.trainNo = trainNo;
+        this.capacity = capacity;
+        this.bookedSeats = bookedSeats;
+        this.heldSeats = heldSeats;
+        this.legs = legs;
+        this.legTickets = legTickets;
+        this.ticketsPerDate = ticketsPerDate;
+    }
+
+    public String getTrainId() {
+        return trainId;
+    }
+
+    public String getTrainNo() {
+        return trainNo;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getBookedSeats() {
+        return bookedSeats;
+    }
+
+    public int getHeldSeats() {
+        return heldSeats;
+    }
+
+    // booked seats over all seats, 0 for a train without seats
+    public double getLoadFactor() {
+        return capacity == 0 ? 0 : (double) bookedSeats / capacity;
+    }
+
+    public List<String> getLegs() {
+        return legs;
+    }
+
+    public long getLegTickets(int leg) {
+        return legTickets[leg];
+    }
+
+    public double getLegLoadFactor(int leg) {
+        return capacity == 0 ? 0 : (double) legTickets[leg] / capacity;
+    }
+
+    public Map<String, Long> getTicketsPerDate() {
+        return ticketsPerDate;
+    }
+
+    public double getDateLoadFactor(String dateOfTravel) {
+        return capacity == 0 ? 0 : (double) ticketsPerDate.getOrDefault(dateOfTravel, 0L) / capacity;
+    }
+}
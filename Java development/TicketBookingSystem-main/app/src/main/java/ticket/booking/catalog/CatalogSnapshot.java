@@ -0,0 +1,119 @@
+package ticket.booking.catalog;
+
+import ticket.booking.entities.Train;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+// One immutable version of the train catalog. Trains are spread over fixed segments
+// by trainId hash; a new version copies the segment array and the one segment that
+// changed, every other segment and every other Train object is shared with the
+// previous version. Once no reader holds a version it is ordinary garbage.
+public final class CatalogSnapshot {
+
+    static final int SEGMENTS = 64;
+
+    private final long version;
+    private final Map<String, Train>[] segments;
+    private final int size;
+
+    private CatalogSnapshot(long version, Map<String, Train>[] segments, int size) {
+        this.version = version;
+        this.segments = segments;
+        this.size = size;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static CatalogSnapshot empty() {
+        Map<String, Train>[] segments = new Map[SEGMENTS];
+        Arrays.fill(segments, Collections.emptyMap());
+        return new CatalogSnapshot(0, segments, 0);
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Optional<Train> get(String trainId) {
+        String key = key(trainId);
+        return Optional.ofNullable(segments[segmentOf(key)].get(key));
+    }
+
+    public Stream<Train> trains() {
+        return Arrays.stream(segments).flatMap(segment -> segment.values().stream());
+    }
+
+    // New version with the train added or replaced
+    CatalogSnapshot with(Train train) {
+        String key = key(train.getTrainId());
+        int segment = segmentOf(key);
+        Map<String, Train> copy = new HashMap<>(segments[segment]);
+        Train previous = copy.put(key, train);
+        Map<String, Train>[] next = segments.clone();
+        next[segment] = Collections.unmodifiableMap(copy);
+        return new CatalogSnapshot(version + 1, next, previous == null ? size + 1 : size);
+    }
+
+    // New version in which every given train that is already in this version is
+    // replaced, copying each touched segment once. Trains not in it stay out and are
+    // loaded on first use like any other.
+    CatalogSnapshot replacing(Collection<Train> trains) {
+        Map<String, Train>[] next = segments.clone();
+        boolean[] copied = new boolean[SEGMENTS];
+        boolean changed = false;
+        for (Train train : trains) {
+            String key = key(train.getTrainId());
+            int segment = segmentOf(key);
+            if (!next[segment].containsKey(key)) {
+                continue;
+            }
+            if (!copied[segment]) {
+                next[segment] = new HashMap<>(next[segment]);
+                copied[segment] = true;
+            }
+            next[segment].put(key, train);
+            changed = true;
+        }
+        if (!changed) {
+            return this;
+        }
+        for (int segment = 0; segment < SEGMENTS; segment++) {
+            if (copied[segment]) {
+                next[segment] = Collections.unmodifiableMap(next[segment]);
+            }
+        }
+        return new CatalogSnapshot(version + 1, next, size);
+    }
+
+    // New version without the train, or this version if the train is not in it
+    CatalogSnapshot without(String trainId) {
+        String key = key(trainId);
+        int segment = segmentOf(key);
+        if (!segments[segment].containsKey(key)) {
+            return this;
+        }
+        Map<String, Train> copy = new HashMap<>(segments[segment]);
+        copy.remove(key);
+        Map<String, Train>[] next = segments.clone();
+        next[segment] = Collections.unmodifiableMap(copy);
+        return new CatalogSnapshot(version + 1, next, size - 1);
+    }
+
+    private static int segmentOf(String key) {
+        return Math.floorMod(key.hashCode(), SEGMENTS);
+    }
+
+    static String key(String trainId) {
+        return trainId.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,219 @@
+package ticket.booking.catalog;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import ticket.booking.entities.Train;
+import ticket.booking.repository.JsonTrainRepository;
+import ticket.booking.serialization.JsonCodec;
+import ticket.booking.storage.TrainShardStore;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Picks up edits made to the train files while the app is running and applies only the
+// trains that changed. Changed trains are published as new versions in the catalog, so
+// searches keep reading the snapshot they started with and bookings of other trains
+// never wait. Watches localDb/trains (one shard per train plus the manifest) and
+// localDb/trains.json, which can be dropped in as a whole new timetable.
+public class CatalogWatcher implements AutoCloseable {
+
+    // editors often write a file in several steps, wait for them to finish
+    private static final long DEBOUNCE_MILLIS = 200;
+    private static final String MANIFEST_FILE = "manifest.json";
+
+    private final JsonTrainRepository trainRepository;
+    private final TrainCatalog trainCatalog;
+    private final Path shardDir;
+    private final Path legacyFile;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+    private final Thread thread;
+    // trainId -> its entry in trains.json when the file was last read
+    private Map<String, JsonNode> timetableEntries = new HashMap<>();
+
+    private CatalogWatcher(JsonTrainRepository trainRepository, TrainCatalog trainCatalog, Path legacyFile) throws IOException {
+        this.trainRepository = trainRepository;
+        this.trainCatalog = trainCatalog;
+        TrainShardStore store = trainRepository.getTrainStore();
+        shardDir = store.getShardDir().toAbsolutePath();
+        this.legacyFile = legacyFile.toAbsolutePath();
+        watchService = FileSystems.getDefault().newWatchService();
+        register(shardDir);
+        register(this.legacyFile.getParent());
+        if (Files.exists(this.legacyFile)) {
+            // the trains in it were migrated already, only later edits are applied
+            timetableEntries = entries(JsonCodec.readTree(this.legacyFile.toFile()));
+        }
+        thread = new Thread(this::run, "catalog-watcher");
+        thread.setDaemon(true);
+    }
+
+    public static CatalogWatcher start(JsonTrainRepository trainRepository, TrainCatalog trainCatalog) throws IOException {
+        return start(trainRepository, trainCatalog, TrainShardStore.legacyTrainsFile());
+    }
+
+    // Watching the given trains.json instead, e.g. a scratch one
+    static CatalogWatcher start(JsonTrainRepository trainRepository, TrainCatalog trainCatalog, Path legacyFile) throws IOException {
+        CatalogWatcher watcher = new CatalogWatcher(trainRepository, trainCatalog, legacyFile);
+        watcher.thread.start();
+        return watcher;
+    }
+
+    private void register(Path dir) throws IOException {
+        WatchKey key = dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        watchedDirs.put(key, dir);
+    }
+
+    private void run() {
+        while (true) {
+            Set<Path> changed = new LinkedHashSet<>();
+            boolean overflow;
+            try {
+                overflow = collect(watchService.take(), changed);
+                WatchKey more;
+                while ((more = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    overflow |= collect(more, changed);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            // a bad file or a bug must not end the watching for the rest of the run
+            try {
+                apply(changed, overflow);
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Hot reload failed: " + e);
+            }
+        }
+    }
+
+    // Adds the changed files of one key, true if events were lost
+    private boolean collect(WatchKey key, Set<Path> changed) {
+        boolean overflow = false;
+        Path dir = watchedDirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            Path file = dir.resolve((Path) event.context());
+            // our own writes go through a .tmp file that is renamed over the target
+            if (!file.getFileName().toString().endsWith(".tmp")) {
+                changed.add(file);
+            }
+        }
+        key.reset();
+        return overflow;
+    }
+
+    private void apply(Set<Path> changed, boolean overflow) throws IOException {
+        long start = System.nanoTime();
+        int refreshed = 0;
+        if (overflow || changed.contains(shardDir.resolve(MANIFEST_FILE))) {
+            TrainShardStore.ManifestDiff diff = trainRepository.reloadManifest();
+            // removed trains disappear, changed routes are read again on next use
+            diff.removed.forEach(trainCatalog::evict);
+            diff.changed.forEach(trainCatalog::evict);
+            if (!diff.isEmpty()) {
+                System.out.println("Manifest reloaded: " + diff.added.size() + " added, "
+                        + diff.removed.size() + " removed, " + diff.changed.size() + " changed");
+            }
+        }
+        Set<String> shardFiles = new LinkedHashSet<>();
+        for (Path file : changed) {
+            String fileName = file.getFileName().toString();
+            // editors also create swap and probe files next to the shards, e.g. vim's "4913"
+            if (file.getParent().equals(shardDir) && fileName.endsWith(".json") && !fileName.equals(MANIFEST_FILE)) {
+                shardFiles.add(fileName);
+            }
+        }
+        if (overflow) {
+            // events were lost, check every train somebody is currently looking at
+            shardFiles.addAll(trainCatalog.snapshot().trains()
+                    .map(train -> CatalogSnapshot.key(train.getTrainId()) + ".json")
+                    .collect(Collectors.toList()));
+        }
+        for (String fileName : shardFiles) {
+            String trainKey = fileName.substring(0, fileName.length() - ".json".length());
+            if (trainCatalog.refresh(trainKey, () -> trainRepository.reloadShard(fileName))) {
+                refreshed++;
+            }
+        }
+        if (refreshed > 0) {
+            System.out.println("Reloaded " + refreshed + " train(s) in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+        if (changed.contains(legacyFile) && Files.exists(legacyFile)) {
+            reloadTimetable();
+        }
+    }
+
+    // trains.json is read as a tree and compared per train with the entry read last
+    // time; only trains whose entry changed are turned into Train objects and applied,
+    // so editing one train in a large file does not touch the others
+    private void reloadTimetable() throws IOException {
+        long start = System.nanoTime();
+        JsonNode root = JsonCodec.readTree(legacyFile.toFile());
+        if (root == null || !root.isArray()) {
+            System.out.println("Ignoring trains.json, it is not a list of trains");
+            return;
+        }
+        Map<String, JsonNode> entries = entries(root);
+        int updated = 0;
+        for (JsonNode node : root) {
+            String trainId = node.path("train_id").asText("");
+            if (trainId.isEmpty()) {
+                continue;
+            }
+            // equals compares the whole trees, a hash would let a colliding edit through unseen
+            if (!node.equals(timetableEntries.get(trainId))) {
+                trainCatalog.putTimetable(JsonCodec.treeToValue(node, Train.class));
+                updated++;
+            }
+        }
+        int removed = 0;
+        for (String trainId : List.copyOf(timetableEntries.keySet())) {
+            if (!entries.containsKey(trainId)) {
+                trainRepository.remove(trainId);
+                trainCatalog.evict(trainId);
+                removed++;
+            }
+        }
+        timetableEntries = entries;
+        System.out.println("trains.json reloaded: " + updated + " added or changed, " + removed + " removed, "
+                + (entries.size() - updated) + " unchanged in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private static Map<String, JsonNode> entries(JsonNode root) {
+        Map<String, JsonNode> entries = new HashMap<>();
+        if (root == null || !root.isArray()) {
+            return entries;
+        }
+        for (JsonNode node : root) {
+            String trainId = node.path("train_id").asText("");
+            if (!trainId.isEmpty()) {
+                entries.put(trainId, node);
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
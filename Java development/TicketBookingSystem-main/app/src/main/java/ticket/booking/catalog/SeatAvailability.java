@@ -0,0 +1,67 @@
+package ticket.booking.catalog;
+
+import ticket.booking.entities.Coach;
+import ticket.booking.entities.Train;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Free seats of one train per travel class, counted once from a version of the train
+// and then moved by every seat change. Changes of a train happen one at a time under
+// its lock, so a plain atomic per class is enough; readers never lock and always see a
+// count some seat change left behind.
+final class SeatAvailability {
+
+    private final String[] classes;
+    // index into classes of every row of seats
+    private final int[] classOfRow;
+    private final AtomicInteger[] free;
+
+    SeatAvailability(Train train) {
+        List<String> trainClasses = train.getTravelClasses();
+        classes = trainClasses.toArray(new String[0]);
+        List<List<Integer>> seats = train.getSeats();
+        classOfRow = new int[seats.size()];
+        int[] counts = new int[classes.length];
+        for (int row = 0; row < seats.size(); row++) {
+            classOfRow[row] = trainClasses.indexOf(train.travelClassOfRow(row));
+            for (int value : seats.get(row)) {
+                if (value == Train.SEAT_FREE) {
+                    counts[classOfRow[row]]++;
+                }
+            }
+        }
+        free = new AtomicInteger[classes.length];
+        for (int i = 0; i < classes.length; i++) {
+            free[i] = new AtomicInteger(counts[i]);
+        }
+    }
+
+    // a seat of the row went from expectedValue to newValue
+    void seatChanged(int row, int expectedValue, int newValue) {
+        int delta = (newValue == Train.SEAT_FREE ? 1 : 0) - (expectedValue == Train.SEAT_FREE ? 1 : 0);
+        if (delta != 0) {
+            free[classOfRow[row]].addAndGet(delta);
+        }
+    }
+
+    // free seats of every class together
+    int free() {
+        int total = 0;
+        for (AtomicInteger count : free) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    // free seats of the class, 0 if the train has no such class
+    int free(String travelClass) {
+        String wanted = Coach.normalizeClass(travelClass);
+        for (int i = 0; i < classes.length; i++) {
+            if (classes[i].equals(wanted)) {
+                return free[i].get();
+            }
+        }
+        return 0;
+    }
+}
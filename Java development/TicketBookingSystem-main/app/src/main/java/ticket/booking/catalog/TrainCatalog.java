@@ -0,0 +1,351 @@
+package ticket.booking.catalog;
+
+import ticket.booking.entities.Train;
+import ticket.booking.metrics.CacheStats;
+import ticket.booking.metrics.LatencyHistogram;
+import ticket.booking.metrics.Metrics;
+import ticket.booking.repository.TrainRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Multi-version view of the trains. Readers take the current CatalogSnapshot and never
+// lock or wait; writers of the same train serialize on that train's lock stripe, persist
+// through the repository and then publish a new snapshot in which only the changed train
+// is a new (immutable) object. Writers of different trains only meet in the CAS that
+// publishes the snapshot. Trains enter the catalog the first time they are asked for,
+// so startup stays lazy.
+public class TrainCatalog {
+
+    private static final CacheStats SNAPSHOT_CACHE = Metrics.cache("catalog.trains");
+    private static final LatencyHistogram LOAD_LATENCY = Metrics.latency("catalog.loadTrain");
+    private static final LatencyHistogram LOCK_WAIT = Metrics.latency("catalog.lockWait");
+
+    private final TrainRepository trainRepository;
+    private final AtomicReference<CatalogSnapshot> current = new AtomicReference<>(CatalogSnapshot.empty());
+    private static final int LOCK_STRIPES = 64;
+    private final Object[] trainLocks = new Object[LOCK_STRIPES];
+    // trainId (lowercase) -> free seats per class, counted from the snapshot the first time
+    // somebody asks and then moved by every seat change, so availability is O(1). Dropped
+    // whenever a whole new version of the train is published, and counted again on next use.
+    private final ConcurrentHashMap<String, SeatAvailability> freeSeats = new ConcurrentHashMap<>();
+    // trains already checked for holds left over from an earlier run
+    private final Set<String> staleHoldsCleared = ConcurrentHashMap.newKeySet();
+
+    public TrainCatalog(TrainRepository trainRepository) {
+        this.trainRepository = trainRepository;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            trainLocks[i] = new Object();
+        }
+    }
+
+    public CatalogSnapshot snapshot() {
+        return current.get();
+    }
+
+    public List<Train> search(String source, String destination) throws IOException {
+        CatalogSnapshot snapshot = current.get();
+        List<Train> trains = new ArrayList<>();
+        for (String trainId : trainRepository.findIdsByRoute(source, destination)) {
+            resolve(snapshot, trainId).ifPresent(trains::add);
+        }
+        return trains;
+    }
+
+    // Trains of the route that still have a free seat in travelClass
+    public List<Train> search(String source, String destination, String travelClass) throws IOException {
+        List<Train> trains = new ArrayList<>();
+        for (Train train : search(source, destination)) {
+            if (availableSeats(train.getTrainId(), travelClass) > 0) {
+                trains.add(train);
+            }
+        }
+        return trains;
+    }
+
+    public Optional<Train> get(String trainId) throws IOException {
+        return resolve(current.get(), trainId);
+    }
+
+    // A version holding every train in storage, for reports that look at all of them.
+    // Trains nobody asked for yet are read first, in parallel; the returned version
+    // never changes, so the report reads it while bookings go on.
+    public CatalogSnapshot snapshotOfAll() throws IOException {
+        CatalogSnapshot snapshot = current.get();
+        try {
+            trainRepository.findAllIds().parallelStream()
+                    .filter(trainId -> snapshot.get(trainId).isEmpty())
+                    .forEach(trainId -> {
+                        try {
+                            get(trainId);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return current.get();
+    }
+
+    private Optional<Train> resolve(CatalogSnapshot snapshot, String trainId) throws IOException {
+        Optional<Train> train = snapshot.get(trainId);
+        if (train.isPresent()) {
+            SNAPSHOT_CACHE.hit();
+            return train;
+        }
+        SNAPSHOT_CACHE.miss();
+        // first access of this train: bring it in like any other write
+        synchronized (lockFor(trainId)) {
+            train = current.get().get(trainId);
+            if (train.isPresent()) {
+                return train;
+            }
+            long start = Metrics.start();
+            Optional<Train> loaded = trainRepository.findById(trainId);
+            LOAD_LATENCY.stop(start);
+            if (loaded.isEmpty()) {
+                return Optional.empty();
+            }
+            if (staleHoldsCleared.add(CatalogSnapshot.key(trainId))) {
+                releaseStaleHolds(loaded.get());
+            }
+            Train frozen = freeze(loaded.get());
+            publish(frozen);
+            return Optional.of(frozen);
+        }
+    }
+
+    // Changes one seat from expectedValue to newValue in storage and publishes the new
+    // version of that train. Returns false, and publishes nothing, if the seat did not
+    // hold expectedValue. Called by BookingEngine's writers only, so every train has a
+    // single thread changing its seats; the lock keeps whole-train replacements out.
+    public boolean updateSeat(String trainId, int row, int seat, int expectedValue, int newValue) throws IOException {
+        long waitStart = Metrics.start();
+        synchronized (lockFor(trainId)) {
+            LOCK_WAIT.stop(waitStart);
+            Optional<Train> train = resolve(current.get(), trainId);
+            if (train.isEmpty()) {
+                return false;
+            }
+            List<List<Integer>> seats = train.get().getSeats();
+            if (row < 0 || row >= seats.size() || seat < 0 || seat >= seats.get(row).size()
+                    || seats.get(row).get(seat) != expectedValue) {
+                return false;
+            }
+            if (!trainRepository.updateSeat(train.get().getTrainId(), row, seat, expectedValue, newValue)) {
+                return false;
+            }
+            publish(withSeat(train.get(), row, seat, newValue));
+            SeatAvailability free = freeSeats.get(CatalogSnapshot.key(trainId));
+            if (free != null) {
+                free.seatChanged(row, expectedValue, newValue);
+            }
+            return true;
+        }
+    }
+
+    // Adds or replaces a whole train
+    public void put(Train train) throws IOException {
+        synchronized (lockFor(train.getTrainId())) {
+            trainRepository.save(train);
+            publishReplacement(freeze(train));
+        }
+    }
+
+    // Adds or replaces a train from a new timetable. If the train is already known with
+    // the same seat layout its current seats are kept, so a timetable change does not
+    // undo bookings made since the file was written.
+    public void putTimetable(Train train) throws IOException {
+        synchronized (lockFor(train.getTrainId())) {
+            Optional<Train> existing = resolve(current.get(), train.getTrainId());
+            if (existing.isPresent()) {
+                train = keepSeats(existing.get(), train);
+            }
+            trainRepository.save(train);
+            publishReplacement(freeze(train));
+        }
+    }
+
+    // Merges a whole timetable: bookings of trains that keep their seat layout are kept,
+    // storage gets a single saveAll and readers see all trains change in one new
+    // snapshot. Every lock stripe is held meanwhile so no booking runs half way through.
+    public void putAllTimetable(List<Train> trains) throws IOException {
+        lockAllStripes(0, () -> {
+            List<Train> merged = new ArrayList<>(trains.size());
+            for (Train train : trains) {
+                Optional<Train> existing = current.get().get(train.getTrainId());
+                if (existing.isEmpty() && trainRepository.exists(train.getTrainId())) {
+                    existing = trainRepository.findById(train.getTrainId());
+                }
+                merged.add(existing.isPresent() ? keepSeats(existing.get(), train) : train);
+            }
+            trainRepository.saveAll(merged);
+            List<Train> frozen = new ArrayList<>(merged.size());
+            for (Train train : merged) {
+                frozen.add(freeze(train));
+            }
+            current.updateAndGet(snapshot -> snapshot.replacing(frozen));
+            for (Train train : frozen) {
+                freeSeats.remove(CatalogSnapshot.key(train.getTrainId()));
+            }
+        });
+    }
+
+    private interface LockedAction {
+        void run() throws IOException;
+    }
+
+    private void lockAllStripes(int stripe, LockedAction action) throws IOException {
+        if (stripe == LOCK_STRIPES) {
+            action.run();
+            return;
+        }
+        synchronized (trainLocks[stripe]) {
+            lockAllStripes(stripe + 1, action);
+        }
+    }
+
+    // Re-reads a train that was changed in storage by somebody else and publishes it.
+    // The read happens under the train's lock so no booking of that train runs between
+    // storage and catalog. Trains nobody has asked for yet stay out of the catalog.
+    public boolean refresh(String trainId, TrainLoader loader) throws IOException {
+        synchronized (lockFor(trainId)) {
+            Optional<Train> train = loader.load();
+            if (train.isEmpty() || current.get().get(trainId).isEmpty()) {
+                return false;
+            }
+            publishReplacement(freeze(train.get()));
+            return true;
+        }
+    }
+
+    public interface TrainLoader {
+        Optional<Train> load() throws IOException;
+    }
+
+    // Drops a train that was removed from storage or whose route changed there; it is
+    // read again on next use
+    public void evict(String trainId) {
+        synchronized (lockFor(trainId)) {
+            current.updateAndGet(snapshot -> snapshot.without(trainId));
+            freeSeats.remove(CatalogSnapshot.key(trainId));
+        }
+    }
+
+    // Writes the seat changes the repository still buffers for these trains
+    public void flush(Collection<String> trainIds) throws IOException {
+        if (!trainIds.isEmpty()) {
+            trainRepository.flush(trainIds);
+        }
+    }
+
+    // The caller holds the train's lock, so only other trains can change concurrently
+    // and retrying the CAS on the newer snapshot keeps their changes
+    private void publish(Train train) {
+        current.updateAndGet(snapshot -> snapshot.with(train));
+    }
+
+    // A whole new version of the train: its free seat count is taken again on next use
+    private void publishReplacement(Train train) {
+        publish(train);
+        freeSeats.remove(CatalogSnapshot.key(train.getTrainId()));
+    }
+
+    // Free seats of the train, -1 if there is no such train
+    public int availableSeats(String trainId) throws IOException {
+        SeatAvailability free = availability(trainId);
+        return free == null ? -1 : free.free();
+    }
+
+    // Free seats of one class of the train, 0 if it has no such class, -1 if there is no such train
+    public int availableSeats(String trainId, String travelClass) throws IOException {
+        SeatAvailability free = availability(trainId);
+        return free == null ? -1 : free.free(travelClass);
+    }
+
+    private SeatAvailability availability(String trainId) throws IOException {
+        SeatAvailability free = freeSeats.get(CatalogSnapshot.key(trainId));
+        if (free != null) {
+            return free;
+        }
+        synchronized (lockFor(trainId)) {
+            Optional<Train> train = resolve(current.get(), trainId);
+            if (train.isEmpty()) {
+                return null;
+            }
+            return freeSeats.computeIfAbsent(CatalogSnapshot.key(trainId), key -> new SeatAvailability(train.get()));
+        }
+    }
+
+    // Holds only live as long as the process that made them; a held seat found when a
+    // train is first read was left by a run that stopped before the hold ended. This runs
+    // before the train is published, so no engine writer can see the train yet.
+    private void releaseStaleHolds(Train train) throws IOException {
+        List<List<Integer>> seats = train.getSeats();
+        for (int row = 0; row < seats.size(); row++) {
+            for (int seat = 0; seat < seats.get(row).size(); seat++) {
+                if (seats.get(row).get(seat) == Train.SEAT_HELD
+                        && trainRepository.updateSeat(train.getTrainId(), row, seat, Train.SEAT_HELD, Train.SEAT_FREE)) {
+                    seats.get(row).set(seat, Train.SEAT_FREE);
+                }
+            }
+        }
+    }
+
+    private Object lockFor(String trainId) {
+        return trainLocks[Math.floorMod(CatalogSnapshot.key(trainId).hashCode(), LOCK_STRIPES)];
+    }
+
+    // The new train with a mutable copy of the existing seats if the layout is the same
+    private static Train keepSeats(Train existing, Train train) {
+        if (!sameLayout(existing.getSeats(), train.getSeats())) {
+            return train;
+        }
+        List<List<Integer>> seats = new ArrayList<>();
+        for (List<Integer> row : existing.getSeats()) {
+            seats.add(new ArrayList<>(row));
+        }
+        return train.withSeats(seats);
+    }
+
+    private static boolean sameLayout(List<List<Integer>> a, List<List<Integer>> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int row = 0; row < a.size(); row++) {
+            if (a.get(row).size() != b.get(row).size()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Immutable deep copy, safe to hand to any number of readers. The route and timings
+    // are never changed in place, only replaced, so the copy can share them.
+    static Train freeze(Train train) {
+        List<List<Integer>> seats = new ArrayList<>();
+        for (List<Integer> row : train.getSeats()) {
+            seats.add(List.copyOf(row));
+        }
+        return train.withSeats(Collections.unmodifiableList(seats));
+    }
+
+    // Copy of a frozen train with one seat changed; the other rows, the route and the
+    // timings are shared with the original
+    static Train withSeat(Train train, int row, int seat, int value) {
+        List<Integer> changedRow = new ArrayList<>(train.getSeats().get(row));
+        changedRow.set(seat, value);
+        List<List<Integer>> seats = new ArrayList<>(train.getSeats());
+        seats.set(row, Collections.unmodifiableList(changedRow));
+        return train.withSeats(Collections.unmodifiableList(seats));
+    }
+}
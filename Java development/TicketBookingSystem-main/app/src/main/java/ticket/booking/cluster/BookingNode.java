@@ -0,0 +1,219 @@
+package ticket.booking.cluster;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ticket.booking.entities.Train;
+import ticket.booking.repository.Repositories;
+import ticket.booking.repository.TrainRepository;
+import ticket.booking.serialization.JsonCodec;
+import ticket.booking.services.TrainService;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+// One booking node: serves searches and seat changes for the trains the ring gives it
+// and turns requests for other trains away with 421 and the owner in Location.
+//
+// When a node joins, every old node hands the trains the new ring gives away over to
+// the new owner one at a time: the train's write lock is taken so no booking of it is
+// half done, the seat map is sent, and from then on the old node points requests for it
+// to the new owner. Bookings of all other trains carry on meanwhile.
+//
+//   BookingNode <port> [jdbc url]   every node keeps its own H2 database, by default
+//                                   localDb/node-<port>, filled from the JSON files once
+public class BookingNode implements AutoCloseable {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final String self;
+    private final TrainRepository trainRepository;
+    private final TrainService trainService;
+    private final HttpServer server;
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    // nothing is owned until the router sends the ring
+    private volatile ConsistentHashRing ring = new ConsistentHashRing(List.of());
+    // trains handed over to another node since the ring was last sent, and trains received
+    private final Map<String, String> movedTo = new ConcurrentHashMap<>();
+    private final Set<String> accepted = ConcurrentHashMap.newKeySet();
+    // seat changes take a read lock of their train, a hand over takes the write lock
+    private final ReentrantReadWriteLock[] trainLocks = new ReentrantReadWriteLock[LOCK_STRIPES];
+
+    public BookingNode(int port, TrainRepository trainRepository) throws IOException {
+        this.self = "http://localhost:" + port;
+        this.trainRepository = trainRepository;
+        this.trainService = new TrainService(trainRepository);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            trainLocks[i] = new ReentrantReadWriteLock();
+        }
+        server = ClusterHttp.start(port, Map.of(
+                "/search", this::search,
+                "/stations", this::stations,
+                "/train", this::train,
+                "/book", exchange -> changeSeat(exchange, true),
+                "/release", exchange -> changeSeat(exchange, false),
+                "/ring", this::ring,
+                "/handoff", this::handoff,
+                "/accept", this::accept));
+        System.out.println("Booking node listening on " + self);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = Integer.parseInt(args[0]);
+        String url = args.length > 1 ? args[1] : "jdbc:h2:./app/src/main/java/ticket/booking/localDb/node-" + port;
+        new BookingNode(port, Repositories.sql(url).trains());
+    }
+
+    public String getUrl() {
+        return self;
+    }
+
+    private String ownerOf(String trainId) {
+        String key = ConsistentHashRing.key(trainId);
+        String moved = movedTo.get(key);
+        if (moved != null) {
+            return moved;
+        }
+        return accepted.contains(key) ? self : ring.ownerOf(trainId);
+    }
+
+    private boolean owns(String trainId) {
+        return self.equals(ownerOf(trainId));
+    }
+
+    private ReentrantReadWriteLock lockFor(String trainId) {
+        return trainLocks[Math.floorMod(ConsistentHashRing.key(trainId).hashCode(), LOCK_STRIPES)];
+    }
+
+    // GET /search?source=..&destination=..[&class=..] only the trains this node owns
+    private void search(HttpExchange exchange) throws IOException {
+        Map<String, String> query = ClusterHttp.query(exchange);
+        List<Train> trains = trainService.searchTrains(query.get("source"), query.get("destination"), query.get("class"));
+        List<Train> owned = trains == null ? List.of()
+                : trains.stream().filter(train -> owns(train.getTrainId())).collect(Collectors.toList());
+        ClusterHttp.respond(exchange, 200, JsonCodec.WRITER.writeValueAsBytes(owned));
+    }
+
+    // GET /stations?prefix=..&limit=.. station names for autocomplete, every node knows all
+    // stations so any of them answers
+    private void stations(HttpExchange exchange) throws IOException {
+        Map<String, String> query = ClusterHttp.query(exchange);
+        String prefix = query.getOrDefault("prefix", "");
+        int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : 10;
+        ClusterHttp.respond(exchange, 200, JsonCodec.WRITER.writeValueAsBytes(trainService.suggestStations(prefix, limit)));
+    }
+
+    // GET /train?id=..
+    private void train(HttpExchange exchange) throws IOException {
+        String trainId = ClusterHttp.query(exchange).get("id");
+        if (!owns(trainId)) {
+            ClusterHttp.moved(exchange, ownerOf(trainId));
+            return;
+        }
+        Optional<Train> train = trainService.getTrainById(trainId);
+        if (train.isEmpty()) {
+            ClusterHttp.respond(exchange, 404, "");
+        } else {
+            ClusterHttp.respond(exchange, 200, JsonCodec.WRITER.writeValueAsBytes(train.get()));
+        }
+    }
+
+    // POST /book or /release ?train_id=..&row=..&seat=.. answers true or false
+    private void changeSeat(HttpExchange exchange, boolean book) throws IOException {
+        Map<String, String> query = ClusterHttp.query(exchange);
+        String trainId = query.get("train_id");
+        int row = Integer.parseInt(query.get("row"));
+        int seat = Integer.parseInt(query.get("seat"));
+        ReentrantReadWriteLock.ReadLock lock = lockFor(trainId).readLock();
+        lock.lock();
+        try {
+            if (!owns(trainId)) {
+                ClusterHttp.moved(exchange, ownerOf(trainId));
+                return;
+            }
+            boolean changed = book
+                    ? trainService.bookSeatAsync(trainId, row, seat).join()
+                    : trainService.releaseSeat(trainId, row, seat);
+            ClusterHttp.respond(exchange, 200, String.valueOf(changed));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // POST /ring with the list of node urls, sent by the router to every node
+    private void ring(HttpExchange exchange) throws IOException {
+        List<String> nodes = JsonCodec.STRING_LIST.readValue(exchange.getRequestBody());
+        ring = new ConsistentHashRing(nodes);
+        // the ring now says where the handed over trains are
+        movedTo.clear();
+        accepted.clear();
+        ClusterHttp.respond(exchange, 200, "");
+    }
+
+    // POST /handoff with the node urls of the next ring, answers how many trains moved
+    private void handoff(HttpExchange exchange) throws IOException {
+        List<String> nodes = JsonCodec.STRING_LIST.readValue(exchange.getRequestBody());
+        ConsistentHashRing next = new ConsistentHashRing(nodes);
+        long start = System.nanoTime();
+        int moved = 0;
+        for (String trainId : trainRepository.findAllIds()) {
+            String newOwner = next.ownerOf(trainId);
+            if (!owns(trainId) || self.equals(newOwner)) {
+                continue;
+            }
+            ReentrantReadWriteLock.WriteLock lock = lockFor(trainId).writeLock();
+            lock.lock();
+            try {
+                Optional<Train> train = trainService.getTrainById(trainId);
+                if (train.isPresent()) {
+                    send(newOwner + "/accept", JsonCodec.WRITER.writeValueAsString(train.get()));
+                }
+                movedTo.put(ConsistentHashRing.key(trainId), newOwner);
+                moved++;
+            } finally {
+                lock.unlock();
+            }
+        }
+        System.out.println("Handed " + moved + " train(s) over in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        ClusterHttp.respond(exchange, 200, String.valueOf(moved));
+    }
+
+    // POST /accept with a train handed over by its previous owner
+    private void accept(HttpExchange exchange) throws IOException {
+        Train train = JsonCodec.TRAIN.readValue(exchange.getRequestBody());
+        // replaces whatever this node's copy of the train had, the sender's seats are the real ones
+        trainService.updateTrain(train);
+        accepted.add(ConsistentHashRing.key(train.getTrainId()));
+        ClusterHttp.respond(exchange, 200, "");
+    }
+
+    private void send(String url, String json) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IOException(url + " answered " + response.statusCode());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted sending to " + url);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(0);
+        trainService.close();
+    }
+}
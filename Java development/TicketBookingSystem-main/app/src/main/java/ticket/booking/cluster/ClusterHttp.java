@@ -0,0 +1,86 @@
+package ticket.booking.cluster;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+// The bits of HTTP shared by the small servers: booking nodes, the router and followers
+public final class ClusterHttp {
+
+    // 421 Misdirected Request: the train lives on another node, the Location header says which
+    public static final int MOVED = 421;
+
+    private ClusterHttp() {
+    }
+
+    public static HttpServer start(int port, Map<String, HttpHandler> handlers) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        for (Map.Entry<String, HttpHandler> handler : handlers.entrySet()) {
+            server.createContext(handler.getKey(), exchange -> {
+                try (exchange) {
+                    handler.getValue().handle(exchange);
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("Request " + exchange.getRequestURI() + " failed: " + e.getMessage());
+                    respond(exchange, 500, String.valueOf(e.getMessage()));
+                }
+            });
+        }
+        // every request on its own virtual thread, a slow node to forward to blocks nobody else
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+        return server;
+    }
+
+    public static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    public static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    public static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        respond(exchange, status, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        // a previous failure may have sent the headers already
+        if (exchange.getResponseCode() != -1) {
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    public static void moved(HttpExchange exchange, String owner) throws IOException {
+        exchange.getResponseHeaders().set("Location", owner);
+        respond(exchange, MOVED, "");
+    }
+}
@@ -0,0 +1,214 @@
+package ticket.booking.cluster;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ticket.booking.entities.Train;
+import ticket.booking.serialization.JsonCodec;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+// Thin router in front of the booking nodes. Requests for one train go to the node the
+// ring says owns it; a search asks every node at once and merges what they own. If a
+// node answers that a train has moved (it is being rebalanced right now) the request
+// follows it to the new owner, so nothing has to stop while a node joins.
+//
+//   ClusterRouter <port> <node url>...   e.g. 8080 http://localhost:8081 http://localhost:8082
+//   GET  /search?source=..&destination=..[&class=..]
+//   GET  /train?id=..
+//   POST /book?train_id=..&row=..&seat=..   and /release with the same parameters
+//   POST /join?node=http://localhost:8083   adds a node and moves its trains to it
+public class ClusterRouter implements AutoCloseable {
+
+    // a train is only handed over once per join, more hops mean something is wrong
+    private static final int MAX_HOPS = 3;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private volatile ConsistentHashRing ring;
+    private HttpServer server;
+
+    public ClusterRouter(List<String> nodes) throws IOException {
+        ring = new ConsistentHashRing(nodes);
+        sendRing();
+    }
+
+    public static void main(String[] args) throws IOException {
+        ClusterRouter router = new ClusterRouter(Arrays.asList(args).subList(1, args.length));
+        router.listen(Integer.parseInt(args[0]));
+    }
+
+    public List<String> getNodes() {
+        return ring.nodes();
+    }
+
+    // Trains from source to destination on every node
+    public List<Train> search(String source, String destination) throws IOException {
+        return search(source, destination, null);
+    }
+
+    // Only trains with a free seat in travelClass, every train of the route if it is null
+    public List<Train> search(String source, String destination, String travelClass) throws IOException {
+        String path = "/search?source=" + ClusterHttp.encode(source) + "&destination=" + ClusterHttp.encode(destination);
+        if (travelClass != null) {
+            path += "&class=" + ClusterHttp.encode(travelClass);
+        }
+        List<CompletableFuture<HttpResponse<String>>> answers = new ArrayList<>();
+        for (String node : ring.nodes()) {
+            answers.add(httpClient.sendAsync(HttpRequest.newBuilder(URI.create(node + path)).GET().build(),
+                    HttpResponse.BodyHandlers.ofString()));
+        }
+        // during a hand over a train may briefly be listed by both nodes
+        Map<String, Train> trains = new LinkedHashMap<>();
+        for (CompletableFuture<HttpResponse<String>> answer : answers) {
+            HttpResponse<String> response = answer.join();
+            if (response.statusCode() != 200) {
+                throw new IOException(response.uri() + " answered " + response.statusCode());
+            }
+            for (Train train : JsonCodec.TRAIN_LIST.<List<Train>>readValue(response.body())) {
+                trains.putIfAbsent(ConsistentHashRing.key(train.getTrainId()), train);
+            }
+        }
+        return new ArrayList<>(trains.values());
+    }
+
+    public Optional<Train> getTrain(String trainId) throws IOException {
+        HttpResponse<String> response = sendToOwner(trainId, "GET", "/train?id=" + ClusterHttp.encode(trainId));
+        if (response.statusCode() == 404) {
+            return Optional.empty();
+        }
+        return Optional.of(JsonCodec.TRAIN.readValue(response.body()));
+    }
+
+    public boolean bookSeat(String trainId, int row, int seat) throws IOException {
+        return Boolean.parseBoolean(sendToOwner(trainId, "POST", seatPath("/book", trainId, row, seat)).body());
+    }
+
+    public boolean releaseSeat(String trainId, int row, int seat) throws IOException {
+        return Boolean.parseBoolean(sendToOwner(trainId, "POST", seatPath("/release", trainId, row, seat)).body());
+    }
+
+    private static String seatPath(String action, String trainId, int row, int seat) {
+        return action + "?train_id=" + ClusterHttp.encode(trainId) + "&row=" + row + "&seat=" + seat;
+    }
+
+    private HttpResponse<String> sendToOwner(String trainId, String method, String path) throws IOException {
+        String node = ring.ownerOf(trainId);
+        if (node == null) {
+            throw new IOException("No booking nodes");
+        }
+        for (int hop = 0; hop < MAX_HOPS; hop++) {
+            HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(node + path))
+                    .method(method, HttpRequest.BodyPublishers.noBody()).build());
+            if (response.statusCode() != ClusterHttp.MOVED) {
+                if (response.statusCode() != 200 && response.statusCode() != 404) {
+                    throw new IOException(node + " answered " + response.statusCode());
+                }
+                return response;
+            }
+            node = response.headers().firstValue("Location").orElseThrow(() -> new IOException("Moved without a location"));
+        }
+        throw new IOException("Train " + trainId + " moved more than " + MAX_HOPS + " times");
+    }
+
+    // Adds a node: every node first hands the trains of the new ring over, then all of
+    // them get the new ring. Joins are one at a time. Returns how many trains moved.
+    public synchronized int addNode(String node) throws IOException {
+        ConsistentHashRing next = ring.withNode(node);
+        if (next == ring) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        String nodes = JsonCodec.WRITER.writeValueAsString(next.nodes());
+        int moved = 0;
+        for (String existing : ring.nodes()) {
+            moved += Integer.parseInt(post(existing + "/handoff", nodes).body().trim());
+        }
+        ring = next;
+        sendRing();
+        System.out.println("Node " + node + " joined, " + moved + " train(s) moved in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return moved;
+    }
+
+    private void sendRing() throws IOException {
+        String nodes = JsonCodec.WRITER.writeValueAsString(ring.nodes());
+        for (String node : ring.nodes()) {
+            post(node + "/ring", nodes);
+        }
+    }
+
+    private HttpResponse<String> post(String url, String json) throws IOException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(url))
+                .POST(HttpRequest.BodyPublishers.ofString(json)).build());
+        if (response.statusCode() != 200) {
+            throw new IOException(url + " answered " + response.statusCode() + ": " + response.body());
+        }
+        return response;
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted calling " + request.uri());
+        }
+    }
+
+    // Serves the same operations over HTTP
+    public void listen(int port) throws IOException {
+        server = ClusterHttp.start(port, Map.of(
+                "/search", this::handleSearch,
+                "/train", this::handleTrain,
+                "/book", exchange -> handleSeat(exchange, true),
+                "/release", exchange -> handleSeat(exchange, false),
+                "/join", this::handleJoin));
+        System.out.println("Router listening on port " + port + " for " + ring.nodes());
+    }
+
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        Map<String, String> query = ClusterHttp.query(exchange);
+        List<Train> trains = search(query.get("source"), query.get("destination"), query.get("class"));
+        ClusterHttp.respond(exchange, 200, JsonCodec.WRITER.writeValueAsBytes(trains));
+    }
+
+    private void handleTrain(HttpExchange exchange) throws IOException {
+        Optional<Train> train = getTrain(ClusterHttp.query(exchange).get("id"));
+        if (train.isEmpty()) {
+            ClusterHttp.respond(exchange, 404, "");
+        } else {
+            ClusterHttp.respond(exchange, 200, JsonCodec.WRITER.writeValueAsBytes(train.get()));
+        }
+    }
+
+    private void handleSeat(HttpExchange exchange, boolean book) throws IOException {
+        Map<String, String> query = ClusterHttp.query(exchange);
+        String trainId = query.get("train_id");
+        int row = Integer.parseInt(query.get("row"));
+        int seat = Integer.parseInt(query.get("seat"));
+        boolean changed = book ? bookSeat(trainId, row, seat) : releaseSeat(trainId, row, seat);
+        ClusterHttp.respond(exchange, 200, String.valueOf(changed));
+    }
+
+    private void handleJoin(HttpExchange exchange) throws IOException {
+        int moved = addNode(ClusterHttp.query(exchange).get("node"));
+        ClusterHttp.respond(exchange, 200, String.valueOf(moved));
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ticket.booking.cluster;
+
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+// Which node owns which train. Every node is put on a ring of 64 bit hashes at many
+// points, a train belongs to the first node point at or after the hash of its id.
+// Adding a node only takes over the trains just before its own points, about 1/n of
+// all trains, every other train stays where it is. A ring never changes, adding a node
+// gives a new ring.
+public final class ConsistentHashRing {
+
+    // points per node, enough to spread trains evenly over a handful of nodes
+    private static final int VIRTUAL_NODES = 128;
+
+    private final List<String> nodes;
+    // sorted hashes and the node each one belongs to
+    private final long[] points;
+    private final String[] owners;
+
+    public ConsistentHashRing(Collection<String> nodes) {
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        long[][] entries = new long[this.nodes.size() * VIRTUAL_NODES][];
+        int next = 0;
+        for (int node = 0; node < this.nodes.size(); node++) {
+            for (int point = 0; point < VIRTUAL_NODES; point++) {
+                entries[next++] = new long[]{hash(this.nodes.get(node) + "#" + point), node};
+            }
+        }
+        Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+        points = new long[entries.length];
+        owners = new String[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            points[i] = entries[i][0];
+            owners[i] = this.nodes.get((int) entries[i][1]);
+        }
+    }
+
+    // The node owning the train, null if the ring has no nodes
+    public String ownerOf(String trainId) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, hash(key(trainId)));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        // past the last point wraps around to the first
+        return owners[index == points.length ? 0 : index];
+    }
+
+    public ConsistentHashRing withNode(String node) {
+        if (nodes.contains(node)) {
+            return this;
+        }
+        List<String> more = new ArrayList<>(nodes);
+        more.add(node);
+        return new ConsistentHashRing(more);
+    }
+
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    // train ids are matched without regard to case everywhere else, so here too
+    static String key(String trainId) {
+        return trainId.toLowerCase(Locale.ROOT);
+    }
+
+    private static long hash(String value) {
+        return Hashing.murmur3_128().hashString(value, StandardCharsets.UTF_8).asLong();
+    }
+}
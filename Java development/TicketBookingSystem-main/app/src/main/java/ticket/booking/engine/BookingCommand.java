@@ -0,0 +1,28 @@
+package ticket.booking.engine;
+
+import java.util.concurrent.CompletableFuture;
+
+// One seat change waiting in a partition's ring: the seat goes from expectedValue to
+// newValue, or nothing happens if it does not hold expectedValue
+final class BookingCommand {
+
+    // expectedValue of a change that applies whatever the seat holds
+    static final int ANY = -1;
+
+    final String trainId;
+    final int row;
+    final int seat;
+    final int expectedValue;
+    final int newValue;
+    final CompletableFuture<Boolean> result = new CompletableFuture<>();
+    // what the seat held before this command changed it, ANY if it changed nothing; writer thread only
+    int previousValue = ANY;
+
+    BookingCommand(String trainId, int row, int seat, int expectedValue, int newValue) {
+        this.trainId = trainId;
+        this.row = row;
+        this.seat = seat;
+        this.expectedValue = expectedValue;
+        this.newValue = newValue;
+    }
+}
@@ -0,0 +1,232 @@
+package ticket.booking.engine;
+
+import ticket.booking.catalog.TrainCatalog;
+import ticket.booking.entities.Train;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+
+// Seat bookings and cancellations in the style of the LMAX Disruptor: trains are split
+// into partitions by trainId hash and every partition has exactly one writer thread
+// draining its ring buffer. Every seat change goes through here (bookings, cancellations,
+// holds, waitlist promotions, repairs and replayed changes), so the seats of a train
+// change on one thread, in submission order, without contending with other trains. Each
+// drained batch writes the trains it touched, and only those, before its futures
+// complete; writers of other partitions keep going meanwhile.
+public class BookingEngine implements AutoCloseable {
+
+    public static final int DEFAULT_PARTITIONS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final int RING_CAPACITY = 4096;
+    public static final int DEFAULT_MAX_BATCH = 256;
+
+    private final TrainCatalog trainCatalog;
+    private final Partition[] partitions;
+    // commands drained and written together, 1 writes every change on its own
+    private final int maxBatch;
+    private volatile boolean running = true;
+
+    public BookingEngine(TrainCatalog trainCatalog) {
+        this(trainCatalog, DEFAULT_PARTITIONS);
+    }
+
+    public BookingEngine(TrainCatalog trainCatalog, int partitionCount) {
+        this(trainCatalog, partitionCount, DEFAULT_MAX_BATCH);
+    }
+
+    public BookingEngine(TrainCatalog trainCatalog, int partitionCount, int maxBatch) {
+        this.trainCatalog = trainCatalog;
+        this.maxBatch = maxBatch;
+        partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition(i);
+            partitions[i].writer.start();
+        }
+    }
+
+    // Completes with true once the seat is booked and persisted, false if it was taken or does not exist
+    public CompletableFuture<Boolean> book(String trainId, int row, int seat) {
+        return submit(new BookingCommand(trainId, row, seat, Train.SEAT_FREE, Train.SEAT_BOOKED));
+    }
+
+    // Completes with true once the seat is free again and persisted, false if it was not booked
+    public CompletableFuture<Boolean> cancel(String trainId, int row, int seat) {
+        return submit(new BookingCommand(trainId, row, seat, Train.SEAT_BOOKED, Train.SEAT_FREE));
+    }
+
+    // Holds a free seat so nobody else can book it, see SeatHoldService
+    public CompletableFuture<Boolean> hold(String trainId, int row, int seat) {
+        return submit(new BookingCommand(trainId, row, seat, Train.SEAT_FREE, Train.SEAT_HELD));
+    }
+
+    // Turns a held seat into a booked one
+    public CompletableFuture<Boolean> confirmHold(String trainId, int row, int seat) {
+        return submit(new BookingCommand(trainId, row, seat, Train.SEAT_HELD, Train.SEAT_BOOKED));
+    }
+
+    // Frees a held seat that was not confirmed
+    public CompletableFuture<Boolean> releaseHold(String trainId, int row, int seat) {
+        return submit(new BookingCommand(trainId, row, seat, Train.SEAT_HELD, Train.SEAT_FREE));
+    }
+
+    // Sets the seat to value whatever it holds now, to replay a change made on another
+    // node. Completes with true if the seat exists, also when it already held value.
+    public CompletableFuture<Boolean> set(String trainId, int row, int seat, int value) {
+        return submit(new BookingCommand(trainId, row, seat, BookingCommand.ANY, value));
+    }
+
+    private CompletableFuture<Boolean> submit(BookingCommand command) {
+        if (!running) {
+            command.result.completeExceptionally(new IllegalStateException("Booking engine is shut down"));
+            return command.result;
+        }
+        Partition partition = partitions[partitionOf(command.trainId)];
+        partition.ring.put(command);
+        LockSupport.unpark(partition.writer);
+        // closed meanwhile: a writer that already left never sees the command, and
+        // close() may have cleared the ring before it was put
+        if (!running && !partition.writer.isAlive()) {
+            partition.refuseQueued();
+        }
+        return command.result;
+    }
+
+    public int partitionOf(String trainId) {
+        return Math.floorMod(trainId.toLowerCase(Locale.ROOT).hashCode(), partitions.length);
+    }
+
+    // Stops accepting commands, lets the writers finish what is queued and waits for them
+    @Override
+    public void close() {
+        running = false;
+        for (Partition partition : partitions) {
+            LockSupport.unpark(partition.writer);
+        }
+        for (Partition partition : partitions) {
+            try {
+                partition.writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            // put after the writer saw the ring empty for the last time
+            partition.refuseQueued();
+        }
+    }
+
+    private final class Partition {
+        private final RingBuffer<BookingCommand> ring = new RingBuffer<>(RING_CAPACITY);
+        private final Thread writer;
+
+        Partition(int index) {
+            writer = new Thread(this::run, "booking-writer-" + index);
+            writer.setDaemon(true);
+        }
+
+        private void run() {
+            List<BookingCommand> batch = new ArrayList<>(maxBatch);
+            while (running || !ring.isEmpty()) {
+                if (ring.drainTo(batch, maxBatch) == 0) {
+                    LockSupport.parkNanos(100_000);
+                    continue;
+                }
+                process(batch);
+                batch.clear();
+            }
+        }
+
+        // Fails what is still queued once the writer is gone. Only called when no writer
+        // drains the ring any more, the lock keeps close() and late submitters apart.
+        private synchronized void refuseQueued() {
+            List<BookingCommand> left = new ArrayList<>();
+            while (ring.drainTo(left, RING_CAPACITY) > 0) {
+                for (BookingCommand command : left) {
+                    command.result.completeExceptionally(new IllegalStateException("Booking engine is shut down"));
+                }
+                left.clear();
+            }
+        }
+
+        private void process(List<BookingCommand> batch) {
+            Boolean[] results = new Boolean[batch.size()];
+            Set<String> touched = new LinkedHashSet<>();
+            for (int i = 0; i < batch.size(); i++) {
+                BookingCommand command = batch.get(i);
+                try {
+                    results[i] = apply(command);
+                    if (results[i]) {
+                        touched.add(command.trainId);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    command.result.completeExceptionally(e);
+                }
+            }
+            try {
+                // one write per touched train for the whole batch, other trains are left to their own writers
+                trainCatalog.flush(touched);
+            } catch (IOException | RuntimeException e) {
+                // nobody is told the changes happened, so they must not stay in memory either
+                undo(batch);
+                for (BookingCommand command : batch) {
+                    command.result.completeExceptionally(e);
+                }
+                return;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                if (results[i] != null) {
+                    batch.get(i).result.complete(results[i]);
+                }
+            }
+        }
+
+        private boolean apply(BookingCommand command) throws IOException {
+            if (command.expectedValue != BookingCommand.ANY) {
+                boolean changed = trainCatalog.updateSeat(command.trainId, command.row, command.seat,
+                        command.expectedValue, command.newValue);
+                if (changed) {
+                    command.previousValue = command.expectedValue;
+                }
+                return changed;
+            }
+            // nobody else changes this train's seats, so what is read here is still there below
+            Optional<Train> train = trainCatalog.get(command.trainId);
+            if (train.isEmpty() || command.row < 0 || command.row >= train.get().getSeats().size()
+                    || command.seat < 0 || command.seat >= train.get().getSeats().get(command.row).size()) {
+                return false;
+            }
+            int current = train.get().getSeats().get(command.row).get(command.seat);
+            if (current == command.newValue) {
+                return true;
+            }
+            boolean changed = trainCatalog.updateSeat(command.trainId, command.row, command.seat, current, command.newValue);
+            if (changed) {
+                command.previousValue = current;
+            }
+            return changed;
+        }
+
+        // Puts the seats of a batch that could not be written back the way they were,
+        // newest change first. The trains stay dirty, so the next flush writes them as
+        // they were before the batch.
+        private void undo(List<BookingCommand> batch) {
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                BookingCommand command = batch.get(i);
+                if (command.previousValue == BookingCommand.ANY) {
+                    continue;
+                }
+                try {
+                    trainCatalog.updateSeat(command.trainId, command.row, command.seat, command.newValue, command.previousValue);
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("Failed to undo seat " + command.row + ":" + command.seat + " of train "
+                            + command.trainId + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ticket.booking.engine;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Bounded ring with many producers and exactly one consumer. Producers claim a slot
+// with a CAS on the tail sequence and publish the element into it; the consumer
+// walks the head sequence and is the only thread that ever writes it.
+public class RingBuffer<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    public RingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        slots = new AtomicReferenceArray<>(capacity);
+        mask = capacity - 1;
+    }
+
+    // Spins, then parks briefly, while the ring is full
+    public void put(T element) {
+        long sequence;
+        int spins = 0;
+        while (true) {
+            sequence = tail.get();
+            if (sequence - head >= slots.length()) {
+                backOff(++spins);
+                continue;
+            }
+            if (tail.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        slots.lazySet((int) (sequence & mask), element);
+    }
+
+    // Moves up to max published elements into batch, returns how many were moved
+    public int drainTo(List<T> batch, int max) {
+        long sequence = head;
+        int drained = 0;
+        while (drained < max) {
+            int index = (int) (sequence & mask);
+            T element = slots.get(index);
+            if (element == null) {
+                // either empty or a producer claimed the slot but has not stored into it yet
+                break;
+            }
+            slots.lazySet(index, null);
+            batch.add(element);
+            sequence++;
+            drained++;
+        }
+        head = sequence;
+        return drained;
+    }
+
+    public boolean isEmpty() {
+        return head == tail.get();
+    }
+
+    private static void backOff(int spins) {
+        if (spins < 100) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(1_000);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ticket.booking.entities;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+import java.util.Locale;
+
+// One coach of a train: rowCount rows of the train's seats starting at firstRow, all of
+// one travel class. Seats keep being addressed by row and seat inside Train.seats, a
+// coach only names and classes a block of those rows.
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonNaming(PropertyNamingStrategy.SnakeCaseStrategy.class)
+
+public class Coach {
+
+    // class of trains stored before coaches existed, and of rows no coach covers
+    public static final String DEFAULT_CLASS = "GN";
+    public static final String DEFAULT_COACH_ID = "GEN";
+
+    private String coachId;
+
+    // short code like SL, 3A or CC, always upper case
+    private String travelClass;
+
+    private int firstRow;
+
+    private int rowCount;
+
+    public Coach(){}
+
+    public Coach(String coachId, String travelClass, int firstRow, int rowCount){
+        this.coachId = coachId;
+        setTravelClass(travelClass);
+        this.firstRow = firstRow;
+        this.rowCount = rowCount;
+    }
+
+    public String getCoachId(){
+        return coachId;
+    }
+
+    public void setCoachId(String coachId){
+        this.coachId = coachId;
+    }
+
+    public String getTravelClass(){
+        return travelClass;
+    }
+
+    public void setTravelClass(String travelClass){
+        this.travelClass = normalizeClass(travelClass);
+    }
+
+    public int getFirstRow(){
+        return firstRow;
+    }
+
+    public void setFirstRow(int firstRow){
+        this.firstRow = firstRow;
+    }
+
+    public int getRowCount(){
+        return rowCount;
+    }
+
+    public void setRowCount(int rowCount){
+        this.rowCount = rowCount;
+    }
+
+    public boolean containsRow(int row){
+        return row >= firstRow && row < firstRow + rowCount;
+    }
+
+    @JsonIgnore
+    public String getCoachInfo(){
+        return String.format("Coach %s (%s)", coachId, travelClass);
+    }
+
+    // "sl", " SL " and "SL" are the same class, no class at all is the default one
+    public static String normalizeClass(String travelClass){
+        if (travelClass == null || travelClass.isBlank()) {
+            return DEFAULT_CLASS;
+        }
+        return travelClass.trim().toUpperCase(Locale.ROOT);
+    }
+}
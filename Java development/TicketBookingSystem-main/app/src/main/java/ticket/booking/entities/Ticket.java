@@ -3,11 +3,14 @@ package ticket.booking.entities;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.databind.PropertyNamingStrategy;
 import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import ticket.booking.serialization.TicketSerializer;
 
 import java.util.Date;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 @JsonNaming(PropertyNamingStrategy.SnakeCaseStrategy.class)
+@JsonSerialize(using = TicketSerializer.class)
 
 public class Ticket {
     //Fields
@@ -17,6 +20,9 @@ public class Ticket {
     private String destination;
     private String dateOfTravel;
     private Train train;
+    // seat position inside train.seats, null for tickets issued before seats were tracked
+    private Integer row;
+    private Integer seat;
 
     //Constructor
     public Ticket(){}
@@ -85,4 +91,20 @@ public class Ticket {
         this.train = train;
     }
 
+    public Integer getRow(){
+        return row;
+    }
+
+    public void setRow(Integer row){
+        this.row = row;
+    }
+
+    public Integer getSeat(){
+        return seat;
+    }
+
+    public void setSeat(Integer seat){
+        this.seat = seat;
+    }
+
 }
@@ -1,25 +1,55 @@
 package ticket.booking.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonNaming;
-
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import ticket.booking.serialization.SeatMapDeserializer;
+import ticket.booking.serialization.SeatMapSerializer;
+import ticket.booking.utils.StationDictionary;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 @JsonNaming(PropertyNamingStrategy.SnakeCaseStrategy.class)
 
 public class Train {
+
+    // values in seats
+    public static final int SEAT_FREE = 0;
+    public static final int SEAT_BOOKED = 1;
+    // held for a user for a short time, see SeatHoldService; never outlives the process
+    public static final int SEAT_HELD = 2;
+
     private String trainId;
 
     private String trainNo;
 
+    // stored as one digit string per row, see SeatMapSerializer
+    @JsonSerialize(using = SeatMapSerializer.class)
+    @JsonDeserialize(using = SeatMapDeserializer.class)
     private List<List<Integer>> seats;
 
-    private Map<String, String> stationTimes;
+    // blocks of rows of seats with their class, see Coach; trains stored before coaches
+    // existed have none, null, and are one coach of the default class, see coaches()
+    private List<Coach> coaches;
 
-    private List<String> stations;
+    // stations as StationDictionary ids, in travel order
+    private int[] route = new int[0];
+
+    // departure time at route[i], interned because the same few times repeat everywhere
+    private String[] departureTimes = new String[0];
+
+    // station_times can be read from JSON before stations, kept until the route is known
+    private Map<String, String> pendingStationTimes;
 
 
 
@@ -30,12 +60,29 @@ public class Train {
         this.trainId = trainId;
         this.trainNo = trainNo;
         this.seats = seats;
-        this.stationTimes = stationTimes;
-        this.stations = stations;
+        setStations(stations);
+        setStationTimes(stationTimes);
     }
 
+    // Names of the route, a read-only view over the route ids
     public List<String> getStations(){
-        return stations;
+        int[] stationIds = route;
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return StationDictionary.nameOf(stationIds[index]);
+            }
+
+            @Override
+            public int size() {
+                return stationIds.length;
+            }
+        };
+    }
+
+    // Does this train stop at station id from and later at station id to
+    public boolean servesInOrder(int from, int to){
+        return StationDictionary.servesInOrder(route, from, to);
     }
 
     public List<List<Integer>> getSeats() {
@@ -46,12 +93,69 @@ public class Train {
         this.seats = seats;
     }
 
+    // The coaches as stored, in row order; null for a train without any
+    public List<Coach> getCoaches(){
+        return coaches;
+    }
+
+    public void setCoaches(List<Coach> coaches){
+        this.coaches = coaches;
+    }
+
+    // The coaches to book by, a single default class coach over all rows if none were
+    // given. Never stored: the default coach would otherwise be written back as if the
+    // train had been given it, and stop following the rows when seats change.
+    private List<Coach> coaches(){
+        if (coaches == null || coaches.isEmpty()) {
+            int rows = seats == null ? 0 : seats.size();
+            return Collections.singletonList(new Coach(Coach.DEFAULT_COACH_ID, Coach.DEFAULT_CLASS, 0, rows));
+        }
+        return coaches;
+    }
+
+    // The coach the row belongs to, empty for rows no coach covers
+    public Optional<Coach> coachOfRow(int row){
+        for (Coach coach : coaches()) {
+            if (coach.containsRow(row)) {
+                return Optional.of(coach);
+            }
+        }
+        return Optional.empty();
+    }
+
+    // Class of the seats in the row; rows no coach covers are of the default class
+    public String travelClassOfRow(int row){
+        return coachOfRow(row).map(Coach::getTravelClass).orElse(Coach.DEFAULT_CLASS);
+    }
+
+    // Classes this train has, in coach order, each once
+    @JsonIgnore
+    public List<String> getTravelClasses(){
+        List<String> classes = new ArrayList<>();
+        for (Coach coach : coaches()) {
+            if (!classes.contains(coach.getTravelClass())) {
+                classes.add(coach.getTravelClass());
+            }
+        }
+        int rows = seats == null ? 0 : seats.size();
+        for (int row = 0; row < rows && !classes.contains(Coach.DEFAULT_CLASS); row++) {
+            if (coachOfRow(row).isEmpty()) {
+                classes.add(Coach.DEFAULT_CLASS);
+            }
+        }
+        return classes;
+    }
+
     public String getTrainId(){
         return trainId;
     }
 
     public Map<String, String> getStationTimes(){
-        return stationTimes;
+        Map<String, String> stationTimes = new LinkedHashMap<>();
+        for (int i = 0; i < route.length; i++) {
+            stationTimes.put(StationDictionary.nameOf(route[i]), departureTimes[i]);
+        }
+        return Collections.unmodifiableMap(stationTimes);
     }
 
     public String getTrainNo(){
@@ -67,13 +171,54 @@ public class Train {
     }
 
     public void setStationTimes(Map<String, String> stationTimes){
-        this.stationTimes = stationTimes;
+        if (route.length == 0) {
+            pendingStationTimes = stationTimes;
+            return;
+        }
+        alignTimes(stationTimes);
     }
 
     public void setStations(List<String> stations){
-        this.stations = stations;
+        if (stations == null) {
+            stations = Collections.emptyList();
+        }
+        Map<String, String> times = pendingStationTimes != null ? pendingStationTimes : getStationTimes();
+        int[] stationIds = new int[stations.size()];
+        for (int i = 0; i < stationIds.length; i++) {
+            stationIds[i] = StationDictionary.idOf(stations.get(i));
+        }
+        route = stationIds;
+        pendingStationTimes = null;
+        alignTimes(times);
+    }
+
+    private void alignTimes(Map<String, String> stationTimes){
+        String[] times = new String[route.length];
+        if (stationTimes != null) {
+            // by station id, the times may spell a station differently than its first spelling
+            for (Map.Entry<String, String> time : stationTimes.entrySet()) {
+                int index = StationDictionary.indexOf(route, StationDictionary.lookup(time.getKey()));
+                if (index != -1 && time.getValue() != null) {
+                    times[index] = time.getValue().intern();
+                }
+            }
+        }
+        departureTimes = times;
+    }
+
+    // Copy with other seats that shares the route, timings and coaches with this train
+    public Train withSeats(List<List<Integer>> seats){
+        Train copy = new Train();
+        copy.trainId = trainId;
+        copy.trainNo = trainNo;
+        copy.seats = seats;
+        copy.coaches = coaches;
+        copy.route = route;
+        copy.departureTimes = departureTimes;
+        return copy;
     }
 
+    @JsonIgnore
     public String getTrainInfo(){
         return String.format("Train ID: %s Train No: %s", trainId, trainNo);
     }
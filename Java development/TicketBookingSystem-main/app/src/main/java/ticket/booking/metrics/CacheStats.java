@@ -0,0 +1,49 @@
+package ticket.booking.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Hits and misses of one cache
+public class CacheStats implements CacheStatsMBean {
+
+    private final String name;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CacheStats(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void hit() {
+        if (Metrics.ENABLED) {
+            hits.increment();
+        }
+    }
+
+    public void miss() {
+        if (Metrics.ENABLED) {
+            misses.increment();
+        }
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    // share of lookups answered from the cache, 0 before the first lookup
+    @Override
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+}
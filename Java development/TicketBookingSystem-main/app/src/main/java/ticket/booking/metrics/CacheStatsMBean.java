@@ -0,0 +1,10 @@
+package ticket.booking.metrics;
+
+public interface CacheStatsMBean {
+
+    long getHits();
+
+    long getMisses();
+
+    double getHitRatio();
+}
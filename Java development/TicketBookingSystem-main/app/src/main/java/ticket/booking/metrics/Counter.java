@@ -0,0 +1,33 @@
+package ticket.booking.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Running total, e.g. of bytes written, that many threads can add to without contending
+public class Counter implements CounterMBean {
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+
+    public Counter(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void add(long amount) {
+        if (Metrics.ENABLED) {
+            count.add(amount);
+        }
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+}
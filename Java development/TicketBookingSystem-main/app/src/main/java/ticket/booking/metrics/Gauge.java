@@ -0,0 +1,69 @@
+package ticket.booking.metrics;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.ToLongFunction;
+
+// A value that goes up and down, e.g. a queue length, read from its owners when asked.
+// Several owners may publish under one name, e.g. the admission controllers of several
+// booking services, and the gauge shows their sum. Owners are held weakly, so a gauge
+// never keeps one alive, and an owner that is gone drops out of the sum.
+public class Gauge implements GaugeMBean {
+
+    private final String name;
+    private final List<Source<?>> sources = new CopyOnWriteArrayList<>();
+
+    public Gauge(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Adds read(owner) to the value for as long as owner is reachable. read must not
+    // hold on to owner itself, e.g. a lambda of its parameter or a method reference
+    // of the class, not of the instance.
+    public <O> void readFrom(O owner, ToLongFunction<? super O> read) {
+        sources.add(new Source<>(owner, read));
+    }
+
+    @Override
+    public long getValue() {
+        long value = 0;
+        for (Source<?> source : sources) {
+            if (source.isGone()) {
+                sources.remove(source);
+            } else {
+                value += source.read();
+            }
+        }
+        return value;
+    }
+
+    int owners() {
+        getValue();
+        return sources.size();
+    }
+
+    private static final class Source<O> {
+        final WeakReference<O> owner;
+        final ToLongFunction<? super O> read;
+
+        Source(O owner, ToLongFunction<? super O> read) {
+            this.owner = new WeakReference<>(owner);
+            this.read = read;
+        }
+
+        boolean isGone() {
+            return owner.get() == null;
+        }
+
+        // 0 if the owner went away since isGone was asked
+        long read() {
+            O current = owner.get();
+            return current == null ? 0 : read.applyAsLong(current);
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package ticket.booking.metrics;
+
+public interface GaugeMBean {
+
+    long getValue();
+}
@@ -0,0 +1,140 @@
+package ticket.booking.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency histogram in the style of HdrHistogram: one bucket per power of two, each
+// split into SUB_BUCKETS linear sub-buckets, so every recorded value is kept within
+// 1/SUB_BUCKETS (12.5%) of its real value from a nanosecond up to minutes, in a fixed
+// few hundred counters. Recording is a couple of shifts and a LongAdder increment,
+// threads recording at the same time do not contend. Percentiles are read from a
+// pass over the buckets and are only as consistent as the moment allows.
+public class LatencyHistogram implements LatencyHistogramMBean {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // values below 2^(MAX_EXPONENT + 1) ns (about 36 minutes) keep their precision, longer ones land in the last bucket
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final String name;
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Time since startNanos, which came from Metrics.start(). Nothing is recorded while
+    // metrics are turned off.
+    public void stop(long startNanos) {
+        if (Metrics.ENABLED) {
+            record(System.nanoTime() - startNanos);
+        }
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[bucketOf(nanos)].increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    // values below SUB_BUCKETS get a bucket each, above that the top SUB_BUCKET_BITS + 1
+    // bits of the value pick the bucket
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+        int bucket = (shift + 1) * SUB_BUCKETS + (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    // the middle of the values that fall into a bucket
+    static long valueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) / 2;
+    }
+
+    // Latency in nanoseconds that the given fraction (0..1) of the recorded values stay under
+    public long percentileNanos(double fraction) {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(total * fraction));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= wanted) {
+                return Math.min(valueOf(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    // summed from the buckets rather than kept apart, one adder less per record
+    @Override
+    public long getCount() {
+        long total = 0;
+        for (LongAdder bucket : buckets) {
+            total += bucket.sum();
+        }
+        return total;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long n = getCount();
+        return n == 0 ? 0 : totalNanos.sum() / 1e3 / n;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return percentileNanos(0.50) / 1e3;
+    }
+
+    @Override
+    public double getP90Micros() {
+        return percentileNanos(0.90) / 1e3;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return percentileNanos(0.99) / 1e3;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return percentileNanos(0.999) / 1e3;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return maxNanos.get() / 1e3;
+    }
+}
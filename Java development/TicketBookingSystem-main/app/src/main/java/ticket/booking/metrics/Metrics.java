@@ -0,0 +1,115 @@
+package ticket.booking.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+// Where the timings and counters of the booking paths live. Each metric is created
+// once, usually into a static final field of the class it measures, and published as
+// a platform MBean under ticket.booking:type=Latency|Counter|Cache|Gauge,name=<name>, so
+// jconsole or any JMX client can read them while the app runs.
+//   -Dbooking.metrics=false turns recording off, Metrics.start() then costs nothing
+//   -Dbooking.metricsDumpSeconds=60 prints every metric once a minute
+//
+// Timing a piece of code:
+//   long start = Metrics.start();
+//   ...
+//   SEARCH_LATENCY.stop(start);
+public final class Metrics {
+
+    public static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("booking.metrics"));
+
+    private static final Map<String, LatencyHistogram> LATENCIES = new ConcurrentSkipListMap<>();
+    private static final Map<String, Counter> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, CacheStats> CACHES = new ConcurrentSkipListMap<>();
+    private static final Map<String, Gauge> GAUGES = new ConcurrentSkipListMap<>();
+    private static ScheduledExecutorService dumper;
+
+    private Metrics() {}
+
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    public static LatencyHistogram latency(String name) {
+        return register(LATENCIES, "Latency", name, LatencyHistogram::new);
+    }
+
+    public static Counter counter(String name) {
+        return register(COUNTERS, "Counter", name, Counter::new);
+    }
+
+    public static CacheStats cache(String name) {
+        return register(CACHES, "Cache", name, CacheStats::new);
+    }
+
+    // A value read from owner whenever it is looked at, added to what other owners
+    // publish under the same name; see Gauge
+    public static <O> Gauge gauge(String name, O owner, ToLongFunction<? super O> read) {
+        Gauge gauge = register(GAUGES, "Gauge", name, Gauge::new);
+        gauge.readFrom(owner, read);
+        return gauge;
+    }
+
+    private static <M> M register(Map<String, M> metrics, String type, String name, Function<String, M> create) {
+        return metrics.computeIfAbsent(name, key -> {
+            M metric = create.apply(key);
+            if (ENABLED) {
+                try {
+                    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                    ObjectName objectName = new ObjectName("ticket.booking:type=" + type + ",name=" + ObjectName.quote(key));
+                    if (!server.isRegistered(objectName)) {
+                        server.registerMBean(metric, objectName);
+                    }
+                } catch (JMException e) {
+                    System.out.println("Metric " + key + " not published over JMX: " + e.getMessage());
+                }
+            }
+            return metric;
+        });
+    }
+
+    // Prints every metric in a table, times in milliseconds
+    public static void dump() {
+        System.out.println("Metrics" + (ENABLED ? "" : " (disabled)") + ":");
+        System.out.printf("  %-28s %9s %9s %9s %9s %9s %9s%n", "latency", "count", "mean ms", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (LatencyHistogram latency : LATENCIES.values()) {
+            System.out.printf("  %-28s %9d %9.3f %9.3f %9.3f %9.3f %9.3f%n", latency.getName(), latency.getCount(),
+                    latency.getMeanMicros() / 1e3, latency.getP50Micros() / 1e3, latency.getP99Micros() / 1e3,
+                    latency.getP999Micros() / 1e3, latency.getMaxMicros() / 1e3);
+        }
+        for (CacheStats cache : CACHES.values()) {
+            System.out.printf("  %-28s hits %d misses %d hit ratio %.1f%%%n", cache.getName(),
+                    cache.getHits(), cache.getMisses(), cache.getHitRatio() * 100);
+        }
+        for (Counter counter : COUNTERS.values()) {
+            System.out.printf("  %-28s %d%n", counter.getName(), counter.getCount());
+        }
+        for (Gauge gauge : GAUGES.values()) {
+            System.out.printf("  %-28s %d%n", gauge.getName(), gauge.getValue());
+        }
+    }
+
+    // Starts printing all metrics every -Dbooking.metricsDumpSeconds seconds, if set
+    public static synchronized void startPeriodicDump() {
+        String seconds = System.getProperty("booking.metricsDumpSeconds");
+        if (seconds == null || dumper != null) {
+            return;
+        }
+        long period = Long.parseLong(seconds);
+        dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(Metrics::dump, period, period, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,71 @@
+package ticket.booking.replication;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import ticket.booking.serialization.JsonCodec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// Committed changes in order, numbered from 1, for followers to read. Entries are turned
+// into their JSON line when appended: the objects in them may be changed later, and every
+// follower gets the same bytes. Only the last MAX_RETAINED entries are kept, a follower
+// further behind than that starts over from a snapshot.
+public class Journal {
+
+    private static final int MAX_RETAINED = 100_000;
+
+    private final String epoch = UUID.randomUUID().toString();
+    private final List<String> lines = new ArrayList<>();
+    // seq of lines.get(0)
+    private long firstSeq = 1;
+    private long lastSeq;
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    public synchronized void append(List<JournalEntry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (JournalEntry entry : entries) {
+            entry.setSeq(lastSeq + 1);
+            entry.setCommittedAt(now);
+            lines.add(toLine(entry));
+            lastSeq++;
+        }
+        // drop in large steps, removing from the front of the list moves everything
+        if (lines.size() > MAX_RETAINED * 2) {
+            int drop = lines.size() - MAX_RETAINED;
+            lines.subList(0, drop).clear();
+            firstSeq += drop;
+        }
+        notifyAll();
+    }
+
+    // Up to max lines after seq, waiting up to waitMillis while there are none.
+    // Null if the entries right after seq were dropped already.
+    public synchronized List<String> readAfter(long seq, int max, long waitMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        long left;
+        while (lastSeq <= seq && (left = deadline - System.currentTimeMillis()) > 0) {
+            wait(left);
+        }
+        if (seq + 1 < firstSeq || seq > lastSeq) {
+            return null;
+        }
+        int from = (int) (seq + 1 - firstSeq);
+        return new ArrayList<>(lines.subList(from, Math.min(lines.size(), from + max)));
+    }
+
+    String toLine(JournalEntry entry) throws JsonProcessingException {
+        return JsonCodec.WRITER.writeValueAsString(entry);
+    }
+}
@@ -0,0 +1,166 @@
+package ticket.booking.replication;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+
+// One line of the replication stream. Changes set state rather than move it (a seat
+// becomes value, a user or ticket is stored as given), so a follower can apply an entry
+// its snapshot already contained without harm.
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonNaming(PropertyNamingStrategy.SnakeCaseStrategy.class)
+
+public class JournalEntry {
+
+    // changes, numbered by the journal
+    public static final String TRAIN = "train";
+    public static final String SEAT = "seat";
+    public static final String USER = "user";
+    public static final String TICKET_SAVED = "ticket_saved";
+    public static final String TICKET_DELETED = "ticket_deleted";
+    // stream control: a full copy of the state up to seq follows, the copy is complete,
+    // nothing new happened but the primary is at seq
+    public static final String SNAPSHOT = "snapshot";
+    public static final String SNAPSHOT_END = "snapshot_end";
+    public static final String HEARTBEAT = "heartbeat";
+
+    private String type;
+    private long seq;
+    // primary's clock when the change was committed, or when a control line was sent
+    private long committedAt;
+    // changes on each start of the primary, a follower from another run needs a snapshot
+    private String epoch;
+    private String trainId;
+    private Integer row;
+    private Integer seat;
+    private Integer value;
+    private Train train;
+    private User user;
+    private Ticket ticket;
+
+    public JournalEntry(){}
+
+    public JournalEntry(String type){
+        this.type = type;
+    }
+
+    public static JournalEntry train(Train train){
+        JournalEntry entry = new JournalEntry(TRAIN);
+        entry.train = train;
+        return entry;
+    }
+
+    public static JournalEntry seat(String trainId, int row, int seat, int value){
+        JournalEntry entry = new JournalEntry(SEAT);
+        entry.trainId = trainId;
+        entry.row = row;
+        entry.seat = seat;
+        entry.value = value;
+        return entry;
+    }
+
+    public static JournalEntry user(User user){
+        JournalEntry entry = new JournalEntry(USER);
+        entry.user = user;
+        return entry;
+    }
+
+    public static JournalEntry ticket(String type, Ticket ticket){
+        JournalEntry entry = new JournalEntry(type);
+        entry.ticket = ticket;
+        return entry;
+    }
+
+    public String getType(){
+        return type;
+    }
+
+    public void setType(String type){
+        this.type = type;
+    }
+
+    public long getSeq(){
+        return seq;
+    }
+
+    public void setSeq(long seq){
+        this.seq = seq;
+    }
+
+    public long getCommittedAt(){
+        return committedAt;
+    }
+
+    public void setCommittedAt(long committedAt){
+        this.committedAt = committedAt;
+    }
+
+    public String getEpoch(){
+        return epoch;
+    }
+
+    public void setEpoch(String epoch){
+        this.epoch = epoch;
+    }
+
+    public String getTrainId(){
+        return trainId;
+    }
+
+    public void setTrainId(String trainId){
+        this.trainId = trainId;
+    }
+
+    public Integer getRow(){
+        return row;
+    }
+
+    public void setRow(Integer row){
+        this.row = row;
+    }
+
+    public Integer getSeat(){
+        return seat;
+    }
+
+    public void setSeat(Integer seat){
+        this.seat = seat;
+    }
+
+    public Integer getValue(){
+        return value;
+    }
+
+    public void setValue(Integer value){
+        this.value = value;
+    }
+
+    public Train getTrain(){
+        return train;
+    }
+
+    public void setTrain(Train train){
+        this.train = train;
+    }
+
+    public User getUser(){
+        return user;
+    }
+
+    public void setUser(User user){
+        this.user = user;
+    }
+
+    public Ticket getTicket(){
+        return ticket;
+    }
+
+    public void setTicket(Ticket ticket){
+        this.ticket = ticket;
+    }
+}
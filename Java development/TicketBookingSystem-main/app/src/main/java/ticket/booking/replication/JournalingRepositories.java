@@ -0,0 +1,248 @@
+package ticket.booking.replication;
+
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.repository.HistoryFilter;
+import ticket.booking.repository.Repositories;
+import ticket.booking.repository.TicketPage;
+import ticket.booking.repository.TicketRepository;
+import ticket.booking.repository.TrainRepository;
+import ticket.booking.repository.UserRepository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Repositories that record every change they make in a journal. Changes the backend
+// writes at once go to the journal at once; seat and ticket changes the backend may
+// buffer are held back until flush() has written them, so followers only ever see
+// what is committed on the primary.
+public final class JournalingRepositories {
+
+    private JournalingRepositories() {
+    }
+
+    public static Repositories wrap(Repositories repositories, Journal journal) {
+        return new Repositories(new Trains(repositories.trains(), journal),
+                new Users(repositories.users(), journal),
+                new Tickets(repositories.tickets(), journal));
+    }
+
+    // Seat changes wait per train, and a train is flushed and committed under its own
+    // stripe, so the engine writers of different trains do not queue behind each other's
+    // file writes; the entries of one train still reach the journal in the order made.
+    private static class Trains implements TrainRepository {
+        private static final int LOCK_STRIPES = 64;
+
+        private final TrainRepository delegate;
+        private final Journal journal;
+        // trainId (lowercase) -> seat changes not flushed yet, each list guarded by its train's stripe
+        private final Map<String, List<JournalEntry>> pending = new ConcurrentHashMap<>();
+        private final Object[] trainLocks = new Object[LOCK_STRIPES];
+
+        Trains(TrainRepository delegate, Journal journal) {
+            this.delegate = delegate;
+            this.journal = journal;
+            for (int i = 0; i < LOCK_STRIPES; i++) {
+                trainLocks[i] = new Object();
+            }
+        }
+
+        @Override
+        public List<Train> findByRoute(String source, String destination) throws IOException {
+            return delegate.findByRoute(source, destination);
+        }
+
+        @Override
+        public List<String> findIdsByRoute(String source, String destination) throws IOException {
+            return delegate.findIdsByRoute(source, destination);
+        }
+
+        @Override
+        public Optional<Train> findById(String trainId) throws IOException {
+            return delegate.findById(trainId);
+        }
+
+        @Override
+        public boolean exists(String trainId) throws IOException {
+            return delegate.exists(trainId);
+        }
+
+        @Override
+        public List<String> findAllIds() throws IOException {
+            return delegate.findAllIds();
+        }
+
+        @Override
+        public List<String> findAllStations() throws IOException {
+            return delegate.findAllStations();
+        }
+
+        @Override
+        public void save(Train train) throws IOException {
+            synchronized (lockFor(train.getTrainId())) {
+                delegate.save(train);
+                // buffered seat changes of the train were written with it
+                List<JournalEntry> entries = takePending(train.getTrainId());
+                entries.add(JournalEntry.train(train));
+                journal.append(entries);
+            }
+        }
+
+        @Override
+        public void saveAll(List<Train> trains) throws IOException {
+            delegate.saveAll(trains);
+            List<JournalEntry> entries = new ArrayList<>();
+            for (Train train : trains) {
+                synchronized (lockFor(train.getTrainId())) {
+                    entries.addAll(takePending(train.getTrainId()));
+                }
+                entries.add(JournalEntry.train(train));
+            }
+            journal.append(entries);
+        }
+
+        @Override
+        public boolean updateSeat(String trainId, int row, int seat, int expectedValue, int newValue) throws IOException {
+            if (!delegate.updateSeat(trainId, row, seat, expectedValue, newValue)) {
+                return false;
+            }
+            synchronized (lockFor(trainId)) {
+                pending.computeIfAbsent(key(trainId), trainKey -> new ArrayList<>())
+                        .add(JournalEntry.seat(trainId, row, seat, newValue));
+            }
+            return true;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flush(List.copyOf(pending.keySet()));
+            delegate.flush();
+        }
+
+        @Override
+        public void flush(Collection<String> trainIds) throws IOException {
+            for (String trainId : trainIds) {
+                synchronized (lockFor(trainId)) {
+                    // taken before writing, so whatever is taken is in the write
+                    List<JournalEntry> entries = takePending(trainId);
+                    delegate.flush(List.of(trainId));
+                    journal.append(entries);
+                }
+            }
+        }
+
+        private List<JournalEntry> takePending(String trainId) {
+            List<JournalEntry> entries = pending.remove(key(trainId));
+            return entries == null ? new ArrayList<>() : entries;
+        }
+
+        private Object lockFor(String trainId) {
+            return trainLocks[Math.floorMod(key(trainId).hashCode(), LOCK_STRIPES)];
+        }
+
+        private static String key(String trainId) {
+            return trainId.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static class Users implements UserRepository {
+        private final UserRepository delegate;
+        private final Journal journal;
+
+        Users(UserRepository delegate, Journal journal) {
+            this.delegate = delegate;
+            this.journal = journal;
+        }
+
+        @Override
+        public Optional<User> findByUsername(String username) throws IOException {
+            return delegate.findByUsername(username);
+        }
+
+        @Override
+        public Optional<User> findById(String userId) throws IOException {
+            return delegate.findById(userId);
+        }
+
+        @Override
+        public boolean usernameTaken(String username) throws IOException {
+            return delegate.usernameTaken(username);
+        }
+
+        @Override
+        public void add(User user) throws IOException {
+            delegate.add(user);
+            journal.append(List.of(JournalEntry.user(user)));
+        }
+
+        @Override
+        public List<String> findAllIds() throws IOException {
+            return delegate.findAllIds();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+    }
+
+    private static class Tickets implements TicketRepository {
+        private final TicketRepository delegate;
+        private final Journal journal;
+        private final List<JournalEntry> pending = new ArrayList<>();
+
+        Tickets(TicketRepository delegate, Journal journal) {
+            this.delegate = delegate;
+            this.journal = journal;
+        }
+
+        @Override
+        public synchronized void save(Ticket ticket) throws IOException {
+            delegate.save(ticket);
+            pending.add(JournalEntry.ticket(JournalEntry.TICKET_SAVED, ticket));
+        }
+
+        @Override
+        public synchronized boolean delete(Ticket ticket) throws IOException {
+            if (!delegate.delete(ticket)) {
+                return false;
+            }
+            pending.add(JournalEntry.ticket(JournalEntry.TICKET_DELETED, ticket));
+            return true;
+        }
+
+        @Override
+        public List<Ticket> findByUserId(String userId) throws IOException {
+            return delegate.findByUserId(userId);
+        }
+
+        @Override
+        public TicketPage findPage(String userId, HistoryFilter filter, String cursor, int limit) throws IOException {
+            return delegate.findPage(userId, filter, cursor, limit);
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            delegate.flush();
+            journal.append(pending);
+            pending.clear();
+        }
+
+        @Override
+        public int partitionCount() {
+            return delegate.partitionCount();
+        }
+
+        @Override
+        public void forEachInPartition(int partition, TicketVisitor visitor) throws IOException {
+            delegate.forEachInPartition(partition, visitor);
+        }
+    }
+}
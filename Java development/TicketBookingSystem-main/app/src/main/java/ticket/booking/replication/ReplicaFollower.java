@@ -0,0 +1,275 @@
+package ticket.booking.replication;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ticket.booking.cluster.ClusterHttp;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.repository.HistoryFilter;
+import ticket.booking.repository.JsonTicketRepository;
+import ticket.booking.repository.JsonTrainRepository;
+import ticket.booking.repository.TicketPage;
+import ticket.booking.serialization.JsonCodec;
+import ticket.booking.services.TrainService;
+import ticket.booking.storage.TrainShardStore;
+import ticket.booking.storage.UserBucketStore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+
+// Warm standby: applies the primary's journal to its own catalog and user store and
+// serves searches and booking history from them. State is kept in the localDb of the
+// directory the follower runs in, so each follower on a machine runs in its own
+// directory, and a promoted follower's directory is ready for the App to run on.
+//
+//   ReplicaFollower <primary host:port> <http port>
+//   GET  /search?source=..&destination=..[&class=..]
+//   GET  /history?username=..&filter=all|upcoming|past&cursor=..
+//   GET  /status    how far behind the primary this follower is
+//   POST /promote   stops following, writes everything out and reports the lag at that moment
+public class ReplicaFollower implements AutoCloseable {
+
+    private static final long RECONNECT_MILLIS = 1000;
+    private static final int HISTORY_PAGE_SIZE = 20;
+
+    private final String primaryHost;
+    private final int primaryPort;
+    private static final ObjectReader ENTRY_READER = JsonCodec.readerFor(JournalEntry.class);
+
+    private final TrainService trainService;
+    private final UserBucketStore userStore;
+    private final JsonTicketRepository ticketRepository;
+    private final HttpServer server;
+    private final Thread applier;
+
+    // all written by the applier thread only
+    private volatile String epoch = "none";
+    private volatile long appliedSeq;
+    private volatile long primarySeq;
+    // primary's commit time of the last applied change, and when we last heard from it
+    private volatile long appliedCommittedAt;
+    private volatile long lastContact;
+    private volatile boolean connected;
+    private volatile boolean promoted;
+    private volatile Socket socket;
+    // seat changes handed to the booking engine and not known to be written yet, applier thread only
+    private final List<CompletableFuture<Boolean>> pendingSeats = new ArrayList<>();
+
+    public ReplicaFollower(String primaryHost, int primaryPort, int httpPort) throws IOException {
+        this(primaryHost, primaryPort, httpPort, new TrainShardStore(), new UserBucketStore());
+    }
+
+    // On the given stores, e.g. scratch ones
+    ReplicaFollower(String primaryHost, int primaryPort, int httpPort, TrainShardStore trainStore, UserBucketStore userStore) throws IOException {
+        this.primaryHost = primaryHost;
+        this.primaryPort = primaryPort;
+        trainService = new TrainService(new JsonTrainRepository(trainStore));
+        this.userStore = userStore;
+        ticketRepository = new JsonTicketRepository(userStore);
+        applier = new Thread(this::follow, "replication-follower");
+        applier.setDaemon(true);
+        applier.start();
+        server = ClusterHttp.start(httpPort, Map.of(
+                "/search", this::search,
+                "/history", this::history,
+                "/status", this::status,
+                "/promote", this::promote));
+        System.out.println("Following " + primaryHost + ":" + primaryPort + ", serving reads on port " + httpPort);
+    }
+
+    public static void main(String[] args) throws IOException {
+        // everything written here comes from the primary, nobody edits these files by hand
+        System.setProperty("booking.hotReload", "false");
+        String[] primary = args[0].split(":");
+        new ReplicaFollower(primary[0], Integer.parseInt(primary[1]), Integer.parseInt(args[1]));
+    }
+
+    private void follow() {
+        while (!promoted) {
+            try (Socket connection = new Socket(primaryHost, primaryPort)) {
+                socket = connection;
+                Writer out = new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8);
+                out.write("FROM " + epoch + " " + appliedSeq + "\n");
+                out.flush();
+                connected = true;
+                BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+                String line;
+                while ((line = in.readLine()) != null) {
+                    apply(ENTRY_READER.readValue(line));
+                    // write out once the primary has nothing more queued for us
+                    if (!in.ready()) {
+                        flush();
+                    }
+                }
+            } catch (IOException e) {
+                if (!promoted) {
+                    System.out.println("Lost the primary: " + e.getMessage() + ", retrying");
+                }
+            } finally {
+                connected = false;
+            }
+            if (!promoted) {
+                LockSupport.parkNanos(RECONNECT_MILLIS * 1_000_000);
+            }
+        }
+    }
+
+    private void apply(JournalEntry entry) throws IOException {
+        lastContact = System.currentTimeMillis();
+        switch (entry.getType()) {
+            case JournalEntry.SNAPSHOT:
+                epoch = entry.getEpoch();
+                primarySeq = entry.getSeq();
+                System.out.println("Receiving a snapshot at seq " + entry.getSeq());
+                return;
+            case JournalEntry.SNAPSHOT_END:
+                flush();
+                appliedSeq = entry.getSeq();
+                appliedCommittedAt = entry.getCommittedAt();
+                System.out.println("Snapshot applied, following from seq " + entry.getSeq());
+                return;
+            case JournalEntry.HEARTBEAT:
+                primarySeq = Math.max(primarySeq, entry.getSeq());
+                return;
+            case JournalEntry.TRAIN:
+                // the train replaces what its earlier seat changes did, so they go first
+                awaitSeats();
+                trainService.updateTrain(entry.getTrain());
+                break;
+            case JournalEntry.SEAT:
+                // not waited for here, a run of seat changes is written in a few engine batches
+                pendingSeats.add(trainService.setSeatAsync(entry.getTrainId(), entry.getRow(), entry.getSeat(), entry.getValue()));
+                break;
+            case JournalEntry.USER:
+                User user = entry.getUser();
+                if (userStore.findById(user.getUserId()).isPresent()) {
+                    userStore.markDirty(user);
+                } else {
+                    userStore.add(user);
+                }
+                break;
+            case JournalEntry.TICKET_SAVED:
+                ticketRepository.save(entry.getTicket());
+                break;
+            case JournalEntry.TICKET_DELETED:
+                ticketRepository.delete(entry.getTicket());
+                break;
+            default:
+                System.out.println("Ignoring unknown journal entry " + entry.getType());
+        }
+        // snapshot lines carry no seq of their own, only changes move the position
+        if (entry.getSeq() > 0) {
+            appliedSeq = entry.getSeq();
+            appliedCommittedAt = entry.getCommittedAt();
+            primarySeq = Math.max(primarySeq, entry.getSeq());
+        }
+    }
+
+    private void flush() throws IOException {
+        awaitSeats();
+        ticketRepository.flush();
+    }
+
+    private void awaitSeats() {
+        for (CompletableFuture<Boolean> seat : pendingSeats) {
+            trainService.await(seat);
+        }
+        pendingSeats.clear();
+    }
+
+    public long getAppliedSeq() {
+        return appliedSeq;
+    }
+
+    // What we know of the gap to the primary: changes it told us about that are not
+    // applied yet, and how long ago it last said anything. Changes it made since then
+    // are unknown.
+    public Map<String, Object> lag() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> lag = new LinkedHashMap<>();
+        lag.put("connected", connected);
+        lag.put("promoted", promoted);
+        lag.put("applied_seq", appliedSeq);
+        lag.put("primary_seq", primarySeq);
+        lag.put("behind_entries", primarySeq - appliedSeq);
+        lag.put("last_applied_commit_age_millis", appliedCommittedAt == 0 ? -1 : now - appliedCommittedAt);
+        lag.put("since_last_contact_millis", lastContact == 0 ? -1 : now - lastContact);
+        return lag;
+    }
+
+    // Stops following and writes everything applied so far; from here on this follower's
+    // directory is a complete localDb as of appliedSeq
+    public synchronized Map<String, Object> promote() throws IOException {
+        if (!promoted) {
+            promoted = true;
+            Socket connection = socket;
+            if (connection != null) {
+                connection.close();
+            }
+            try {
+                applier.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flush();
+            Map<String, Object> lag = lag();
+            System.out.println("Promoted at seq " + appliedSeq + ", known lag " + lag.get("behind_entries")
+                    + " entries, primary last heard " + lag.get("since_last_contact_millis") + " ms ago");
+        }
+        return lag();
+    }
+
+    private void search(HttpExchange exchange) throws IOException {
+        Map<String, String> query = ClusterHttp.query(exchange);
+        List<Train> trains = trainService.searchTrains(query.get("source"), query.get("destination"), query.get("class"));
+        ClusterHttp.respond(exchange, 200, JsonCodec.WRITER.writeValueAsBytes(trains == null ? List.of() : trains));
+    }
+
+    private void history(HttpExchange exchange) throws IOException {
+        Map<String, String> query = ClusterHttp.query(exchange);
+        Optional<User> user = userStore.findByUsername(String.valueOf(query.get("username")));
+        if (user.isEmpty()) {
+            ClusterHttp.respond(exchange, 404, "");
+            return;
+        }
+        HistoryFilter filter = HistoryFilter.valueOf(query.getOrDefault("filter", "all").toUpperCase(Locale.ROOT));
+        TicketPage page = ticketRepository.findPage(user.get().getUserId(), filter, query.get("cursor"), HISTORY_PAGE_SIZE);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("tickets", page.getTickets());
+        body.put("next_cursor", page.getNextCursor());
+        ClusterHttp.respond(exchange, 200, JsonCodec.WRITER.writeValueAsBytes(body));
+    }
+
+    private void status(HttpExchange exchange) throws IOException {
+        ClusterHttp.respond(exchange, 200, JsonCodec.WRITER.writeValueAsBytes(lag()));
+    }
+
+    private void promote(HttpExchange exchange) throws IOException {
+        ClusterHttp.respond(exchange, 200, JsonCodec.WRITER.writeValueAsBytes(promote()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        promoted = true;
+        Socket connection = socket;
+        if (connection != null) {
+            connection.close();
+        }
+        server.stop(0);
+        trainService.close();
+    }
+}
@@ -0,0 +1,177 @@
+package ticket.booking.replication;
+
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.repository.Repositories;
+import ticket.booking.services.UserBookingService;
+import ticket.booking.services.WaitlistService;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+// Ships every committed booking, cancellation, sign-up and timetable change to the
+// followers that connect. A follower sends one line, "FROM <epoch> <seq>", and from then
+// on receives JSON lines: the journal entries after seq, or first a snapshot of all
+// trains and users if the journal cannot continue from there (another epoch, or too far
+// behind). A heartbeat with the latest seq goes out every second when nothing happens,
+// so a follower always knows how far behind it is.
+//   -Dbooking.replicationPort=9090 makes the App a primary listening on that port
+public class ReplicationPrimary implements AutoCloseable {
+
+    private static final int MAX_LINES_PER_READ = 1000;
+    private static final long HEARTBEAT_MILLIS = 1000;
+
+    private final Repositories repositories;
+    private final Journal journal;
+    private final UserBookingService bookingService;
+    private final ServerSocket serverSocket;
+    private volatile boolean running = true;
+
+    private ReplicationPrimary(Repositories storage, WaitlistService waitlists, int port) throws IOException {
+        journal = new Journal();
+        repositories = JournalingRepositories.wrap(storage, journal);
+        bookingService = new UserBookingService(repositories, waitlists);
+        serverSocket = new ServerSocket(port);
+        Thread acceptor = new Thread(this::acceptFollowers, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        System.out.println("Replicating to followers on port " + port);
+    }
+
+    public static ReplicationPrimary start(Repositories storage, int port) throws IOException {
+        return new ReplicationPrimary(storage, new WaitlistService(), port);
+    }
+
+    // On the given waitlists, e.g. scratch ones
+    static ReplicationPrimary start(Repositories storage, WaitlistService waitlists, int port) throws IOException {
+        return new ReplicationPrimary(storage, waitlists, port);
+    }
+
+    // The booking service whose changes are replicated
+    public UserBookingService getBookingService() {
+        return bookingService;
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    private void acceptFollowers() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread.ofVirtual().name("replication-" + socket.getRemoteSocketAddress()).start(() -> serve(socket));
+            } catch (IOException e) {
+                if (running) {
+                    System.out.println("Replication accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        String follower = String.valueOf(socket.getRemoteSocketAddress());
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String[] request = String.valueOf(in.readLine()).split(" ");
+            if (request.length != 3 || !request[0].equals("FROM")) {
+                System.out.println("Follower " + follower + " sent a bad request");
+                return;
+            }
+            long seq = Long.parseLong(request[2]);
+            if (!request[1].equals(journal.getEpoch())) {
+                seq = sendSnapshot(out);
+            }
+            System.out.println("Follower " + follower + " connected at seq " + seq);
+            while (running) {
+                List<String> lines = journal.readAfter(seq, MAX_LINES_PER_READ, HEARTBEAT_MILLIS);
+                if (lines == null) {
+                    seq = sendSnapshot(out);
+                } else if (lines.isEmpty()) {
+                    JournalEntry heartbeat = new JournalEntry(JournalEntry.HEARTBEAT);
+                    heartbeat.setSeq(seq);
+                    heartbeat.setEpoch(journal.getEpoch());
+                    heartbeat.setCommittedAt(System.currentTimeMillis());
+                    writeLine(out, journal.toLine(heartbeat));
+                } else {
+                    for (String line : lines) {
+                        writeLine(out, line);
+                    }
+                    seq += lines.size();
+                }
+                out.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Follower " + follower + " disconnected: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Sends every train and user as they are now and returns the seq the copy starts
+    // after. A change committed while the copy is read is sent again afterwards, which
+    // does no harm as changes set state.
+    private long sendSnapshot(Writer out) throws IOException {
+        long start = System.nanoTime();
+        long seq = journal.getLastSeq();
+        JournalEntry begin = new JournalEntry(JournalEntry.SNAPSHOT);
+        begin.setSeq(seq);
+        begin.setEpoch(journal.getEpoch());
+        begin.setCommittedAt(System.currentTimeMillis());
+        writeLine(out, journal.toLine(begin));
+        int trains = 0;
+        for (String trainId : repositories.trains().findAllIds()) {
+            Optional<Train> train = repositories.trains().findById(trainId);
+            if (train.isPresent()) {
+                writeLine(out, journal.toLine(JournalEntry.train(train.get())));
+                trains++;
+            }
+        }
+        int users = 0;
+        for (String userId : repositories.users().findAllIds()) {
+            String line;
+            // bookings add to the user's ticket list in place, under the booking service's lock
+            synchronized (bookingService) {
+                Optional<User> user = repositories.users().findById(userId);
+                line = user.isPresent() ? journal.toLine(JournalEntry.user(user.get())) : null;
+            }
+            if (line != null) {
+                writeLine(out, line);
+                users++;
+            }
+        }
+        JournalEntry end = new JournalEntry(JournalEntry.SNAPSHOT_END);
+        end.setSeq(seq);
+        end.setCommittedAt(System.currentTimeMillis());
+        writeLine(out, journal.toLine(end));
+        out.flush();
+        System.out.println("Sent snapshot of " + trains + " trains and " + users + " users at seq " + seq
+                + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return seq;
+    }
+
+    private static void writeLine(Writer out, String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        try {
+            serverSocket.close();
+        } finally {
+            bookingService.getTrainService().close();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ticket.booking.repository;
+
+import java.time.LocalDate;
+
+// Which part of a user's booking history to show. Travel dates are ISO yyyy-MM-dd
+// strings, so comparing them as strings compares the dates.
+public enum HistoryFilter {
+    // every ticket, earliest travel date first
+    ALL,
+    // travelling today or later, soonest first
+    UPCOMING,
+    // travelled before today, most recent first
+    PAST;
+
+    public boolean newestFirst() {
+        return this == PAST;
+    }
+
+    public static String today() {
+        return LocalDate.now().toString();
+    }
+}
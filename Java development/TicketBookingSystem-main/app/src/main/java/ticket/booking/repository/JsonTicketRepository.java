@@ -0,0 +1,161 @@
+package ticket.booking.repository;
+
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.User;
+import ticket.booking.storage.UserBucketStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+
+// In the JSON layout tickets are stored inside their owner's entry in the user bucket,
+// so saving or deleting a ticket marks the owner dirty and the bucket is rewritten on flush
+public class JsonTicketRepository implements TicketRepository {
+
+    private static final int MAX_INDEXED_USERS = 1_000;
+    private static final Comparator<String[]> HISTORY_ORDER =
+            Comparator.<String[], String>comparing(key -> key[0]).thenComparing(key -> key[1]);
+
+    private final UserBucketStore userStore;
+    // userId -> that user's tickets sorted by {travel date, ticket id}, built the first
+    // time the user's history is paged and kept up to date by save and delete.
+    // Least recently used first, so only users who look at their history stay indexed.
+    private final LinkedHashMap<String, History> historyIndex;
+
+    public JsonTicketRepository(UserBucketStore userStore) {
+        this.userStore = userStore;
+        historyIndex = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, History> eldest) {
+                return size() > MAX_INDEXED_USERS;
+            }
+        };
+    }
+
+    // The index of one user and the ticket list it was last brought up to date with.
+    // Every change through save and delete moves it along; a user whose list is another
+    // object now, e.g. read again from its bucket, is indexed again from scratch.
+    private static final class History {
+        final TreeMap<String[], Ticket> byDate = new TreeMap<>(HISTORY_ORDER);
+        List<Ticket> source;
+
+        History(List<Ticket> source) {
+            this.source = source;
+            for (Ticket ticket : source) {
+                byDate.put(historyKey(ticket), ticket);
+            }
+        }
+    }
+
+    @Override
+    public void save(Ticket ticket) throws IOException {
+        Optional<User> owner = userStore.findById(ticket.getUserId());
+        if (owner.isEmpty()) {
+            throw new IOException("No user " + ticket.getUserId() + " for ticket " + ticket.getTicketId());
+        }
+        List<Ticket> tickets = owner.get().getTicketsBooked();
+        if (tickets.stream().noneMatch(existing -> existing.getTicketId().equals(ticket.getTicketId()))) {
+            tickets = new ArrayList<>(tickets);
+            tickets.add(ticket);
+            owner.get().setTicketsBooked(tickets);
+        }
+        userStore.markDirty(owner.get());
+        synchronized (historyIndex) {
+            History history = historyIndex.get(ticket.getUserId());
+            if (history != null) {
+                history.byDate.put(historyKey(ticket), ticket);
+                history.source = tickets;
+            }
+        }
+    }
+
+    @Override
+    public boolean delete(Ticket ticket) throws IOException {
+        Optional<User> owner = userStore.findById(ticket.getUserId());
+        if (owner.isEmpty()) {
+            return false;
+        }
+        List<Ticket> tickets = new ArrayList<>(owner.get().getTicketsBooked());
+        boolean removed = tickets.removeIf(existing -> existing.getTicketId().equals(ticket.getTicketId()));
+        owner.get().setTicketsBooked(tickets);
+        userStore.markDirty(owner.get());
+        synchronized (historyIndex) {
+            History history = historyIndex.get(ticket.getUserId());
+            if (history != null) {
+                history.byDate.remove(historyKey(ticket));
+                history.source = tickets;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public List<Ticket> findByUserId(String userId) throws IOException {
+        return userStore.findById(userId)
+                .map(User::getTicketsBooked)
+                .orElse(Collections.emptyList());
+    }
+
+    @Override
+    public TicketPage findPage(String userId, HistoryFilter filter, String cursor, int limit) throws IOException {
+        List<Ticket> tickets = findByUserId(userId);
+        String[] after = TicketPage.parseCursor(cursor);
+        String[] today = {HistoryFilter.today(), ""};
+        synchronized (historyIndex) {
+            History history = historyIndex.get(userId);
+            // the user's list was replaced behind our back, e.g. reloaded after eviction
+            if (history == null || history.source != tickets) {
+                history = new History(tickets);
+                historyIndex.put(userId, history);
+            }
+            NavigableMap<String[], Ticket> view = history.byDate;
+            if (filter == HistoryFilter.UPCOMING) {
+                view = view.tailMap(today, true);
+            } else if (filter == HistoryFilter.PAST) {
+                view = view.headMap(today, false).descendingMap();
+            }
+            if (after != null) {
+                view = view.tailMap(after, false);
+            }
+            List<Ticket> page = new ArrayList<>(limit);
+            for (Ticket ticket : view.values()) {
+                if (page.size() == limit) {
+                    return new TicketPage(page, TicketPage.cursorOf(page.get(page.size() - 1)));
+                }
+                page.add(ticket);
+            }
+            return new TicketPage(page, null);
+        }
+    }
+
+    private static String[] historyKey(Ticket ticket) {
+        return new String[]{TicketPage.travelDate(ticket), ticket.getTicketId()};
+    }
+
+    @Override
+    public void flush() throws IOException {
+        userStore.flush();
+    }
+
+    // one partition per user bucket
+    @Override
+    public int partitionCount() {
+        return UserBucketStore.BUCKET_COUNT;
+    }
+
+    @Override
+    public void forEachInPartition(int partition, TicketVisitor visitor) throws IOException {
+        userStore.forEachUserInBucket(partition, user -> {
+            for (Ticket ticket : user.getTicketsBooked()) {
+                visitor.visit(ticket);
+            }
+        });
+    }
+}
@@ -0,0 +1,168 @@
+package ticket.booking.repository;
+
+import ticket.booking.entities.Train;
+import ticket.booking.storage.TrainManifestEntry;
+import ticket.booking.storage.TrainShardStore;
+import ticket.booking.utils.StationDictionary;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// Trains kept as one JSON shard per train, see TrainShardStore. There is no lock of its
+// own: the seats of a train are only changed by the BookingEngine writer that owns it,
+// and flushing one train never waits for the files of another.
+public class JsonTrainRepository implements TrainRepository {
+
+    private final TrainShardStore trainStore;
+    // trainId (lowercase) -> trains whose seats changed in memory and still have to be
+    // written. They are kept here until then, whatever the store's cache drops meanwhile.
+    private final Map<String, Train> dirtyTrains = new ConcurrentHashMap<>();
+
+    public JsonTrainRepository(TrainShardStore trainStore) {
+        this.trainStore = trainStore;
+    }
+
+    @Override
+    public List<Train> findByRoute(String source, String destination) {
+        // routes come from the manifest so only matching trains get their shard loaded
+        return findIdsByRoute(source, destination).stream()
+                .map(this::findById)
+                .flatMap(Optional::stream)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<String> findIdsByRoute(String source, String destination) {
+        // station names are turned into ids once, the scan itself only compares ints
+        int from = StationDictionary.lookup(source);
+        int to = StationDictionary.lookup(destination);
+        if (from < 0 || to < 0) {
+            return List.of();
+        }
+        return trainStore.listTrains().stream()
+                .filter(entry -> entry.servesInOrder(from, to))
+                .map(TrainManifestEntry::getTrainId)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Optional<Train> findById(String trainId) {
+        Train dirty = dirtyTrains.get(key(trainId));
+        return dirty != null ? Optional.of(dirty) : trainStore.load(trainId);
+    }
+
+    @Override
+    public boolean exists(String trainId) {
+        return trainStore.contains(trainId);
+    }
+
+    @Override
+    public List<String> findAllIds() {
+        return trainStore.listTrains().stream()
+                .map(TrainManifestEntry::getTrainId)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<String> findAllStations() {
+        return trainStore.listTrains().stream()
+                .flatMap(entry -> entry.getStations().stream())
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void save(Train train) throws IOException {
+        trainStore.save(train);
+        dirtyTrains.remove(key(train.getTrainId()));
+    }
+
+    @Override
+    public void saveAll(List<Train> trains) throws IOException {
+        trainStore.saveAll(trains);
+        for (Train train : trains) {
+            dirtyTrains.remove(key(train.getTrainId()));
+        }
+    }
+
+    @Override
+    public boolean updateSeat(String trainId, int row, int seat, int expectedValue, int newValue) {
+        Optional<Train> train = findById(trainId);
+        if (train.isEmpty()) {
+            return false;
+        }
+        List<List<Integer>> seats = train.get().getSeats();
+        if (row < 0 || row >= seats.size() || seat < 0 || seat >= seats.get(row).size()) {
+            return false;
+        }
+        if (seats.get(row).get(seat) != expectedValue) {
+            return false;
+        }
+        seats.get(row).set(seat, newValue);
+        dirtyTrains.put(key(trainId), train.get());
+        return true;
+    }
+
+    // Writes the shards of trains changed by updateSeat, each one once
+    @Override
+    public void flush() throws IOException {
+        flush(List.copyOf(dirtyTrains.keySet()));
+    }
+
+    @Override
+    public void flush(Collection<String> trainIds) throws IOException {
+        for (String trainId : trainIds) {
+            // taken out before writing: a change made while the file is written marks it dirty again
+            Train train = dirtyTrains.remove(key(trainId));
+            if (train == null) {
+                continue;
+            }
+            try {
+                trainStore.save(train);
+            } catch (IOException e) {
+                dirtyTrains.putIfAbsent(key(trainId), train);
+                throw e;
+            }
+        }
+    }
+
+    // The methods below let CatalogWatcher apply edits made to the files while the app runs
+
+    public TrainShardStore getTrainStore() {
+        return trainStore;
+    }
+
+    // Removes a train completely, used when it disappears from a reloaded trains.json
+    public void remove(String trainId) throws IOException {
+        trainStore.remove(trainId);
+        dirtyTrains.remove(key(trainId));
+    }
+
+    // Re-reads a changed shard unless the train has seat changes that are not written
+    // yet; those win and overwrite the file on the next flush
+    public Optional<Train> reloadShard(String fileName) throws IOException {
+        if (trainStore.isOwnWrite(fileName)) {
+            return Optional.empty();
+        }
+        for (String dirtyTrainKey : dirtyTrains.keySet()) {
+            if (TrainShardStore.shardFileName(dirtyTrainKey).equals(fileName)) {
+                return Optional.empty();
+            }
+        }
+        return trainStore.reloadShard(fileName);
+    }
+
+    public TrainShardStore.ManifestDiff reloadManifest() throws IOException {
+        return trainStore.reloadManifest();
+    }
+
+    private static String key(String trainId) {
+        return trainId.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,51 @@
+package ticket.booking.repository;
+
+import ticket.booking.entities.User;
+import ticket.booking.storage.UserBucketStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+// Users kept in hash bucket files, see UserBucketStore
+public class JsonUserRepository implements UserRepository {
+
+    private final UserBucketStore userStore;
+
+    public JsonUserRepository(UserBucketStore userStore) {
+        this.userStore = userStore;
+    }
+
+    @Override
+    public Optional<User> findByUsername(String username) throws IOException {
+        return userStore.findByUsername(username);
+    }
+
+    @Override
+    public Optional<User> findById(String userId) throws IOException {
+        return userStore.findById(userId);
+    }
+
+    @Override
+    public boolean usernameTaken(String username) throws IOException {
+        return userStore.usernameTaken(username);
+    }
+
+    @Override
+    public void add(User user) throws IOException {
+        userStore.add(user);
+    }
+
+    @Override
+    public List<String> findAllIds() throws IOException {
+        List<String> userIds = new ArrayList<>();
+        userStore.forEachUser(user -> userIds.add(user.getUserId()));
+        return userIds;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        userStore.flush();
+    }
+}
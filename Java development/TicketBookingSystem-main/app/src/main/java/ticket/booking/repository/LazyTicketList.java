@@ -0,0 +1,65 @@
+package ticket.booking.repository;
+
+import ticket.booking.entities.Ticket;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+// The tickets of a user read from the database, read the first time the list is used.
+// Changes after that are made to the list only, the repository writes tickets itself.
+final class LazyTicketList extends AbstractList<Ticket> {
+
+    private final SqlTicketRepository ticketRepository;
+    private final String userId;
+    private List<Ticket> tickets;
+
+    LazyTicketList(SqlTicketRepository ticketRepository, String userId) {
+        this.ticketRepository = ticketRepository;
+        this.userId = userId;
+    }
+
+    private synchronized List<Ticket> tickets() {
+        if (tickets == null) {
+            try {
+                tickets = new ArrayList<>(ticketRepository.findByUserId(userId));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return tickets;
+    }
+
+    boolean isLoaded() {
+        return tickets != null;
+    }
+
+    @Override
+    public Ticket get(int index) {
+        return tickets().get(index);
+    }
+
+    @Override
+    public int size() {
+        return tickets().size();
+    }
+
+    @Override
+    public Ticket set(int index, Ticket ticket) {
+        return tickets().set(index, ticket);
+    }
+
+    @Override
+    public void add(int index, Ticket ticket) {
+        tickets().add(index, ticket);
+        modCount++;
+    }
+
+    @Override
+    public Ticket remove(int index) {
+        modCount++;
+        return tickets().remove(index);
+    }
+}
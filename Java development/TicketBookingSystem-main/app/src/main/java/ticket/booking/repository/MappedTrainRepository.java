@@ -0,0 +1,112 @@
+package ticket.booking.repository;
+
+import ticket.booking.entities.Train;
+import ticket.booking.storage.MappedSeatInventory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+// Trains whose timetable stays in the JSON shards while their seats live in a
+// MappedSeatInventory. A booking changes one byte of the mapped file, no shard is
+// rewritten, and after a restart the seats come from the file instead of the JSON. A
+// train's shard only gives its seats the first time the train is seen, when they are
+// copied into the inventory; a shard is rewritten when its train is replaced.
+// Trains are returned with their seats read straight from the mapping. The shard
+// store keeps such a train in place of the one it read, so its outdated seats are
+// dropped and the next read of the train does not parse the shard again.
+// Selected with -Dbooking.inventory=mapped next to the JSON storage.
+public class MappedTrainRepository implements TrainRepository {
+
+    private final JsonTrainRepository timetable;
+    private final MappedSeatInventory inventory;
+
+    public MappedTrainRepository(JsonTrainRepository timetable, MappedSeatInventory inventory) {
+        this.timetable = timetable;
+        this.inventory = inventory;
+    }
+
+    @Override
+    public List<Train> findByRoute(String source, String destination) throws IOException {
+        List<Train> trains = new ArrayList<>();
+        for (String trainId : findIdsByRoute(source, destination)) {
+            findById(trainId).ifPresent(trains::add);
+        }
+        return trains;
+    }
+
+    @Override
+    public List<String> findIdsByRoute(String source, String destination) {
+        return timetable.findIdsByRoute(source, destination);
+    }
+
+    @Override
+    public Optional<Train> findById(String trainId) throws IOException {
+        Optional<Train> train = timetable.findById(trainId);
+        if (train.isEmpty()) {
+            return train;
+        }
+        List<List<Integer>> seats;
+        synchronized (this) {
+            seats = inventory.seats(trainId);
+            if (seats == null) {
+                inventory.write(trainId, train.get().getSeats());
+                seats = inventory.seats(trainId);
+            }
+        }
+        Train mapped = train.get().withSeats(seats);
+        timetable.getTrainStore().replaceLoaded(train.get(), mapped);
+        return Optional.of(mapped);
+    }
+
+    @Override
+    public boolean exists(String trainId) {
+        return timetable.exists(trainId);
+    }
+
+    @Override
+    public List<String> findAllIds() {
+        return timetable.findAllIds();
+    }
+
+    @Override
+    public List<String> findAllStations() {
+        return timetable.findAllStations();
+    }
+
+    @Override
+    public synchronized void save(Train train) throws IOException {
+        timetable.save(train);
+        inventory.write(train.getTrainId(), train.getSeats());
+        timetable.getTrainStore().evict(train.getTrainId());
+    }
+
+    @Override
+    public synchronized void saveAll(List<Train> trains) throws IOException {
+        timetable.saveAll(trains);
+        for (Train train : trains) {
+            inventory.write(train.getTrainId(), train.getSeats());
+            timetable.getTrainStore().evict(train.getTrainId());
+        }
+    }
+
+    // Written in place at once, there is nothing to buffer
+    @Override
+    public boolean updateSeat(String trainId, int row, int seat, int expectedValue, int newValue) throws IOException {
+        if (!inventory.contains(trainId) && findById(trainId).isEmpty()) {
+            return false;
+        }
+        return inventory.compareAndSet(trainId, row, seat, expectedValue, newValue);
+    }
+
+    // Seats are already in the mapped file, the checkpoints make them durable (see
+    // MappedSeatInventory), so a booking's flush costs nothing
+    @Override
+    public void flush() {
+    }
+
+    public MappedSeatInventory getInventory() {
+        return inventory;
+    }
+}
@@ -0,0 +1,89 @@
+package ticket.booking.repository;
+
+import ticket.booking.storage.MappedSeatInventory;
+import ticket.booking.storage.TrainShardStore;
+import ticket.booking.storage.UserBucketStore;
+
+import java.io.IOException;
+import java.util.Locale;
+
+// The three repositories of one storage backend. The backend is picked with
+// -Dbooking.storage=json (default, the files in localDb) or -Dbooking.storage=sql
+// (embedded H2 database, filled from the JSON files the first time it is opened).
+// With JSON, -Dbooking.inventory=mapped keeps the seats in a memory-mapped file instead
+// of the shards, see MappedTrainRepository.
+public class Repositories {
+
+    public static final String STORAGE_PROPERTY = "booking.storage";
+    public static final String INVENTORY_PROPERTY = "booking.inventory";
+
+    private final TrainRepository trains;
+    private final UserRepository users;
+    private final TicketRepository tickets;
+
+    public Repositories(TrainRepository trains, UserRepository users, TicketRepository tickets) {
+        this.trains = trains;
+        this.users = users;
+        this.tickets = tickets;
+    }
+
+    public static Repositories open() throws IOException {
+        String backend = System.getProperty(STORAGE_PROPERTY, "json").toLowerCase(Locale.ROOT);
+        switch (backend) {
+            case "json":
+                return json();
+            case "sql":
+                return sql(SqlDatabase.DEFAULT_URL);
+            default:
+                throw new IOException("Unknown storage backend " + backend + ", expected json or sql");
+        }
+    }
+
+    public static Repositories json() throws IOException {
+        UserBucketStore userStore = new UserBucketStore();
+        return new Repositories(withInventory(new JsonTrainRepository(new TrainShardStore())),
+                new JsonUserRepository(userStore), new JsonTicketRepository(userStore));
+    }
+
+    private static TrainRepository withInventory(JsonTrainRepository trains) throws IOException {
+        String inventory = System.getProperty(INVENTORY_PROPERTY, "json").toLowerCase(Locale.ROOT);
+        switch (inventory) {
+            case "json":
+                return trains;
+            case "mapped":
+                MappedSeatInventory seats = new MappedSeatInventory();
+                // -Dbooking.inventoryCheckpointMillis sets how much a machine crash can lose
+                seats.startCheckpoints(Long.getLong("booking.inventoryCheckpointMillis", 1000));
+                return new MappedTrainRepository(trains, seats);
+            default:
+                throw new IOException("Unknown seat inventory " + inventory + ", expected json or mapped");
+        }
+    }
+
+    public static Repositories sql(String url) throws IOException {
+        SqlDatabase database = SqlDatabase.open(url);
+        if (database.isEmpty()) {
+            database.importFromJson(new TrainShardStore(), new UserBucketStore());
+        }
+        return new Repositories(database.trains(), database.users(), database.tickets());
+    }
+
+    public TrainRepository trains() {
+        return trains;
+    }
+
+    public UserRepository users() {
+        return users;
+    }
+
+    public TicketRepository tickets() {
+        return tickets;
+    }
+
+    // writes whatever the JSON backend still buffers, a no-op for SQL
+    public void flush() throws IOException {
+        trains.flush();
+        users.flush();
+        tickets.flush();
+    }
+}
@@ -0,0 +1,132 @@
+package ticket.booking.repository;
+
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.storage.TrainShardStore;
+import ticket.booking.storage.UserBucketStore;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+// Embedded, in-process H2 database holding trains, seats, users and tickets.
+// A booking is a single UPDATE of one seats row instead of a file rewrite.
+public class SqlDatabase {
+
+    public static final String DEFAULT_URL = "jdbc:h2:./app/src/main/java/ticket/booking/localDb/booking";
+    // rows sent per executeBatch() when importing
+    static final int BATCH_SIZE = 500;
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS trains (train_id VARCHAR(64) PRIMARY KEY, train_no VARCHAR(64) NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS train_stations (train_id VARCHAR(64) NOT NULL, position INT NOT NULL, "
+                    + "station VARCHAR(128) NOT NULL, station_time VARCHAR(32), PRIMARY KEY (train_id, position))",
+            "CREATE INDEX IF NOT EXISTS idx_train_stations_station ON train_stations (station, train_id, position)",
+            "CREATE TABLE IF NOT EXISTS seats (train_id VARCHAR(64) NOT NULL, seat_row INT NOT NULL, seat_col INT NOT NULL, "
+                    + "taken INT NOT NULL, PRIMARY KEY (train_id, seat_row, seat_col))",
+            "CREATE TABLE IF NOT EXISTS train_coaches (train_id VARCHAR(64) NOT NULL, position INT NOT NULL, "
+                    + "coach_id VARCHAR(32) NOT NULL, travel_class VARCHAR(16) NOT NULL, first_row INT NOT NULL, "
+                    + "row_count INT NOT NULL, PRIMARY KEY (train_id, position))",
+            "CREATE TABLE IF NOT EXISTS users (user_id VARCHAR(64) PRIMARY KEY, username VARCHAR(128) NOT NULL, "
+                    + "hashed_password VARCHAR(128) NOT NULL)",
+            "CREATE UNIQUE INDEX IF NOT EXISTS idx_users_username ON users (username)",
+            "CREATE TABLE IF NOT EXISTS tickets (ticket_id VARCHAR(64) PRIMARY KEY, user_id VARCHAR(64) NOT NULL, "
+                    + "train_id VARCHAR(64), source VARCHAR(128), destination VARCHAR(128), date_of_travel VARCHAR(32), "
+                    + "seat_row INT, seat_col INT)",
+            "CREATE INDEX IF NOT EXISTS idx_tickets_user_travel ON tickets (user_id, date_of_travel, ticket_id)",
+            "CREATE INDEX IF NOT EXISTS idx_tickets_train ON tickets (train_id)"
+    };
+
+    // each repository has its own connection so their transactions never interleave
+    private final List<Connection> connections;
+    private final SqlTrainRepository trainRepository;
+    private final SqlUserRepository userRepository;
+    private final SqlTicketRepository ticketRepository;
+
+    private SqlDatabase(String url) throws SQLException {
+        connections = List.of(DriverManager.getConnection(url), DriverManager.getConnection(url), DriverManager.getConnection(url));
+        trainRepository = new SqlTrainRepository(connections.get(0));
+        ticketRepository = new SqlTicketRepository(connections.get(1));
+        userRepository = new SqlUserRepository(connections.get(2), ticketRepository);
+    }
+
+    public static SqlDatabase open(String url) throws IOException {
+        try {
+            SqlDatabase database = new SqlDatabase(url);
+            database.createSchema();
+            return database;
+        } catch (SQLException e) {
+            throw new IOException("Failed to open database " + url, e);
+        }
+    }
+
+    private void createSchema() throws SQLException {
+        try (Statement statement = connections.get(0).createStatement()) {
+            for (String ddl : SCHEMA) {
+                statement.execute(ddl);
+            }
+        }
+    }
+
+    public boolean isEmpty() throws IOException {
+        try (Statement statement = connections.get(0).createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM trains")) {
+            resultSet.next();
+            return resultSet.getLong(1) == 0;
+        } catch (SQLException e) {
+            throw new IOException("Failed to count trains", e);
+        }
+    }
+
+    // Copies everything from the JSON layout, used the first time the database is opened
+    public void importFromJson(TrainShardStore trainStore, UserBucketStore userStore) throws IOException {
+        List<Train> trains = new ArrayList<>();
+        for (String trainId : new JsonTrainRepository(trainStore).findAllIds()) {
+            Optional<Train> train = trainStore.load(trainId);
+            train.ifPresent(trains::add);
+            if (trains.size() >= BATCH_SIZE) {
+                trainRepository.saveAll(trains);
+                trains.clear();
+            }
+        }
+        trainRepository.saveAll(trains);
+
+        List<User> users = new ArrayList<>();
+        userStore.forEachUser(user -> {
+            users.add(user);
+            if (users.size() >= BATCH_SIZE) {
+                userRepository.addAll(users);
+                users.clear();
+            }
+        });
+        userRepository.addAll(users);
+    }
+
+    public TrainRepository trains() {
+        return trainRepository;
+    }
+
+    public UserRepository users() {
+        return userRepository;
+    }
+
+    public TicketRepository tickets() {
+        return ticketRepository;
+    }
+
+    public void close() throws IOException {
+        try {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to close database", e);
+        }
+    }
+}
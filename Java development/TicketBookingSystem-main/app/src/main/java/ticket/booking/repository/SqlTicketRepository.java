@@ -0,0 +1,198 @@
+package ticket.booking.repository;
+
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SqlTicketRepository implements TicketRepository {
+
+    private static final String INSERT_TICKET = "INSERT INTO tickets (ticket_id, user_id, train_id, source, destination, "
+            + "date_of_travel, seat_row, seat_col) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String TICKET_COLUMNS =
+            "ticket_id, train_id, source, destination, date_of_travel, seat_row, seat_col";
+    // a ticket's train is only its id and number, as in the JSON layout, so reading a
+    // history never loads the seats and stations of its trains
+    private static final String TICKETS_WITH_TRAIN_NO = "SELECT k.ticket_id, k.train_id, k.source, k.destination, "
+            + "k.date_of_travel, k.seat_row, k.seat_col, t.train_no FROM tickets k LEFT JOIN trains t ON t.train_id = k.train_id";
+
+    private final Connection connection;
+
+    SqlTicketRepository(Connection connection) {
+        this.connection = connection;
+    }
+
+    @Override
+    public synchronized void save(Ticket ticket) throws IOException {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_TICKET)) {
+            bind(statement, ticket);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new IOException("Failed to save ticket " + ticket.getTicketId(), e);
+        }
+    }
+
+    // Inserts the tickets of an imported or newly added user with one batch
+    synchronized void saveAll(List<Ticket> tickets) throws IOException {
+        if (tickets.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_TICKET)) {
+            for (Ticket ticket : tickets) {
+                bind(statement, ticket);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } catch (SQLException e) {
+            throw new IOException("Failed to save " + tickets.size() + " tickets", e);
+        }
+    }
+
+    private static void bind(PreparedStatement statement, Ticket ticket) throws SQLException {
+        statement.setString(1, ticket.getTicketId());
+        statement.setString(2, ticket.getUserId());
+        statement.setString(3, ticket.getTrain() != null ? ticket.getTrain().getTrainId() : null);
+        statement.setString(4, ticket.getSource());
+        statement.setString(5, ticket.getDestination());
+        statement.setString(6, ticket.getDateOfTravel());
+        if (ticket.getRow() != null && ticket.getSeat() != null) {
+            statement.setInt(7, ticket.getRow());
+            statement.setInt(8, ticket.getSeat());
+        } else {
+            statement.setNull(7, Types.INTEGER);
+            statement.setNull(8, Types.INTEGER);
+        }
+    }
+
+    @Override
+    public synchronized boolean delete(Ticket ticket) throws IOException {
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM tickets WHERE ticket_id = ?")) {
+            statement.setString(1, ticket.getTicketId());
+            return statement.executeUpdate() == 1;
+        } catch (SQLException e) {
+            throw new IOException("Failed to delete ticket " + ticket.getTicketId(), e);
+        }
+    }
+
+    @Override
+    public synchronized List<Ticket> findByUserId(String userId) throws IOException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                TICKETS_WITH_TRAIN_NO + " WHERE user_id = ? ORDER BY ticket_id")) {
+            statement.setString(1, userId);
+            return readTickets(statement, userId);
+        } catch (SQLException e) {
+            throw new IOException("Failed to load tickets of user " + userId, e);
+        }
+    }
+
+    // Keyset pagination on idx_tickets_user_travel: the cursor is the last row's
+    // (date_of_travel, ticket_id), so every page is one index range scan however deep
+    // into the history it is
+    @Override
+    public synchronized TicketPage findPage(String userId, HistoryFilter filter, String cursor, int limit) throws IOException {
+        String[] after = TicketPage.parseCursor(cursor);
+        String direction = filter.newestFirst() ? "DESC" : "ASC";
+        StringBuilder sql = new StringBuilder(TICKETS_WITH_TRAIN_NO + " WHERE user_id = ?");
+        List<String> parameters = new ArrayList<>();
+        parameters.add(userId);
+        if (filter == HistoryFilter.UPCOMING) {
+            sql.append(" AND COALESCE(date_of_travel, '') >= ?");
+            parameters.add(HistoryFilter.today());
+        } else if (filter == HistoryFilter.PAST) {
+            sql.append(" AND COALESCE(date_of_travel, '') < ?");
+            parameters.add(HistoryFilter.today());
+        }
+        if (after != null) {
+            sql.append(filter.newestFirst() ? " AND (COALESCE(date_of_travel, ''), ticket_id) < (?, ?)"
+                    : " AND (COALESCE(date_of_travel, ''), ticket_id) > (?, ?)");
+            parameters.add(after[0]);
+            parameters.add(after[1]);
+        }
+        sql.append(" ORDER BY date_of_travel ").append(direction).append(", ticket_id ").append(direction);
+        // one extra row tells whether there is a next page
+        sql.append(" LIMIT ").append(limit + 1);
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setString(i + 1, parameters.get(i));
+            }
+            List<Ticket> tickets = readTickets(statement, userId);
+            if (tickets.size() <= limit) {
+                return new TicketPage(tickets, null);
+            }
+            List<Ticket> page = new ArrayList<>(tickets.subList(0, limit));
+            return new TicketPage(page, TicketPage.cursorOf(page.get(limit - 1)));
+        } catch (SQLException e) {
+            throw new IOException("Failed to load booking history of user " + userId, e);
+        }
+    }
+
+    private List<Ticket> readTickets(PreparedStatement statement, String userId) throws SQLException {
+        List<Ticket> tickets = new ArrayList<>();
+        // the same train is usually on many of a user's tickets
+        Map<String, Train> trains = new HashMap<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                String trainId = resultSet.getString(2);
+                String trainNo = resultSet.getString(8);
+                Train train = trainId == null ? null : trains.computeIfAbsent(trainId, id -> trainStub(id, trainNo));
+                Ticket ticket = new Ticket(resultSet.getString(1), userId, resultSet.getString(3),
+                        resultSet.getString(4), resultSet.getString(5), train);
+                ticket.setRow((Integer) resultSet.getObject(6));
+                ticket.setSeat((Integer) resultSet.getObject(7));
+                tickets.add(ticket);
+            }
+        }
+        return tickets;
+    }
+
+    private static Train trainStub(String trainId, String trainNo) {
+        Train stub = new Train();
+        stub.setTrainId(trainId);
+        stub.setTrainNo(trainNo);
+        return stub;
+    }
+
+    @Override
+    public void flush() {
+        // every statement is committed as it runs
+    }
+
+    // all statements share one connection, so splitting the scan would not make it faster
+    @Override
+    public int partitionCount() {
+        return 1;
+    }
+
+    // Streams the whole table, the train of each ticket is only its id
+    @Override
+    public synchronized void forEachInPartition(int partition, TicketVisitor visitor) throws IOException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT " + TICKET_COLUMNS + ", user_id FROM tickets")) {
+            statement.setFetchSize(10_000);
+            Map<String, Train> trains = new HashMap<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String trainId = resultSet.getString(2);
+                    Train train = trainId == null ? null : trains.computeIfAbsent(trainId, id -> trainStub(id, null));
+                    Ticket ticket = new Ticket(resultSet.getString(1), resultSet.getString(8), resultSet.getString(3),
+                            resultSet.getString(4), resultSet.getString(5), train);
+                    ticket.setRow((Integer) resultSet.getObject(6));
+                    ticket.setSeat((Integer) resultSet.getObject(7));
+                    visitor.visit(ticket);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to scan tickets", e);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package ticket.booking.repository;
+
+import ticket.booking.entities.Coach;
+import ticket.booking.entities.Train;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class SqlTrainRepository implements TrainRepository {
+
+    private final Connection connection;
+
+    SqlTrainRepository(Connection connection) {
+        this.connection = connection;
+    }
+
+    @Override
+    public synchronized List<Train> findByRoute(String source, String destination) throws IOException {
+        List<Train> trains = new ArrayList<>();
+        for (String trainId : findIdsByRoute(source, destination)) {
+            findById(trainId).ifPresent(trains::add);
+        }
+        return trains;
+    }
+
+    @Override
+    public synchronized List<String> findIdsByRoute(String source, String destination) throws IOException {
+        String sql = "SELECT s.train_id FROM train_stations s JOIN train_stations d ON d.train_id = s.train_id "
+                + "WHERE s.station = ? AND d.station = ? AND s.position < d.position";
+        List<String> trainIds = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, source);
+            statement.setString(2, destination);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    trainIds.add(resultSet.getString(1));
+                }
+            }
+            return trainIds;
+        } catch (SQLException e) {
+            throw new IOException("Failed to search trains from " + source + " to " + destination, e);
+        }
+    }
+
+    @Override
+    public synchronized Optional<Train> findById(String trainId) throws IOException {
+        try {
+            String trainNo;
+            try (PreparedStatement statement = connection.prepareStatement("SELECT train_id, train_no FROM trains WHERE train_id = ?")) {
+                statement.setString(1, trainId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (!resultSet.next()) {
+                        return Optional.empty();
+                    }
+                    trainId = resultSet.getString(1);
+                    trainNo = resultSet.getString(2);
+                }
+            }
+
+            List<String> stations = new ArrayList<>();
+            Map<String, String> stationTimes = new LinkedHashMap<>();
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT station, station_time FROM train_stations WHERE train_id = ? ORDER BY position")) {
+                statement.setString(1, trainId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        stations.add(resultSet.getString(1));
+                        stationTimes.put(resultSet.getString(1), resultSet.getString(2));
+                    }
+                }
+            }
+
+            List<List<Integer>> seats = new ArrayList<>();
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT seat_row, taken FROM seats WHERE train_id = ? ORDER BY seat_row, seat_col")) {
+                statement.setString(1, trainId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        int row = resultSet.getInt(1);
+                        while (seats.size() <= row) {
+                            seats.add(new ArrayList<>());
+                        }
+                        seats.get(row).add(resultSet.getInt(2));
+                    }
+                }
+            }
+            List<Coach> coaches = new ArrayList<>();
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT coach_id, travel_class, first_row, row_count FROM train_coaches WHERE train_id = ? ORDER BY position")) {
+                statement.setString(1, trainId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        coaches.add(new Coach(resultSet.getString(1), resultSet.getString(2), resultSet.getInt(3), resultSet.getInt(4)));
+                    }
+                }
+            }
+            Train train = new Train(trainId, trainNo, seats, stationTimes, stations);
+            // trains saved before coaches existed have no rows here, they keep none and
+            // book by the default coach
+            train.setCoaches(coaches.isEmpty() ? null : coaches);
+            return Optional.of(train);
+        } catch (SQLException e) {
+            throw new IOException("Failed to load train " + trainId, e);
+        }
+    }
+
+    @Override
+    public synchronized boolean exists(String trainId) throws IOException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM trains WHERE train_id = ?")) {
+            statement.setString(1, trainId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to look up train " + trainId, e);
+        }
+    }
+
+    @Override
+    public synchronized List<String> findAllIds() throws IOException {
+        List<String> trainIds = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT train_id FROM trains ORDER BY train_id");
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                trainIds.add(resultSet.getString(1));
+            }
+            return trainIds;
+        } catch (SQLException e) {
+            throw new IOException("Failed to list trains", e);
+        }
+    }
+
+    @Override
+    public synchronized List<String> findAllStations() throws IOException {
+        List<String> stations = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT DISTINCT station FROM train_stations");
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                stations.add(resultSet.getString(1));
+            }
+            return stations;
+        } catch (SQLException e) {
+            throw new IOException("Failed to list stations", e);
+        }
+    }
+
+    @Override
+    public void save(Train train) throws IOException {
+        saveAll(Collections.singletonList(train));
+    }
+
+    // Replaces the given trains in one transaction, each table written with batched statements
+    @Override
+    public synchronized void saveAll(List<Train> trains) throws IOException {
+        if (trains.isEmpty()) {
+            return;
+        }
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement deleteSeats = connection.prepareStatement("DELETE FROM seats WHERE train_id = ?");
+                 PreparedStatement deleteStations = connection.prepareStatement("DELETE FROM train_stations WHERE train_id = ?");
+                 PreparedStatement deleteCoaches = connection.prepareStatement("DELETE FROM train_coaches WHERE train_id = ?");
+                 PreparedStatement deleteTrain = connection.prepareStatement("DELETE FROM trains WHERE train_id = ?");
+                 PreparedStatement insertTrain = connection.prepareStatement("INSERT INTO trains (train_id, train_no) VALUES (?, ?)");
+                 PreparedStatement insertStation = connection.prepareStatement(
+                         "INSERT INTO train_stations (train_id, position, station, station_time) VALUES (?, ?, ?, ?)");
+                 PreparedStatement insertSeat = connection.prepareStatement(
+                         "INSERT INTO seats (train_id, seat_row, seat_col, taken) VALUES (?, ?, ?, ?)");
+                 PreparedStatement insertCoach = connection.prepareStatement(
+                         "INSERT INTO train_coaches (train_id, position, coach_id, travel_class, first_row, row_count) VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (Train train : trains) {
+                    for (PreparedStatement delete : List.of(deleteSeats, deleteStations, deleteCoaches, deleteTrain)) {
+                        delete.setString(1, train.getTrainId());
+                        delete.addBatch();
+                    }
+                    insertTrain.setString(1, train.getTrainId());
+                    insertTrain.setString(2, train.getTrainNo());
+                    insertTrain.addBatch();
+                    List<String> stations = train.getStations();
+                    Map<String, String> stationTimes = train.getStationTimes();
+                    for (int position = 0; position < stations.size(); position++) {
+                        insertStation.setString(1, train.getTrainId());
+                        insertStation.setInt(2, position);
+                        insertStation.setString(3, stations.get(position));
+                        insertStation.setString(4, stationTimes.get(stations.get(position)));
+                        insertStation.addBatch();
+                    }
+                    List<List<Integer>> seats = train.getSeats();
+                    for (int row = 0; row < seats.size(); row++) {
+                        for (int col = 0; col < seats.get(row).size(); col++) {
+                            insertSeat.setString(1, train.getTrainId());
+                            insertSeat.setInt(2, row);
+                            insertSeat.setInt(3, col);
+                            insertSeat.setInt(4, seats.get(row).get(col));
+                            insertSeat.addBatch();
+                        }
+                    }
+                    List<Coach> coaches = train.getCoaches() == null ? List.of() : train.getCoaches();
+                    for (int position = 0; position < coaches.size(); position++) {
+                        Coach coach = coaches.get(position);
+                        insertCoach.setString(1, train.getTrainId());
+                        insertCoach.setInt(2, position);
+                        insertCoach.setString(3, coach.getCoachId());
+                        insertCoach.setString(4, coach.getTravelClass());
+                        insertCoach.setInt(5, coach.getFirstRow());
+                        insertCoach.setInt(6, coach.getRowCount());
+                        insertCoach.addBatch();
+                    }
+                }
+                deleteSeats.executeBatch();
+                deleteStations.executeBatch();
+                deleteCoaches.executeBatch();
+                deleteTrain.executeBatch();
+                insertTrain.executeBatch();
+                insertStation.executeBatch();
+                insertSeat.executeBatch();
+                insertCoach.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            rollback();
+            throw new IOException("Failed to save " + trains.size() + " trains", e);
+        } finally {
+            restoreAutoCommit();
+        }
+    }
+
+    // A booking or cancellation is this one conditional row update
+    @Override
+    public synchronized boolean updateSeat(String trainId, int row, int seat, int expectedValue, int newValue) throws IOException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "UPDATE seats SET taken = ? WHERE train_id = ? AND seat_row = ? AND seat_col = ? AND taken = ?")) {
+            statement.setInt(1, newValue);
+            statement.setString(2, trainId);
+            statement.setInt(3, row);
+            statement.setInt(4, seat);
+            statement.setInt(5, expectedValue);
+            return statement.executeUpdate() == 1;
+        } catch (SQLException e) {
+            throw new IOException("Failed to update seat " + row + "," + seat + " of train " + trainId, e);
+        }
+    }
+
+    @Override
+    public void flush() {
+        // every statement is committed as it runs
+    }
+
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            System.out.println("Rollback failed: " + e.getMessage());
+        }
+    }
+
+    private void restoreAutoCommit() {
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            System.out.println("Failed to restore auto commit: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ticket.booking.repository;
+
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.User;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+public class SqlUserRepository implements UserRepository {
+
+    private final Connection connection;
+    private final SqlTicketRepository ticketRepository;
+
+    SqlUserRepository(Connection connection, SqlTicketRepository ticketRepository) {
+        this.connection = connection;
+        this.ticketRepository = ticketRepository;
+    }
+
+    @Override
+    public Optional<User> findByUsername(String username) throws IOException {
+        return findOne("SELECT user_id, username, hashed_password FROM users WHERE username = ?", username);
+    }
+
+    @Override
+    public Optional<User> findById(String userId) throws IOException {
+        return findOne("SELECT user_id, username, hashed_password FROM users WHERE user_id = ?", userId);
+    }
+
+    private synchronized Optional<User> findOne(String sql, String key) throws IOException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, key);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return Optional.empty();
+                }
+                String userId = resultSet.getString(1);
+                // sessions look their user up on every request, most never need the tickets
+                return Optional.of(new User(resultSet.getString(2), null, resultSet.getString(3),
+                        new LazyTicketList(ticketRepository, userId), userId));
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to load user " + key, e);
+        }
+    }
+
+    @Override
+    public synchronized boolean usernameTaken(String username) throws IOException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM users WHERE username = ?")) {
+            statement.setString(1, username);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to look up username " + username, e);
+        }
+    }
+
+    @Override
+    public void add(User user) throws IOException {
+        addAll(Collections.singletonList(user));
+    }
+
+    // Inserts users with one batched statement, then their tickets with another
+    synchronized void addAll(List<User> users) throws IOException {
+        if (users.isEmpty()) {
+            return;
+        }
+        List<Ticket> tickets = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO users (user_id, username, hashed_password) VALUES (?, ?, ?)")) {
+            for (User user : users) {
+                statement.setString(1, user.getUserId());
+                statement.setString(2, user.getUsername());
+                statement.setString(3, user.getHashedPassword());
+                statement.addBatch();
+                if (user.getTicketsBooked() != null) {
+                    tickets.addAll(user.getTicketsBooked());
+                }
+            }
+            statement.executeBatch();
+        } catch (SQLException e) {
+            throw new IOException("Failed to save " + users.size() + " users", e);
+        }
+        ticketRepository.saveAll(tickets);
+    }
+
+    @Override
+    public synchronized List<String> findAllIds() throws IOException {
+        List<String> userIds = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT user_id FROM users ORDER BY user_id");
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                userIds.add(resultSet.getString(1));
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to list users", e);
+        }
+        return userIds;
+    }
+
+    @Override
+    public void flush() {
+        // every statement is committed as it runs
+    }
+}
@@ -0,0 +1,51 @@
+package ticket.booking.repository;
+
+import ticket.booking.entities.Ticket;
+
+import java.util.List;
+
+// One page of a user's booking history. nextCursor is passed back to get the page
+// after this one and is null on the last page.
+public class TicketPage {
+
+    private final List<Ticket> tickets;
+    private final String nextCursor;
+
+    public TicketPage(List<Ticket> tickets, String nextCursor) {
+        this.tickets = tickets;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Ticket> getTickets() {
+        return tickets;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+
+    // The cursor is the sort key of the last ticket shown: travel date and ticket id
+    static String cursorOf(Ticket ticket) {
+        return travelDate(ticket) + "|" + ticket.getTicketId();
+    }
+
+    // {travel date, ticket id} of a cursor, or null for the first page
+    static String[] parseCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        int separator = cursor.indexOf('|');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid history cursor: " + cursor);
+        }
+        return new String[]{cursor.substring(0, separator), cursor.substring(separator + 1)};
+    }
+
+    static String travelDate(Ticket ticket) {
+        return ticket.getDateOfTravel() == null ? "" : ticket.getDateOfTravel();
+    }
+}
@@ -0,0 +1,33 @@
+package ticket.booking.repository;
+
+import ticket.booking.entities.Ticket;
+
+import java.io.IOException;
+import java.util.List;
+
+public interface TicketRepository {
+
+    // records a newly issued ticket for ticket.getUserId(), may be buffered until flush()
+    void save(Ticket ticket) throws IOException;
+
+    boolean delete(Ticket ticket) throws IOException;
+
+    List<Ticket> findByUserId(String userId) throws IOException;
+
+    // Up to limit of the user's tickets matching filter, ordered by travel date and then
+    // ticket id, starting after cursor (null for the first page)
+    TicketPage findPage(String userId, HistoryFilter filter, String cursor, int limit) throws IOException;
+
+    void flush() throws IOException;
+
+    // Reports read every ticket in partitionCount() parts that can be scanned at the
+    // same time. A partition is read as it was last written, the train of a ticket
+    // only carries its id and number.
+    int partitionCount();
+
+    void forEachInPartition(int partition, TicketVisitor visitor) throws IOException;
+
+    interface TicketVisitor {
+        void visit(Ticket ticket) throws IOException;
+    }
+}
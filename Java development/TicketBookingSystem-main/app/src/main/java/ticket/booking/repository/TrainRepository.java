@@ -0,0 +1,45 @@
+package ticket.booking.repository;
+
+import ticket.booking.entities.Train;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+// Where trains and their seat maps are kept. TrainService only talks to this,
+// so the JSON shard files and the embedded database are interchangeable.
+public interface TrainRepository {
+
+    // trains stopping at source and, later on the route, at destination
+    List<Train> findByRoute(String source, String destination) throws IOException;
+
+    // same as findByRoute without reading the trains themselves
+    List<String> findIdsByRoute(String source, String destination) throws IOException;
+
+    Optional<Train> findById(String trainId) throws IOException;
+
+    boolean exists(String trainId) throws IOException;
+
+    List<String> findAllIds() throws IOException;
+
+    // every station some train stops at, each name once
+    List<String> findAllStations() throws IOException;
+
+    // inserts or fully replaces a train
+    void save(Train train) throws IOException;
+
+    void saveAll(List<Train> trains) throws IOException;
+
+    // Changes one seat from expectedValue to newValue, false if the seat does not exist
+    // or does not hold expectedValue. May be buffered until flush().
+    boolean updateSeat(String trainId, int row, int seat, int expectedValue, int newValue) throws IOException;
+
+    void flush() throws IOException;
+
+    // Writes the buffered seat changes of these trains only, so a writer flushing its own
+    // trains does not wait for anybody else's
+    default void flush(Collection<String> trainIds) throws IOException {
+        flush();
+    }
+}
@@ -0,0 +1,22 @@
+package ticket.booking.repository;
+
+import ticket.booking.entities.User;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+public interface UserRepository {
+
+    Optional<User> findByUsername(String username) throws IOException;
+
+    Optional<User> findById(String userId) throws IOException;
+
+    boolean usernameTaken(String username) throws IOException;
+
+    void add(User user) throws IOException;
+
+    List<String> findAllIds() throws IOException;
+
+    void flush() throws IOException;
+}
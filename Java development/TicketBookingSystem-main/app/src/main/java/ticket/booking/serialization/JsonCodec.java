@@ -0,0 +1,57 @@
+package ticket.booking.serialization;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.storage.TrainManifestEntry;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+// The one place JSON is configured. Readers and writers are built once and shared:
+// they are immutable and thread safe, and building them means looking up and caching
+// the (de)serializers of the type, which is the expensive part of a small read.
+// Output is compact; -Dbooking.prettyJson=true indents the files in localDb for
+// reading or editing them by hand.
+public final class JsonCodec {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // always compact, for the wire where one JSON value is one line
+    public static final ObjectWriter WRITER = MAPPER.writer();
+    // for the files in localDb
+    public static final ObjectWriter FILE_WRITER = Boolean.getBoolean("booking.prettyJson")
+            ? MAPPER.writerWithDefaultPrettyPrinter()
+            : WRITER;
+
+    public static final ObjectReader TRAIN = MAPPER.readerFor(Train.class);
+    public static final ObjectReader TRAIN_LIST = MAPPER.readerFor(new TypeReference<List<Train>>() {});
+    public static final ObjectReader USER_LIST = MAPPER.readerFor(new TypeReference<List<User>>() {});
+    public static final ObjectReader MANIFEST = MAPPER.readerFor(new TypeReference<List<TrainManifestEntry>>() {});
+    public static final ObjectReader STRING_LIST = MAPPER.readerFor(new TypeReference<List<String>>() {});
+    public static final ObjectReader STRING_MAP = MAPPER.readerFor(new TypeReference<LinkedHashMap<String, String>>() {});
+    public static final ObjectReader WAITLISTS = MAPPER.readerFor(new TypeReference<LinkedHashMap<String, ArrayDeque<String>>>() {});
+
+    private JsonCodec() {
+    }
+
+    // For types only one class reads, kept by that class in a static field
+    public static ObjectReader readerFor(Class<?> type) {
+        return MAPPER.readerFor(type);
+    }
+
+    public static JsonNode readTree(File file) throws IOException {
+        return MAPPER.readTree(file);
+    }
+
+    public static <T> T treeToValue(JsonNode node, Class<T> type) throws IOException {
+        return MAPPER.treeToValue(node, type);
+    }
+}
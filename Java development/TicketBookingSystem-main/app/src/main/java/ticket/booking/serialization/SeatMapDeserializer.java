@@ -0,0 +1,51 @@
+package ticket.booking.serialization;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads what SeatMapSerializer writes, and the number arrays of files written before it
+public class SeatMapDeserializer extends StdDeserializer<List<List<Integer>>> {
+
+    public SeatMapDeserializer() {
+        super(List.class);
+    }
+
+    // the context's handlers throw unless a problem handler was registered, whose value
+    // is then the seat map it stands in for
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<List<Integer>> deserialize(JsonParser json, DeserializationContext context) throws IOException {
+        if (json.currentToken() != JsonToken.START_ARRAY) {
+            return (List<List<Integer>>) context.handleUnexpectedToken(List.class, json);
+        }
+        List<List<Integer>> seats = new ArrayList<>();
+        JsonToken token;
+        while ((token = json.nextToken()) != JsonToken.END_ARRAY) {
+            List<Integer> row = new ArrayList<>();
+            if (token == JsonToken.VALUE_STRING) {
+                String digits = json.getText();
+                for (int i = 0; i < digits.length(); i++) {
+                    int value = digits.charAt(i) - '0';
+                    if (value < 0 || value > 9) {
+                        return (List<List<Integer>>) context.handleWeirdStringValue(List.class, digits, "seat rows are digits");
+                    }
+                    row.add(value);
+                }
+            } else if (token == JsonToken.START_ARRAY) {
+                while (json.nextToken() != JsonToken.END_ARRAY) {
+                    row.add(json.getIntValue());
+                }
+            } else {
+                return (List<List<Integer>>) context.handleUnexpectedToken(List.class, json);
+            }
+            seats.add(row);
+        }
+        return seats;
+    }
+}
@@ -0,0 +1,59 @@
+package ticket.booking.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.List;
+
+// Writes a seat map as one string per row, a digit per seat: [[1,0,0],[2,0,1]] becomes
+// ["100","201"]. A third of the size of the number arrays and still easy to edit.
+// A row holding a value that is not a single digit is written as numbers.
+public class SeatMapSerializer extends StdSerializer<List<List<Integer>>> {
+
+    @SuppressWarnings("unchecked")
+    public SeatMapSerializer() {
+        super((Class<List<List<Integer>>>) (Class<?>) List.class);
+    }
+
+    @Override
+    public void serialize(List<List<Integer>> seats, JsonGenerator json, SerializerProvider provider) throws IOException {
+        json.writeStartArray();
+        for (List<Integer> row : seats) {
+            String digits = encodeRow(row);
+            if (digits != null) {
+                json.writeString(digits);
+            } else {
+                json.writeStartArray();
+                for (Integer value : row) {
+                    json.writeNumber(value);
+                }
+                json.writeEndArray();
+            }
+        }
+        json.writeEndArray();
+    }
+
+    // The row as digits, null if some value does not fit in one
+    static String encodeRow(List<Integer> row) {
+        char[] digits = new char[row.size()];
+        for (int i = 0; i < digits.length; i++) {
+            int value = row.get(i);
+            if (value < 0 || value > 9) {
+                return null;
+            }
+            digits[i] = (char) ('0' + value);
+        }
+        return new String(digits);
+    }
+
+    // Same for the generator, which keeps rows as int arrays
+    public static String encodeRow(int[] row) {
+        char[] digits = new char[row.length];
+        for (int i = 0; i < digits.length; i++) {
+            digits[i] = (char) ('0' + row[i]);
+        }
+        return new String(digits);
+    }
+}
@@ -0,0 +1,47 @@
+package ticket.booking.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import ticket.booking.entities.Ticket;
+
+import java.io.IOException;
+
+// A ticket refers to its train by id and number instead of carrying a copy of the
+// whole train with its seat map, which went stale with the next booking anyway.
+// The derived ticket_info text is not stored. Read back with the default deserializer.
+public class TicketSerializer extends StdSerializer<Ticket> {
+
+    public TicketSerializer() {
+        super(Ticket.class);
+    }
+
+    @Override
+    public void serialize(Ticket ticket, JsonGenerator json, SerializerProvider provider) throws IOException {
+        json.writeStartObject();
+        writeString(json, "ticket_id", ticket.getTicketId());
+        writeString(json, "user_id", ticket.getUserId());
+        writeString(json, "source", ticket.getSource());
+        writeString(json, "destination", ticket.getDestination());
+        writeString(json, "date_of_travel", ticket.getDateOfTravel());
+        if (ticket.getTrain() != null) {
+            json.writeObjectFieldStart("train");
+            writeString(json, "train_id", ticket.getTrain().getTrainId());
+            writeString(json, "train_no", ticket.getTrain().getTrainNo());
+            json.writeEndObject();
+        }
+        if (ticket.getRow() != null) {
+            json.writeNumberField("row", ticket.getRow());
+        }
+        if (ticket.getSeat() != null) {
+            json.writeNumberField("seat", ticket.getSeat());
+        }
+        json.writeEndObject();
+    }
+
+    private static void writeString(JsonGenerator json, String field, String value) throws IOException {
+        if (value != null) {
+            json.writeStringField(field, value);
+        }
+    }
+}
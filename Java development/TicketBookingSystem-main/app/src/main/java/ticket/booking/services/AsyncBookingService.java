@@ -0,0 +1,283 @@
+package ticket.booking.services;
+
+import ticket.booking.engine.RingBuffer;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.repository.Repositories;
+import ticket.booking.utils.UserServiceUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// Non-blocking front of the booking service for clients that keep many requests in
+// flight. Every call returns at once with a CompletableFuture, so a client can send
+// its next, independent request without waiting for the previous one. Blocking work
+// runs on virtual threads, seats are taken by the partitioned BookingEngine, and
+// the tickets of booked seats are issued by one writer thread that takes them in
+// batches and writes the touched users once per batch.
+//
+// Calls that take an idempotency key remember their future under that key and the user
+// making the call (the username for a sign-up), so two users picking the same key never
+// see each other's results: a retry by the same user with the same key gets the first
+// attempt's result instead of doing the work again.
+// Keys of failed attempts are forgotten so the retry runs for real. Keys live in
+// memory only, for the last MAX_REMEMBERED_KEYS requests.
+public class AsyncBookingService implements AutoCloseable {
+
+    private static final int RING_CAPACITY = 4096;
+    private static final int MAX_BATCH = 256;
+    private static final int MAX_REMEMBERED_KEYS = 100_000;
+
+    private final UserBookingService bookingService;
+    private final TrainService trainService;
+    // true when the trains were opened here rather than handed over with the booking service
+    private final boolean ownsTrainService;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // "operation:userId:key" -> result of the first request made with that key
+    private final ConcurrentHashMap<String, CompletableFuture<?>> idempotencyKeys = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String> keyOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger rememberedKeys = new AtomicInteger();
+
+    private final RingBuffer<TicketRequest> ticketQueue = new RingBuffer<>(RING_CAPACITY);
+    private final Thread ticketWriter;
+    private volatile boolean running = true;
+    // checking a username and adding the user must not interleave between two sign-ups
+    private final Object signUpLock = new Object();
+
+    public AsyncBookingService() throws IOException {
+        this(Repositories.open());
+    }
+
+    public AsyncBookingService(Repositories repositories) throws IOException {
+        this(new UserBookingService(repositories), true);
+    }
+
+    public AsyncBookingService(UserBookingService bookingService) {
+        this(bookingService, false);
+    }
+
+    private AsyncBookingService(UserBookingService bookingService, boolean ownsTrainService) {
+        this.bookingService = bookingService;
+        this.trainService = bookingService.getTrainService();
+        this.ownsTrainService = ownsTrainService;
+        ticketWriter = new Thread(this::runTicketWriter, "ticket-writer");
+        ticketWriter.setDaemon(true);
+        ticketWriter.start();
+    }
+
+    public CompletableFuture<List<Train>> search(String source, String destination) {
+        return CompletableFuture.supplyAsync(() -> trainService.searchTrains(source, destination), executor);
+    }
+
+    // Completes with the new user's id, or empty if the username is taken
+    public CompletableFuture<Optional<String>> signUp(String username, String password, String idempotencyKey) {
+        return once("signup:", username, idempotencyKey, () -> CompletableFuture.supplyAsync(() -> {
+            User user = new User(username, password, UserServiceUtil.hashPassword(password), new ArrayList<>(), UUID.randomUUID().toString());
+            synchronized (signUpLock) {
+                try {
+                    return bookingService.signUp(user) ? Optional.of(user.getUserId()) : Optional.<String>empty();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }, executor));
+    }
+
+    // Completes with the issued ticket, or empty if the user is unknown or the seat is
+    // taken or does not exist
+    public CompletableFuture<Optional<Ticket>> book(String userId, String trainId, int row, int seat, String idempotencyKey) {
+        return once("book:", userId, idempotencyKey, () -> CompletableFuture
+                .supplyAsync(() -> bookingService.getUserById(userId).isPresent(), executor)
+                .thenCompose(knownUser -> knownUser
+                        ? trainService.bookSeatAsync(trainId, row, seat)
+                        : CompletableFuture.completedFuture(false))
+                .thenCompose(booked -> booked
+                        ? issueTicket(userId, trainId, row, seat)
+                        : CompletableFuture.completedFuture(Optional.<Ticket>empty())));
+    }
+
+    // Completes with true if the ticket was cancelled, its seat freed and handed to the
+    // train's waitlist
+    public CompletableFuture<Boolean> cancel(String userId, String ticketId, String idempotencyKey) {
+        return once("cancel:", userId, idempotencyKey, () -> CompletableFuture.supplyAsync(() -> {
+            Optional<User> owner = bookingService.getUserById(userId);
+            if (owner.isEmpty()) {
+                return false;
+            }
+            try {
+                return bookingService.cancelBookings(owner.get(), List.of(ticketId)) == 1;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> once(String operation, String userId, String idempotencyKey, Supplier<CompletableFuture<T>> request) {
+        if (idempotencyKey == null) {
+            return request.get();
+        }
+        String key = operation + userId + ':' + idempotencyKey;
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<?> first = idempotencyKeys.putIfAbsent(key, result);
+        if (first != null) {
+            return (CompletableFuture<T>) first;
+        }
+        remember(key);
+        try {
+            request.get().whenComplete((value, error) -> {
+                if (error != null) {
+                    idempotencyKeys.remove(key, result);
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+        } catch (RuntimeException e) {
+            idempotencyKeys.remove(key, result);
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private void remember(String key) {
+        keyOrder.add(key);
+        while (rememberedKeys.incrementAndGet() > MAX_REMEMBERED_KEYS) {
+            String oldest = keyOrder.poll();
+            if (oldest != null) {
+                idempotencyKeys.remove(oldest);
+            }
+            rememberedKeys.decrementAndGet();
+            if (oldest == null) {
+                break;
+            }
+        }
+    }
+
+    // ---- ticket writer ----
+
+    private static final class TicketRequest {
+        final String userId;
+        final String trainId;
+        final int row;
+        final int seat;
+        final CompletableFuture<Optional<Ticket>> result = new CompletableFuture<>();
+
+        TicketRequest(String userId, String trainId, int row, int seat) {
+            this.userId = userId;
+            this.trainId = trainId;
+            this.row = row;
+            this.seat = seat;
+        }
+    }
+
+    private CompletableFuture<Optional<Ticket>> issueTicket(String userId, String trainId, int row, int seat) {
+        TicketRequest request = new TicketRequest(userId, trainId, row, seat);
+        if (!running) {
+            request.result.completeExceptionally(new IllegalStateException("Booking service is shut down"));
+            return request.result;
+        }
+        ticketQueue.put(request);
+        LockSupport.unpark(ticketWriter);
+        return request.result;
+    }
+
+    private void runTicketWriter() {
+        List<TicketRequest> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !ticketQueue.isEmpty()) {
+            if (ticketQueue.drainTo(batch, MAX_BATCH) == 0) {
+                LockSupport.parkNanos(100_000);
+                continue;
+            }
+            issueBatch(batch);
+            batch.clear();
+        }
+    }
+
+    // Issues the whole batch under the booking service's lock, the same one cancellations
+    // take, and writes the touched users once before any future completes. A request that
+    // fails gets nothing: its ticket is taken back and its seat freed again. The lock is
+    // let go before waiting for the engine to free the seats.
+    private void issueBatch(List<TicketRequest> batch) {
+        Ticket[] issued = new Ticket[batch.size()];
+        Throwable[] failed = new Throwable[batch.size()];
+        List<CompletableFuture<Boolean>> released = new ArrayList<>();
+        synchronized (bookingService.getLock()) {
+            for (int i = 0; i < batch.size(); i++) {
+                TicketRequest request = batch.get(i);
+                try {
+                    Optional<User> owner = bookingService.getUserById(request.userId);
+                    Optional<Train> train = trainService.getTrainById(request.trainId);
+                    if (owner.isEmpty() || train.isEmpty()) {
+                        // nobody to give the seat to any more
+                        released.add(trainService.releaseSeatAsync(request.trainId, request.row, request.seat));
+                        continue;
+                    }
+                    issued[i] = bookingService.issueTicket(owner.get(), train.get(), request.row, request.seat);
+                } catch (IOException | RuntimeException e) {
+                    failed[i] = e;
+                    released.add(trainService.releaseSeatAsync(request.trainId, request.row, request.seat));
+                }
+            }
+            try {
+                bookingService.saveDirtyUsers();
+            } catch (IOException | RuntimeException e) {
+                // none of the batch's tickets was written, none of them is handed out
+                for (int i = 0; i < batch.size(); i++) {
+                    TicketRequest request = batch.get(i);
+                    Ticket ticket = issued[i];
+                    if (ticket != null) {
+                        bookingService.getUserById(request.userId)
+                                .ifPresent(owner -> bookingService.revokeTicket(owner, ticket));
+                        released.add(trainService.releaseSeatAsync(request.trainId, request.row, request.seat));
+                        issued[i] = null;
+                    }
+                    failed[i] = e;
+                }
+            }
+        }
+        // a client that retries after a failure finds the seat free again
+        released.forEach(trainService::await);
+        for (int i = 0; i < batch.size(); i++) {
+            if (failed[i] != null) {
+                batch.get(i).result.completeExceptionally(failed[i]);
+            } else {
+                batch.get(i).result.complete(Optional.ofNullable(issued[i]));
+            }
+        }
+    }
+
+    // Stops taking bookings, issues the tickets still queued and waits for that
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(ticketWriter);
+        try {
+            ticketWriter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdown();
+        if (ownsTrainService) {
+            try {
+                trainService.close();
+            } catch (IOException e) {
+                System.out.println("Failed to close the trains: " + e.getMessage());
+            }
+        }
+    }
+}
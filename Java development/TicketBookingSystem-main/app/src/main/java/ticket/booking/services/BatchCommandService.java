@@ -0,0 +1,259 @@
+package ticket.booking.services;
+
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.metrics.Metrics;
+import ticket.booking.utils.UserServiceUtil;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Runs the App's commands from a file or stdin instead of the menu, to replay captured
+// traffic and measure throughput. Commands are read one line at a time and start
+// running while the rest of the input is still being read.
+//
+// One command per line, blank lines and lines starting with # are skipped:
+//   signup <username> <password>
+//   login <username> <password>
+//   search <source> <destination>
+//   book <trainId> <row> <seat>
+//   cancel <ticketId>           (or "cancel last" for the session's latest ticket)
+// A line may start with @<session>, e.g. "@alice book T123 0 1"; lines without one
+// belong to the session "main". Every session is its own logged in user. In parallel
+// mode every session runs on its own virtual thread and sessions run at the same
+// time, each keeping the order of its own commands. Otherwise all commands run one
+// after another in file order.
+public class BatchCommandService {
+
+    private static final String DEFAULT_SESSION = "main";
+    private static final String[] COMMANDS = {"signup", "login", "search", "book", "cancel"};
+    // end of a parallel session's queue
+    private static final String[] END = new String[0];
+
+    private final UserBookingService bookingService;
+    private final boolean parallel;
+    // command -> its latencies, each CommandStats guarded by itself
+    private final Map<String, CommandStats> stats = new TreeMap<>();
+
+    public BatchCommandService(UserBookingService bookingService, boolean parallel) {
+        this.bookingService = bookingService;
+        this.parallel = parallel;
+        for (String command : COMMANDS) {
+            stats.put(command, new CommandStats());
+        }
+    }
+
+    // Runs every command in the input and prints per-command latency and totals
+    public void run(BufferedReader input) throws IOException {
+        long start = System.nanoTime();
+        Map<String, Session> sessions = new HashMap<>();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        int lineNumber = 0;
+        String line;
+        while ((line = input.readLine()) != null) {
+            lineNumber++;
+            String[] words = line.trim().split("\\s+");
+            if (words[0].isEmpty() || words[0].startsWith("#")) {
+                continue;
+            }
+            String sessionName = DEFAULT_SESSION;
+            if (words[0].startsWith("@")) {
+                sessionName = words[0].substring(1);
+                words = Arrays.copyOfRange(words, 1, words.length);
+                if (words.length == 0) {
+                    continue;
+                }
+            }
+            if (!stats.containsKey(words[0])) {
+                System.out.println("Line " + lineNumber + ": unknown command " + words[0]);
+                continue;
+            }
+            Session session = sessions.get(sessionName);
+            if (session == null) {
+                session = new Session(sessionName, bookingService.newSession());
+                sessions.put(sessionName, session);
+                if (parallel) {
+                    executor.submit(session::runQueued);
+                }
+            }
+            if (parallel) {
+                session.queue.add(words);
+            } else {
+                session.execute(words);
+            }
+        }
+        for (Session session : sessions.values()) {
+            session.queue.add(END);
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        printReport(sessions.size(), System.nanoTime() - start);
+    }
+
+    // One logged in user and the commands queued for it
+    private class Session {
+        final String name;
+        final UserBookingService service;
+        final BlockingQueue<String[]> queue = new LinkedBlockingQueue<>();
+        // the trains found by the last search, by id
+        final Map<String, Train> searched = new HashMap<>();
+        String username;
+
+        Session(String name, UserBookingService service) {
+            this.name = name;
+            this.service = service;
+        }
+
+        void runQueued() {
+            try {
+                String[] words;
+                while ((words = queue.take()) != END) {
+                    execute(words);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void execute(String[] words) {
+            long start = System.nanoTime();
+            boolean succeeded;
+            try {
+                succeeded = dispatch(words);
+            } catch (IOException | RuntimeException e) {
+                System.out.println("@" + name + " " + String.join(" ", words) + " failed: " + e.getMessage());
+                succeeded = false;
+            }
+            CommandStats commandStats = stats.get(words[0]);
+            synchronized (commandStats) {
+                commandStats.record(System.nanoTime() - start, succeeded);
+            }
+        }
+
+        private boolean dispatch(String[] words) throws IOException {
+            switch (words[0]) {
+                case "signup":
+                    expectArguments(words, 2);
+                    User user = new User(words[1], words[2], UserServiceUtil.hashPassword(words[2]), new ArrayList<>(), UUID.randomUUID().toString());
+                    return service.signUp(user);
+                case "login":
+                    expectArguments(words, 2);
+                    if (service.login(words[1], words[2]).isEmpty()) {
+                        return false;
+                    }
+                    username = words[1];
+                    return true;
+                case "search":
+                    expectArguments(words, 2);
+                    List<Train> trains = service.getTrains(words[1].toLowerCase(), words[2].toLowerCase());
+                    for (Train train : trains) {
+                        searched.put(train.getTrainId(), train);
+                    }
+                    return !trains.isEmpty();
+                case "book":
+                    expectArguments(words, 3);
+                    if (username == null) {
+                        return false;
+                    }
+                    Optional<Train> train = Optional.ofNullable(searched.get(words[1]));
+                    if (train.isEmpty()) {
+                        train = service.getTrainService().getTrainById(words[1]);
+                    }
+                    return train.isPresent() && service.bookTrainSeat(train.get(), Integer.parseInt(words[2]), Integer.parseInt(words[3]));
+                case "cancel":
+                    expectArguments(words, 1);
+                    if (username == null) {
+                        return false;
+                    }
+                    String ticketId = words[1];
+                    if (ticketId.equals("last")) {
+                        List<Ticket> tickets = service.getUserByUsername(username)
+                                .map(User::getTicketsBooked).orElse(List.of());
+                        if (tickets.isEmpty()) {
+                            return false;
+                        }
+                        ticketId = tickets.getLast().getTicketId();
+                    }
+                    return service.cancelBooking(ticketId);
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private static void expectArguments(String[] words, int count) {
+        if (words.length != count + 1) {
+            throw new IllegalArgumentException(words[0] + " takes " + count + " arguments, got " + (words.length - 1));
+        }
+    }
+
+    // Latencies of one kind of command, in the order they finished
+    private static class CommandStats {
+        long[] latencies = new long[1024];
+        int count;
+        int failed;
+
+        void record(long latencyNanos, boolean succeeded) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+            if (!succeeded) {
+                failed++;
+            }
+        }
+    }
+
+    private void printReport(int sessionCount, long elapsedNanos) {
+        int total = 0;
+        int failed = 0;
+        System.out.println();
+        System.out.printf("%-8s %8s %8s %10s %10s %10s %10s %10s%n", "command", "count", "failed", "mean ms", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        for (Map.Entry<String, CommandStats> entry : stats.entrySet()) {
+            CommandStats commandStats = entry.getValue();
+            if (commandStats.count == 0) {
+                continue;
+            }
+            long[] sorted = Arrays.copyOf(commandStats.latencies, commandStats.count);
+            Arrays.sort(sorted);
+            long sum = 0;
+            for (long latency : sorted) {
+                sum += latency;
+            }
+            System.out.printf("%-8s %8d %8d %10.3f %10.3f %10.3f %10.3f %10.3f%n", entry.getKey(),
+                    commandStats.count, commandStats.failed, sum / 1e6 / sorted.length,
+                    percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                    sorted[sorted.length - 1] / 1e6);
+            total += commandStats.count;
+            failed += commandStats.failed;
+        }
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%d commands (%d failed) from %d sessions in %.2f s, %.0f commands/s%s%n",
+                total, failed, sessionCount, seconds, total / seconds, parallel ? ", sessions in parallel" : "");
+        System.out.printf("%d logins still open, user cache hit ratio %.1f%%%n",
+                bookingService.getSessions().activeSessions(), Metrics.cache("store.users").getHitRatio() * 100);
+    }
+
+    // value in milliseconds below which the given fraction of the sorted latencies lie
+    private static double percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))] / 1e6;
+    }
+}
@@ -0,0 +1,490 @@
+package ticket.booking.services;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import ticket.booking.catalog.CatalogSnapshot;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.metrics.Counter;
+import ticket.booking.metrics.LatencyHistogram;
+import ticket.booking.metrics.Metrics;
+import ticket.booking.replication.Journal;
+import ticket.booking.replication.JournalEntry;
+import ticket.booking.repository.TicketRepository;
+import ticket.booking.serialization.JsonCodec;
+import ticket.booking.services.ConsistencyReport.Inconsistency;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Checks the seat maps of the trains against the tickets issued for them. Seats and
+// tickets are written to different files (or tables), so a crash between the two writes
+// leaves them disagreeing:
+//   orphan seat    - a seat is booked but no ticket was issued for it
+//   phantom ticket - a ticket's seat is free or held, does not exist, or was also sold
+//                    on another ticket
+//
+// The first pass reads every ticket, one partition (user bucket) per worker on the
+// fork/join pool, into an index of train -> seat -> tickets, and checks every train of
+// one catalog version against it. Later passes read the journal of committed changes
+// since the last pass instead: saved and deleted tickets update the index, and only the
+// trains that had seat or ticket changes are checked again. If the journal already
+// dropped the entries the checker needs, the next pass reads everything again.
+//
+// A booking books the seat through the engine before it takes the booking lock to issue
+// the ticket, so a pass can catch one half way, even while it holds the lock. Whatever a
+// pass finds is looked at again under the booking lock, seats whose ticket a session is
+// about to issue are left out, and in the background it is only reported (and
+// repaired) once two passes in a row found it.
+// Repairing frees orphan seats, books the free seat of a phantom ticket for it, and
+// deletes phantom tickets whose seat is gone or belongs to the ticket issued first.
+//   -Dbooking.consistencyCheckSeconds=60 runs a pass every minute next to the App,
+//   -Dbooking.consistencyRepair=true repairs what the passes find
+public class ConsistencyChecker {
+
+    private static final int MAX_LINES_PER_READ = 10_000;
+    // a seat is indexed under row * ROW_STRIDE + seat, not row << 32 | seat: Long.hashCode
+    // would then be row ^ seat and the seats of a train would share a few hash buckets
+    private static final long ROW_STRIDE = 1 << 20;
+    // tickets booked before seats were tracked are indexed under this seat of their train
+    private static final long NO_SEAT = Long.MIN_VALUE;
+    private static final ObjectReader ENTRY_READER = JsonCodec.readerFor(JournalEntry.class);
+    // the ticket issued first keeps a seat that was sold more than once. Ticket ids are the
+    // millisecond they were issued at, strictly increasing (UserServiceUtil.generateTicketId),
+    // so of two numeric ids the shorter, then the smaller, is older. An id that is not a
+    // number, e.g. one typed into a users file, tells nothing about when it was issued: it
+    // loses to every numeric id, and such ids go by the id so every pass picks the same one.
+    private static final Comparator<Ticket> ISSUE_ORDER =
+            Comparator.comparing((Ticket ticket) -> !isNumeric(ticket.getTicketId()))
+                    .thenComparing(ticket -> ticket.getTicketId().length())
+                    .thenComparing(Ticket::getTicketId);
+
+    private static final LatencyHistogram CHECK_LATENCY = Metrics.latency("consistency.check");
+    private static final Counter ORPHAN_SEATS = Metrics.counter("consistency.orphanSeats");
+    private static final Counter PHANTOM_TICKETS = Metrics.counter("consistency.phantomTickets");
+    private static final Counter REPAIRED = Metrics.counter("consistency.repaired");
+
+    private final UserBookingService bookingService;
+    private final TrainService trainService;
+    private final TicketRepository ticketRepository;
+    // changes made through bookingService, null if there is none and every pass reads everything
+    private final Journal journal;
+    private final boolean repair;
+
+    // trainId (lowercase) -> seat key -> tickets issued for that seat, null until the first
+    // pass. Only changed by passes, which run one at a time, and read by their workers.
+    private Map<String, Map<Long, List<Ticket>>> ticketsBySeat;
+    // journal entries up to this seq are in ticketsBySeat
+    private long indexedSeq;
+    // problems the last pass found for the first time, by Inconsistency.key()
+    private Map<String, Inconsistency> suspects = new HashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    public ConsistencyChecker(UserBookingService bookingService, Journal journal, boolean repair) {
+        this.bookingService = bookingService;
+        this.trainService = bookingService.getTrainService();
+        this.ticketRepository = bookingService.getTicketRepository();
+        this.journal = journal;
+        this.repair = repair;
+    }
+
+    // Starts a pass every periodSeconds on a background thread, the first one right away.
+    // Passes that find nothing new print nothing.
+    public synchronized void start(long periodSeconds) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "consistency-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runScheduled, 0, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    private void runScheduled() {
+        try {
+            ConsistencyReport report = checkChanges();
+            if (report.isFull() || !report.getConfirmed().isEmpty()) {
+                report.print();
+            }
+        } catch (IOException | RuntimeException e) {
+            // an exception would cancel the schedule, the next pass tries again
+            System.out.println("Consistency check failed: " + e.getMessage());
+        }
+    }
+
+    // Reads every ticket and checks every train. With confirmAtOnce what is still wrong
+    // when looked at again under the booking lock is reported right away, for when nothing
+    // else is booking, e.g. "App check"; otherwise the next pass has to find it again.
+    public synchronized ConsistencyReport checkAll(boolean confirmAtOnce) throws IOException {
+        long start = Metrics.start();
+        long began = System.nanoTime();
+        // tickets still buffered in memory are written first so the scan sees them
+        ticketRepository.flush();
+        // changes committed after this are replayed onto the index by the next read of
+        // the journal, replaying a ticket the scan saw already changes nothing
+        long seq = journal == null ? 0 : journal.getLastSeq();
+
+        int partitions = ticketRepository.partitionCount();
+        int workers = Math.min(partitions, ForkJoinPool.getCommonPoolParallelism() + 1);
+        AtomicInteger nextPartition = new AtomicInteger();
+        try {
+            ticketsBySeat = IntStream.range(0, workers).parallel()
+                    .mapToObj(worker -> {
+                        Map<String, Map<Long, List<Ticket>>> index = new HashMap<>();
+                        int partition;
+                        while ((partition = nextPartition.getAndIncrement()) < partitions) {
+                            try {
+                                ticketRepository.forEachInPartition(partition, ticket -> addTicket(index, ticket));
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                        return index;
+                    })
+                    .reduce(ConsistencyChecker::mergeIndex)
+                    .orElseGet(HashMap::new);
+        } catch (UncheckedIOException e) {
+            ticketsBySeat = null;
+            throw e.getCause();
+        }
+        indexedSeq = seq;
+
+        CatalogSnapshot snapshot = trainService.snapshotOfAll();
+        List<Train> trains = snapshot.trains().collect(Collectors.toList());
+        List<Inconsistency> found = trains.parallelStream()
+                .flatMap(train -> checkTrain(key(train.getTrainId()), train).stream())
+                .collect(Collectors.toList());
+        Set<String> trainKeys = new HashSet<>();
+        for (Train train : trains) {
+            trainKeys.add(key(train.getTrainId()));
+        }
+        for (String trainKey : ticketsBySeat.keySet()) {
+            if (!trainKeys.contains(trainKey)) {
+                found.addAll(checkTrain(trainKey, null));
+            }
+        }
+        ConsistencyReport report = confirm(found, true, trains.size(), began, confirmAtOnce);
+        CHECK_LATENCY.stop(start);
+        return report;
+    }
+
+    // Applies the journal since the last pass to the index and checks the trains whose
+    // seats or tickets changed, plus the ones with problems still to be confirmed.
+    // Reads everything instead on the first pass and when the journal cannot continue.
+    public synchronized ConsistencyReport checkChanges() throws IOException {
+        if (ticketsBySeat == null || journal == null) {
+            return checkAll(false);
+        }
+        long start = Metrics.start();
+        long began = System.nanoTime();
+        // trainId (lowercase) -> trainId
+        Map<String, String> changedTrains = new HashMap<>();
+        if (!readJournal(changedTrains)) {
+            return checkAll(false);
+        }
+        for (Inconsistency suspect : suspects.values()) {
+            changedTrains.putIfAbsent(key(suspect.getTrainId()), suspect.getTrainId());
+        }
+        List<Inconsistency> found = changedTrains.entrySet().parallelStream()
+                .flatMap(changed -> checkTrain(changed.getKey(),
+                        trainService.getTrainById(changed.getValue()).orElse(null)).stream())
+                .collect(Collectors.toList());
+        ConsistencyReport report = confirm(found, false, changedTrains.size(), began, false);
+        CHECK_LATENCY.stop(start);
+        return report;
+    }
+
+    // Brings the index up to the latest committed change and notes the trains that
+    // changed. False if the journal no longer holds the entries right after indexedSeq.
+    private boolean readJournal(Map<String, String> changedTrains) throws IOException {
+        while (true) {
+            List<String> lines;
+            try {
+                lines = journal.readAfter(indexedSeq, MAX_LINES_PER_READ, 0);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return true;
+            }
+            if (lines == null) {
+                return false;
+            }
+            if (lines.isEmpty()) {
+                return true;
+            }
+            for (String line : lines) {
+                JournalEntry entry = ENTRY_READER.readValue(line);
+                switch (entry.getType()) {
+                    case JournalEntry.TICKET_SAVED:
+                        addTicket(ticketsBySeat, entry.getTicket());
+                        noteTrain(changedTrains, entry.getTicket());
+                        break;
+                    case JournalEntry.TICKET_DELETED:
+                        removeTicket(ticketsBySeat, entry.getTicket());
+                        noteTrain(changedTrains, entry.getTicket());
+                        break;
+                    case JournalEntry.SEAT:
+                        changedTrains.put(key(entry.getTrainId()), entry.getTrainId());
+                        break;
+                    case JournalEntry.TRAIN:
+                        changedTrains.put(key(entry.getTrain().getTrainId()), entry.getTrain().getTrainId());
+                        break;
+                    default:
+                        // users are signed up without tickets
+                        break;
+                }
+                indexedSeq = entry.getSeq();
+            }
+        }
+    }
+
+    // Looks at everything found once more under the booking lock, where no booking or
+    // cancellation is half done, and decides what is reported and repaired
+    private ConsistencyReport confirm(List<Inconsistency> found, boolean full, int trainsChecked, long began,
+                                      boolean confirmAtOnce) throws IOException {
+        List<Inconsistency> confirmed = new ArrayList<>();
+        Map<String, Inconsistency> nextSuspects = new HashMap<>();
+        int repaired = 0;
+        if (!found.isEmpty()) {
+            synchronized (bookingService.getLock()) {
+                if (journal != null && !readJournal(new HashMap<>())) {
+                    // the index fell behind while checking, start over on the next pass
+                    ticketsBySeat = null;
+                    suspects = new HashMap<>();
+                    return new ConsistencyReport(full, trainsChecked, 0, System.nanoTime() - began,
+                            List.of(), found.size(), 0);
+                }
+                // trainId (lowercase) -> keys of what is wrong with the train right now
+                Map<String, Set<String>> stillWrong = new HashMap<>();
+                for (Inconsistency candidate : found) {
+                    Set<String> wrongNow = stillWrong.computeIfAbsent(key(candidate.getTrainId()), trainKey -> {
+                        Set<String> keys = new HashSet<>();
+                        Train train = trainService.getTrainById(candidate.getTrainId()).orElse(null);
+                        for (Inconsistency inconsistency : checkTrain(trainKey, train)) {
+                            keys.add(inconsistency.key());
+                        }
+                        return keys;
+                    });
+                    if (!wrongNow.contains(candidate.key()) || beingBooked(candidate)) {
+                        continue;
+                    }
+                    if (confirmAtOnce || suspects.containsKey(candidate.key())) {
+                        confirmed.add(candidate);
+                    } else {
+                        nextSuspects.put(candidate.key(), candidate);
+                    }
+                }
+                if (repair) {
+                    for (Inconsistency inconsistency : confirmed) {
+                        if (repair(inconsistency)) {
+                            repaired++;
+                        }
+                    }
+                    if (repaired > 0) {
+                        // seats were written by the engine as they were repaired
+                        bookingService.saveDirtyUsers();
+                    }
+                }
+            }
+        }
+        suspects = nextSuspects;
+        for (Inconsistency inconsistency : confirmed) {
+            (inconsistency.getType().equals(Inconsistency.ORPHAN_SEAT) ? ORPHAN_SEATS : PHANTOM_TICKETS).increment();
+        }
+        REPAIRED.add(repaired);
+        return new ConsistencyReport(full, trainsChecked, countTickets(), System.nanoTime() - began,
+                confirmed, nextSuspects.size(), repaired);
+    }
+
+    // Everything wrong with one train, train is null if it no longer exists
+    private List<Inconsistency> checkTrain(String trainKey, Train train) {
+        Map<Long, List<Ticket>> tickets = ticketsBySeat.getOrDefault(trainKey, Map.of());
+        List<Inconsistency> found = new ArrayList<>();
+        if (train == null) {
+            for (Map.Entry<Long, List<Ticket>> entry : tickets.entrySet()) {
+                for (Ticket ticket : entry.getValue()) {
+                    if (entry.getKey() != NO_SEAT) {
+                        found.add(phantom(ticket, "the train no longer exists"));
+                    }
+                }
+            }
+            return found;
+        }
+        List<List<Integer>> seats = train.getSeats();
+        // with tickets that do not say which seat they hold there is no telling which
+        // booked seats are theirs, so booked seats are only checked on other trains
+        boolean seatsUnknown = tickets.containsKey(NO_SEAT);
+        for (int row = 0; row < seats.size() && !seatsUnknown; row++) {
+            for (int seat = 0; seat < seats.get(row).size(); seat++) {
+                if (seats.get(row).get(seat) == Train.SEAT_BOOKED && !tickets.containsKey(seatKey(row, seat))) {
+                    found.add(new Inconsistency(Inconsistency.ORPHAN_SEAT, train.getTrainId(), row, seat, null,
+                            "booked, but no ticket was issued for it"));
+                }
+            }
+        }
+        for (Map.Entry<Long, List<Ticket>> entry : tickets.entrySet()) {
+            if (entry.getKey() == NO_SEAT) {
+                continue;
+            }
+            List<Ticket> onSeat = entry.getValue();
+            Ticket first = onSeat.stream().min(ISSUE_ORDER).get();
+            int row = first.getRow();
+            int seat = first.getSeat();
+            int value = row >= 0 && row < seats.size() && seat >= 0 && seat < seats.get(row).size()
+                    ? seats.get(row).get(seat) : -1;
+            for (Ticket ticket : onSeat) {
+                if (value == -1) {
+                    found.add(phantom(ticket, "the train has no such seat"));
+                } else if (value == Train.SEAT_FREE) {
+                    found.add(phantom(ticket, "the seat is free"));
+                } else if (value == Train.SEAT_HELD) {
+                    found.add(phantom(ticket, "the seat is held, not booked"));
+                } else if (ticket != first) {
+                    found.add(phantom(ticket, "the seat was sold on ticket " + first.getTicketId() + " before"));
+                }
+            }
+        }
+        return found;
+    }
+
+    // a seat booked by a session that is waiting for the lock to issue its ticket
+    private boolean beingBooked(Inconsistency inconsistency) {
+        return inconsistency.getType().equals(Inconsistency.ORPHAN_SEAT)
+                && bookingService.isBeingIssued(inconsistency.getTrainId(), inconsistency.getRow(), inconsistency.getSeat());
+    }
+
+    // Called under the booking lock, true if something was changed
+    private boolean repair(Inconsistency inconsistency) throws IOException {
+        String trainId = inconsistency.getTrainId();
+        int row = inconsistency.getRow();
+        int seat = inconsistency.getSeat();
+        if (inconsistency.getType().equals(Inconsistency.ORPHAN_SEAT)) {
+            // the seat goes back on sale, nobody holds a ticket for it
+            return trainService.releaseSeat(trainId, row, seat);
+        }
+        Optional<Train> train = trainService.getTrainById(trainId);
+        List<List<Integer>> seats = train.map(Train::getSeats).orElse(List.of());
+        int value = row >= 0 && row < seats.size() && seat >= 0 && seat < seats.get(row).size()
+                ? seats.get(row).get(seat) : -1;
+        if (value == Train.SEAT_HELD) {
+            // somebody is deciding on the seat, it is looked at again once the hold ends
+            return false;
+        }
+        if (value == Train.SEAT_FREE && trainService.occupySeat(trainId, row, seat)) {
+            // the ticket holder keeps their seat
+            return true;
+        }
+        // no such seat any more, or it belongs to the ticket issued first
+        return ticketRepository.delete(inconsistency.getTicket());
+    }
+
+    private static Inconsistency phantom(Ticket ticket, String reason) {
+        return new Inconsistency(Inconsistency.PHANTOM_TICKET, ticket.getTrain().getTrainId(),
+                ticket.getRow(), ticket.getSeat(), ticket, reason);
+    }
+
+    private static boolean hasTrain(Ticket ticket) {
+        return ticket != null && ticket.getTicketId() != null && ticket.getTrain() != null
+                && ticket.getTrain().getTrainId() != null;
+    }
+
+    private static void addTicket(Map<String, Map<Long, List<Ticket>>> index, Ticket ticket) {
+        if (!hasTrain(ticket)) {
+            return;
+        }
+        List<Ticket> onSeat = index.computeIfAbsent(key(ticket.getTrain().getTrainId()), trainKey -> new HashMap<>())
+                .computeIfAbsent(seatKey(ticket), seatKey -> new ArrayList<>(1));
+        onSeat.removeIf(existing -> existing.getTicketId().equals(ticket.getTicketId()));
+        onSeat.add(ticket);
+    }
+
+    private static void removeTicket(Map<String, Map<Long, List<Ticket>>> index, Ticket ticket) {
+        if (!hasTrain(ticket)) {
+            return;
+        }
+        String trainKey = key(ticket.getTrain().getTrainId());
+        Map<Long, List<Ticket>> seats = index.get(trainKey);
+        if (seats == null) {
+            return;
+        }
+        long seatKey = seatKey(ticket);
+        List<Ticket> onSeat = seats.get(seatKey);
+        if (onSeat == null) {
+            return;
+        }
+        onSeat.removeIf(existing -> existing.getTicketId().equals(ticket.getTicketId()));
+        if (onSeat.isEmpty()) {
+            seats.remove(seatKey);
+            if (seats.isEmpty()) {
+                index.remove(trainKey);
+            }
+        }
+    }
+
+    private static Map<String, Map<Long, List<Ticket>>> mergeIndex(Map<String, Map<Long, List<Ticket>>> into,
+                                                                 Map<String, Map<Long, List<Ticket>>> from) {
+        for (Map<Long, List<Ticket>> seats : from.values()) {
+            for (List<Ticket> onSeat : seats.values()) {
+                for (Ticket ticket : onSeat) {
+                    addTicket(into, ticket);
+                }
+            }
+        }
+        return into;
+    }
+
+    private void noteTrain(Map<String, String> changedTrains, Ticket ticket) {
+        if (hasTrain(ticket)) {
+            changedTrains.put(key(ticket.getTrain().getTrainId()), ticket.getTrain().getTrainId());
+        }
+    }
+
+    private long countTickets() {
+        long tickets = 0;
+        if (ticketsBySeat != null) {
+            for (Map<Long, List<Ticket>> seats : ticketsBySeat.values()) {
+                for (List<Ticket> onSeat : seats.values()) {
+                    tickets += onSeat.size();
+                }
+            }
+        }
+        return tickets;
+    }
+
+    private static boolean isNumeric(String ticketId) {
+        for (int i = 0; i < ticketId.length(); i++) {
+            if (ticketId.charAt(i) < '0' || ticketId.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return !ticketId.isEmpty();
+    }
+
+    private static long seatKey(int row, int seat) {
+        return row * ROW_STRIDE + seat;
+    }
+
+    private static long seatKey(Ticket ticket) {
+        return ticket.getRow() == null || ticket.getSeat() == null ? NO_SEAT : seatKey(ticket.getRow(), ticket.getSeat());
+    }
+
+    private static String key(String trainId) {
+        return trainId.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,134 @@
+package ticket.booking.services;
+
+import ticket.booking.entities.Ticket;
+
+import java.util.List;
+import java.util.Locale;
+
+// Result of one ConsistencyChecker pass
+public class ConsistencyReport {
+
+    // A seat and the tickets issued for it that do not agree
+    public static class Inconsistency {
+        // booked seat that no ticket was issued for
+        public static final String ORPHAN_SEAT = "orphan seat";
+        // ticket whose seat is not booked, does not exist or was sold on another ticket too
+        public static final String PHANTOM_TICKET = "phantom ticket";
+
+        private final String type;
+        private final String trainId;
+        private final int row;
+        private final int seat;
+        // null for an orphan seat
+        private final Ticket ticket;
+        private final String reason;
+
+        Inconsistency(String type, String trainId, int row, int seat, Ticket ticket, String reason) {
+            this.type = type;
+            this.trainId = trainId;
+            this.row = row;
+            this.seat = seat;
+            this.ticket = ticket;
+            this.reason = reason;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getTrainId() {
+            return trainId;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public int getSeat() {
+            return seat;
+        }
+
+        public Ticket getTicket() {
+            return ticket;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        // the same problem found by two passes has the same key
+        String key() {
+            return type + ":" + trainId.toLowerCase(Locale.ROOT) + ":" + row + ":" + seat + ":" + (ticket == null ? "" : ticket.getTicketId());
+        }
+
+        @Override
+        public String toString() {
+            return type + " on train " + trainId + " row " + row + " seat " + seat
+                    + (ticket == null ? "" : " ticket " + ticket.getTicketId() + " of user " + ticket.getUserId())
+                    + ": " + reason;
+        }
+    }
+
+    private final boolean full;
+    private final int trainsChecked;
+    private final long ticketsIndexed;
+    private final long elapsedNanos;
+    private final List<Inconsistency> confirmed;
+    // found once, reported if the next pass still finds them
+    private final int suspected;
+    private final int repaired;
+
+    ConsistencyReport(boolean full, int trainsChecked, long ticketsIndexed, long elapsedNanos,
+                      List<Inconsistency> confirmed, int suspected, int repaired) {
+        this.full = full;
+        this.trainsChecked = trainsChecked;
+        this.ticketsIndexed = ticketsIndexed;
+        this.elapsedNanos = elapsedNanos;
+        this.confirmed = confirmed;
+        this.suspected = suspected;
+        this.repaired = repaired;
+    }
+
+    // true for a pass over all tickets and trains, false for one over recent changes
+    public boolean isFull() {
+        return full;
+    }
+
+    public int getTrainsChecked() {
+        return trainsChecked;
+    }
+
+    public long getTicketsIndexed() {
+        return ticketsIndexed;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public List<Inconsistency> getConfirmed() {
+        return confirmed;
+    }
+
+    public int getSuspected() {
+        return suspected;
+    }
+
+    public int getRepaired() {
+        return repaired;
+    }
+
+    public boolean isConsistent() {
+        return confirmed.isEmpty() && suspected == 0;
+    }
+
+    public void print() {
+        System.out.printf("Consistency check (%s): %d trains against %d tickets in %.3f s, %d inconsistencies%s%s%n",
+                full ? "full" : "changes", trainsChecked, ticketsIndexed, elapsedNanos / 1e9, confirmed.size(),
+                suspected > 0 ? ", " + suspected + " more to confirm on the next pass" : "",
+                repaired > 0 ? ", " + repaired + " repaired" : "");
+        for (Inconsistency inconsistency : confirmed) {
+            System.out.println("  " + inconsistency);
+        }
+    }
+}
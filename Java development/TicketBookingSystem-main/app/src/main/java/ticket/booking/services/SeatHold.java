@@ -0,0 +1,55 @@
+package ticket.booking.services;
+
+import ticket.booking.engine.HashedTimerWheel;
+
+import java.util.concurrent.TimeUnit;
+
+// A seat reserved for one user until expiresAtMillis, made by SeatHoldService
+public class SeatHold {
+
+    private final String holdId;
+    private final String userId;
+    private final String trainId;
+    private final int row;
+    private final int seat;
+    private final long expiresAtMillis;
+    // the timer that releases the seat, cancelled when the hold is confirmed or released
+    volatile HashedTimerWheel.Timeout expiry;
+
+    SeatHold(String holdId, String userId, String trainId, int row, int seat, long expiresAtMillis) {
+        this.holdId = holdId;
+        this.userId = userId;
+        this.trainId = trainId;
+        this.row = row;
+        this.seat = seat;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    public String getHoldId() {
+        return holdId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getTrainId() {
+        return trainId;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public int getSeat() {
+        return seat;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    public long secondsLeft() {
+        return Math.max(0, TimeUnit.MILLISECONDS.toSeconds(expiresAtMillis - System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,134 @@
+package ticket.booking.services;
+
+import ticket.booking.engine.HashedTimerWheel;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Temporary seat holds. Holding turns a free seat into Train.SEAT_HELD through the
+// booking engine, so nobody else can book it; the holder then confirms it (the seat
+// becomes booked) or releases it. A hold that is neither confirmed nor released in
+// time is released by a hashed timer wheel, which keeps scheduling and cancelling O(1)
+// however many holds are outstanding. The seat goes back to the train's free seat
+// count as soon as the release is applied. If the engine fails to apply a confirm or a
+// release, e.g. because the train could not be written, the hold is put back with its
+// timer, so the seat is never left held by a hold nobody knows about.
+public class SeatHoldService implements AutoCloseable {
+
+    // hold time, change with -Dbooking.holdTtlSeconds
+    public static final long DEFAULT_TTL_SECONDS = 300;
+    private static final long TICK_MILLIS = 100;
+    // 512 ticks of 100 ms: holds up to ~51 s land in their bucket directly, longer ones wait some turns
+    private static final int WHEEL_SIZE = 512;
+    // a hold whose seat change failed after it ran out is released again this much later
+    private static final long RETRY_MILLIS = 1_000;
+
+    private final TrainService trainService;
+    private final long ttlMillis;
+    private final HashedTimerWheel timerWheel = new HashedTimerWheel(TICK_MILLIS, TimeUnit.MILLISECONDS, WHEEL_SIZE);
+    // holdId -> hold, whoever removes a hold from here owns ending it
+    private final ConcurrentHashMap<String, SeatHold> holds = new ConcurrentHashMap<>();
+
+    public SeatHoldService(TrainService trainService) {
+        this(trainService, TimeUnit.SECONDS.toMillis(Long.getLong("booking.holdTtlSeconds", DEFAULT_TTL_SECONDS)));
+    }
+
+    public SeatHoldService(TrainService trainService, long ttlMillis) {
+        this.trainService = trainService;
+        this.ttlMillis = ttlMillis;
+    }
+
+    // Holds the seat for the user, empty if it is not free or does not exist
+    public Optional<SeatHold> hold(String userId, String trainId, int row, int seat) {
+        if (!join(trainService.holdSeatAsync(trainId, row, seat))) {
+            return Optional.empty();
+        }
+        SeatHold hold = new SeatHold(UUID.randomUUID().toString(), userId, trainId, row, seat,
+                System.currentTimeMillis() + ttlMillis);
+        // in the map before the timer exists, a timer firing for a hold already ended does nothing
+        holds.put(hold.getHoldId(), hold);
+        hold.expiry = timerWheel.schedule(() -> expire(hold), ttlMillis, TimeUnit.MILLISECONDS);
+        return Optional.of(hold);
+    }
+
+    // Books the held seat. False if the hold already expired or was released, or the
+    // seat could not be booked; the hold stays in place then until it runs out.
+    public boolean confirm(SeatHold hold) {
+        if (!holds.remove(hold.getHoldId(), hold)) {
+            return false;
+        }
+        cancelExpiry(hold);
+        return apply(hold, trainService.confirmHeldSeatAsync(hold.getTrainId(), hold.getRow(), hold.getSeat()));
+    }
+
+    // Gives the seat back, false if the hold had already ended or the seat could not be
+    // given back; the timer tries again then
+    public boolean release(SeatHold hold) {
+        if (!holds.remove(hold.getHoldId(), hold)) {
+            return false;
+        }
+        cancelExpiry(hold);
+        return apply(hold, trainService.releaseHeldSeatAsync(hold.getTrainId(), hold.getRow(), hold.getSeat()));
+    }
+
+    // Waits for the change to the held seat, and keeps the hold if the change failed
+    private boolean apply(SeatHold hold, CompletableFuture<Boolean> change) {
+        try {
+            return change.join();
+        } catch (CompletionException e) {
+            System.out.println("Seat hold failed: " + e.getCause().getMessage());
+            keep(hold);
+            return false;
+        }
+    }
+
+    // Puts the hold back with a timer for the rest of its time, or for a retry if it ran out
+    private void keep(SeatHold hold) {
+        holds.put(hold.getHoldId(), hold);
+        long left = Math.max(RETRY_MILLIS, hold.getExpiresAtMillis() - System.currentTimeMillis());
+        hold.expiry = timerWheel.schedule(() -> expire(hold), left, TimeUnit.MILLISECONDS);
+    }
+
+    private static void cancelExpiry(SeatHold hold) {
+        HashedTimerWheel.Timeout expiry = hold.expiry;
+        if (expiry != null) {
+            expiry.cancel();
+        }
+    }
+
+    public int activeHolds() {
+        return holds.size();
+    }
+
+    // Runs on the timer thread, so it only queues the release and does not wait for it;
+    // a release that fails puts the hold back on the wheel
+    private void expire(SeatHold hold) {
+        if (holds.remove(hold.getHoldId(), hold)) {
+            trainService.releaseHeldSeatAsync(hold.getTrainId(), hold.getRow(), hold.getSeat())
+                    .whenComplete((released, error) -> {
+                        if (error != null) {
+                            System.out.println("Releasing an expired hold failed: " + error.getMessage());
+                            keep(hold);
+                        }
+                    });
+        }
+    }
+
+    private static boolean join(CompletableFuture<Boolean> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            System.out.println("Seat hold failed: " + e.getCause().getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        timerWheel.close();
+    }
+}
@@ -0,0 +1,220 @@
+package ticket.booking.services;
+
+import ticket.booking.entities.Coach;
+import ticket.booking.entities.Train;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Bulk import of the upstream timetable export. The CSV is cut into chunks that are
+// parsed and validated in parallel, then all accepted trains go to the catalog in one
+// call, so storage writes its index once and readers see one new snapshot.
+//
+// One train per line, a header line starting with train_id is skipped:
+//   train_id,train_no,stations,station_times,rows,seats_per_row[,coaches]
+//   T123,12345,kandivali;borivali;malad,08:00 AM;09:00 AM;11:00 AM,3,5,S1:SL:2;B1:3A:1
+// coaches, if given, are coach:class:rows in row order and cover all rows; without
+// them the train is one coach of the default class.
+public class TimetableImportService {
+
+    private static final int CHUNK_SIZE = 10_000;
+    // a train on the road longer than this is a broken row, not a long journey
+    private static final int MAX_JOURNEY_DAYS = 3;
+    private static final int MAX_REPORTED_ERRORS = 10;
+    private static final DateTimeFormatter TWELVE_HOUR = DateTimeFormatter.ofPattern("hh:mm a", Locale.ENGLISH);
+    private static final DateTimeFormatter TWENTY_FOUR_HOUR = DateTimeFormatter.ofPattern("HH:mm");
+
+    private final TrainService trainService;
+
+    public TimetableImportService(TrainService trainService) {
+        this.trainService = trainService;
+    }
+
+    // Imports the file and prints how many rows were accepted and how fast.
+    // Returns the number of trains imported.
+    public int importCsv(Path csvFile) throws IOException {
+        long start = System.nanoTime();
+        List<String> lines = Files.readAllLines(csvFile);
+        int firstRow = !lines.isEmpty() && lines.get(0).startsWith("train_id") ? 1 : 0;
+        int rows = lines.size() - firstRow;
+
+        int chunks = (rows + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        List<ChunkResult> results = IntStream.range(0, chunks)
+                .parallel()
+                .mapToObj(chunk -> parseChunk(lines, firstRow + chunk * CHUNK_SIZE,
+                        Math.min(lines.size(), firstRow + (chunk + 1) * CHUNK_SIZE)))
+                .collect(Collectors.toList());
+        long parsed = System.nanoTime();
+
+        // chunks come back in file order, so for a repeated train the first row wins
+        List<Train> trains = new ArrayList<>(rows);
+        List<String> errors = new ArrayList<>();
+        Set<String> seenIds = new HashSet<>();
+        for (ChunkResult result : results) {
+            errors.addAll(result.errors);
+            for (int i = 0; i < result.trains.size(); i++) {
+                Train train = result.trains.get(i);
+                if (seenIds.add(train.getTrainId().toLowerCase(Locale.ROOT))) {
+                    trains.add(train);
+                } else {
+                    errors.add("line " + result.lineNumbers.get(i) + ": duplicate train " + train.getTrainId());
+                }
+            }
+        }
+
+        trainService.importTrains(trains);
+        long merged = System.nanoTime();
+
+        for (int i = 0; i < Math.min(errors.size(), MAX_REPORTED_ERRORS); i++) {
+            System.out.println("Rejected " + errors.get(i));
+        }
+        if (errors.size() > MAX_REPORTED_ERRORS) {
+            System.out.println("... and " + (errors.size() - MAX_REPORTED_ERRORS) + " more rejected rows");
+        }
+        double seconds = (merged - start) / 1_000_000_000.0;
+        System.out.printf("Imported %d of %d rows (%d rejected): parse %d ms, merge %d ms, %.0f rows/s%n",
+                trains.size(), rows, errors.size(),
+                (parsed - start) / 1_000_000, (merged - parsed) / 1_000_000,
+                seconds > 0 ? rows / seconds : rows);
+        return trains.size();
+    }
+
+    private static class ChunkResult {
+        final List<Train> trains = new ArrayList<>();
+        final List<Integer> lineNumbers = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+    }
+
+    private static ChunkResult parseChunk(List<String> lines, int from, int to) {
+        ChunkResult result = new ChunkResult();
+        for (int index = from; index < to; index++) {
+            String line = lines.get(index);
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                result.trains.add(parseRow(line));
+                result.lineNumbers.add(index + 1);
+            } catch (IllegalArgumentException e) {
+                result.errors.add("line " + (index + 1) + ": " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    // Throws IllegalArgumentException with the reason if the row is not a valid train
+    static Train parseRow(String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length != 6 && fields.length != 7) {
+            throw new IllegalArgumentException("expected 6 or 7 fields but found " + fields.length);
+        }
+        String trainId = fields[0].trim();
+        String trainNo = fields[1].trim();
+        if (trainId.isEmpty() || trainNo.isEmpty()) {
+            throw new IllegalArgumentException("train id and train number are required");
+        }
+        String[] stations = fields[2].split(";");
+        String[] times = fields[3].split(";");
+        if (stations.length < 2) {
+            throw new IllegalArgumentException("a route needs at least two stations");
+        }
+        if (times.length != stations.length) {
+            throw new IllegalArgumentException(stations.length + " stations but " + times.length + " times");
+        }
+
+        Map<String, String> stationTimes = new LinkedHashMap<>();
+        List<String> route = new ArrayList<>(stations.length);
+        LocalTime previous = null;
+        int days = 0;
+        for (int i = 0; i < stations.length; i++) {
+            String station = stations[i].trim().toLowerCase(Locale.ROOT);
+            if (station.isEmpty()) {
+                throw new IllegalArgumentException("empty station name at stop " + (i + 1));
+            }
+            if (stationTimes.containsKey(station)) {
+                throw new IllegalArgumentException("station " + station + " appears twice on the route");
+            }
+            String time = times[i].trim();
+            LocalTime departure = parseTime(time);
+            // an earlier clock time than the stop before means the train ran past midnight
+            if (previous != null && !departure.isAfter(previous)) {
+                days++;
+            }
+            previous = departure;
+            route.add(station);
+            stationTimes.put(station, time);
+        }
+        if (days >= MAX_JOURNEY_DAYS) {
+            throw new IllegalArgumentException("times go backwards " + days + " times, more than a "
+                    + MAX_JOURNEY_DAYS + " day journey");
+        }
+
+        int rows = parseCount(fields[4], "rows");
+        int seatsPerRow = parseCount(fields[5], "seats_per_row");
+        List<List<Integer>> seats = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            seats.add(new ArrayList<>(Collections.nCopies(seatsPerRow, 0)));
+        }
+        Train train = new Train(trainId, trainNo, seats, stationTimes, route);
+        if (fields.length == 7 && !fields[6].isBlank()) {
+            train.setCoaches(parseCoaches(fields[6], rows));
+        }
+        return train;
+    }
+
+    private static List<Coach> parseCoaches(String value, int rows) {
+        List<Coach> coaches = new ArrayList<>();
+        int firstRow = 0;
+        for (String part : value.split(";")) {
+            String[] coach = part.split(":");
+            if (coach.length != 3 || coach[0].isBlank() || coach[1].isBlank()) {
+                throw new IllegalArgumentException("bad coach '" + part + "', expected coach:class:rows");
+            }
+            int coachRows = parseCount(coach[2], "rows of coach " + coach[0].trim());
+            coaches.add(new Coach(coach[0].trim(), coach[1], firstRow, coachRows));
+            firstRow += coachRows;
+        }
+        if (firstRow != rows) {
+            throw new IllegalArgumentException("coaches have " + firstRow + " rows but the train has " + rows);
+        }
+        return coaches;
+    }
+
+    private static LocalTime parseTime(String time) {
+        try {
+            return LocalTime.parse(time.toUpperCase(Locale.ROOT), TWELVE_HOUR);
+        } catch (DateTimeParseException twelveHour) {
+            try {
+                return LocalTime.parse(time, TWENTY_FOUR_HOUR);
+            } catch (DateTimeParseException twentyFourHour) {
+                throw new IllegalArgumentException("bad time '" + time + "'");
+            }
+        }
+    }
+
+    private static int parseCount(String value, String name) {
+        try {
+            int count = Integer.parseInt(value.trim());
+            if (count <= 0) {
+                throw new IllegalArgumentException(name + " must be positive");
+            }
+            return count;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad " + name + " '" + value + "'");
+        }
+    }
+}
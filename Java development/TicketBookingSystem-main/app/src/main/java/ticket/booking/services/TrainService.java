@@ -1,131 +1,282 @@
 package ticket.booking.services;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import ticket.booking.catalog.CatalogSnapshot;
+import ticket.booking.catalog.CatalogWatcher;
+import ticket.booking.catalog.TrainCatalog;
+import ticket.booking.engine.BookingEngine;
 import ticket.booking.entities.Train;
+import ticket.booking.metrics.LatencyHistogram;
+import ticket.booking.metrics.Metrics;
+import ticket.booking.repository.JsonTrainRepository;
+import ticket.booking.repository.Repositories;
+import ticket.booking.repository.TrainRepository;
+import ticket.booking.utils.StationDictionary;
+import ticket.booking.utils.StationIndex;
 
-import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
-import java.util.OptionalInt;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-public class TrainService {
+public class TrainService implements AutoCloseable {
 
-    private List<Train> trainList;
-    private final ObjectMapper objectMapper;
-    private static final String TRAIN_DB_PATH = "app/src/main/java/ticket/booking/localDb/trains.json";
+    private static final LatencyHistogram SEARCH_LATENCY = Metrics.latency("train.search");
+    private static final LatencyHistogram BOOK_LATENCY = Metrics.latency("train.book");
+    private static final LatencyHistogram SUGGEST_LATENCY = Metrics.latency("stations.suggest");
+
+    // where trains are persisted, JSON shards or the embedded database
+    private final TrainRepository trainRepository;
+
+    // versioned, immutable view of the trains that searches read without locking
+    private final TrainCatalog trainCatalog;
+
+    // single writer thread per partition of trains, every seat change is queued to it instead of locking
+    private final BookingEngine bookingEngine;
+
+    // reloads trains edited on disk, null when hot reload is off or the trains are not JSON files
+    private final CatalogWatcher catalogWatcher;
+
+    // station names for autocomplete and typo-tolerant search, rebuilt when a train
+    // brings a station that was not known yet (StationDictionary only ever grows)
+    private volatile StationIndex stationIndex;
+    private volatile int stationIndexDictionarySize = -1;
 
     public TrainService() throws IOException{
-        objectMapper = new ObjectMapper();
-        objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
-        loadTrains();
+        this(Repositories.open().trains());
     }
 
-    public void loadTrains() throws IOException{
-        trainList = objectMapper.readValue(new File(TRAIN_DB_PATH), new TypeReference<List<Train>>() {});
-//        System.out.println(trainList);
+    public TrainService(TrainRepository trainRepository){
+        this.trainRepository = trainRepository;
+        this.trainCatalog = new TrainCatalog(trainRepository);
+        this.bookingEngine = new BookingEngine(trainCatalog);
+        // edits to the JSON files are picked up while running, -Dbooking.hotReload=false turns this off
+        CatalogWatcher watcher = null;
+        if (trainRepository instanceof JsonTrainRepository && Boolean.parseBoolean(System.getProperty("booking.hotReload", "true"))) {
+            try {
+                watcher = CatalogWatcher.start((JsonTrainRepository) trainRepository, trainCatalog);
+            } catch (IOException e) {
+                System.out.println("Hot reload disabled: " + e.getMessage());
+            }
+        }
+        this.catalogWatcher = watcher;
+    }
+
+    // Stops watching the files and lets the booking engine write what is queued; one
+    // service is shared by everything working on the same trains, so its owner closes it
+    @Override
+    public void close() throws IOException {
+        try {
+            if (catalogWatcher != null) {
+                catalogWatcher.close();
+            }
+        } finally {
+            bookingEngine.close();
+        }
     }
 
     public List<Train> searchTrains(String source, String destination){
+        return searchTrains(source, destination, null);
+    }
+
+    // Trains of the route with a free seat in travelClass, all trains of the route if it is null
+    public List<Train> searchTrains(String source, String destination, String travelClass){
 
         // getting the source and destination
-        // and filtering the trains based on the source and destination
-        // in trainList List that was loaded from Train.json
-        // fetching each train from the list through stream and filtering it
-        // and checking it with the validTrain method
-        // if valid then collecting it in a list
+        // and asking the catalog for the trains that stop at source
+        // and later on their route at destination
         // and returning the list of trains that are valid for the source and destination
+        // the trains returned are immutable versions, a booking never changes them in place
+        // "Vile Parle" finds the trains of "vileparle", names nobody spells that way are
+        // searched as typed
+        long start = Metrics.start();
         try{
-            return trainList.stream()
-                    .filter(train -> validTrain(train,source,destination))
-                    .collect(Collectors.toList());
+            StationIndex stations = stations();
+            String from = stations.resolve(source).orElse(source);
+            String to = stations.resolve(destination).orElse(destination);
+            return travelClass == null ? trainCatalog.search(from, to) : trainCatalog.search(from, to, travelClass);
         }catch (Exception ex){
             System.out.println("Error in searchTrains: " + ex.getMessage());
             return null;
+        }finally {
+            SEARCH_LATENCY.stop(start);
+        }
+    }
+
+    // Stations starting with what was typed, then the ones a typo or two away
+    public List<String> suggestStations(String typed, int limit) {
+        long start = Metrics.start();
+        try {
+            return stations().suggest(typed, limit);
+        } finally {
+            SUGGEST_LATENCY.stop(start);
+        }
+    }
+
+    private StationIndex stations() {
+        StationIndex stations = stationIndex;
+        if (stations != null && stationIndexDictionarySize == StationDictionary.size()) {
+            return stations;
+        }
+        synchronized (this) {
+            int dictionarySize = StationDictionary.size();
+            if (stationIndex == null || stationIndexDictionarySize != dictionarySize) {
+                try {
+                    stationIndex = StationIndex.of(trainRepository.findAllStations());
+                } catch (IOException e) {
+                    System.out.println("Failed to list stations: " + e.getMessage());
+                    if (stationIndex == null) {
+                        stationIndex = StationIndex.of(Collections.emptyList());
+                    }
+                }
+                stationIndexDictionarySize = dictionarySize;
+            }
+            return stationIndex;
         }
     }
 
     public void addTrain(Train newTrain) {
         // Checking here if a train with the same trainId already exists
-        Optional<Train> existingTrain = trainList.stream()
-                .filter(train -> train.getTrainId().equalsIgnoreCase(newTrain.getTrainId()))
-                .findFirst();
-
-        if (existingTrain.isPresent()) {
+        if (exists(newTrain.getTrainId())) {
             // If a train with the same trainId exists, update it instead of adding a new one
             updateTrain(newTrain);
         } else {
-            // Otherwise, add the new train to the list
-            trainList.add(newTrain);
-            saveTrainListToFile();
+            // Otherwise, add the new train
+            saveTrain(newTrain);
         }
     }
 
-    private void saveTrainListToFile() {
+    // Adds or replaces many trains with one write to storage and one new catalog snapshot
+    public void importTrains(List<Train> trains) throws IOException {
+        trainCatalog.putAllTimetable(trains);
+    }
+
+    public void updateTrain(Train updatedTrain) {
+        // replacing this train only, other trains are not rewritten
+        saveTrain(updatedTrain);
+    }
+
+    private boolean exists(String trainId) {
         try {
-            objectMapper.writeValue(new File(TRAIN_DB_PATH), trainList);
+            return trainRepository.exists(trainId);
         } catch (IOException e) {
-            System.out.println("Failed to save train list to file: " + e.getMessage());
+            System.out.println("Failed to look up train " + trainId + ": " + e.getMessage());
+            return false;
         }
     }
 
-    public void updateTrain(Train updatedTrain) {
-        // Find the index of the train with the same trainId
-        OptionalInt index = IntStream.range(0, trainList.size())
-                .filter(i -> trainList.get(i).getTrainId().equalsIgnoreCase(updatedTrain.getTrainId()))
-                .findFirst();
-
-        if (index.isPresent()) {
-            // If found, replace the existing train with the updated one
-            trainList.set(index.getAsInt(), updatedTrain);
-            saveTrainListToFile();
-        } else {
-            // If not found, treat it as adding a new train
-            addTrain(updatedTrain);
+    private void saveTrain(Train train) {
+        try {
+            trainCatalog.put(train);
+        } catch (IOException e) {
+            System.out.println("Failed to save train " + train.getTrainId() + ": " + e.getMessage());
         }
     }
-    
-    private boolean validTrain(Train train, String source, String destination) {
-        // getting are stations from that particular train in a list
-        List<String> stationList = train.getStations();
 
-        // getting the index of the source and destination in the stationOrder list
-        int sourceIndex = stationList.indexOf(source);
-        int destinationIndex = stationList.indexOf(destination);
+    // Every train in one consistent version, see TrainCatalog.snapshotOfAll
+    public CatalogSnapshot snapshotOfAll() throws IOException {
+        return trainCatalog.snapshotOfAll();
+    }
 
-        // checking if the source and destination are in the stationList and source is before destination
-        // in the stationList
-        // so that the train is valid
-        try{
-            return  sourceIndex != -1
-                    && destinationIndex != -1
-                    && sourceIndex < destinationIndex;
-        }catch (Exception e){
-            System.out.println("Error in validTrain: " + e.getMessage());
+    public Optional<Train> getTrainById(String trainId) {
+        try {
+            return trainCatalog.get(trainId);
+        } catch (IOException e) {
+            System.out.println("Failed to load train " + trainId + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // Marks a booked seat free again, on the writer thread that owns the train
+    public boolean releaseSeat(String trainId, int row, int seat) {
+        return await(releaseSeatAsync(trainId, row, seat));
+    }
+
+    // Queues the release, so several seats can be freed in one batch of the engine
+    public CompletableFuture<Boolean> releaseSeatAsync(String trainId, int row, int seat) {
+        return bookingEngine.cancel(trainId, row, seat);
+    }
+
+    // Marks a free seat as taken, used by bookings and waitlist promotions
+    public boolean occupySeat(String trainId, int row, int seat) {
+        return await(bookingEngine.book(trainId, row, seat));
+    }
+
+    // Sets a seat to value whatever it holds now, used to replay a change made on another
+    // node. True if the seat exists, also when it already held value.
+    public boolean setSeat(String trainId, int row, int seat, int value) {
+        return await(setSeatAsync(trainId, row, seat, value));
+    }
+
+    public CompletableFuture<Boolean> setSeatAsync(String trainId, int row, int seat, int value) {
+        return bookingEngine.set(trainId, row, seat, value);
+    }
+
+    // Waits for a seat change queued with one of the *Async methods, false if it failed
+    public boolean await(CompletableFuture<Boolean> change) {
+        try {
+            return change.join();
+        } catch (CompletionException e) {
+            System.out.println("Failed to update seat: " + e.getCause().getMessage());
             return false;
         }
     }
 
+    // Queues the booking on the writer thread that owns the train
+    public CompletableFuture<Boolean> bookTicketsAsync(Train train, int row, int seat) {
+        return bookSeatAsync(train.getTrainId(), row, seat);
+    }
+
+    public CompletableFuture<Boolean> bookSeatAsync(String trainId, int row, int seat) {
+        return bookingEngine.book(trainId, row, seat);
+    }
+
+    // Seat holds, see SeatHoldService
+    public CompletableFuture<Boolean> holdSeatAsync(String trainId, int row, int seat) {
+        return bookingEngine.hold(trainId, row, seat);
+    }
+
+    public CompletableFuture<Boolean> confirmHeldSeatAsync(String trainId, int row, int seat) {
+        return bookingEngine.confirmHold(trainId, row, seat);
+    }
+
+    public CompletableFuture<Boolean> releaseHeldSeatAsync(String trainId, int row, int seat) {
+        return bookingEngine.releaseHold(trainId, row, seat);
+    }
+
+    // Free seats of the train without counting them, -1 if the train does not exist
+    public int availableSeats(String trainId) {
+        try {
+            return trainCatalog.availableSeats(trainId);
+        } catch (IOException e) {
+            System.out.println("Failed to load train " + trainId + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    // Free seats of one class without counting them, 0 if the train has no such class
+    // and -1 if the train does not exist
+    public int availableSeats(String trainId, String travelClass) {
+        try {
+            return trainCatalog.availableSeats(trainId, travelClass);
+        } catch (IOException e) {
+            System.out.println("Failed to load train " + trainId + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
     public boolean bookTickets(Train train, int row, int seat) {
-        // getting the seats from the train
-        List<List<Integer>> seats = train.getSeats();
+        // the writer checks the seat against the latest version of the train,
+        // the train passed in may be an older version
+        long start = Metrics.start();
         try{
-            if (row >= 0 && row < seats.size() && seat >= 0 && seat < seats.get(row).size()) {
-                if (seats.get(row).get(seat) == 0) {
-                    seats.get(row).set(seat, 1);
-                    train.setSeats(seats);
-                    addTrain(train);
-                    return true;
-                }
-            }
-            return false;
+            return bookTicketsAsync(train, row, seat).join();
         }catch (Exception e){
             System.out.println("Error in bookTickets: " + e.getMessage());
             return false;
+        }finally {
+            BOOK_LATENCY.stop(start);
         }
     }
 
@@ -1,76 +1,261 @@
 package ticket.booking.services;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import ticket.booking.admission.AdmissionController;
 import ticket.booking.entities.Ticket;
 import ticket.booking.entities.Train;
 import ticket.booking.entities.User;
+import ticket.booking.metrics.LatencyHistogram;
+import ticket.booking.metrics.Metrics;
+import ticket.booking.repository.HistoryFilter;
+import ticket.booking.repository.Repositories;
+import ticket.booking.repository.TicketPage;
+import ticket.booking.repository.TicketRepository;
+import ticket.booking.repository.UserRepository;
+import ticket.booking.session.UserSessions;
 import ticket.booking.utils.UserServiceUtil;
 
-import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
 
 public class UserBookingService {
 
-    private User user;
+    private static final LatencyHistogram SIGN_UP_LATENCY = Metrics.latency("user.signup");
+    // time spent waiting for the lock that seat and ticket changes take
+    private static final LatencyHistogram LOCK_WAIT = Metrics.latency("booking.lockWait");
 
-    private List<User> userList;
+    // token of this session's login in sessions, null before login
+    private volatile String sessionToken;
+    // id of the logged in user, requests are queued fairly between users by it
+    private volatile String sessionUserId;
 
-    private final ObjectMapper objectMapper;
+    // where users and tickets are persisted, JSON buckets or the embedded database
+    private final UserRepository userRepository;
 
-    private final String USERS_PATH = "app/src/main/java/ticket/booking/localDb/users.json";
+    private final TicketRepository ticketRepository;
+
+    // bookings shown per page of the booking history
+    public static final int HISTORY_PAGE_SIZE = 20;
+    // number of freed seats handed to waitlisted users before the files are written once
+    private static final int PROMOTION_BATCH_SIZE = 50;
+
+    private final TrainService trainService;
+
+    private final WaitlistService waitlistService;
+
+    // seats reserved between picking and confirming them
+    private final SeatHoldService seatHoldService;
+
+    // turns requests away when login or booking is overloaded
+    private final AdmissionController admission;
+
+    // taken for every change to seats and tickets, the same object in all sessions of
+    // one service (see newSession)
+    private final Object lock;
+
+    // logins of all sessions and the recently active users behind them
+    private final UserSessions sessions;
+
+    // "trainId:row:seat" (trainId lowercase) of seats booked whose ticket is not issued
+    // yet, shared by all sessions; ConsistencyChecker leaves them alone
+    private final Set<String> seatsBeingIssued;
 
 
     public UserBookingService() throws IOException{
-        objectMapper = new ObjectMapper();
-        objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
-        loadUsers();
+        this(Repositories.open());
+    }
+
+    public UserBookingService(Repositories repositories) throws IOException{
+        this(repositories, new WaitlistService());
     }
-    private void loadUsers() throws IOException{
-        userList = objectMapper.readValue(new File(USERS_PATH), new TypeReference<List<User>>() {});
+
+    // On the given storage and waitlists, e.g. scratch ones
+    public UserBookingService(Repositories repositories, WaitlistService waitlistService){
+        this(repositories, new TrainService(repositories.trains()), waitlistService);
+    }
+
+    // On a train service of repositories.trains() that someone else closes
+    public UserBookingService(Repositories repositories, TrainService trainService, WaitlistService waitlistService){
+        userRepository = repositories.users();
+        ticketRepository = repositories.tickets();
+        this.trainService = trainService;
+        this.waitlistService = waitlistService;
+        seatHoldService = new SeatHoldService(trainService);
+        admission = new AdmissionController();
+        lock = this;
+        sessions = new UserSessions(userRepository::findById);
+        seatsBeingIssued = ConcurrentHashMap.newKeySet();
+    }
+
+    // A session of another user on the same trains, tickets and waitlists, so several
+    // users can be logged in at once, e.g. when replaying commands in batch mode
+    private UserBookingService(UserBookingService shared){
+        userRepository = shared.userRepository;
+        ticketRepository = shared.ticketRepository;
+        trainService = shared.trainService;
+        waitlistService = shared.waitlistService;
+        seatHoldService = shared.seatHoldService;
+        admission = shared.admission;
+        lock = shared.lock;
+        sessions = shared.sessions;
+        seatsBeingIssued = shared.seatsBeingIssued;
+    }
+
+    public UserBookingService newSession(){
+        return new UserBookingService(this);
     }
 
     public boolean signUp(User user) throws IOException{
+        long start = Metrics.start();
         try{
-            Optional<User> foundUser = userList.stream().filter(user1 -> {
-                return user1.getUsername().equals(user.getUsername());
-            }).findFirst();
+            // checking and claiming the username must not interleave between two sessions
+            long waitStart = Metrics.start();
+            synchronized (lock) {
+                LOCK_WAIT.stop(waitStart);
+                if (userRepository.usernameTaken(user.getUsername())) {
+                    // If a user with the same username exists,this will print an error message
+                    System.out.println("Username already taken!");
+                    return false;
+                }
 
-            if (foundUser.isPresent()) {
-                // If a user with the same username exists,this will print an error message
-                System.out.println("Username already taken!");
-                return false;
+                userRepository.add(user);
             }
-
-            userList.add(user);
-            saveUserListToFile();
         }catch (Exception ex){
             System.out.println("saving user list to file failed " + ex.getMessage());
             return false;
+        }finally {
+            SIGN_UP_LATENCY.stop(start);
         }
         return true;
     }
 
-    private void saveUserListToFile() throws IOException{
-        File usersFile = new File(USERS_PATH);
-        objectMapper.writeValue(usersFile, userList);
+    // Writes back only the users whose tickets changed
+    void saveDirtyUsers() throws IOException{
+        ticketRepository.flush();
+        userRepository.flush();
     }
 
+    // Prints all bookings one page at a time, so only a page is ever held in memory
     public void fetchBookings(){
         System.out.println("Fetching your bookings");
-        user.printTickets();
+        String cursor = fetchBookings(HistoryFilter.ALL, null, HISTORY_PAGE_SIZE);
+        while (cursor != null) {
+            cursor = fetchBookings(HistoryFilter.ALL, cursor, HISTORY_PAGE_SIZE);
+        }
+    }
+
+    // Prints one page of the user's bookings sorted by travel date, starting after
+    // cursor (null for the first page). Returns the cursor of the next page, or null
+    // when there are no more bookings.
+    public String fetchBookings(HistoryFilter filter, String cursor, int pageSize){
+        User user = currentUser();
+        if (user == null) {
+            System.out.println("Please login first!");
+            return null;
+        }
+        try {
+            TicketPage page = ticketRepository.findPage(user.getUserId(), filter, cursor, Math.max(1, pageSize));
+            if (page.getTickets().isEmpty() && cursor == null) {
+                System.out.println("No tickets booked yet!");
+            }
+            for (Ticket ticket : page.getTickets()) {
+                System.out.println(ticket.getTicketInfo());
+            }
+            return page.getNextCursor();
+        } catch (IOException ex) {
+            System.out.println("Failed to load your bookings: " + ex.getMessage());
+            return null;
+        }
     }
 
+    // the User the sessions of this user work on, so changes made through a session show
     public Optional<User> getUserByUsername(String username){
-        return userList.stream().filter(user -> user.getUsername().equals(username)).findFirst();
+        try{
+            return userRepository.findByUsername(username);
+        }catch (IOException ex){
+            System.out.println("Failed to load user " + username + ": " + ex.getMessage());
+            return Optional.empty();
+        }
     }
 
+    // Checks the password and makes the user the logged in one. Empty if the username or
+    // password is wrong, or if too many logins are going on to take this one now.
+    public Optional<User> login(String username, String password){
+        try{
+            Optional<User> found = admission.call(AdmissionController.Operation.LOGIN, username, () -> {
+                Optional<User> candidate = userRepository.findByUsername(username);
+                return candidate.filter(u -> UserServiceUtil.checkPassword(password, u.getHashedPassword()));
+            }, Optional.<User>empty());
+            found.ifPresent(this::setUser);
+            return found;
+        }catch (IOException ex){
+            System.out.println("Failed to load user " + username + ": " + ex.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // Starts a session for the user in this service, ending the one it had
     public void setUser(User user){
-        this.user = user;
+        logout();
+        if (user != null) {
+            sessionToken = sessions.open(user);
+            sessionUserId = user.getUserId();
+        }
+    }
+
+    // Token of the current login, for a client that comes back later with resumeSession
+    public String getSessionToken(){
+        return sessionToken;
+    }
+
+    // Carries on a session opened earlier, possibly by another UserBookingService of the
+    // same sessions. False if there is no such session or it ended.
+    public boolean resumeSession(String token){
+        Optional<User> owner = loadSessionUser(token);
+        if (owner.isEmpty()) {
+            return false;
+        }
+        sessionToken = token;
+        sessionUserId = owner.get().getUserId();
+        return true;
+    }
+
+    public void logout(){
+        sessions.close(sessionToken);
+        sessionToken = null;
+        sessionUserId = null;
+    }
+
+    // False before login and once the session ended for being idle too long
+    public boolean isLoggedIn(){
+        return currentUser() != null;
+    }
+
+    public UserSessions getSessions(){
+        return sessions;
+    }
+
+    // The logged in user, read again from storage if it was dropped from memory; null if
+    // nobody is logged in or the session ended
+    private User currentUser(){
+        return loadSessionUser(sessionToken).orElse(null);
+    }
+
+    private Optional<User> loadSessionUser(String token){
+        try{
+            return sessions.user(token);
+        }catch (IOException ex){
+            System.out.println("Failed to load your account: " + ex.getMessage());
+            return Optional.empty();
+        }
     }
 
 
@@ -80,9 +265,7 @@ public class UserBookingService {
             System.out.println("Ticket ID cannot be null or empty.");
             return Boolean.FALSE;
         }
-        boolean isRemoved =  user.getTicketsBooked().removeIf(ticket -> ticket.getTicketId().equals(ticketId) );
-        if(isRemoved) {
-            saveUserListToFile();
+        if(cancelBookings(Collections.singletonList(ticketId)) == 1) {
             System.out.println("Ticket with ID " + ticketId + " has been canceled.");
             return true;
         }else{
@@ -91,10 +274,201 @@ public class UserBookingService {
         }
     }
 
+    // Cancels every given ticket of the logged in user, frees their seats and hands
+    // each freed seat to the next user on that train's waitlist.
+    // Returns how many tickets were actually cancelled.
+    public int cancelBookings(List<String> ticketIds) throws IOException{
+        return admission.call(AdmissionController.Operation.CANCEL, currentClient(), () -> {
+            User user = currentUser();
+            return user == null ? 0 : cancelBookings(user, ticketIds);
+        }, 0);
+    }
+
+    // Same for any user, used by AsyncBookingService where there is no logged in user
+    int cancelBookings(User owner, List<String> ticketIds) throws IOException{
+        long waitStart = Metrics.start();
+        synchronized (lock) {
+            LOCK_WAIT.stop(waitStart);
+            return cancelBookingsLocked(owner, ticketIds);
+        }
+    }
+
+    private int cancelBookingsLocked(User owner, List<String> ticketIds) throws IOException{
+        List<Ticket> tickets = new ArrayList<>();
+        List<CompletableFuture<Boolean>> releases = new ArrayList<>();
+        for (String ticketId : ticketIds) {
+            Optional<Ticket> found = owner.getTicketsBooked().stream()
+                    .filter(ticket -> ticket.getTicketId().equals(ticketId))
+                    .findFirst();
+            if (found.isEmpty()) {
+                continue;
+            }
+            Ticket ticket = found.get();
+            tickets.add(ticket);
+            // tickets booked before seats were tracked carry no position to free;
+            // all queued before waiting for any, so the engine frees them in few batches
+            releases.add(hasSeat(ticket)
+                    ? trainService.releaseSeatAsync(ticket.getTrain().getTrainId(), ticket.getRow(), ticket.getSeat())
+                    : CompletableFuture.completedFuture(false));
+        }
+        List<Ticket> freedSeats = new ArrayList<>();
+        int cancelled = 0;
+        // a ticket goes only once its seat is free, and its seat is taken again if the
+        // ticket cannot go, so neither outlives the other
+        for (int i = 0; i < tickets.size(); i++) {
+            Ticket ticket = tickets.get(i);
+            boolean freed;
+            try{
+                freed = releases.get(i).join();
+            }catch (CompletionException ex){
+                // the seat is still taken, so the ticket stays valid
+                System.out.println("Failed to free the seat of ticket " + ticket.getTicketId() + ": " + ex.getCause().getMessage());
+                continue;
+            }
+            try{
+                // the repository first: it only reports, and the journal only records, a
+                // ticket it still finds on the owner
+                ticketRepository.delete(ticket);
+            }catch (IOException ex){
+                System.out.println("Failed to cancel ticket " + ticket.getTicketId() + ": " + ex.getMessage());
+                // the ticket still stands, so its seat is taken again
+                if (freed && !trainService.occupySeat(ticket.getTrain().getTrainId(), ticket.getRow(), ticket.getSeat())) {
+                    System.out.println("Seat of ticket " + ticket.getTicketId() + " was taken meanwhile");
+                }
+                continue;
+            }
+            owner.getTicketsBooked().remove(ticket);
+            cancelled++;
+            if (freed) {
+                freedSeats.add(ticket);
+            }
+        }
+        if (cancelled == 0) {
+            return 0;
+        }
+        if (freedSeats.isEmpty()) {
+            saveDirtyUsers();
+            return cancelled;
+        }
+        for (int from = 0; from < freedSeats.size(); from += PROMOTION_BATCH_SIZE) {
+            promoteWaitlisted(freedSeats.subList(from, Math.min(from + PROMOTION_BATCH_SIZE, freedSeats.size())));
+            // one write per file for the whole batch instead of one per promoted seat;
+            // the seats were written by the engine already
+            waitlistService.saveWaitlistsToFile();
+            saveDirtyUsers();
+        }
+        return cancelled;
+    }
+
+    private static boolean hasSeat(Ticket ticket){
+        return ticket.getTrain() != null && ticket.getRow() != null && ticket.getSeat() != null;
+    }
+
+    private void promoteWaitlisted(List<Ticket> freedSeats) throws IOException{
+        for (Ticket freed : freedSeats) {
+            String trainId = freed.getTrain().getTrainId();
+            Optional<String> nextUserId;
+            while ((nextUserId = waitlistService.peekNext(trainId)).isPresent()) {
+                Optional<User> nextUser;
+                try{
+                    nextUser = sessions.userById(nextUserId.get());
+                }catch (IOException ex){
+                    // unreadable is not gone, the user keeps their place
+                    System.out.println("Failed to load user " + nextUserId.get() + ": " + ex.getMessage());
+                    break;
+                }
+                if (nextUser.isEmpty()) {
+                    // the waiting user no longer exists, try the one behind
+                    waitlistService.remove(trainId, nextUserId.get());
+                    continue;
+                }
+                // the user leaves the waitlist only with the seat: if a booking took it
+                // first, they stay first in line for the next seat freed
+                Optional<Train> train = trainService.getTrainById(trainId);
+                if (train.isPresent() && trainService.occupySeat(trainId, freed.getRow(), freed.getSeat())) {
+                    waitlistService.remove(trainId, nextUserId.get());
+                    Ticket ticket = issueTicket(nextUser.get(), train.get(), freed.getRow(), freed.getSeat());
+                    System.out.println("Promoted user " + nextUser.get().getUsername() + " from the waitlist: " + ticket.getTicketInfo());
+                }
+                break;
+            }
+        }
+    }
+
+    // Adds the logged in user to the FIFO waitlist of a train, returns their position
+    public int joinWaitlist(Train train) throws IOException{
+        User user = currentUser();
+        if (user == null) {
+            throw new IOException("Not logged in");
+        }
+        return waitlistService.join(train.getTrainId(), user.getUserId());
+    }
+
+    Optional<User> getUserById(String userId){
+        try{
+            return sessions.userById(userId);
+        }catch (IOException ex){
+            System.out.println("Failed to load user " + userId + ": " + ex.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    Ticket issueTicket(User owner, Train train, int row, int seat) throws IOException{
+        Ticket ticket = new Ticket();
+
+        ticket.setSource(train.getStations().getFirst());
+        ticket.setDestination(train.getStations().getLast());
+        ticket.setTrain(train);
+        ticket.setUserId(owner.getUserId());
+        ticket.setDateOfTravel("2021-09-01");
+        ticket.setTicketId(UserServiceUtil.generateTicketId());
+        ticket.setRow(row);
+        ticket.setSeat(seat);
+
+        owner.getTicketsBooked().add(ticket);
+        try{
+            ticketRepository.save(ticket);
+        }catch (IOException | RuntimeException ex){
+            // a ticket that was not recorded is not the user's either
+            owner.getTicketsBooked().remove(ticket);
+            throw ex;
+        }
+        return ticket;
+    }
+
+    // Takes back a ticket that could not be written, the caller frees its seat
+    void revokeTicket(User owner, Ticket ticket){
+        try{
+            ticketRepository.delete(ticket);
+        }catch (IOException ex){
+            System.out.println("Failed to take back ticket " + ticket.getTicketId() + ": " + ex.getMessage());
+        }
+        owner.getTicketsBooked().remove(ticket);
+    }
+
+    // the trains of all sessions, closed once by whoever opened the service
+    public TrainService getTrainService(){
+        return trainService;
+    }
+
+    TicketRepository getTicketRepository(){
+        return ticketRepository;
+    }
+
+    // held while seats and tickets change, see ConsistencyChecker
+    Object getLock(){
+        return lock;
+    }
+
     public List<Train> getTrains (String source, String destination) throws IOException {
+        return getTrains(source, destination, null);
+    }
+
+    // Only trains with a free seat in travelClass, every train of the route if it is null
+    public List<Train> getTrains (String source, String destination, String travelClass) throws IOException {
         try{
-            TrainService trainService = new TrainService();
-            return trainService.searchTrains(source,destination);
+            return admission.call(AdmissionController.Operation.SEARCH, currentClient(),
+                    () -> trainService.searchTrains(source,destination,travelClass), Collections.<Train>emptyList());
         }catch (Exception ex){
             System.out.println("There is something wrong!");
             // return empty list if there is an exception
@@ -102,49 +476,160 @@ public class UserBookingService {
         }
     }
 
+    // station names to offer for what the user typed, see TrainService.suggestStations
+    public List<String> suggestStations(String typed, int limit){
+        return trainService.suggestStations(typed, limit);
+    }
+
+    // seats of the latest version of the train, the one passed in may be older
     public List<List<Integer>> fetchSeats(Train train){
-        return train.getSeats();
+        return trainService.getTrainById(train.getTrainId())
+                .map(Train::getSeats)
+                .orElse(train.getSeats());
     }
 
-    public Boolean bookTrainSeat(Train train, int row, int seat) {
+    // Reserves the seat for the logged in user until they confirm or release it or the
+    // hold runs out. Empty if the seat is not free.
+    public Optional<SeatHold> holdSeat(Train train, int row, int seat){
         try{
-            TrainService trainService = new TrainService();
-            List<List<Integer>> seats = train.getSeats();
-            if (row >= 0 && row < seats.size() && seat >= 0 && seat < seats.get(row).size()) {
-                if (seats.get(row).get(seat) == 0) {
-                    seats.get(row).set(seat, 1);
-
-                    train.setSeats(seats);
-                    trainService.addTrain(train);
+            return admission.call(AdmissionController.Operation.BOOK, currentClient(), () -> {
+                User user = currentUser();
+                return user == null ? Optional.<SeatHold>empty() : seatHoldService.hold(user.getUserId(), train.getTrainId(), row, seat);
+            }, Optional.<SeatHold>empty());
+        }catch (IOException ex){
+            return Optional.empty();
+        }
+    }
 
-                    Ticket ticket = new Ticket();
+    // Books a held seat and issues the ticket, false if the hold already ran out.
+    // A shed confirm leaves the hold in place, so it can be tried again until it runs out.
+    public boolean confirmHold(SeatHold hold){
+        try{
+            return admission.call(AdmissionController.Operation.BOOK, currentClient(), () -> confirmHoldAdmitted(hold), false);
+        }catch (IOException ex){
+            return false;
+        }
+    }
 
-                    ticket.setSource(train.getStations().getFirst());
-                    ticket.setDestination(train.getStations().getLast());
-                    ticket.setTrain(train);
-                    ticket.setUserId(user.getUserId());
-                    ticket.setDateOfTravel("2021-09-01");
-                    ticket.setTicketId(UserServiceUtil.generateTicketId());
+    // admission has to be passed before taking the lock, so waiting requests do not hold it
+    private boolean confirmHoldAdmitted(SeatHold hold){
+        User user = currentUser();
+        if (user == null || !hold.getUserId().equals(user.getUserId())) {
+            return false;
+        }
+        // looked up before the seat is booked, a booked seat with no train to ticket it
+        // would be lost to everyone
+        Optional<Train> train = trainService.getTrainById(hold.getTrainId());
+        if (train.isEmpty()) {
+            seatHoldService.release(hold);
+            return false;
+        }
+        return takeSeatAndIssue(user, train.get(), hold.getRow(), hold.getSeat(), () -> seatHoldService.confirm(hold));
+    }
 
-                    user.getTicketsBooked().add(ticket);
+    public boolean releaseHold(SeatHold hold){
+        return seatHoldService.release(hold);
+    }
 
-                    System.out.println("Seat booked successfully  !  ");
+    // Free seats of the latest version of the train
+    public int availableSeats(Train train){
+        return trainService.availableSeats(train.getTrainId());
+    }
 
-                    System.out.println(ticket.getTicketInfo());
+    // Free seats of one class of the latest version of the train
+    public int availableSeats(Train train, String travelClass){
+        return trainService.availableSeats(train.getTrainId(), travelClass);
+    }
 
-                    saveUserListToFile();
-                    return true; // Booking successful
-                } else {
-                    return false; // Execute when Seat is already booked
-                }
-            } else {
-                return false; // Execute when Invalid row or seat index
-            }
+    public Boolean bookTrainSeat(Train train, int row, int seat) {
+        try{
+            return admission.call(AdmissionController.Operation.BOOK, currentClient(),
+                    () -> bookTrainSeatAdmitted(train, row, seat), Boolean.FALSE);
         }catch (IOException ex){
             return Boolean.FALSE;
         }
     }
 
+    // The seat is booked by the engine before the lock is taken, so no session waits on
+    // the lock for another session's seat change; only the ticket is issued under it
+    private Boolean bookTrainSeatAdmitted(Train train, int row, int seat) {
+        User user = currentUser();
+        if (user == null) {
+            return false;
+        }
+        List<List<Integer>> seats = fetchSeats(train);
+        if (row < 0 || row >= seats.size() || seat < 0 || seat >= seats.get(row).size()) {
+            return false; // Execute when Invalid row or seat index
+        }
+        if (seats.get(row).get(seat) != Train.SEAT_FREE) {
+            return false; // Execute when Seat is already booked
+        }
+        // the seat update is checked against the latest version of the train
+        return takeSeatAndIssue(user, train, row, seat, () -> trainService.bookTickets(train, row, seat));
+    }
+
+    // Books the seat with take, through the engine and without the lock, then issues its
+    // ticket under the lock. False if take did not get the seat or the ticket could not
+    // be written, the seat is free again then.
+    private boolean takeSeatAndIssue(User user, Train train, int row, int seat, BooleanSupplier take) {
+        String issuing = seatKey(train.getTrainId(), row, seat);
+        seatsBeingIssued.add(issuing);
+        try{
+            if (!take.getAsBoolean()) {
+                return false;
+            }
+            boolean issued;
+            long waitStart = Metrics.start();
+            synchronized (lock) {
+                LOCK_WAIT.stop(waitStart);
+                issued = issueBookedSeatLocked(user, train, row, seat);
+            }
+            if (!issued) {
+                // nobody holds a ticket for the seat, it is free again for the next booking
+                trainService.releaseSeat(train.getTrainId(), row, seat);
+            }
+            return issued;
+        }finally {
+            seatsBeingIssued.remove(issuing);
+        }
+    }
+
+    // true while a session has booked the seat and not yet issued its ticket
+    boolean isBeingIssued(String trainId, int row, int seat){
+        return seatsBeingIssued.contains(seatKey(trainId, row, seat));
+    }
+
+    private static String seatKey(String trainId, int row, int seat){
+        return trainId.toLowerCase(Locale.ROOT) + ":" + row + ":" + seat;
+    }
+
+    private boolean issueBookedSeatLocked(User user, Train train, int row, int seat) {
+        Ticket ticket = null;
+        try{
+            Train booked = trainService.getTrainById(train.getTrainId()).orElse(train);
+            ticket = issueTicket(user, booked, row, seat);
+            saveDirtyUsers();
+        }catch (IOException | RuntimeException ex){
+            System.out.println("Failed to save your ticket: " + ex.getMessage());
+            if (ticket != null) {
+                revokeTicket(user, ticket);
+            }
+            return false;
+        }
+        System.out.println("Seat booked successfully  !  ");
+        System.out.println(ticket.getTicketInfo());
+        return true; // Booking successful
+    }
+
+    // the logged in user's id, requests are queued fairly between users
+    private String currentClient(){
+        String userId = sessionUserId;
+        return userId == null ? "" : userId;
+    }
+
+    public AdmissionController getAdmission(){
+        return admission;
+    }
 
 //    Redundant method - authenticating user with username and password in the main method in App.java
 //    public Boolean loginUser(){
@@ -0,0 +1,93 @@
+package ticket.booking.services;
+
+import ticket.booking.metrics.Counter;
+import ticket.booking.metrics.LatencyHistogram;
+import ticket.booking.metrics.Metrics;
+import ticket.booking.serialization.JsonCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+
+public class WaitlistService {
+
+    private static final LatencyHistogram WRITE_LATENCY = Metrics.latency("store.waitlists.write");
+    private static final Counter BYTES_WRITTEN = Metrics.counter("store.waitlists.bytesWritten");
+
+    // trainId -> userIds in the order they joined the waitlist
+    private LinkedHashMap<String, ArrayDeque<String>> waitlists;
+    private static final String WAITLIST_DB_PATH = "app/src/main/java/ticket/booking/localDb/waitlists.json";
+    private final File waitlistFile;
+
+    public WaitlistService() throws IOException {
+        this(new File(WAITLIST_DB_PATH));
+    }
+
+    // Waitlists kept in another file, e.g. a scratch one
+    public WaitlistService(File waitlistFile) throws IOException {
+        this.waitlistFile = waitlistFile;
+        loadWaitlists();
+    }
+
+    private void loadWaitlists() throws IOException {
+        if (!waitlistFile.exists()) {
+            // nobody has ever joined a waitlist yet
+            waitlists = new LinkedHashMap<>();
+            return;
+        }
+        waitlists = JsonCodec.WAITLISTS.readValue(waitlistFile);
+    }
+
+    // Returns the 1-based position of the user in the train's waitlist
+    public synchronized int join(String trainId, String userId) throws IOException {
+        ArrayDeque<String> queue = waitlists.computeIfAbsent(trainId, id -> new ArrayDeque<>());
+        if (!queue.contains(userId)) {
+            queue.addLast(userId);
+            saveWaitlistsToFile();
+        }
+        return position(trainId, userId);
+    }
+
+    public synchronized int position(String trainId, String userId) {
+        ArrayDeque<String> queue = waitlists.get(trainId);
+        if (queue == null) {
+            return -1;
+        }
+        int position = 1;
+        for (String waitingUserId : queue) {
+            if (waitingUserId.equals(userId)) {
+                return position;
+            }
+            position++;
+        }
+        return -1;
+    }
+
+    // The next waiting user, who stays first in line until remove takes them out
+    public synchronized Optional<String> peekNext(String trainId) {
+        ArrayDeque<String> queue = waitlists.get(trainId);
+        return queue == null ? Optional.empty() : Optional.ofNullable(queue.peekFirst());
+    }
+
+    // Takes the user out of the train's waitlist in memory only, the caller persists the
+    // batch. False if they were not waiting.
+    public synchronized boolean remove(String trainId, String userId) {
+        ArrayDeque<String> queue = waitlists.get(trainId);
+        if (queue == null || !queue.remove(userId)) {
+            return false;
+        }
+        if (queue.isEmpty()) {
+            waitlists.remove(trainId);
+        }
+        return true;
+    }
+
+    public synchronized void saveWaitlistsToFile() throws IOException {
+        long start = Metrics.start();
+        JsonCodec.FILE_WRITER.writeValue(waitlistFile, waitlists);
+        BYTES_WRITTEN.add(waitlistFile.length());
+        WRITE_LATENCY.stop(start);
+    }
+}
@@ -0,0 +1,130 @@
+package ticket.booking.session;
+
+import ticket.booking.metrics.Counter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Map that keeps at most about maxEntries entries and drops the least recently used one
+// to make room, and drops entries nobody touched for idleNanos. Keys are spread over
+// segments by hash, each an access ordered LinkedHashMap with its own lock, so threads
+// working on different keys rarely wait for each other. Access order is also idle
+// order, so the entries to expire are always at the head of a segment and expiring
+// costs nothing for the entries that stay.
+final class BoundedCache<K, V> {
+
+    private static final int SEGMENTS = 16;
+
+    private final List<Segment<K, V>> segments;
+    private final long idleNanos;
+    // entries dropped for room or idleness, not the ones removed on purpose
+    private final Counter evicted;
+
+    BoundedCache(int maxEntries, long idleNanos, Counter evicted) {
+        this.idleNanos = idleNanos;
+        this.evicted = evicted;
+        int perSegment = Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+        segments = new ArrayList<>(SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments.add(new Segment<>(perSegment, evicted));
+        }
+    }
+
+    // The value, or null if there is none or it was idle for too long
+    V get(K key) {
+        Segment<K, V> segment = segmentOf(key);
+        long now = System.nanoTime();
+        synchronized (segment) {
+            expireIdle(segment, now);
+            Entry<V> entry = segment.get(key);
+            if (entry == null) {
+                return null;
+            }
+            entry.lastAccess = now;
+            return entry.value;
+        }
+    }
+
+    void put(K key, V value) {
+        Segment<K, V> segment = segmentOf(key);
+        long now = System.nanoTime();
+        synchronized (segment) {
+            expireIdle(segment, now);
+            segment.put(key, new Entry<>(value, now));
+        }
+    }
+
+    void remove(K key) {
+        Segment<K, V> segment = segmentOf(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    // Drops the idle entries of every segment, also of segments nobody uses any more
+    void expireIdle() {
+        long now = System.nanoTime();
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                expireIdle(segment, now);
+            }
+        }
+    }
+
+    private void expireIdle(Segment<K, V> segment, long now) {
+        Iterator<Entry<V>> entries = segment.values().iterator();
+        while (entries.hasNext() && now - entries.next().lastAccess > idleNanos) {
+            entries.remove();
+            evicted.increment();
+        }
+    }
+
+    private Segment<K, V> segmentOf(K key) {
+        int hash = key.hashCode();
+        return segments.get((hash ^ (hash >>> 16)) & (SEGMENTS - 1));
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        // System.nanoTime() of the last get or put, changed under the segment's lock
+        long lastAccess;
+
+        Entry(V value, long lastAccess) {
+            this.value = value;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private static final class Segment<K, V> extends LinkedHashMap<K, Entry<V>> {
+        private final int capacity;
+        private final Counter evicted;
+
+        Segment(int capacity, Counter evicted) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evicted = evicted;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+            if (size() > capacity) {
+                evicted.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
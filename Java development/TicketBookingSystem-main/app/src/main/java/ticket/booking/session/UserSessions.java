@@ -0,0 +1,96 @@
+package ticket.booking.session;
+
+import ticket.booking.entities.User;
+import ticket.booking.metrics.Counter;
+import ticket.booking.metrics.Metrics;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Logged in sessions, each known by a random token. A session only remembers its
+// user's id and asks the loader for the user on every use; the loader is the user
+// storage, which keeps the recently used users in memory itself (see UserBucketStore),
+// so there is one copy of a user and one cache of them:
+//   -Dbooking.maxSessions=100000            sessions kept, least recently used ends first
+//   -Dbooking.sessionIdleSeconds=1800       a session unused this long ends
+public class UserSessions implements AutoCloseable {
+
+    private static final Counter SESSIONS_EXPIRED = Metrics.counter("sessions.expired");
+
+    // token -> userId
+    private final BoundedCache<String, String> sessions;
+    private final UserLoader loader;
+    private final ScheduledExecutorService sweeper;
+
+    public interface UserLoader {
+        Optional<User> load(String userId) throws IOException;
+    }
+
+    public UserSessions(UserLoader loader) {
+        this(loader, Integer.getInteger("booking.maxSessions", 100_000),
+                Long.getLong("booking.sessionIdleSeconds", 1800));
+    }
+
+    public UserSessions(UserLoader loader, int maxSessions, long sessionIdleSeconds) {
+        this.loader = loader;
+        sessions = new BoundedCache<>(maxSessions, TimeUnit.SECONDS.toNanos(sessionIdleSeconds), SESSIONS_EXPIRED);
+        // idle entries of busy segments go as they are passed, this catches the quiet ones
+        long sweepSeconds = Math.max(1, sessionIdleSeconds / 2);
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(sessions::expireIdle, sweepSeconds, sweepSeconds, TimeUnit.SECONDS);
+    }
+
+    // Starts a session for a user whose password was checked, returns its token
+    public String open(User user) {
+        String token = UUID.randomUUID().toString();
+        sessions.put(token, user.getUserId());
+        return token;
+    }
+
+    // The user of the session, from the loader. Empty if there is no such session or it
+    // ended.
+    public Optional<User> user(String token) throws IOException {
+        if (token == null) {
+            return Optional.empty();
+        }
+        String userId = sessions.get(token);
+        if (userId == null) {
+            return Optional.empty();
+        }
+        Optional<User> user = userById(userId);
+        if (user.isEmpty()) {
+            // the user is gone from storage, the session with it
+            sessions.remove(token);
+        }
+        return user;
+    }
+
+    // Any user, through the same loader as the sessions' users
+    public Optional<User> userById(String userId) throws IOException {
+        return loader.load(userId);
+    }
+
+    // Ends the session
+    public void close(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    public int activeSessions() {
+        return sessions.size();
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+}
@@ -0,0 +1,471 @@
+package ticket.booking.storage;
+
+import ticket.booking.metrics.Counter;
+import ticket.booking.metrics.LatencyHistogram;
+import ticket.booking.metrics.Metrics;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// The seats of every train in one memory-mapped file, one byte per seat. Booking a
+// seat changes that byte in place: nothing is serialized, and the page cache writes it
+// back, so a crash of the process loses nothing. force() makes everything written so
+// far durable against a crash of the machine too, and runs every few seconds as a
+// checkpoint. On start the file is mapped again and only its record headers are read.
+// seats() hands out the seats of a train as lists read from and written to the mapping,
+// nothing is copied onto the heap until the caller copies it.
+//
+// Layout: a header (magic, version, bytes in use) followed by one record per train:
+//   int RECORD_MAGIC, byte live, short id length, id (UTF-8), int rows,
+//   int seats of each row, one byte per seat, padding to a multiple of 8
+// A record is written completely before the header counts it, so a crash while adding
+// a train leaves the file as it was. A train whose seat layout changes gets a new
+// record and the old one is marked dead. Once dead records take more than half the file
+// (and at least COMPACT_MIN_DEAD_BYTES) the live ones are copied into a new file that
+// replaces this one, see compact(). Offsets are ints, so the file stays below 2 GB.
+public class MappedSeatInventory implements AutoCloseable {
+
+    private static final String INVENTORY_PATH = "app/src/main/java/ticket/booking/localDb/seats.bin";
+    private static final int MAGIC = 0x53454154; // "SEAT"
+    private static final int VERSION = 1;
+    private static final int RECORD_MAGIC = 0x54524e31; // "TRN1"
+    private static final int HEADER_SIZE = 64;
+    private static final int USED_OFFSET = 8;
+    private static final int INITIAL_CAPACITY = 1 << 20;
+    private static final int COMPACT_MIN_DEAD_BYTES = 1 << 16;
+
+    private static final LatencyHistogram FORCE_LATENCY = Metrics.latency("inventory.force");
+    private static final Counter SEAT_WRITES = Metrics.counter("inventory.seatWrites");
+    private static final LatencyHistogram COMPACT_LATENCY = Metrics.latency("inventory.compact");
+
+    // Where one train's seats are in the file
+    private static final class Region {
+        final int recordOffset;
+        final int seatsOffset;
+        // end of the record, padding included
+        final int recordEnd;
+        final int[] rowLengths;
+        // position of the first seat of each row in the file
+        final int[] rowOffsets;
+
+        Region(int recordOffset, int seatsOffset, int recordEnd, int[] rowLengths) {
+            this.recordOffset = recordOffset;
+            this.seatsOffset = seatsOffset;
+            this.recordEnd = recordEnd;
+            this.rowLengths = rowLengths;
+            rowOffsets = new int[rowLengths.length];
+            int position = seatsOffset;
+            for (int row = 0; row < rowLengths.length; row++) {
+                rowOffsets[row] = position;
+                position += rowLengths[row];
+            }
+        }
+
+        // position of the seat in the file, -1 if the train has no such seat
+        int positionOf(int row, int seat) {
+            if (row < 0 || row >= rowLengths.length || seat < 0 || seat >= rowLengths[row]) {
+                return -1;
+            }
+            return rowOffsets[row] + seat;
+        }
+
+        // the same record copied to offset
+        Region movedTo(int offset) {
+            int by = offset - recordOffset;
+            return new Region(offset, seatsOffset + by, recordEnd + by, rowLengths);
+        }
+
+        boolean sameLayout(List<List<Integer>> seats) {
+            if (seats.size() != rowLengths.length) {
+                return false;
+            }
+            for (int row = 0; row < rowLengths.length; row++) {
+                if (seats.get(row).size() != rowLengths[row]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final Path file;
+    // both replaced by compact()
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int used;
+    // bytes of records marked dead, or left live by a crash but replaced by a later one
+    private int deadBytes;
+    // trainId (lowercase) -> its live record
+    private final Map<String, Region> regions = new HashMap<>();
+    // seats were written since the last force()
+    private volatile boolean dirty;
+    private ScheduledExecutorService checkpointer;
+
+    public MappedSeatInventory() throws IOException {
+        this(Path.of(INVENTORY_PATH));
+    }
+
+    public MappedSeatInventory(Path file) throws IOException {
+        this.file = file;
+        boolean created = !Files.exists(file);
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), INITIAL_CAPACITY));
+        if (created || buffer.getInt(0) == 0) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            used = HEADER_SIZE;
+            buffer.putInt(USED_OFFSET, used);
+            return;
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException(file + " is not a seat inventory of version " + VERSION);
+        }
+        used = buffer.getInt(USED_OFFSET);
+        readRecords();
+        compactIfWasteful();
+    }
+
+    private void readRecords() throws IOException {
+        int position = HEADER_SIZE;
+        while (position < used) {
+            if (buffer.getInt(position) != RECORD_MAGIC) {
+                throw new IOException("Damaged record at " + position + " in " + file);
+            }
+            boolean live = buffer.get(position + 4) != 0;
+            int idLength = buffer.getShort(position + 5);
+            byte[] id = new byte[idLength];
+            buffer.get(position + 7, id);
+            int cursor = position + 7 + idLength;
+            int rows = buffer.getInt(cursor);
+            cursor += 4;
+            int[] rowLengths = new int[rows];
+            int seats = 0;
+            for (int row = 0; row < rows; row++) {
+                rowLengths[row] = buffer.getInt(cursor);
+                seats += rowLengths[row];
+                cursor += 4;
+            }
+            int end = align(cursor + seats);
+            if (live) {
+                Region replaced = regions.put(new String(id, StandardCharsets.UTF_8), new Region(position, cursor, end, rowLengths));
+                // a crash between adding a train's new record and marking the old one dead
+                if (replaced != null) {
+                    buffer.put(replaced.recordOffset + 4, (byte) 0);
+                    deadBytes += replaced.recordEnd - replaced.recordOffset;
+                }
+            } else {
+                deadBytes += end - position;
+            }
+            position = end;
+        }
+    }
+
+    public synchronized boolean contains(String trainId) {
+        return regions.containsKey(key(trainId));
+    }
+
+    public synchronized int trainCount() {
+        return regions.size();
+    }
+
+    // The train's seats as lists over the mapping, null if the train is not in the file.
+    // Every get reads the file and every set writes it, so the lists always show the
+    // train's live record, also once a new layout or compact() moved it elsewhere.
+    public synchronized List<List<Integer>> seats(String trainId) {
+        String trainKey = key(trainId);
+        return regions.containsKey(trainKey) ? new MappedSeats(trainKey) : null;
+    }
+
+    private final class MappedSeats extends AbstractList<List<Integer>> implements RandomAccess {
+        private final String trainKey;
+
+        MappedSeats(String trainKey) {
+            this.trainKey = trainKey;
+        }
+
+        @Override
+        public List<Integer> get(int row) {
+            Objects.checkIndex(row, size());
+            return new MappedRow(trainKey, row);
+        }
+
+        @Override
+        public int size() {
+            synchronized (MappedSeatInventory.this) {
+                Region region = regions.get(trainKey);
+                return region == null ? 0 : region.rowLengths.length;
+            }
+        }
+    }
+
+    private final class MappedRow extends AbstractList<Integer> implements RandomAccess {
+        private final String trainKey;
+        private final int row;
+
+        MappedRow(String trainKey, int row) {
+            this.trainKey = trainKey;
+            this.row = row;
+        }
+
+        @Override
+        public Integer get(int seat) {
+            synchronized (MappedSeatInventory.this) {
+                return (int) buffer.get(position(seat));
+            }
+        }
+
+        @Override
+        public Integer set(int seat, Integer value) {
+            synchronized (MappedSeatInventory.this) {
+                int position = position(seat);
+                int previous = buffer.get(position);
+                buffer.put(position, value.byteValue());
+                dirty = true;
+                return previous;
+            }
+        }
+
+        @Override
+        public int size() {
+            synchronized (MappedSeatInventory.this) {
+                Region region = regions.get(trainKey);
+                return region == null || row >= region.rowLengths.length ? 0 : region.rowLengths[row];
+            }
+        }
+
+        // the whole row under one lock, for the copies made with List.copyOf or new ArrayList
+        @Override
+        public Object[] toArray() {
+            synchronized (MappedSeatInventory.this) {
+                Object[] values = new Object[size()];
+                int position = values.length == 0 ? 0 : position(0);
+                for (int seat = 0; seat < values.length; seat++) {
+                    values[seat] = (int) buffer.get(position + seat);
+                }
+                return values;
+            }
+        }
+
+        // called with the inventory locked
+        private int position(int seat) {
+            Region region = regions.get(trainKey);
+            int position = region == null ? -1 : region.positionOf(row, seat);
+            if (position < 0) {
+                throw new IndexOutOfBoundsException("No seat " + row + "/" + seat + " on train " + trainKey);
+            }
+            return position;
+        }
+    }
+
+    // Stores all seats of a train, in its record if the layout is unchanged
+    public synchronized void write(String trainId, List<List<Integer>> seats) throws IOException {
+        Region region = regions.get(key(trainId));
+        if (region != null && region.sameLayout(seats)) {
+            putSeats(region.seatsOffset, seats);
+        } else {
+            regions.put(key(trainId), append(key(trainId), seats));
+            // a crash before this leaves two live records, the later one wins on start
+            if (region != null) {
+                buffer.put(region.recordOffset + 4, (byte) 0);
+                deadBytes += region.recordEnd - region.recordOffset;
+            }
+        }
+        dirty = true;
+        compactIfWasteful();
+    }
+
+    private void putSeats(int position, List<List<Integer>> seats) {
+        for (List<Integer> row : seats) {
+            for (int value : row) {
+                buffer.put(position++, (byte) value);
+            }
+        }
+    }
+
+    // Changes one seat from expectedValue to newValue in place, false if the train or seat
+    // does not exist or the seat does not hold expectedValue
+    public synchronized boolean compareAndSet(String trainId, int row, int seat, int expectedValue, int newValue) {
+        Region region = regions.get(key(trainId));
+        int position = region == null ? -1 : region.positionOf(row, seat);
+        if (position < 0 || buffer.get(position) != expectedValue) {
+            return false;
+        }
+        buffer.put(position, (byte) newValue);
+        dirty = true;
+        SEAT_WRITES.increment();
+        return true;
+    }
+
+    private Region append(String trainKey, List<List<Integer>> seats) throws IOException {
+        byte[] id = trainKey.getBytes(StandardCharsets.UTF_8);
+        int seatCount = 0;
+        for (List<Integer> row : seats) {
+            seatCount += row.size();
+        }
+        int seatsOffset = used + 7 + id.length + 4 + 4 * seats.size();
+        int end = align(seatsOffset + seatCount);
+        ensureCapacity(end);
+        int position = used;
+        buffer.putInt(position, RECORD_MAGIC);
+        buffer.put(position + 4, (byte) 1);
+        buffer.putShort(position + 5, (short) id.length);
+        buffer.put(position + 7, id);
+        int cursor = position + 7 + id.length;
+        buffer.putInt(cursor, seats.size());
+        cursor += 4;
+        int[] rowLengths = new int[seats.size()];
+        for (int row = 0; row < seats.size(); row++) {
+            rowLengths[row] = seats.get(row).size();
+            buffer.putInt(cursor, rowLengths[row]);
+            cursor += 4;
+        }
+        putSeats(seatsOffset, seats);
+        // the header counts the record only once it is complete
+        used = end;
+        buffer.putInt(USED_OFFSET, used);
+        return new Region(position, seatsOffset, end, rowLengths);
+    }
+
+    // Maps a larger file when the next record does not fit, doubling so that adding many
+    // trains remaps only a few times
+    private void ensureCapacity(long needed) throws IOException {
+        if (needed <= buffer.capacity()) {
+            return;
+        }
+        if (needed > Integer.MAX_VALUE) {
+            throw new IOException("Seat inventory " + file + " is full");
+        }
+        long capacity = Math.min(Integer.MAX_VALUE, Math.max(needed, (long) buffer.capacity() * 2));
+        // both mappings share the file's pages, nothing written through the old one is lost
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void compactIfWasteful() throws IOException {
+        if (deadBytes >= COMPACT_MIN_DEAD_BYTES && deadBytes > (used - HEADER_SIZE) / 2) {
+            copyLiveRecords();
+        }
+    }
+
+    // Copies the live records into a new file next to this one, makes it durable and
+    // renames it over this one: a crash leaves either file complete, never a mix. The
+    // records keep their bytes, only their offsets change.
+    public synchronized void compact() throws IOException {
+        copyLiveRecords();
+    }
+
+    private void copyLiveRecords() throws IOException {
+        long start = Metrics.start();
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer out;
+        Map<String, Region> moved = new HashMap<>();
+        int position = HEADER_SIZE;
+        try {
+            long live = HEADER_SIZE;
+            for (Region region : regions.values()) {
+                live += region.recordEnd - region.recordOffset;
+            }
+            out = target.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_CAPACITY, live));
+            out.putInt(0, MAGIC);
+            out.putInt(4, VERSION);
+            for (Map.Entry<String, Region> entry : regions.entrySet()) {
+                Region region = entry.getValue();
+                int length = region.recordEnd - region.recordOffset;
+                out.put(position, buffer, region.recordOffset, length);
+                moved.put(entry.getKey(), region.movedTo(position));
+                position += length;
+            }
+            out.putInt(USED_OFFSET, position);
+            out.force();
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            target.close();
+            Files.deleteIfExists(compacted);
+            throw e;
+        }
+        // the old file is gone from the directory, what was written to it since the last
+        // checkpoint was copied with the records
+        channel.close();
+        channel = target;
+        buffer = out;
+        used = position;
+        deadBytes = 0;
+        regions.putAll(moved);
+        dirty = false;
+        COMPACT_LATENCY.stop(start);
+    }
+
+    // Writes the changed pages to the disk and waits for it
+    public synchronized void force() {
+        if (!dirty) {
+            return;
+        }
+        long start = Metrics.start();
+        dirty = false;
+        buffer.force();
+        FORCE_LATENCY.stop(start);
+    }
+
+    // Runs force() every periodMillis on a background thread
+    public synchronized void startCheckpoints(long periodMillis) {
+        if (checkpointer != null) {
+            return;
+        }
+        checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "seat-inventory-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkpointer.scheduleWithFixedDelay(this::force, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized long usedBytes() {
+        return used;
+    }
+
+    public synchronized long deadBytes() {
+        return deadBytes;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (checkpointer != null) {
+            checkpointer.shutdown();
+        }
+        force();
+        channel.close();
+    }
+
+    private static int align(int position) {
+        return (position + 7) & ~7;
+    }
+
+    private static String key(String trainId) {
+        return trainId.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,80 @@
+package ticket.booking.storage;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import ticket.booking.entities.Train;
+import ticket.booking.utils.StationDictionary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// One line of trains/manifest.json. Carries just enough of a train to enumerate
+// trains and match routes without opening the train's own shard file.
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonNaming(PropertyNamingStrategy.SnakeCaseStrategy.class)
+
+public class TrainManifestEntry {
+    private String trainId;
+    private String trainNo;
+    private String file;
+    // stations as StationDictionary ids, written out as names
+    private int[] route = new int[0];
+
+    public TrainManifestEntry(){}
+
+    public TrainManifestEntry(String trainId, String trainNo, String file, List<String> stations){
+        this.trainId = trainId;
+        this.trainNo = trainNo;
+        this.file = file;
+        setStations(stations);
+    }
+
+    public static TrainManifestEntry of(Train train, String file){
+        return new TrainManifestEntry(train.getTrainId(), train.getTrainNo(), file, train.getStations());
+    }
+
+    public String getTrainId(){
+        return trainId;
+    }
+
+    public void setTrainId(String trainId){
+        this.trainId = trainId;
+    }
+
+    public String getTrainNo(){
+        return trainNo;
+    }
+
+    public void setTrainNo(String trainNo){
+        this.trainNo = trainNo;
+    }
+
+    public String getFile(){
+        return file;
+    }
+
+    public void setFile(String file){
+        this.file = file;
+    }
+
+    public List<String> getStations(){
+        List<String> stations = new ArrayList<>(route.length);
+        for (int station : route) {
+            stations.add(StationDictionary.nameOf(station));
+        }
+        return stations;
+    }
+
+    public void setStations(List<String> stations){
+        int[] stationIds = new int[stations.size()];
+        for (int i = 0; i < stationIds.length; i++) {
+            stationIds[i] = StationDictionary.idOf(stations.get(i));
+        }
+        route = stationIds;
+    }
+
+    public boolean servesInOrder(int from, int to){
+        return StationDictionary.servesInOrder(route, from, to);
+    }
+}
@@ -0,0 +1,352 @@
+package ticket.booking.storage;
+
+import ticket.booking.entities.Train;
+import ticket.booking.metrics.CacheStats;
+import ticket.booking.metrics.Counter;
+import ticket.booking.metrics.LatencyHistogram;
+import ticket.booking.metrics.Metrics;
+import ticket.booking.serialization.JsonCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Stores every train in its own file under localDb/trains, next to a small manifest
+// listing all trains. Booking a seat rewrites only that train's file, and a train's
+// file is read the first time somebody asks for the train. Only the trains used last
+// stay in memory here (-Dbooking.maxLoadedTrains, 256 by default): the versions being
+// read live in TrainCatalog, so this cache only saves reading a shard again whose seats
+// change again soon.
+public class TrainShardStore {
+
+    private static final String SHARD_DIR = "app/src/main/java/ticket/booking/localDb/trains";
+    private static final String MANIFEST_FILE = "manifest.json";
+    // single-file layout used before sharding, migrated on first start
+    private static final String LEGACY_TRAINS_PATH = "app/src/main/java/ticket/booking/localDb/trains.json";
+    private static final int MAX_LOADED_TRAINS = Integer.getInteger("booking.maxLoadedTrains", 256);
+
+    private static final CacheStats SHARD_CACHE = Metrics.cache("store.trains.shards");
+    private static final LatencyHistogram READ_LATENCY = Metrics.latency("store.trains.read");
+    private static final LatencyHistogram WRITE_LATENCY = Metrics.latency("store.trains.write");
+    private static final Counter BYTES_WRITTEN = Metrics.counter("store.trains.bytesWritten");
+
+    private final Path shardDir;
+    // trainId (lowercase) -> manifest entry, in manifest order. Both fields are replaced
+    // as a whole under the store's lock and never modified, so readers need no lock.
+    private volatile Map<String, TrainManifestEntry> manifest = Collections.emptyMap();
+    private volatile List<TrainManifestEntry> manifestEntries = Collections.emptyList();
+    // trainId (lowercase) -> shards read or written lately, least recently used first,
+    // guarded by itself. Files are read and written outside that lock.
+    private final LinkedHashMap<String, Train> loadedTrains = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Train> eldest) {
+            return size() > MAX_LOADED_TRAINS;
+        }
+    };
+    // file name -> modification time and size right after this store last wrote it, so
+    // the watcher can tell our own writes from edits made by somebody else
+    private final ConcurrentHashMap<String, String> ownWrites = new ConcurrentHashMap<>();
+    // a shard is written under its train's stripe, so writing one train never waits for
+    // another; the store's own lock is only taken to change the manifest
+    private static final int WRITE_STRIPES = 64;
+    private final Object[] writeLocks = new Object[WRITE_STRIPES];
+
+    public TrainShardStore() throws IOException {
+        this(Path.of(SHARD_DIR));
+    }
+
+    public TrainShardStore(Path shardDir) throws IOException {
+        this.shardDir = shardDir;
+        for (int i = 0; i < WRITE_STRIPES; i++) {
+            writeLocks[i] = new Object();
+        }
+        loadManifest();
+    }
+
+    private void loadManifest() throws IOException {
+        File manifestFile = shardDir.resolve(MANIFEST_FILE).toFile();
+        if (!manifestFile.exists()) {
+            migrateLegacyTrainsFile();
+            return;
+        }
+        List<TrainManifestEntry> entries = JsonCodec.MANIFEST.readValue(manifestFile);
+        Map<String, TrainManifestEntry> loaded = new LinkedHashMap<>();
+        for (TrainManifestEntry entry : entries) {
+            loaded.put(key(entry.getTrainId()), entry);
+        }
+        publishManifest(loaded);
+    }
+
+    private void publishManifest(Map<String, TrainManifestEntry> entries) {
+        manifest = Collections.unmodifiableMap(entries);
+        manifestEntries = List.copyOf(entries.values());
+    }
+
+    private void migrateLegacyTrainsFile() throws IOException {
+        Files.createDirectories(shardDir);
+        File legacyFile = new File(LEGACY_TRAINS_PATH);
+        Map<String, TrainManifestEntry> migrated = new LinkedHashMap<>();
+        if (legacyFile.exists()) {
+            List<Train> trains = JsonCodec.TRAIN_LIST.readValue(legacyFile);
+            for (Train train : trains) {
+                writeShard(train);
+                migrated.put(key(train.getTrainId()), TrainManifestEntry.of(train, shardFileName(train.getTrainId())));
+            }
+            System.out.println("Migrated " + trains.size() + " trains from trains.json into " + shardDir);
+        }
+        publishManifest(migrated);
+        saveManifest();
+    }
+
+    // Enumerates all trains without reading any shard, the list is never modified
+    public List<TrainManifestEntry> listTrains() {
+        return manifestEntries;
+    }
+
+    public boolean contains(String trainId) {
+        return manifest.containsKey(key(trainId));
+    }
+
+    public Optional<Train> load(String trainId) {
+        TrainManifestEntry entry = manifest.get(key(trainId));
+        if (entry == null) {
+            return Optional.empty();
+        }
+        synchronized (loadedTrains) {
+            Train loaded = loadedTrains.get(key(trainId));
+            if (loaded != null) {
+                SHARD_CACHE.hit();
+                return Optional.of(loaded);
+            }
+        }
+        SHARD_CACHE.miss();
+        Train train;
+        long start = Metrics.start();
+        try {
+            train = JsonCodec.TRAIN.readValue(shardDir.resolve(entry.getFile()).toFile());
+        } catch (IOException e) {
+            System.out.println("Failed to read train " + trainId + ": " + e.getMessage());
+            return Optional.empty();
+        } finally {
+            READ_LATENCY.stop(start);
+        }
+        // another thread may have read or saved the train meanwhile, its copy wins
+        synchronized (loadedTrains) {
+            Train cached = loadedTrains.putIfAbsent(key(trainId), train);
+            return Optional.of(cached != null ? cached : train);
+        }
+    }
+
+    // Drops the copy of a train read earlier, the shard is read again on next use
+    public void evict(String trainId) {
+        synchronized (loadedTrains) {
+            loadedTrains.remove(key(trainId));
+        }
+    }
+
+    // Puts another copy of a train read earlier in its place, e.g. one whose seats are
+    // kept elsewhere. Nothing changes if the train was saved, reloaded or dropped since.
+    public void replaceLoaded(Train loaded, Train replacement) {
+        synchronized (loadedTrains) {
+            loadedTrains.computeIfPresent(key(loaded.getTrainId()), (trainKey, cached) -> cached == loaded ? replacement : cached);
+        }
+    }
+
+    private void cache(Train train) {
+        synchronized (loadedTrains) {
+            loadedTrains.put(key(train.getTrainId()), train);
+        }
+    }
+
+    // Writes one train's shard; the manifest is only rewritten when the train is new
+    // or its route changed, so a booking touches exactly one file
+    public void save(Train train) throws IOException {
+        writeShard(train);
+        if (!manifestMatches(train)) {
+            synchronized (this) {
+                if (!manifestMatches(train)) {
+                    Map<String, TrainManifestEntry> updated = new LinkedHashMap<>(manifest);
+                    updated.put(key(train.getTrainId()), TrainManifestEntry.of(train, shardFileName(train.getTrainId())));
+                    publishManifest(updated);
+                    saveManifest();
+                }
+            }
+        }
+    }
+
+    private boolean manifestMatches(Train train) {
+        TrainManifestEntry existing = manifest.get(key(train.getTrainId()));
+        return existing != null
+                && Objects.equals(existing.getStations(), train.getStations())
+                && Objects.equals(existing.getTrainNo(), train.getTrainNo());
+    }
+
+    // Writes many trains at once: the shards are written in parallel and the manifest is
+    // rewritten a single time at the end instead of once per new train
+    public synchronized void saveAll(List<Train> trains) throws IOException {
+        try {
+            trains.parallelStream().forEach(train -> {
+                try {
+                    writeShard(train);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Map<String, TrainManifestEntry> updated = new LinkedHashMap<>(manifest);
+        for (Train train : trains) {
+            updated.put(key(train.getTrainId()), TrainManifestEntry.of(train, shardFileName(train.getTrainId())));
+        }
+        publishManifest(updated);
+        saveManifest();
+    }
+
+    // Removes a train's shard and its manifest entry
+    public synchronized void remove(String trainId) throws IOException {
+        TrainManifestEntry existing = manifest.get(key(trainId));
+        if (existing == null) {
+            return;
+        }
+        Map<String, TrainManifestEntry> updated = new LinkedHashMap<>(manifest);
+        updated.remove(key(trainId));
+        publishManifest(updated);
+        saveManifest();
+        evict(trainId);
+        Files.deleteIfExists(shardDir.resolve(existing.getFile()));
+        ownWrites.remove(existing.getFile());
+    }
+
+    // Re-reads a shard that was changed on disk. Returns the new train, or empty if the
+    // file belongs to no train in the manifest or is gone. The cached copy is only
+    // replaced if the train had been loaded before, so startup stays lazy.
+    public synchronized Optional<Train> reloadShard(String fileName) throws IOException {
+        if (!fileName.endsWith(".json") || fileName.equals(MANIFEST_FILE)) {
+            return Optional.empty();
+        }
+        String trainKey = fileName.substring(0, fileName.length() - ".json".length());
+        TrainManifestEntry entry = manifest.get(trainKey);
+        if (entry == null || !Files.exists(shardDir.resolve(entry.getFile()))) {
+            return Optional.empty();
+        }
+        Train train = JsonCodec.TRAIN.readValue(shardDir.resolve(entry.getFile()).toFile());
+        synchronized (loadedTrains) {
+            loadedTrains.computeIfPresent(trainKey, (id, old) -> train);
+        }
+        return Optional.of(train);
+    }
+
+    // Re-reads the manifest after it was changed on disk and reports which trains were
+    // added, removed or had their route or number changed. Removed trains are dropped
+    // from the cache, changed ones are read again on next use.
+    public synchronized ManifestDiff reloadManifest() throws IOException {
+        File manifestFile = shardDir.resolve(MANIFEST_FILE).toFile();
+        ManifestDiff diff = new ManifestDiff();
+        if (!manifestFile.exists()) {
+            return diff;
+        }
+        List<TrainManifestEntry> entries = JsonCodec.MANIFEST.readValue(manifestFile);
+        Map<String, TrainManifestEntry> reloaded = new LinkedHashMap<>();
+        for (TrainManifestEntry entry : entries) {
+            String trainKey = key(entry.getTrainId());
+            reloaded.put(trainKey, entry);
+            TrainManifestEntry old = manifest.get(trainKey);
+            if (old == null) {
+                diff.added.add(entry.getTrainId());
+            } else if (!old.getStations().equals(entry.getStations()) || !old.getTrainNo().equals(entry.getTrainNo())) {
+                diff.changed.add(entry.getTrainId());
+                evict(trainKey);
+            }
+        }
+        for (TrainManifestEntry old : manifestEntries) {
+            if (!reloaded.containsKey(key(old.getTrainId()))) {
+                diff.removed.add(old.getTrainId());
+                evict(old.getTrainId());
+            }
+        }
+        if (!diff.isEmpty()) {
+            publishManifest(reloaded);
+        }
+        return diff;
+    }
+
+    // Trains that differ between the manifest in memory and the one on disk
+    public static class ManifestDiff {
+        public final List<String> added = new ArrayList<>();
+        public final List<String> removed = new ArrayList<>();
+        public final List<String> changed = new ArrayList<>();
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+        }
+    }
+
+    // True if the file on disk is still exactly what this store last wrote there
+    public boolean isOwnWrite(String fileName) {
+        String written = ownWrites.get(fileName);
+        if (written == null) {
+            return false;
+        }
+        try {
+            return written.equals(stampOf(shardDir.resolve(fileName)));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public Path getShardDir() {
+        return shardDir;
+    }
+
+    public static Path legacyTrainsFile() {
+        return Path.of(LEGACY_TRAINS_PATH);
+    }
+
+    private void writeShard(Train train) throws IOException {
+        synchronized (writeLocks[Math.floorMod(key(train.getTrainId()).hashCode(), WRITE_STRIPES)]) {
+            writeAtomically(shardDir.resolve(shardFileName(train.getTrainId())), train);
+            cache(train);
+        }
+    }
+
+    private void saveManifest() throws IOException {
+        writeAtomically(shardDir.resolve(MANIFEST_FILE), manifestEntries);
+    }
+
+    // Writes next to the target and renames over it so a crash never leaves half a file
+    private void writeAtomically(Path target, Object value) throws IOException {
+        long start = Metrics.start();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        JsonCodec.FILE_WRITER.writeValue(tmp.toFile(), value);
+        BYTES_WRITTEN.add(Files.size(tmp));
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        ownWrites.put(target.getFileName().toString(), stampOf(target));
+        WRITE_LATENCY.stop(start);
+    }
+
+    // modification time and size of a file, compared as one string
+    private static String stampOf(Path file) throws IOException {
+        return Files.getLastModifiedTime(file).toMillis() + ":" + Files.size(file);
+    }
+
+    public static String shardFileName(String trainId) {
+        return key(trainId) + ".json";
+    }
+
+    private static String key(String trainId) {
+        return trainId.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,262 @@
+package ticket.booking.storage;
+
+import ticket.booking.entities.User;
+import ticket.booking.metrics.CacheStats;
+import ticket.booking.metrics.Counter;
+import ticket.booking.metrics.LatencyHistogram;
+import ticket.booking.metrics.Metrics;
+import ticket.booking.serialization.JsonCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// Spreads users over bucket files by the hash of their userId, plus index buckets
+// mapping username -> userId by the hash of the username. Nothing is read at startup:
+// a login reads one index bucket and one user bucket, and only recently used users
+// stay in memory, so every session of a user works on the same User object:
+//   -Dbooking.maxCachedUsers=10000          users kept, least recently used goes first
+public class UserBucketStore {
+
+    private static final String USER_DIR = "app/src/main/java/ticket/booking/localDb/users";
+    // single-file layout used before bucketing, migrated on first start
+    private static final String LEGACY_USERS_PATH = "app/src/main/java/ticket/booking/localDb/users.json";
+    public static final int BUCKET_COUNT = 256;
+    private static final int MAX_CACHED_USERS = Integer.getInteger("booking.maxCachedUsers", 10_000);
+
+    private static final CacheStats USER_CACHE = Metrics.cache("store.users");
+    private static final LatencyHistogram READ_LATENCY = Metrics.latency("store.users.read");
+    private static final LatencyHistogram WRITE_LATENCY = Metrics.latency("store.users.write");
+    private static final Counter BYTES_WRITTEN = Metrics.counter("store.users.bytesWritten");
+
+    private final Path bucketDir;
+    private final Path indexDir;
+    private final Path legacyUsersFile;
+    private final int maxCachedUsers;
+    // userId -> user, least recently used first
+    private final LinkedHashMap<String, User> cache;
+    // userIds changed since the last flush, never evicted before they are written
+    private final Set<String> dirtyUserIds = new LinkedHashSet<>();
+
+    public UserBucketStore() throws IOException {
+        this(Path.of(USER_DIR));
+    }
+
+    public UserBucketStore(Path userDir) throws IOException {
+        this(userDir, Path.of(LEGACY_USERS_PATH), MAX_CACHED_USERS);
+    }
+
+    // Migrating from the given users.json and keeping the given number of users
+    UserBucketStore(Path userDir, Path legacyUsersFile, int maxCachedUsers) throws IOException {
+        bucketDir = userDir.resolve("buckets");
+        indexDir = userDir.resolve("index");
+        this.legacyUsersFile = legacyUsersFile;
+        this.maxCachedUsers = maxCachedUsers;
+        cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, User> eldest) {
+                if (size() <= maxCachedUsers) {
+                    return false;
+                }
+                if (!dirtyUserIds.contains(eldest.getKey())) {
+                    return true;
+                }
+                // the eldest waits for the next flush, the least recently used clean user goes instead
+                Iterator<String> userIds = keySet().iterator();
+                while (userIds.hasNext()) {
+                    if (!dirtyUserIds.contains(userIds.next())) {
+                        userIds.remove();
+                        break;
+                    }
+                }
+                return false;
+            }
+        };
+        boolean firstStart = !Files.exists(bucketDir);
+        Files.createDirectories(bucketDir);
+        Files.createDirectories(indexDir);
+        if (firstStart) {
+            migrateLegacyUsersFile();
+        }
+    }
+
+    private void migrateLegacyUsersFile() throws IOException {
+        File legacyFile = legacyUsersFile.toFile();
+        if (!legacyFile.exists()) {
+            return;
+        }
+        List<User> users = JsonCodec.USER_LIST.readValue(legacyFile);
+        Map<Integer, List<User>> buckets = new HashMap<>();
+        Map<Integer, Map<String, String>> indexes = new HashMap<>();
+        for (User user : users) {
+            buckets.computeIfAbsent(bucketOf(user.getUserId()), b -> new ArrayList<>()).add(user);
+            indexes.computeIfAbsent(bucketOf(user.getUsername()), b -> new LinkedHashMap<>()).put(user.getUsername(), user.getUserId());
+        }
+        for (Map.Entry<Integer, List<User>> bucket : buckets.entrySet()) {
+            writeAtomically(bucketFile(bucket.getKey()), bucket.getValue());
+        }
+        for (Map.Entry<Integer, Map<String, String>> index : indexes.entrySet()) {
+            writeAtomically(indexFile(index.getKey()), index.getValue());
+        }
+        System.out.println("Migrated " + users.size() + " users from users.json into " + bucketDir.getParent());
+    }
+
+    public synchronized Optional<User> findByUsername(String username) throws IOException {
+        String userId = readIndex(bucketOf(username)).get(username);
+        if (userId == null) {
+            return Optional.empty();
+        }
+        return findById(userId);
+    }
+
+    public synchronized Optional<User> findById(String userId) throws IOException {
+        User cached = cache.get(userId);
+        if (cached != null) {
+            USER_CACHE.hit();
+            return Optional.of(cached);
+        }
+        USER_CACHE.miss();
+        for (User user : readBucket(bucketOf(userId))) {
+            if (user.getUserId().equals(userId)) {
+                cache.put(userId, user);
+                return Optional.of(user);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public synchronized boolean usernameTaken(String username) throws IOException {
+        return readIndex(bucketOf(username)).containsKey(username);
+    }
+
+    // Writes the new user's bucket and index bucket right away so the username is claimed
+    public synchronized void add(User user) throws IOException {
+        int indexBucket = bucketOf(user.getUsername());
+        Map<String, String> index = readIndex(indexBucket);
+        index.put(user.getUsername(), user.getUserId());
+        int userBucket = bucketOf(user.getUserId());
+        List<User> users = readBucket(userBucket);
+        users.add(user);
+        writeAtomically(bucketFile(userBucket), users);
+        writeAtomically(indexFile(indexBucket), index);
+        cache.put(user.getUserId(), user);
+    }
+
+    // Records that a user's tickets changed, the change is written by the next flush
+    public synchronized void markDirty(User user) {
+        cache.put(user.getUserId(), user);
+        dirtyUserIds.add(user.getUserId());
+    }
+
+    // Rewrites only the buckets that hold dirty users, each bucket once
+    public synchronized void flush() throws IOException {
+        if (dirtyUserIds.isEmpty()) {
+            return;
+        }
+        Map<Integer, List<User>> dirtyByBucket = new HashMap<>();
+        for (String userId : dirtyUserIds) {
+            dirtyByBucket.computeIfAbsent(bucketOf(userId), b -> new ArrayList<>()).add(cache.get(userId));
+        }
+        for (Map.Entry<Integer, List<User>> dirty : dirtyByBucket.entrySet()) {
+            List<User> users = readBucket(dirty.getKey());
+            for (User changed : dirty.getValue()) {
+                users.removeIf(user -> user.getUserId().equals(changed.getUserId()));
+                users.add(changed);
+            }
+            writeAtomically(bucketFile(dirty.getKey()), users);
+        }
+        dirtyUserIds.clear();
+        trimCache();
+    }
+
+    // Reads the user buckets one at a time, so memory holds one bucket rather than every user
+    public void forEachUser(UserVisitor visitor) throws IOException {
+        flush();
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            List<User> users;
+            synchronized (this) {
+                users = readBucket(bucket);
+            }
+            for (User user : users) {
+                visitor.visit(user);
+            }
+        }
+    }
+
+    // One bucket as last written. Buckets are replaced by an atomic rename, so they can
+    // be read without the store's lock, and scans can read many buckets at once.
+    public void forEachUserInBucket(int bucket, UserVisitor visitor) throws IOException {
+        for (User user : readBucket(bucket)) {
+            visitor.visit(user);
+        }
+    }
+
+    public interface UserVisitor {
+        void visit(User user) throws IOException;
+    }
+
+    public synchronized int cachedUsers() {
+        return cache.size();
+    }
+
+    private void trimCache() {
+        var iterator = cache.entrySet().iterator();
+        while (cache.size() > maxCachedUsers && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private List<User> readBucket(int bucket) throws IOException {
+        File file = bucketFile(bucket).toFile();
+        if (!file.exists()) {
+            return new ArrayList<>();
+        }
+        long start = Metrics.start();
+        List<User> users = JsonCodec.USER_LIST.readValue(file);
+        READ_LATENCY.stop(start);
+        return users;
+    }
+
+    private Map<String, String> readIndex(int bucket) throws IOException {
+        File file = indexFile(bucket).toFile();
+        if (!file.exists()) {
+            return new LinkedHashMap<>();
+        }
+        return JsonCodec.STRING_MAP.readValue(file);
+    }
+
+    private Path bucketFile(int bucket) {
+        return bucketDir.resolve(String.format("%03d.json", bucket));
+    }
+
+    private Path indexFile(int bucket) {
+        return indexDir.resolve(String.format("%03d.json", bucket));
+    }
+
+    // bucket of a userId (user buckets) or of a username (index buckets)
+    public static int bucketOf(String key) {
+        return Math.floorMod(key.hashCode(), BUCKET_COUNT);
+    }
+
+    // Writes next to the target and renames over it so a crash never leaves half a file
+    private void writeAtomically(Path target, Object value) throws IOException {
+        long start = Metrics.start();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        JsonCodec.FILE_WRITER.writeValue(tmp.toFile(), value);
+        BYTES_WRITTEN.add(Files.size(tmp));
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        WRITE_LATENCY.stop(start);
+    }
+}
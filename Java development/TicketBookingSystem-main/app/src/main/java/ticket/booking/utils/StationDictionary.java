@@ -0,0 +1,83 @@
+package ticket.booking.utils;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Maps every station name seen while loading trains to a dense int id, so a train's
+// route is an int[] and route checks compare ints instead of strings. Names differing
+// only in case are one station, like trainIds are, and the first spelling seen is the
+// name of the id: one shared String for the whole JVM.
+// Ids are never reused or removed, since any route loaded so far may still hold them,
+// so the dictionary grows with the distinct stations ever loaded and never shrinks.
+// That is a few thousand names for a whole network; reloading or replacing trains
+// adds only stations that were not known yet.
+public final class StationDictionary {
+
+    // key(name) -> id
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    // id -> name, replaced by a longer copy when it fills up
+    private static volatile String[] names = new String[1024];
+    private static int nextId = 0;
+
+    private StationDictionary() {}
+
+    // Returns the id of the station, assigning the next free id to a new name
+    public static int idOf(String name) {
+        String key = key(name);
+        Integer id = ids.get(key);
+        if (id != null) {
+            return id;
+        }
+        synchronized (StationDictionary.class) {
+            id = ids.get(key);
+            if (id != null) {
+                return id;
+            }
+            if (nextId == names.length) {
+                names = Arrays.copyOf(names, names.length * 2);
+            }
+            // store the name before publishing the id so nameOf never sees null
+            names[nextId] = name;
+            ids.put(key, nextId);
+            return nextId++;
+        }
+    }
+
+    // Id of a known station or -1, never adds the name (used for search input)
+    public static int lookup(String name) {
+        Integer id = ids.get(key(name));
+        return id == null ? -1 : id;
+    }
+
+    public static String nameOf(int id) {
+        return names[id];
+    }
+
+    public static int size() {
+        return ids.size();
+    }
+
+    // Does the route stop at from and later at to
+    public static boolean servesInOrder(int[] route, int from, int to) {
+        if (from < 0 || to < 0) {
+            return false;
+        }
+        int fromIndex = indexOf(route, from);
+        int toIndex = indexOf(route, to);
+        return fromIndex != -1 && toIndex != -1 && fromIndex < toIndex;
+    }
+
+    public static int indexOf(int[] route, int station) {
+        for (int i = 0; i < route.length; i++) {
+            if (route[i] == station) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
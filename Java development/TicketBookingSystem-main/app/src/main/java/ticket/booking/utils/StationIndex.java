@@ -0,0 +1,277 @@
+package ticket.booking.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.TreeMap;
+
+// Station names for typing help: completion of a prefix and the closest names to a
+// misspelt one. Names are matched on their letters and digits only, in lower case, so
+// "Vile Parle", "vile-parle" and "vileparle" are all the same station.
+//
+// The names are held as a trie packed into a few arrays, built once and never changed,
+// so any number of threads can ask at the same time. A node's children sit next to each
+// other sorted by their letter, and the names below a node are one range of the sorted
+// names, so completing a prefix walks the prefix and copies a range. Closest names are
+// found by walking the trie with one row of the edit distance table per letter, and
+// leaving every branch whose row is already further away than allowed. Two letters
+// swapped ("dehli") count as one edit, like one letter changed.
+public final class StationIndex {
+
+    // up to this many edits for names of up to LONG_NAME letters, one more for longer ones
+    private static final int SHORT_NAME_EDITS = 1;
+    private static final int LONG_NAME = 7;
+
+    // normalized names, sorted, and the station names spelled that way
+    private final String[] keys;
+    private final String[][] names;
+    // per node: letter leading to it, first child, number of children, name range below it,
+    // index into keys if a name ends here (-1 if none). Node 0 is the root.
+    private final char[] letters;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final int[] keysFrom;
+    private final int[] keysTo;
+    private final int[] keyAt;
+
+    private StationIndex(String[] keys, String[][] names, int nodeCount) {
+        this.keys = keys;
+        this.names = names;
+        letters = new char[nodeCount];
+        firstChild = new int[nodeCount];
+        childCount = new int[nodeCount];
+        keysFrom = new int[nodeCount];
+        keysTo = new int[nodeCount];
+        keyAt = new int[nodeCount];
+    }
+
+    public static StationIndex of(Collection<String> stationNames) {
+        // normalized name -> the names spelled that way
+        TreeMap<String, List<String>> byKey = new TreeMap<>();
+        for (String name : stationNames) {
+            String key = normalize(name);
+            if (!key.isEmpty()) {
+                List<String> spellings = byKey.computeIfAbsent(key, k -> new ArrayList<>(1));
+                if (!spellings.contains(name)) {
+                    spellings.add(name);
+                }
+            }
+        }
+        String[] keys = byKey.keySet().toArray(new String[0]);
+        String[][] names = new String[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            names[i] = byKey.get(keys[i]).toArray(new String[0]);
+        }
+        StationIndex index = new StationIndex(keys, names, countNodes(keys));
+        index.build();
+        return index;
+    }
+
+    // nodes needed: one per distinct prefix of the keys, plus the root
+    private static int countNodes(String[] keys) {
+        int nodes = 1;
+        String previous = "";
+        for (String key : keys) {
+            int shared = 0;
+            while (shared < previous.length() && shared < key.length() && previous.charAt(shared) == key.charAt(shared)) {
+                shared++;
+            }
+            nodes += key.length() - shared;
+            previous = key;
+        }
+        return nodes;
+    }
+
+    private void build() {
+        keysFrom[0] = 0;
+        keysTo[0] = keys.length;
+        int[] next = {1};
+        buildChildren(0, 0, next);
+    }
+
+    // Adds the children of node, whose names are keys[keysFrom..keysTo) and share the
+    // first depth letters, next to each other, then the children's children
+    private void buildChildren(int node, int depth, int[] next) {
+        int from = keysFrom[node];
+        int to = keysTo[node];
+        keyAt[node] = -1;
+        if (from < to && keys[from].length() == depth) {
+            // sorted first, a name that ends here comes before the longer ones
+            keyAt[node] = from;
+            from++;
+        }
+        int first = next[0];
+        int count = 0;
+        int start = from;
+        while (start < to) {
+            char letter = keys[start].charAt(depth);
+            int end = start + 1;
+            while (end < to && keys[end].charAt(depth) == letter) {
+                end++;
+            }
+            int child = next[0]++;
+            letters[child] = letter;
+            keysFrom[child] = start;
+            keysTo[child] = end;
+            count++;
+            start = end;
+        }
+        firstChild[node] = first;
+        childCount[node] = count;
+        for (int child = first; child < first + count; child++) {
+            buildChildren(child, depth + 1, next);
+        }
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    // The station's name as the trains spell it, if the typed name differs only in case,
+    // spaces or punctuation. Empty if there is no such station or more than one.
+    public Optional<String> resolve(String typed) {
+        int node = find(normalize(typed));
+        if (node < 0 || keyAt[node] < 0 || names[keyAt[node]].length != 1) {
+            return Optional.empty();
+        }
+        return Optional.of(names[keyAt[node]][0]);
+    }
+
+    // Up to limit stations starting with prefix, alphabetically
+    public List<String> complete(String prefix, int limit) {
+        List<String> found = new ArrayList<>();
+        int node = find(normalize(prefix));
+        if (node < 0) {
+            return found;
+        }
+        for (int key = keysFrom[node]; key < keysTo[node] && found.size() < limit; key++) {
+            for (String name : names[key]) {
+                if (found.size() < limit) {
+                    found.add(name);
+                }
+            }
+        }
+        return found;
+    }
+
+    // Up to limit stations at most maxEdits letters added, removed or changed away from
+    // name, the closest first
+    public List<String> similar(String name, int maxEdits, int limit) {
+        String target = normalize(name);
+        // distance -> keys at that distance, in alphabetical order
+        List<List<Integer>> byDistance = new ArrayList<>();
+        for (int d = 0; d <= maxEdits; d++) {
+            byDistance.add(new ArrayList<>());
+        }
+        // one row per depth of the walk, no name is longer than the target plus maxEdits
+        int[][] rows = new int[target.length() + maxEdits + 1][target.length() + 1];
+        for (int i = 0; i <= target.length(); i++) {
+            rows[0][i] = i;
+        }
+        // no name is empty, so nothing can be at distance 0 from an empty name
+        for (int child = firstChild[0]; rows.length > 1 && child < firstChild[0] + childCount[0]; child++) {
+            walk(child, 1, (char) 0, target, rows, maxEdits, byDistance);
+        }
+        List<String> found = new ArrayList<>();
+        for (List<Integer> atDistance : byDistance) {
+            for (int key : atDistance) {
+                for (String spelling : names[key]) {
+                    if (found.size() < limit) {
+                        found.add(spelling);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    // One step of the edit distance table: the row for the prefix ending at node, which
+    // is depth letters long, after previousLetter. Only the cells at most maxEdits from the diagonal can stay
+    // within maxEdits, so only those are worked out and the ones next to them are marked
+    // as too far; a step costs the same for long names as for short ones.
+    private void walk(int node, int depth, char previousLetter, String target, int[][] rows, int maxEdits,
+                      List<List<Integer>> byDistance) {
+        int[] previousRow = rows[depth - 1];
+        int[] row = rows[depth];
+        int tooFar = maxEdits + 1;
+        int length = target.length();
+        int from = Math.max(1, depth - maxEdits);
+        int to = Math.min(length, depth + maxEdits);
+        row[0] = depth;
+        if (from > 1) {
+            row[from - 1] = tooFar;
+        }
+        if (to < length) {
+            row[to + 1] = tooFar;
+        }
+        int smallest = row[0];
+        char letter = letters[node];
+        for (int i = from; i <= to; i++) {
+            int replace = previousRow[i - 1] + (target.charAt(i - 1) == letter ? 0 : 1);
+            row[i] = Math.min(replace, Math.min(row[i - 1] + 1, previousRow[i] + 1));
+            if (i > 1 && target.charAt(i - 1) == previousLetter && target.charAt(i - 2) == letter) {
+                row[i] = Math.min(row[i], rows[depth - 2][i - 2] + 1);
+            }
+            smallest = Math.min(smallest, row[i]);
+        }
+        if (keyAt[node] >= 0 && Math.abs(length - depth) <= maxEdits && row[length] <= maxEdits) {
+            byDistance.get(row[length]).add(keyAt[node]);
+        }
+        // every longer name only gets further away
+        if (smallest > maxEdits || depth + 1 == rows.length) {
+            return;
+        }
+        for (int child = firstChild[node]; child < firstChild[node] + childCount[node]; child++) {
+            walk(child, depth + 1, letter, target, rows, maxEdits, byDistance);
+        }
+    }
+
+    // What to offer for typed text: names starting with it, then names a typo or two
+    // away, without repeats
+    public List<String> suggest(String typed, int limit) {
+        List<String> found = complete(typed, limit);
+        if (found.size() < limit) {
+            int length = normalize(typed).length();
+            int maxEdits = length <= LONG_NAME ? SHORT_NAME_EDITS : SHORT_NAME_EDITS + 1;
+            for (String name : similar(typed, maxEdits, limit)) {
+                if (found.size() < limit && !found.contains(name)) {
+                    found.add(name);
+                }
+            }
+        }
+        return found;
+    }
+
+    // node reached by the letters of key, -1 if no name starts with them
+    private int find(String key) {
+        int node = 0;
+        for (int i = 0; i < key.length(); i++) {
+            int from = firstChild[node];
+            int found = Arrays.binarySearch(letters, from, from + childCount[node], key.charAt(i));
+            if (found < 0) {
+                return -1;
+            }
+            node = found;
+        }
+        return node;
+    }
+
+    // lower case letters and digits of the name
+    static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        StringBuilder key = new StringBuilder(name.length());
+        String lower = name.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                key.append(c);
+            }
+        }
+        return key.toString();
+    }
+}
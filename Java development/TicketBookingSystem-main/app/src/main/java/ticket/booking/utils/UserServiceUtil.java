@@ -4,7 +4,12 @@ package ticket.booking.utils;
 
 import org.mindrot.jbcrypt.BCrypt;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public class UserServiceUtil {
+
+    private static final AtomicLong lastTicketId = new AtomicLong();
+
     public static String hashPassword(String plainPassword) {
         return BCrypt.hashpw(plainPassword, BCrypt.gensalt());
     }
@@ -12,7 +17,12 @@ public class UserServiceUtil {
         return BCrypt.checkpw(plainPassword, hashedPassword);
     }
 
+    // Still the current time in millis, but moved past the last id handed out so that
+    // tickets issued in the same millisecond get different ids. Ids stay numbers in the
+    // order issued: ConsistencyChecker keeps a seat sold twice for the older one by them,
+    // and BookingAnalytics reads the time a ticket was issued from them.
     public static String generateTicketId() {
-        return "" + System.currentTimeMillis();
+        long now = System.currentTimeMillis();
+        return "" + lastTicketId.updateAndGet(last -> Math.max(now, last + 1));
     }
 }
@@ -0,0 +1,149 @@
+package ticket.booking;
+
+import ticket.booking.entities.Train;
+import ticket.booking.repository.TrainRepository;
+import ticket.booking.utils.StationDictionary;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// Trains in memory that remember who changed which seat and what every flush wrote
+public class MemoryTrainRepository implements TrainRepository {
+
+    private final ConcurrentHashMap<String, Train> trains = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    // name of the thread behind every seat change, in order
+    public final List<String> seatWriters = Collections.synchronizedList(new ArrayList<>());
+    // trainIds (lowercase) written by every flush, in order; null for a flush of everything
+    public final List<Set<String>> flushes = Collections.synchronizedList(new ArrayList<>());
+    // the next change from this value to that one is refused, as if the seat had been taken
+    private volatile int[] refuseNext;
+    // the next seat change fails without changing anything, as if the disk had failed
+    private volatile boolean failNext;
+    // the next flush fails without writing anything
+    private volatile boolean failNextFlush;
+
+    public MemoryTrainRepository(Train... trains) {
+        for (Train train : trains) {
+            this.trains.put(key(train.getTrainId()), train);
+        }
+    }
+
+    public void refuseNext(int expectedValue, int newValue) {
+        refuseNext = new int[]{expectedValue, newValue};
+    }
+
+    public void failNext() {
+        failNext = true;
+    }
+
+    public void failNextFlush() {
+        failNextFlush = true;
+    }
+
+    public int seat(String trainId, int row, int seat) {
+        return trains.get(key(trainId)).getSeats().get(row).get(seat);
+    }
+
+    @Override
+    public List<Train> findByRoute(String source, String destination) {
+        return findIdsByRoute(source, destination).stream().map(this::findById).flatMap(Optional::stream).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<String> findIdsByRoute(String source, String destination) {
+        int from = StationDictionary.lookup(source);
+        int to = StationDictionary.lookup(destination);
+        return trains.values().stream().filter(train -> train.servesInOrder(from, to)).map(Train::getTrainId).collect(Collectors.toList());
+    }
+
+    @Override
+    public Optional<Train> findById(String trainId) {
+        return Optional.ofNullable(trains.get(key(trainId)));
+    }
+
+    @Override
+    public boolean exists(String trainId) {
+        return trains.containsKey(key(trainId));
+    }
+
+    @Override
+    public List<String> findAllIds() {
+        return trains.values().stream().map(Train::getTrainId).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<String> findAllStations() {
+        return trains.values().stream().flatMap(train -> train.getStations().stream()).distinct().collect(Collectors.toList());
+    }
+
+    @Override
+    public void save(Train train) {
+        trains.put(key(train.getTrainId()), train);
+    }
+
+    @Override
+    public void saveAll(List<Train> trains) {
+        trains.forEach(this::save);
+    }
+
+    @Override
+    public boolean updateSeat(String trainId, int row, int seat, int expectedValue, int newValue) throws IOException {
+        if (failNext) {
+            failNext = false;
+            throw new IOException("seat change failed");
+        }
+        Train train = trains.get(key(trainId));
+        if (train == null) {
+            return false;
+        }
+        synchronized (train) {
+            List<Integer> seatRow = train.getSeats().get(row);
+            if (seatRow.get(seat) != expectedValue) {
+                return false;
+            }
+            int[] refused = refuseNext;
+            if (refused != null && refused[0] == expectedValue && refused[1] == newValue) {
+                refuseNext = null;
+                return false;
+            }
+            seatRow.set(seat, newValue);
+        }
+        seatWriters.add(Thread.currentThread().getName());
+        dirty.add(key(trainId));
+        return true;
+    }
+
+    @Override
+    public void flush() {
+        flushes.add(null);
+        dirty.clear();
+    }
+
+    @Override
+    public void flush(Collection<String> trainIds) throws IOException {
+        if (failNextFlush) {
+            failNextFlush = false;
+            throw new IOException("flush failed");
+        }
+        Set<String> written = trainIds.stream().map(MemoryTrainRepository::key).collect(Collectors.toSet());
+        flushes.add(written);
+        dirty.removeAll(written);
+    }
+
+    public boolean isDirty(String trainId) {
+        return dirty.contains(key(trainId));
+    }
+
+    private static String key(String trainId) {
+        return trainId.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,48 @@
+package ticket.booking;
+
+import ticket.booking.entities.Train;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// Trains and scratch directories shared by the tests
+public final class TestData {
+
+    private TestData() {
+    }
+
+    // A train with every seat free, leaving the stations an hour apart
+    public static Train train(String trainId, int rows, int seatsPerRow, String... stations) {
+        List<List<Integer>> seats = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            List<Integer> seatRow = new ArrayList<>();
+            for (int seat = 0; seat < seatsPerRow; seat++) {
+                seatRow.add(Train.SEAT_FREE);
+            }
+            seats.add(seatRow);
+        }
+        Map<String, String> times = new LinkedHashMap<>();
+        for (int i = 0; i < stations.length; i++) {
+            times.put(stations[i], String.format("%02d:00:00", i));
+        }
+        return new Train(trainId, "NO-" + trainId, seats, times, List.of(stations));
+    }
+
+    public static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package ticket.booking.admission;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveLimiterTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void slowRequestsOfOneWindowCutTheLimitOnce() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(100, 1, 1000, 10, 1, TimeUnit.SECONDS);
+        // well after the limiter was made, so the first slow request may cut
+        long base = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(AdaptiveLimiter.Outcome.ADMITTED, limiter.acquire("a"));
+        }
+        limiter.release(MS, true, base);
+        limiter.release(10 * MS, true, base + 10 * MS);
+        assertEquals(90, limiter.getLimit());
+        // all of these started before that cut
+        for (int i = 1; i <= 9; i++) {
+            limiter.release(10 * MS, false, base + (10 + i) * MS);
+        }
+        assertEquals(90, limiter.getLimit());
+        // started after it
+        limiter.release(10 * MS, true, base + 30 * MS);
+        assertEquals(81, limiter.getLimit());
+    }
+
+    @Test
+    public void fastRequestsGrowTheLimitWhileItIsUsed() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(4, 1, 10, 10, 1, TimeUnit.SECONDS);
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire("a");
+        }
+        long now = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            limiter.release(MS, true, now);
+            assertEquals(AdaptiveLimiter.Outcome.ADMITTED, limiter.acquire("a"));
+        }
+        assertTrue(limiter.getLimit() > 4);
+        assertTrue(limiter.getLimit() <= 10);
+    }
+
+    @Test
+    public void limitNeverDropsBelowTheMinimum() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(2, 2, 10, 10, 1, TimeUnit.SECONDS);
+        long base = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire("a");
+            limiter.release(MS, false, base + i * 10 * MS);
+        }
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void fullQueueTurnsRequestsAway() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1, 0, 1, TimeUnit.SECONDS);
+        assertEquals(AdaptiveLimiter.Outcome.ADMITTED, limiter.acquire("a"));
+        assertEquals(AdaptiveLimiter.Outcome.QUEUE_FULL, limiter.acquire("b"));
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    public void requestWaitingTooLongTimesOutAndLeavesTheQueue() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1, 1, 20, TimeUnit.MILLISECONDS);
+        assertEquals(AdaptiveLimiter.Outcome.ADMITTED, limiter.acquire("a"));
+        assertEquals(AdaptiveLimiter.Outcome.TIMED_OUT, limiter.acquire("b"));
+        assertEquals(0, limiter.getQueued());
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test(timeout = 10_000)
+    public void waitingClientsTakeTurns() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1, 10, 10, TimeUnit.SECONDS);
+        assertEquals(AdaptiveLimiter.Outcome.ADMITTED, limiter.acquire("holder"));
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        // the flooding client queues first
+        for (String client : List.of("flood", "flood", "flood", "other")) {
+            int queuedBefore = limiter.getQueued();
+            Thread thread = new Thread(() -> {
+                if (limiter.acquire(client) == AdaptiveLimiter.Outcome.ADMITTED) {
+                    admitted.add(client);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+            while (limiter.getQueued() == queuedBefore) {
+                Thread.sleep(1);
+            }
+        }
+        for (int i = 1; i <= 4; i++) {
+            limiter.release(MS, true);
+            while (admitted.size() < i) {
+                Thread.sleep(1);
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(List.of("flood", "other", "flood", "flood"), admitted);
+    }
+}
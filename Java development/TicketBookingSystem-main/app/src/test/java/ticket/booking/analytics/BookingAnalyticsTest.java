@@ -0,0 +1,179 @@
+package ticket.booking.analytics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.MemoryTrainRepository;
+import ticket.booking.TestData;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.repository.HistoryFilter;
+import ticket.booking.repository.TicketPage;
+import ticket.booking.repository.TicketRepository;
+import ticket.booking.services.TrainService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BookingAnalyticsTest {
+
+    // on the hour, 2023-11-14 22:00 UTC
+    private static final long HOUR = 1_699_999_200_000L;
+    private static final long HOUR_MILLIS = 3_600_000L;
+
+    private TrainService trainService;
+    private final List<Ticket> tickets = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Train first = TestData.train("T1", 2, 2, "alpha", "beta", "gamma", "delta");
+        first.getSeats().get(0).set(0, Train.SEAT_BOOKED);
+        first.getSeats().get(0).set(1, Train.SEAT_BOOKED);
+        Train second = TestData.train("T2", 1, 2, "epsilon", "zeta");
+        trainService = new TrainService(new MemoryTrainRepository(first, second));
+        // holds found when a train is loaded are left over from a previous run and freed,
+        // so this one is taken once the train is loaded
+        trainService.getTrainById("T1");
+        assertTrue(trainService.holdSeatAsync("T1", 1, 0).join());
+
+        tickets.add(ticket(String.valueOf(HOUR + 1_000), "alpha", "gamma", "2024-01-01", "T1"));
+        tickets.add(ticket(String.valueOf(HOUR + 2_000), "beta", "delta", "2024-01-01", "T1"));
+        // trainIds are matched whatever their case
+        tickets.add(ticket(String.valueOf(HOUR + HOUR_MILLIS + 5), "alpha", "gamma", "2024-01-02", "t1"));
+        // an id that is not a time is counted everywhere but in the time series
+        tickets.add(ticket("legacy-7", "epsilon", "zeta", "2024-01-01", "T2"));
+        tickets.add(ticket(String.valueOf(HOUR + 10), "alpha", "gamma", "2024-01-01", null));
+        // before 2000, so not a time either, and its train is gone
+        tickets.add(ticket("999", "alpha", "beta", "2024-01-01", "T9"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        trainService.close();
+    }
+
+    @Test
+    public void occupancyCountsSeatsLegsAndDatesPerTrain() throws IOException {
+        AnalyticsReport report = run();
+
+        assertEquals(6, report.getTicketsScanned());
+        assertEquals(2, report.getTicketsWithoutTrain());
+        TrainOccupancy first = occupancy(report, "T1");
+        assertEquals("NO-T1", first.getTrainNo());
+        assertEquals(4, first.getCapacity());
+        assertEquals(2, first.getBookedSeats());
+        assertEquals(1, first.getHeldSeats());
+        assertEquals(0.5, first.getLoadFactor(), 1e-9);
+        assertEquals(List.of("alpha - beta", "beta - gamma", "gamma - delta"), first.getLegs());
+        assertEquals(2, first.getLegTickets(0));
+        assertEquals(3, first.getLegTickets(1));
+        assertEquals(1, first.getLegTickets(2));
+        assertEquals(0.75, first.getLegLoadFactor(1), 1e-9);
+        assertEquals(Map.of("2024-01-01", 2L, "2024-01-02", 1L), first.getTicketsPerDate());
+
+        TrainOccupancy second = occupancy(report, "T2");
+        assertEquals(0, second.getBookedSeats());
+        assertEquals(1, second.getLegTickets(0));
+        assertEquals(Map.of("2024-01-01", 1L), second.getTicketsPerDate());
+    }
+
+    @Test
+    public void stationPairsAreCountedForEveryTicketMostTravelledFirst() throws IOException {
+        List<Map.Entry<String, Long>> pairs = run().getPopularPairs();
+
+        assertEquals(Map.entry("alpha -> gamma", 3L), pairs.get(0));
+        Map<String, Long> all = new HashMap<>();
+        pairs.forEach(pair -> all.put(pair.getKey(), pair.getValue()));
+        assertEquals(Map.of("alpha -> gamma", 3L, "beta -> delta", 1L, "epsilon -> zeta", 1L, "alpha -> beta", 1L), all);
+    }
+
+    @Test
+    public void ticketsIssuedPerHourComeFromTheirIds() throws IOException {
+        AnalyticsReport report = run();
+
+        assertEquals(Map.of(HOUR, 3L, HOUR + HOUR_MILLIS, 1L), report.getBookingsPerHour());
+        long day = HOUR - Math.floorMod(HOUR, 24 * HOUR_MILLIS);
+        assertEquals(Map.of(day, 4L), report.getBookingsPerDay());
+    }
+
+    @Test
+    public void onlyMillisecondsOfThisCenturyAreIssueTimes() {
+        assertEquals(HOUR, BookingAnalytics.issuedAt(String.valueOf(HOUR)));
+        assertEquals(-1, BookingAnalytics.issuedAt("999"));
+        assertEquals(-1, BookingAnalytics.issuedAt("4102444800000"));
+        assertEquals(-1, BookingAnalytics.issuedAt("16999992000001"));
+        assertEquals(-1, BookingAnalytics.issuedAt("16999x9200000"));
+        assertEquals(-1, BookingAnalytics.issuedAt(""));
+        assertEquals(-1, BookingAnalytics.issuedAt(null));
+    }
+
+    private AnalyticsReport run() throws IOException {
+        return new BookingAnalytics(trainService, new ListedTickets(tickets, 4)).run();
+    }
+
+    private static TrainOccupancy occupancy(AnalyticsReport report, String trainId) {
+        return report.getTrains().stream().filter(train -> train.getTrainId().equals(trainId)).findFirst().orElseThrow();
+    }
+
+    // the train of a scanned ticket only carries its id, like the repositories return it
+    private static Ticket ticket(String ticketId, String source, String destination, String date, String trainId) {
+        Train train = null;
+        if (trainId != null) {
+            train = new Train();
+            train.setTrainId(trainId);
+        }
+        return new Ticket(ticketId, "U1", source, destination, date, train);
+    }
+
+    // Tickets dealt round robin into partitions, so several workers add up their counts
+    private static final class ListedTickets implements TicketRepository {
+        private final List<Ticket> tickets;
+        private final int partitions;
+
+        ListedTickets(List<Ticket> tickets, int partitions) {
+            this.tickets = tickets;
+            this.partitions = partitions;
+        }
+
+        @Override
+        public int partitionCount() {
+            return partitions;
+        }
+
+        @Override
+        public void forEachInPartition(int partition, TicketVisitor visitor) throws IOException {
+            for (int i = partition; i < tickets.size(); i += partitions) {
+                visitor.visit(tickets.get(i));
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void save(Ticket ticket) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean delete(Ticket ticket) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Ticket> findByUserId(String userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public TicketPage findPage(String userId, HistoryFilter filter, String cursor, int limit) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
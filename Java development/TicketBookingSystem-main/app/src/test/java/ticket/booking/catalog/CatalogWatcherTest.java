@@ -0,0 +1,103 @@
+package ticket.booking.catalog;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.TestData;
+import ticket.booking.entities.Train;
+import ticket.booking.repository.JsonTrainRepository;
+import ticket.booking.serialization.JsonCodec;
+import ticket.booking.storage.TrainShardStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+
+// Edits made to scratch train files while a watcher runs on them
+public class CatalogWatcherTest {
+
+    private Path dir;
+    private Path timetable;
+    private JsonTrainRepository repository;
+    private TrainCatalog catalog;
+    private CatalogWatcher watcher;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("watcher");
+        repository = new JsonTrainRepository(new TrainShardStore(dir.resolve("trains")));
+        repository.save(TestData.train("T1", 2, 2, "alpha", "beta"));
+        catalog = new TrainCatalog(repository);
+        assertTrue(catalog.get("T1").isPresent());
+        Files.createDirectories(dir.resolve("timetable"));
+        timetable = dir.resolve("timetable/trains.json");
+        watcher = CatalogWatcher.start(repository, catalog, timetable);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        watcher.close();
+        TestData.deleteRecursively(dir);
+    }
+
+    @Test(timeout = 20_000)
+    public void shardEditedByHandIsPublishedAndOtherFilesAreIgnored() throws Exception {
+        Path shardDir = dir.resolve("trains");
+        // files editors create next to the one being edited
+        Files.writeString(shardDir.resolve("4913"), "");
+        Files.writeString(shardDir.resolve(".t1.json.swp"), "");
+        Thread.sleep(500);
+
+        Train edited = TestData.train("T1", 2, 2, "alpha", "beta");
+        edited.getSeats().get(0).set(0, Train.SEAT_BOOKED);
+        writeAtomically(shardDir.resolve(TrainShardStore.shardFileName("T1")), edited);
+
+        await(() -> catalog.get("T1").orElseThrow().getSeats().get(0).get(0) == Train.SEAT_BOOKED);
+    }
+
+    @Test(timeout = 20_000)
+    public void timetableEditAppliesOnlyTheTrainsWhoseEntryChanged() throws Exception {
+        Train second = TestData.train("T2", 1, 2, "gamma", "delta");
+        Train third = TestData.train("T3", 1, 2, "gamma", "epsilon");
+        writeAtomically(timetable, List.of(second, third));
+        await(() -> catalog.get("T2").isPresent() && catalog.get("T3").isPresent());
+        Train thirdBefore = catalog.get("T3").orElseThrow();
+
+        second.setTrainNo("NO-T2-NEW");
+        writeAtomically(timetable, List.of(second, third));
+        await(() -> catalog.get("T2").orElseThrow().getTrainNo().equals("NO-T2-NEW"));
+        assertSame(thirdBefore, catalog.get("T3").orElseThrow());
+
+        writeAtomically(timetable, List.of(second));
+        await(() -> catalog.get("T3").isEmpty());
+        assertFalse(repository.exists("T3"));
+        assertTrue(catalog.get("T1").isPresent());
+    }
+
+    @Test(timeout = 20_000)
+    public void unreadableTimetableDoesNotStopTheWatcher() throws Exception {
+        Files.writeString(timetable, "[{\"train_id\":\"T4\",\"seats\":[\"0x\"]}]");
+        Thread.sleep(500);
+
+        writeAtomically(timetable, List.of(TestData.train("T5", 1, 1, "alpha", "beta")));
+        await(() -> catalog.get("T5").isPresent());
+    }
+
+    // Like the store writes: next to the target, then renamed over it
+    private static void writeAtomically(Path target, Object value) throws IOException {
+        Path edit = target.resolveSibling(target.getFileName() + ".edit");
+        JsonCodec.FILE_WRITER.writeValue(edit.toFile(), value);
+        Files.move(edit, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void await(Callable<Boolean> condition) throws Exception {
+        while (!condition.call()) {
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ticket.booking.cluster;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ConsistentHashRingTest {
+
+    private static final int TRAINS = 10_000;
+
+    @Test
+    public void emptyRingOwnsNothing() {
+        assertNull(new ConsistentHashRing(List.of()).ownerOf("T1"));
+    }
+
+    @Test
+    public void ownerIgnoresCaseAndIsTheSameOnEveryRingOfTheSameNodes() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"));
+        ConsistentHashRing again = new ConsistentHashRing(List.of("a", "b", "c"));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(ring.ownerOf("T" + i), ring.ownerOf("t" + i));
+            assertEquals(ring.ownerOf("T" + i), again.ownerOf("T" + i));
+        }
+    }
+
+    @Test
+    public void trainsSpreadRoughlyEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c", "d"));
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < TRAINS; i++) {
+            owned.merge(ring.ownerOf("T" + i), 1, Integer::sum);
+        }
+        assertEquals(4, owned.size());
+        for (int count : owned.values()) {
+            // a quarter each, give or take a third of that
+            assertTrue("owned " + owned, count > TRAINS / 4 * 2 / 3 && count < TRAINS / 4 * 4 / 3);
+        }
+    }
+
+    @Test
+    public void addedNodeOnlyTakesTrainsOver() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"));
+        ConsistentHashRing bigger = ring.withNode("d");
+        assertEquals(List.of("a", "b", "c"), ring.nodes());
+        assertEquals(List.of("a", "b", "c", "d"), bigger.nodes());
+        assertSame(bigger, bigger.withNode("d"));
+
+        int moved = 0;
+        for (int i = 0; i < TRAINS; i++) {
+            String before = ring.ownerOf("T" + i);
+            String after = bigger.ownerOf("T" + i);
+            if (!before.equals(after)) {
+                assertEquals("d", after);
+                moved++;
+            }
+        }
+        // about a quarter of the trains
+        assertTrue("moved " + moved, moved > TRAINS / 6 && moved < TRAINS / 3);
+    }
+}
@@ -0,0 +1,164 @@
+package ticket.booking.engine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.MemoryTrainRepository;
+import ticket.booking.TestData;
+import ticket.booking.catalog.TrainCatalog;
+import ticket.booking.entities.Train;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.*;
+
+public class BookingEngineTest {
+
+    private MemoryTrainRepository repository;
+    private TrainCatalog catalog;
+    private BookingEngine engine;
+
+    @Before
+    public void setUp() {
+        repository = new MemoryTrainRepository(TestData.train("A", 4, 4, "x", "y"), TestData.train("B", 4, 4, "x", "y"));
+        catalog = new TrainCatalog(repository);
+        engine = new BookingEngine(catalog, 2);
+    }
+
+    @After
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    public void seatIsBookedOnceHoweverManyAskForIt() throws Exception {
+        List<CompletableFuture<Boolean>> attempts = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            attempts.add(engine.book("A", 1, 1));
+        }
+        int booked = 0;
+        for (CompletableFuture<Boolean> attempt : attempts) {
+            if (attempt.join()) {
+                booked++;
+            }
+        }
+        assertEquals(1, booked);
+        assertEquals(Train.SEAT_BOOKED, (int) catalog.get("A").get().getSeats().get(1).get(1));
+    }
+
+    @Test
+    public void seatChangesFollowTheirStateMachine() {
+        assertFalse(engine.cancel("A", 0, 0).join());
+        assertTrue(engine.hold("A", 0, 0).join());
+        assertFalse(engine.book("A", 0, 0).join());
+        assertTrue(engine.confirmHold("A", 0, 0).join());
+        assertFalse(engine.releaseHold("A", 0, 0).join());
+        assertTrue(engine.cancel("A", 0, 0).join());
+        assertFalse(engine.book("A", 9, 0).join());
+        assertFalse(engine.book("nope", 0, 0).join());
+    }
+
+    @Test
+    public void setAppliesWhateverTheSeatHolds() {
+        assertTrue(engine.set("A", 2, 3, Train.SEAT_BOOKED).join());
+        // already holding the value is not a failure
+        assertTrue(engine.set("A", 2, 3, Train.SEAT_BOOKED).join());
+        assertTrue(engine.set("A", 2, 3, Train.SEAT_FREE).join());
+        assertFalse(engine.set("A", 7, 0, Train.SEAT_BOOKED).join());
+        assertEquals(Train.SEAT_FREE, repository.seat("A", 2, 3));
+    }
+
+    @Test
+    public void everySeatChangeOfATrainHappensOnItsPartitionsWriter() {
+        List<CompletableFuture<Boolean>> changes = new ArrayList<>();
+        for (int row = 0; row < 4; row++) {
+            for (int seat = 0; seat < 4; seat++) {
+                changes.add(engine.book("A", row, seat));
+                changes.add(engine.book("B", row, seat));
+            }
+        }
+        changes.forEach(CompletableFuture::join);
+        assertEquals(32, repository.seatWriters.size());
+        for (String writer : repository.seatWriters) {
+            assertTrue(writer, writer.startsWith("booking-writer-"));
+        }
+    }
+
+    @Test
+    public void batchWritesOnlyTheTrainsItTouched() {
+        assertTrue(engine.book("A", 0, 0).join());
+        assertFalse(repository.isDirty("A"));
+        // a change that did nothing has nothing to write
+        assertFalse(engine.book("A", 0, 0).join());
+        synchronized (repository.flushes) {
+            assertFalse("nothing flushes every train", repository.flushes.contains(null));
+            for (Set<String> flushed : repository.flushes) {
+                assertEquals(Set.of("a"), flushed);
+            }
+        }
+    }
+
+    @Test
+    public void closedEngineRefusesNewChanges() {
+        engine.close();
+        assertTrue(engine.book("A", 0, 0).isCompletedExceptionally());
+    }
+
+    @Test
+    public void batchThatCannotBeWrittenIsUndone() throws Exception {
+        assertTrue(engine.book("A", 3, 3).join());
+        repository.failNextFlush();
+        assertTrue(joinFails(engine.book("A", 0, 0)));
+        assertEquals(Train.SEAT_FREE, repository.seat("A", 0, 0));
+        assertEquals(Train.SEAT_FREE, (int) catalog.get("A").get().getSeats().get(0).get(0));
+
+        repository.failNextFlush();
+        assertTrue(joinFails(engine.set("A", 3, 3, Train.SEAT_HELD)));
+        assertEquals(Train.SEAT_BOOKED, repository.seat("A", 3, 3));
+
+        // nothing is left half done, the same changes go through once writing works again
+        assertTrue(engine.book("A", 0, 0).join());
+        assertTrue(engine.set("A", 3, 3, Train.SEAT_HELD).join());
+        assertFalse(repository.isDirty("A"));
+    }
+
+    @Test(timeout = 10_000)
+    public void everyChangeSubmittedWhileClosingCompletes() throws Exception {
+        List<CompletableFuture<Boolean>> changes = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> submitters = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int row = t;
+            Thread submitter = new Thread(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    changes.add(engine.set("A", row, i % 4, i % 2 == 0 ? Train.SEAT_BOOKED : Train.SEAT_FREE));
+                }
+            });
+            submitters.add(submitter);
+            submitter.start();
+        }
+        Thread.sleep(5);
+        engine.close();
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        synchronized (changes) {
+            for (CompletableFuture<Boolean> change : changes) {
+                assertTrue(change.isDone());
+            }
+        }
+    }
+
+    private static boolean joinFails(CompletableFuture<Boolean> change) {
+        try {
+            change.join();
+            return false;
+        } catch (CompletionException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ticket.booking.engine;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class HashedTimerWheelTest {
+
+    // 8 ticks of 10 ms, so anything past 80 ms waits whole turns of the wheel
+    private final HashedTimerWheel wheel = new HashedTimerWheel(10, TimeUnit.MILLISECONDS, 8);
+
+    @After
+    public void tearDown() {
+        wheel.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wheelSizeIsAPowerOfTwo() {
+        new HashedTimerWheel(10, TimeUnit.MILLISECONDS, 12);
+    }
+
+    @Test(timeout = 10_000)
+    public void tasksRunOnceTheirDelayPassedNeverEarly() throws InterruptedException {
+        int tasks = 40;
+        CountDownLatch ran = new CountDownLatch(tasks);
+        ConcurrentHashMap<Integer, Long> early = new ConcurrentHashMap<>();
+        for (int i = 0; i < tasks; i++) {
+            int delayMillis = i * 7;
+            long due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            wheel.schedule(() -> {
+                long now = System.nanoTime();
+                if (now < due) {
+                    early.put(delayMillis, due - now);
+                }
+                ran.countDown();
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+        ran.await();
+        assertTrue("ran early: " + early, early.isEmpty());
+    }
+
+    @Test(timeout = 10_000)
+    public void cancelledTaskNeverRuns() throws InterruptedException {
+        AtomicBoolean cancelledRan = new AtomicBoolean();
+        HashedTimerWheel.Timeout cancelled = wheel.schedule(() -> cancelledRan.set(true), 30, TimeUnit.MILLISECONDS);
+        CountDownLatch later = new CountDownLatch(1);
+        HashedTimerWheel.Timeout expired = wheel.schedule(later::countDown, 120, TimeUnit.MILLISECONDS);
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        later.await();
+        assertFalse(cancelledRan.get());
+        assertFalse(cancelled.isExpired());
+        assertTrue(expired.isExpired());
+        // a task that ran can no longer be cancelled
+        assertFalse(expired.cancel());
+    }
+
+    @Test(timeout = 10_000)
+    public void failingTaskDoesNotStopTheWheel() throws InterruptedException {
+        wheel.schedule(() -> {
+            throw new IllegalStateException("task failed");
+        }, 0, TimeUnit.MILLISECONDS);
+        CountDownLatch ran = new CountDownLatch(1);
+        wheel.schedule(ran::countDown, 50, TimeUnit.MILLISECONDS);
+        ran.await();
+    }
+}
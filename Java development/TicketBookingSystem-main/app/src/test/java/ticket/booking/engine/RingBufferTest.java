@@ -0,0 +1,85 @@
+package ticket.booking.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RingBufferTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityIsAPowerOfTwo() {
+        new RingBuffer<Integer>(6);
+    }
+
+    @Test
+    public void drainsInOrderUpToMax() {
+        RingBuffer<Integer> ring = new RingBuffer<>(8);
+        assertTrue(ring.isEmpty());
+        for (int i = 0; i < 5; i++) {
+            ring.put(i);
+        }
+        List<Integer> batch = new ArrayList<>();
+        assertEquals(3, ring.drainTo(batch, 3));
+        assertEquals(List.of(0, 1, 2), batch);
+        assertFalse(ring.isEmpty());
+        assertEquals(2, ring.drainTo(batch, 10));
+        assertEquals(List.of(0, 1, 2, 3, 4), batch);
+        assertTrue(ring.isEmpty());
+        assertEquals(0, ring.drainTo(batch, 10));
+    }
+
+    @Test
+    public void slotsAreReusedAfterWrappingAround() {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        List<Integer> batch = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ring.put(i);
+            ring.put(-i);
+            assertEquals(2, ring.drainTo(batch, 4));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) batch.get(2 * i));
+            assertEquals(-i, (int) batch.get(2 * i + 1));
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void manyProducersOneConsumerLoseNothing() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 50_000;
+        // much smaller than what is put, so producers keep waiting for room
+        RingBuffer<long[]> ring = new RingBuffer<>(64);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    ring.put(new long[]{producer, i});
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        int[] next = new int[producers];
+        List<long[]> batch = new ArrayList<>();
+        int received = 0;
+        while (received < producers * perProducer) {
+            batch.clear();
+            received += ring.drainTo(batch, 16);
+            for (long[] element : batch) {
+                // every producer's elements arrive once each, in the order it put them
+                assertEquals(next[(int) element[0]]++, element[1]);
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(ring.isEmpty());
+        for (int count : next) {
+            assertEquals(perProducer, count);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package ticket.booking.metrics;
+
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class GaugeTest {
+
+    @Test
+    public void ownersUnderOneNameAddUp() {
+        AtomicLong first = new AtomicLong(3);
+        AtomicLong second = new AtomicLong(4);
+        Gauge gauge = new Gauge("queued");
+        gauge.readFrom(first, AtomicLong::get);
+        gauge.readFrom(second, AtomicLong::get);
+
+        assertEquals(7, gauge.getValue());
+        second.set(10);
+        assertEquals(13, gauge.getValue());
+    }
+
+    @Test(timeout = 20_000)
+    public void gaugeDoesNotKeepItsOwnerAlive() throws InterruptedException {
+        AtomicLong kept = new AtomicLong(1);
+        Gauge gauge = Metrics.gauge("test.gauge." + System.nanoTime(), kept, AtomicLong::get);
+        WeakReference<AtomicLong> dropped = register(gauge);
+        assertEquals(6, gauge.getValue());
+
+        while (dropped.get() != null) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(1, gauge.getValue());
+        assertEquals(1, gauge.owners());
+        assertEquals(1, kept.get());
+    }
+
+    // an owner nobody but the gauge knows about
+    private static WeakReference<AtomicLong> register(Gauge gauge) {
+        AtomicLong owner = new AtomicLong(5);
+        gauge.readFrom(owner, AtomicLong::get);
+        return new WeakReference<>(owner);
+    }
+}
@@ -0,0 +1,83 @@
+package ticket.booking.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesHaveABucketEach() {
+        for (long nanos = 0; nanos < 8; nanos++) {
+            assertEquals(nanos, LatencyHistogram.bucketOf(nanos));
+            assertEquals(nanos, LatencyHistogram.valueOf((int) nanos));
+        }
+        // then eight buckets per power of two
+        assertEquals(8, LatencyHistogram.bucketOf(8));
+        assertEquals(15, LatencyHistogram.bucketOf(15));
+        assertEquals(16, LatencyHistogram.bucketOf(16));
+        assertEquals(16, LatencyHistogram.bucketOf(17));
+        assertEquals(17, LatencyHistogram.bucketOf(18));
+    }
+
+    @Test
+    public void everyValueIsKeptWithinAnEighthOfItself() {
+        Random random = new Random(3);
+        int previousBucket = 0;
+        for (long nanos = 1; nanos < (1L << 40); nanos += 1 + nanos / 7 + random.nextInt(3)) {
+            int bucket = LatencyHistogram.bucketOf(nanos);
+            assertTrue("buckets never go down", bucket >= previousBucket);
+            previousBucket = bucket;
+            long value = LatencyHistogram.valueOf(bucket);
+            assertTrue(nanos + " kept as " + value, Math.abs(value - nanos) <= nanos / 8.0);
+        }
+    }
+
+    @Test
+    public void valuesPastTheLastBucketStayInIt() {
+        // the power of two from 2^40 still has its eight buckets
+        int last = LatencyHistogram.bucketOf((1L << 41) - 1);
+        assertEquals(last - 7, LatencyHistogram.bucketOf(1L << 40));
+        assertEquals(last, LatencyHistogram.bucketOf(1L << 41));
+        assertEquals(last, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+        assertEquals(last, LatencyHistogram.bucketOf((1L << 50) + 12345));
+    }
+
+    @Test
+    public void percentilesFollowTheRecordedValues() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        assertEquals(0, histogram.percentileNanos(0.5));
+        long[] values = new long[10_000];
+        Random random = new Random(11);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1_000 + random.nextInt(1_000_000);
+            histogram.record(values[i]);
+        }
+        histogram.record(-5);
+        Arrays.sort(values);
+
+        assertEquals(10_001, histogram.getCount());
+        for (double fraction : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            long exact = values[(int) Math.ceil(fraction * 10_001) - 2];
+            long read = histogram.percentileNanos(fraction);
+            assertTrue(fraction + ": " + read + " for " + exact, Math.abs(read - exact) <= exact / 8.0);
+        }
+        // never above what was recorded
+        assertEquals(values[values.length - 1], histogram.percentileNanos(1.0));
+        assertEquals(values[values.length - 1] / 1e3, histogram.getMaxMicros(), 0.0);
+        assertEquals(0, histogram.percentileNanos(0.00001));
+    }
+
+    @Test
+    public void meanIsExactAndTotalIsKept() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        histogram.record(1_000);
+        histogram.record(2_000);
+        histogram.record(6_000);
+        assertEquals(9_000, histogram.getTotalNanos());
+        assertEquals(3.0, histogram.getMeanMicros(), 1e-9);
+    }
+}
@@ -0,0 +1,124 @@
+package ticket.booking.replication;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.MemoryTrainRepository;
+import ticket.booking.TestData;
+import ticket.booking.entities.Train;
+import ticket.booking.repository.JsonTicketRepository;
+import ticket.booking.repository.JsonUserRepository;
+import ticket.booking.repository.Repositories;
+import ticket.booking.serialization.JsonCodec;
+import ticket.booking.storage.UserBucketStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JournalTest {
+
+    private static final ObjectReader ENTRY = JsonCodec.readerFor(JournalEntry.class);
+
+    private Path dir;
+    private Journal journal;
+    private Repositories repositories;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("journal");
+        journal = new Journal();
+        UserBucketStore userStore = new UserBucketStore(dir.resolve("users"));
+        repositories = JournalingRepositories.wrap(new Repositories(new MemoryTrainRepository(TestData.train("T1", 2, 2, "alpha", "beta")),
+                new JsonUserRepository(userStore), new JsonTicketRepository(userStore)), journal);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        TestData.deleteRecursively(dir);
+    }
+
+    @Test
+    public void entriesAreNumberedFromOneAndReadAfterASeq() throws Exception {
+        journal.append(List.of(JournalEntry.seat("T1", 0, 0, 1), JournalEntry.seat("T1", 0, 1, 1), JournalEntry.seat("T1", 1, 0, 1)));
+
+        assertEquals(3, journal.getLastSeq());
+        List<JournalEntry> all = entries(journal.readAfter(0, 10, 0));
+        assertEquals(3, all.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1, all.get(i).getSeq());
+            assertEquals(JournalEntry.SEAT, all.get(i).getType());
+        }
+        List<JournalEntry> second = entries(journal.readAfter(1, 1, 0));
+        assertEquals(1, second.size());
+        assertEquals(2, second.get(0).getSeq());
+        assertEquals(Integer.valueOf(1), second.get(0).getSeat());
+        assertEquals(List.of(), journal.readAfter(3, 10, 0));
+        // ahead of the journal, e.g. a seq of another epoch
+        assertNull(journal.readAfter(4, 10, 0));
+    }
+
+    @Test(timeout = 10_000)
+    public void readAfterWaitsForTheNextAppend() throws Exception {
+        Thread appender = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                journal.append(List.of(JournalEntry.seat("T1", 0, 0, 1)));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        appender.start();
+        List<String> lines = journal.readAfter(0, 10, 5_000);
+        appender.join();
+        assertEquals(1, lines.size());
+    }
+
+    @Test
+    public void entryIsTheStateAtAppendNotWhatTheObjectBecameLater() throws Exception {
+        Train train = TestData.train("T2", 1, 1, "alpha", "beta");
+        journal.append(List.of(JournalEntry.train(train)));
+        train.getSeats().get(0).set(0, Train.SEAT_BOOKED);
+
+        Train journalled = entries(journal.readAfter(0, 1, 0)).get(0).getTrain();
+        assertEquals(Train.SEAT_FREE, (int) journalled.getSeats().get(0).get(0));
+    }
+
+    @Test
+    public void seatChangesReachTheJournalOnlyOnceTheirTrainIsWritten() throws Exception {
+        assertTrue(repositories.trains().updateSeat("T1", 0, 1, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        assertFalse(repositories.trains().updateSeat("T1", 0, 1, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        assertEquals(0, journal.getLastSeq());
+
+        repositories.trains().flush(List.of("t1"));
+        List<JournalEntry> written = entries(journal.readAfter(0, 10, 0));
+        assertEquals(1, written.size());
+        assertEquals("T1", written.get(0).getTrainId());
+        assertEquals(Integer.valueOf(Train.SEAT_BOOKED), written.get(0).getValue());
+    }
+
+    @Test
+    public void savedTrainFollowsItsUnwrittenSeatChanges() throws Exception {
+        assertTrue(repositories.trains().updateSeat("T1", 1, 1, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        repositories.trains().save(repositories.trains().findById("T1").orElseThrow());
+
+        List<JournalEntry> written = entries(journal.readAfter(0, 10, 0));
+        assertEquals(List.of(JournalEntry.SEAT, JournalEntry.TRAIN), written.stream().map(JournalEntry::getType).toList());
+        // nothing left to write for the train
+        repositories.trains().flush(List.of("T1"));
+        assertEquals(2, journal.getLastSeq());
+    }
+
+    private static List<JournalEntry> entries(List<String> lines) throws IOException {
+        List<JournalEntry> entries = new ArrayList<>();
+        for (String line : lines) {
+            entries.add(ENTRY.readValue(line));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,114 @@
+package ticket.booking.replication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.MemoryTrainRepository;
+import ticket.booking.TestData;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.repository.JsonTicketRepository;
+import ticket.booking.repository.JsonUserRepository;
+import ticket.booking.repository.Repositories;
+import ticket.booking.services.UserBookingService;
+import ticket.booking.services.WaitlistService;
+import ticket.booking.storage.TrainShardStore;
+import ticket.booking.storage.UserBucketStore;
+import ticket.booking.utils.UserServiceUtil;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+// A primary and a follower on localhost, each on its own scratch storage
+public class ReplicaFollowerTest {
+
+    private Path dir;
+    private MemoryTrainRepository trains;
+    private int port;
+    private ReplicationPrimary primary;
+    private ReplicaFollower follower;
+
+    @Before
+    public void setUp() throws IOException {
+        System.setProperty("booking.hotReload", "false");
+        dir = Files.createTempDirectory("replication");
+        trains = new MemoryTrainRepository(TestData.train("T1", 2, 3, "alpha", "beta"));
+        UserBucketStore userStore = new UserBucketStore(dir.resolve("primary/users"));
+        port = freePort();
+        primary = ReplicationPrimary.start(new Repositories(trains, new JsonUserRepository(userStore), new JsonTicketRepository(userStore)),
+                new WaitlistService(dir.resolve("primary/waitlists.json").toFile()), port);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (follower != null) {
+            follower.close();
+        }
+        primary.close();
+        TestData.deleteRecursively(dir);
+    }
+
+    @Test(timeout = 30_000)
+    public void followerCatchesUpFromASnapshotThenFollowsTheJournal() throws Exception {
+        UserBookingService alice = signedIn("alice");
+        assertTrue(alice.bookTrainSeat(train(), 0, 0));
+        Journal journal = primary.getJournal();
+        long beforeFollower = journal.getLastSeq();
+        assertTrue(beforeFollower > 0);
+
+        follower = new ReplicaFollower("localhost", port, 0,
+                new TrainShardStore(dir.resolve("follower/trains")), new UserBucketStore(dir.resolve("follower/users")));
+        await(() -> follower.getAppliedSeq() == beforeFollower);
+
+        // made while following, so it arrives as journal entries, not in the snapshot
+        assertTrue(alice.bookTrainSeat(train(), 1, 2));
+        String firstTicket = alice.getUserByUsername("alice").orElseThrow().getTicketsBooked().get(0).getTicketId();
+        assertTrue(alice.cancelBooking(firstTicket));
+        await(() -> journal.getLastSeq() > beforeFollower && follower.getAppliedSeq() == journal.getLastSeq());
+
+        follower.promote();
+        assertEquals(0L, follower.lag().get("behind_entries"));
+        Train replica = new TrainShardStore(dir.resolve("follower/trains")).load("T1").orElseThrow();
+        assertEquals(Train.SEAT_FREE, (int) replica.getSeats().get(0).get(0));
+        assertEquals(Train.SEAT_BOOKED, (int) replica.getSeats().get(1).get(2));
+        User replicaAlice = new UserBucketStore(dir.resolve("follower/users")).findByUsername("alice").orElseThrow();
+        List<Ticket> tickets = replicaAlice.getTicketsBooked();
+        assertEquals(1, tickets.size());
+        assertEquals(Integer.valueOf(1), tickets.get(0).getRow());
+        assertEquals(Integer.valueOf(2), tickets.get(0).getSeat());
+    }
+
+    private UserBookingService signedIn(String username) throws IOException {
+        UserBookingService service = primary.getBookingService();
+        User user = new User(username, "secret", UserServiceUtil.hashPassword("secret"), new ArrayList<>(), UUID.randomUUID().toString());
+        assertTrue(service.signUp(user));
+        UserBookingService session = service.newSession();
+        assertTrue(session.login(username, "secret").isPresent());
+        return session;
+    }
+
+    private Train train() {
+        return trains.findById("T1").orElseThrow();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        while (!condition.getAsBoolean()) {
+            Thread.sleep(10);
+        }
+    }
+}
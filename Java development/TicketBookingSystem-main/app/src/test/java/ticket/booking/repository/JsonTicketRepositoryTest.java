@@ -0,0 +1,101 @@
+package ticket.booking.repository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.TestData;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.User;
+import ticket.booking.storage.UserBucketStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class JsonTicketRepositoryTest {
+
+    private Path dir;
+    private UserBucketStore userStore;
+    private JsonTicketRepository tickets;
+    private User user;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("users");
+        userStore = new UserBucketStore(dir);
+        tickets = new JsonTicketRepository(userStore);
+        user = new User("alice", null, "hash", new ArrayList<>(), "U1");
+        new JsonUserRepository(userStore).add(user);
+        // two trips long past and three far ahead, saved out of order
+        for (String date : List.of("2999-03-01", "2000-01-02", "2999-01-01", "2000-01-01", "2999-02-01")) {
+            tickets.save(ticket("t" + date, date));
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        TestData.deleteRecursively(dir);
+    }
+
+    @Test
+    public void cursorsWalkTheHistoryPageByPage() throws IOException {
+        TicketPage first = tickets.findPage("U1", HistoryFilter.ALL, null, 2);
+        assertEquals(List.of("2000-01-01", "2000-01-02"), dates(first));
+        assertTrue(first.hasMore());
+        TicketPage second = tickets.findPage("U1", HistoryFilter.ALL, first.getNextCursor(), 2);
+        assertEquals(List.of("2999-01-01", "2999-02-01"), dates(second));
+        TicketPage last = tickets.findPage("U1", HistoryFilter.ALL, second.getNextCursor(), 2);
+        assertEquals(List.of("2999-03-01"), dates(last));
+        assertFalse(last.hasMore());
+    }
+
+    @Test
+    public void filtersSplitPastFromUpcoming() throws IOException {
+        assertEquals(List.of("2999-01-01", "2999-02-01", "2999-03-01"), dates(tickets.findPage("U1", HistoryFilter.UPCOMING, null, 10)));
+        TicketPage past = tickets.findPage("U1", HistoryFilter.PAST, null, 1);
+        assertEquals(List.of("2000-01-02"), dates(past));
+        assertEquals(List.of("2000-01-01"), dates(tickets.findPage("U1", HistoryFilter.PAST, past.getNextCursor(), 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedCursorIsRefused() throws IOException {
+        tickets.findPage("U1", HistoryFilter.ALL, "no separator", 2);
+    }
+
+    @Test
+    public void savedAndDeletedTicketsShowOnTheNextPage() throws IOException {
+        tickets.findPage("U1", HistoryFilter.ALL, null, 10);
+        tickets.save(ticket("new", "2500-01-01"));
+        assertTrue(tickets.delete(ticket("t2000-01-01", "2000-01-01")));
+
+        assertEquals(List.of("2000-01-02", "2500-01-01", "2999-01-01", "2999-02-01", "2999-03-01"),
+                dates(tickets.findPage("U1", HistoryFilter.ALL, null, 10)));
+    }
+
+    @Test
+    public void listReplacedWithAsManyTicketsIsIndexedAgain() throws IOException {
+        tickets.findPage("U1", HistoryFilter.ALL, null, 10);
+        // e.g. the user was read back from its bucket holding other tickets, same count
+        List<Ticket> replaced = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            replaced.add(ticket("r" + i, "2100-01-0" + i));
+        }
+        userStore.findById("U1").get().setTicketsBooked(replaced);
+
+        assertEquals(List.of("2100-01-01", "2100-01-02", "2100-01-03", "2100-01-04", "2100-01-05"),
+                dates(tickets.findPage("U1", HistoryFilter.ALL, null, 10)));
+    }
+
+    private static Ticket ticket(String ticketId, String date) {
+        return new Ticket(ticketId, "U1", "alpha", "beta", date, null);
+    }
+
+    private static List<String> dates(TicketPage page) {
+        return page.getTickets().stream().map(Ticket::getDateOfTravel).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,93 @@
+package ticket.booking.repository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.TestData;
+import ticket.booking.entities.Coach;
+import ticket.booking.entities.Train;
+import ticket.booking.storage.TrainShardStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class JsonTrainRepositoryTest {
+
+    private Path dir;
+    private TrainShardStore store;
+    private JsonTrainRepository repository;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("shards");
+        store = new TrainShardStore(dir);
+        repository = new JsonTrainRepository(store);
+        repository.save(TestData.train("T1", 2, 3, "alpha", "beta"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        TestData.deleteRecursively(dir);
+    }
+
+    @Test
+    public void unwrittenSeatChangeOutlivesTheStoreDroppingTheTrain() throws IOException {
+        assertTrue(repository.updateSeat("T1", 1, 2, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        store.evict("T1");
+
+        assertEquals(Train.SEAT_BOOKED, (int) repository.findById("T1").get().getSeats().get(1).get(2));
+        // the change is applied to the same train, not to a copy read again from disk
+        assertTrue(repository.updateSeat("T1", 0, 0, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        repository.flush();
+
+        Train reread = new TrainShardStore(dir).load("T1").get();
+        assertEquals(Train.SEAT_BOOKED, (int) reread.getSeats().get(1).get(2));
+        assertEquals(Train.SEAT_BOOKED, (int) reread.getSeats().get(0).get(0));
+    }
+
+    @Test
+    public void trainWithoutANumberIsSavedAgain() throws IOException {
+        Train train = TestData.train("T2", 1, 1, "alpha", "beta");
+        train.setTrainNo(null);
+        repository.save(train);
+        train.getSeats().get(0).set(0, Train.SEAT_BOOKED);
+        repository.save(train);
+
+        Train reread = new TrainShardStore(dir).load("T2").get();
+        assertNull(reread.getTrainNo());
+        assertEquals(Train.SEAT_BOOKED, (int) reread.getSeats().get(0).get(0));
+    }
+
+    @Test
+    public void seatChangeIsCheckedAgainstTheExpectedValue() throws IOException {
+        assertTrue(repository.updateSeat("t1", 0, 1, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        assertFalse(repository.updateSeat("T1", 0, 1, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        assertFalse(repository.updateSeat("T1", 5, 0, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        assertFalse(repository.updateSeat("nope", 0, 0, Train.SEAT_FREE, Train.SEAT_BOOKED));
+    }
+
+    @Test
+    public void flushedTrainIsReadAgainAfterBeingDropped() throws IOException {
+        assertTrue(repository.updateSeat("T1", 0, 0, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        repository.flush();
+        store.evict("T1");
+
+        assertEquals(Train.SEAT_BOOKED, (int) repository.findById("T1").get().getSeats().get(0).get(0));
+    }
+
+    @Test
+    public void trainWithoutCoachesIsNotWrittenBackWithTheDefaultOne() throws IOException {
+        Train train = repository.findById("T1").get();
+        assertNull(train.getCoaches());
+        assertEquals(Coach.DEFAULT_CLASS, train.travelClassOfRow(1));
+        assertTrue(repository.updateSeat("T1", 0, 0, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        repository.flush();
+
+        Train reread = new TrainShardStore(dir).load("T1").get();
+        assertNull(reread.getCoaches());
+        assertEquals(Coach.DEFAULT_COACH_ID, reread.coachOfRow(1).get().getCoachId());
+    }
+}
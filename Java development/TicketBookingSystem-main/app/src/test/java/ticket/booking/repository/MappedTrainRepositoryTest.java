@@ -0,0 +1,94 @@
+package ticket.booking.repository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.TestData;
+import ticket.booking.entities.Train;
+import ticket.booking.storage.MappedSeatInventory;
+import ticket.booking.storage.TrainShardStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MappedTrainRepositoryTest {
+
+    private Path dir;
+    private TrainShardStore store;
+    private MappedSeatInventory inventory;
+    private MappedTrainRepository repository;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("mapped");
+        // a shard written before the inventory was used, its seats are copied over once
+        Train train = TestData.train("T1", 2, 3, "alpha", "beta");
+        train.getSeats().get(0).set(1, Train.SEAT_BOOKED);
+        new JsonTrainRepository(new TrainShardStore(dir.resolve("trains"))).save(train);
+        open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        inventory.close();
+        TestData.deleteRecursively(dir);
+    }
+
+    @Test
+    public void seatsComeFromTheShardOnceAndFromTheMappingAfter() throws IOException {
+        assertFalse(inventory.contains("T1"));
+        Train train = repository.findById("T1").orElseThrow();
+        assertTrue(inventory.contains("T1"));
+        assertEquals(Train.SEAT_BOOKED, (int) train.getSeats().get(0).get(1));
+
+        assertTrue(repository.updateSeat("T1", 1, 2, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        assertFalse(repository.updateSeat("T1", 1, 2, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        assertFalse(repository.updateSeat("T9", 0, 0, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        // the train read before shows the booking, nothing was copied
+        assertEquals(Train.SEAT_BOOKED, (int) train.getSeats().get(1).get(2));
+        // the store keeps the train with the mapped seats instead of the shard's outdated ones
+        assertEquals(Train.SEAT_BOOKED, (int) store.load("T1").orElseThrow().getSeats().get(1).get(2));
+        assertEquals("NO-T1", repository.findById("T1").orElseThrow().getTrainNo());
+    }
+
+    @Test
+    public void bookingsOutliveARestartAndTheShardIsNotRewritten() throws IOException {
+        assertTrue(repository.updateSeat("T1", 1, 0, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        repository.flush();
+        inventory.close();
+
+        Train shard = new TrainShardStore(dir.resolve("trains")).load("T1").orElseThrow();
+        assertEquals(Train.SEAT_FREE, (int) shard.getSeats().get(1).get(0));
+        open();
+        List<List<Integer>> seats = repository.findById("T1").orElseThrow().getSeats();
+        assertEquals(List.of(List.of(0, Train.SEAT_BOOKED, 0), List.of(Train.SEAT_BOOKED, 0, 0)), seats);
+    }
+
+    @Test
+    public void replacedTrainGetsItsNewLayoutAndTheOldRecordIsDead() throws IOException {
+        repository.findById("T1").orElseThrow();
+        Train replacement = TestData.train("T1", 1, 4, "alpha", "gamma");
+        replacement.setTrainNo("NO-T1-NEW");
+        repository.save(replacement);
+
+        Train train = repository.findById("T1").orElseThrow();
+        assertEquals("NO-T1-NEW", train.getTrainNo());
+        assertEquals(List.of(List.of(0, 0, 0, 0)), train.getSeats());
+        assertTrue(inventory.deadBytes() > 0);
+        inventory.close();
+
+        open();
+        assertEquals(List.of(List.of(0, 0, 0, 0)), repository.findById("T1").orElseThrow().getSeats());
+        assertEquals(List.of("T1"), repository.findIdsByRoute("alpha", "gamma"));
+    }
+
+    private void open() throws IOException {
+        store = new TrainShardStore(dir.resolve("trains"));
+        inventory = new MappedSeatInventory(dir.resolve("seats.bin"));
+        repository = new MappedTrainRepository(new JsonTrainRepository(store), inventory);
+    }
+}
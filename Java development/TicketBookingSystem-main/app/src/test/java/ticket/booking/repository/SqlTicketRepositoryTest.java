@@ -0,0 +1,103 @@
+package ticket.booking.repository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.TestData;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class SqlTicketRepositoryTest {
+
+    private SqlDatabase database;
+    private TicketRepository tickets;
+    private Train train;
+
+    @Before
+    public void setUp() throws IOException {
+        database = SqlDatabase.open("jdbc:h2:mem:" + UUID.randomUUID());
+        train = TestData.train("T1", 2, 2, "alpha", "beta");
+        database.trains().save(train);
+        database.users().add(new User("alice", null, "hash", new ArrayList<>(), "U1"));
+        tickets = database.tickets();
+        // two trips long past and three far ahead, saved out of order
+        for (String date : List.of("2999-03-01", "2000-01-02", "2999-01-01", "2000-01-01", "2999-02-01")) {
+            tickets.save(ticket("t" + date, date));
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Test
+    public void cursorsWalkTheHistoryPageByPage() throws IOException {
+        TicketPage first = tickets.findPage("U1", HistoryFilter.ALL, null, 2);
+        assertEquals(List.of("2000-01-01", "2000-01-02"), dates(first));
+        assertTrue(first.hasMore());
+        TicketPage second = tickets.findPage("U1", HistoryFilter.ALL, first.getNextCursor(), 2);
+        assertEquals(List.of("2999-01-01", "2999-02-01"), dates(second));
+        TicketPage last = tickets.findPage("U1", HistoryFilter.ALL, second.getNextCursor(), 2);
+        assertEquals(List.of("2999-03-01"), dates(last));
+        assertFalse(last.hasMore());
+    }
+
+    @Test
+    public void ticketsOnTheSameDateAreOrderedByTicketId() throws IOException {
+        tickets.save(ticket("a", "2999-02-01"));
+        tickets.save(ticket("z", "2999-02-01"));
+
+        TicketPage first = tickets.findPage("U1", HistoryFilter.UPCOMING, null, 2);
+        TicketPage second = tickets.findPage("U1", HistoryFilter.UPCOMING, first.getNextCursor(), 2);
+        TicketPage third = tickets.findPage("U1", HistoryFilter.UPCOMING, second.getNextCursor(), 2);
+        assertEquals(List.of("t2999-01-01", "a", "t2999-02-01", "z", "t2999-03-01"),
+                List.of(first, second, third).stream().flatMap(page -> page.getTickets().stream()).map(Ticket::getTicketId).toList());
+        assertFalse(third.hasMore());
+    }
+
+    @Test
+    public void filtersSplitPastFromUpcoming() throws IOException {
+        assertEquals(List.of("2999-01-01", "2999-02-01", "2999-03-01"), dates(tickets.findPage("U1", HistoryFilter.UPCOMING, null, 10)));
+        TicketPage past = tickets.findPage("U1", HistoryFilter.PAST, null, 1);
+        assertEquals(List.of("2000-01-02"), dates(past));
+        assertEquals(List.of("2000-01-01"), dates(tickets.findPage("U1", HistoryFilter.PAST, past.getNextCursor(), 1)));
+    }
+
+    @Test
+    public void ticketsCarryTheirTrainsIdAndNumberOnly() throws IOException {
+        Ticket read = tickets.findByUserId("U1").get(0);
+        assertEquals("T1", read.getTrain().getTrainId());
+        assertEquals("NO-T1", read.getTrain().getTrainNo());
+        assertNull(read.getTrain().getSeats());
+        assertEquals(Integer.valueOf(1), read.getRow());
+        assertEquals(Integer.valueOf(0), read.getSeat());
+    }
+
+    @Test
+    public void deleteReportsWhetherTheTicketWasThere() throws IOException {
+        assertTrue(tickets.delete(ticket("t2000-01-01", "2000-01-01")));
+        assertFalse(tickets.delete(ticket("t2000-01-01", "2000-01-01")));
+        assertEquals(4, tickets.findByUserId("U1").size());
+    }
+
+    private Ticket ticket(String ticketId, String date) {
+        Ticket ticket = new Ticket(ticketId, "U1", "alpha", "beta", date, train);
+        ticket.setRow(1);
+        ticket.setSeat(0);
+        return ticket;
+    }
+
+    private static List<String> dates(TicketPage page) {
+        return page.getTickets().stream().map(Ticket::getDateOfTravel).collect(Collectors.toList());
+    }
+}
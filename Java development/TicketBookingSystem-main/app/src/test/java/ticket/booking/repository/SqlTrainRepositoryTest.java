@@ -0,0 +1,94 @@
+package ticket.booking.repository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.TestData;
+import ticket.booking.entities.Coach;
+import ticket.booking.entities.Train;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class SqlTrainRepositoryTest {
+
+    private SqlDatabase database;
+    private TrainRepository trains;
+
+    @Before
+    public void setUp() throws IOException {
+        database = SqlDatabase.open("jdbc:h2:mem:" + UUID.randomUUID());
+        trains = database.trains();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Test
+    public void savedTrainsReadBackWithSeatsStationsAndCoaches() throws IOException {
+        Train first = TestData.train("T1", 2, 3, "alpha", "beta", "gamma");
+        first.getSeats().get(1).set(2, Train.SEAT_BOOKED);
+        first.setCoaches(List.of(new Coach("S1", "SL", 0, 1), new Coach("A1", "2A", 1, 1)));
+        trains.saveAll(List.of(first, TestData.train("T2", 1, 1, "beta", "alpha")));
+
+        Train read = trains.findById("T1").orElseThrow();
+        assertEquals(first.getSeats(), read.getSeats());
+        assertEquals(List.of("alpha", "beta", "gamma"), read.getStations());
+        assertEquals(first.getStationTimes(), read.getStationTimes());
+        assertEquals("2A", read.travelClassOfRow(1));
+        assertNull(trains.findById("T2").orElseThrow().getCoaches());
+        assertEquals(List.of("T1", "T2"), trains.findAllIds());
+        assertEquals(List.of("T1"), trains.findIdsByRoute("alpha", "gamma"));
+        assertEquals(List.of("T2"), trains.findIdsByRoute("beta", "alpha"));
+    }
+
+    @Test
+    public void savingAgainReplacesTheTrain() throws IOException {
+        trains.save(TestData.train("T1", 2, 2, "alpha", "beta"));
+        trains.save(TestData.train("T1", 1, 4, "alpha", "gamma"));
+
+        Train read = trains.findById("T1").orElseThrow();
+        assertEquals(1, read.getSeats().size());
+        assertEquals(4, read.getSeats().get(0).size());
+        assertEquals(List.of("alpha", "gamma"), read.getStations());
+        assertTrue(trains.findIdsByRoute("alpha", "beta").isEmpty());
+    }
+
+    @Test
+    public void failedBatchLeavesEveryTrainAsItWas() throws IOException {
+        trains.save(TestData.train("T1", 1, 1, "alpha", "beta"));
+        Train changed = TestData.train("T1", 3, 3, "alpha", "beta");
+        // the same train twice breaks the primary key halfway through the batch
+        Train twice = TestData.train("T2", 1, 1, "alpha", "beta");
+        try {
+            trains.saveAll(List.of(changed, twice, twice));
+            fail("saved a train twice");
+        } catch (IOException expected) {
+        }
+
+        assertEquals(1, trains.findById("T1").orElseThrow().getSeats().size());
+        assertFalse(trains.exists("T2"));
+        // the connection commits single statements again afterwards
+        assertTrue(trains.updateSeat("T1", 0, 0, Train.SEAT_FREE, Train.SEAT_BOOKED));
+    }
+
+    @Test
+    public void seatChangesOnlyFromTheExpectedValue() throws IOException {
+        trains.save(TestData.train("T1", 2, 2, "alpha", "beta"));
+
+        assertTrue(trains.updateSeat("T1", 1, 0, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        assertFalse(trains.updateSeat("T1", 1, 0, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        assertFalse(trains.updateSeat("T1", 1, 0, Train.SEAT_HELD, Train.SEAT_FREE));
+        assertFalse(trains.updateSeat("T1", 5, 0, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        assertFalse(trains.updateSeat("T9", 0, 0, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        assertEquals(Train.SEAT_BOOKED, (int) trains.findById("T1").orElseThrow().getSeats().get(1).get(0));
+
+        assertTrue(trains.updateSeat("T1", 1, 0, Train.SEAT_BOOKED, Train.SEAT_FREE));
+        assertEquals(Train.SEAT_FREE, (int) trains.findById("T1").orElseThrow().getSeats().get(1).get(0));
+    }
+}
@@ -0,0 +1,96 @@
+package ticket.booking.repository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.TestData;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.User;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class SqlUserRepositoryTest {
+
+    private SqlDatabase database;
+    private SqlUserRepository users;
+
+    @Before
+    public void setUp() throws IOException {
+        database = SqlDatabase.open("jdbc:h2:mem:" + UUID.randomUUID());
+        users = (SqlUserRepository) database.users();
+        database.trains().save(TestData.train("T1", 2, 2, "alpha", "beta"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Test
+    public void usersAreFoundByNameAndById() throws IOException {
+        users.add(user("alice", "U1"));
+
+        assertTrue(users.usernameTaken("alice"));
+        assertFalse(users.usernameTaken("Alice"));
+        assertEquals("U1", users.findByUsername("alice").orElseThrow().getUserId());
+        assertEquals("alice", users.findById("U1").orElseThrow().getUsername());
+        assertEquals("hash", users.findById("U1").orElseThrow().getHashedPassword());
+        assertTrue(users.findByUsername("bob").isEmpty());
+        assertTrue(users.findById("U2").isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void usernameIsClaimedOnce() throws IOException {
+        users.add(user("alice", "U1"));
+        users.add(user("alice", "U2"));
+    }
+
+    @Test
+    public void batchOfUsersIsWrittenWithTheirTickets() throws IOException {
+        List<User> batch = new ArrayList<>();
+        for (int i = 0; i < SqlDatabase.BATCH_SIZE + 5; i++) {
+            User user = user("user" + i, "U" + i);
+            user.getTicketsBooked().add(ticket("K" + i + "a", "U" + i));
+            user.getTicketsBooked().add(ticket("K" + i + "b", "U" + i));
+            batch.add(user);
+        }
+        users.addAll(batch);
+
+        assertEquals(SqlDatabase.BATCH_SIZE + 5, users.findAllIds().size());
+        List<Ticket> tickets = users.findById("U7").orElseThrow().getTicketsBooked();
+        assertEquals(List.of("K7a", "K7b"), tickets.stream().map(Ticket::getTicketId).toList());
+        assertEquals("NO-T1", tickets.get(0).getTrain().getTrainNo());
+    }
+
+    @Test
+    public void ticketsAreReadOnlyWhenFirstUsed() throws IOException {
+        users.add(user("alice", "U1"));
+        User alice = users.findByUsername("alice").orElseThrow();
+        LazyTicketList tickets = (LazyTicketList) alice.getTicketsBooked();
+        assertFalse(tickets.isLoaded());
+
+        database.tickets().save(ticket("K1", "U1"));
+        assertEquals(1, tickets.size());
+        assertTrue(tickets.isLoaded());
+        // from then on the list is the user's, like a list read from a user bucket
+        tickets.remove(0);
+        tickets.add(ticket("K2", "U1"));
+        assertEquals("K2", alice.getTicketsBooked().get(0).getTicketId());
+    }
+
+    private static User user(String username, String userId) {
+        return new User(username, null, "hash", new ArrayList<>(), userId);
+    }
+
+    private Ticket ticket(String ticketId, String userId) throws IOException {
+        Ticket ticket = new Ticket(ticketId, userId, "alpha", "beta", "2021-09-01", database.trains().findById("T1").orElseThrow());
+        ticket.setRow(0);
+        ticket.setSeat(1);
+        return ticket;
+    }
+}
@@ -0,0 +1,87 @@
+package ticket.booking.serialization;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.Test;
+import ticket.booking.TestData;
+import ticket.booking.entities.Coach;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JsonCodecTest {
+
+    @Test
+    public void trainSurvivesARoundTripWithSeatRowsAsDigits() throws IOException {
+        Train train = TestData.train("T1", 2, 3, "alpha", "beta", "gamma");
+        train.getSeats().get(0).set(1, Train.SEAT_BOOKED);
+        train.getSeats().get(1).set(2, Train.SEAT_HELD);
+        train.setCoaches(List.of(new Coach("S1", "SL", 0, 1), new Coach("A1", "2A", 1, 1)));
+
+        String json = JsonCodec.WRITER.writeValueAsString(train);
+        JsonNode tree = JsonCodec.readerFor(JsonNode.class).readTree(json);
+        assertEquals("[\"010\",\"002\"]", tree.get("seats").toString());
+        assertEquals("T1", tree.get("train_id").asText());
+
+        Train read = JsonCodec.TRAIN.readValue(json);
+        assertEquals("T1", read.getTrainId());
+        assertEquals("NO-T1", read.getTrainNo());
+        assertEquals(train.getSeats(), read.getSeats());
+        assertEquals(List.of("alpha", "beta", "gamma"), read.getStations());
+        assertEquals(train.getStationTimes(), read.getStationTimes());
+        assertEquals(2, read.getCoaches().size());
+        assertEquals("2A", read.travelClassOfRow(1));
+    }
+
+    @Test
+    public void readsNumberArraysAndTimesBeforeStations() throws IOException {
+        Train read = JsonCodec.TRAIN.readValue("{\"train_id\":\"T2\",\"seats\":[[0,1],[1,0]],"
+                + "\"station_times\":{\"alpha\":\"08:00:00\",\"beta\":\"09:30:00\"},\"stations\":[\"alpha\",\"beta\"]}");
+        assertEquals(List.of(List.of(0, 1), List.of(1, 0)), read.getSeats());
+        assertEquals("09:30:00", read.getStationTimes().get("beta"));
+        assertNull(read.getCoaches());
+    }
+
+    @Test
+    public void rowWithAValueOverNineIsWrittenAsNumbers() throws IOException {
+        Train train = TestData.train("T3", 2, 2, "alpha", "beta");
+        train.getSeats().get(1).set(0, 12);
+
+        String json = JsonCodec.WRITER.writeValueAsString(train);
+        assertTrue(json, json.contains("\"seats\":[\"00\",[12,0]]"));
+        assertEquals(train.getSeats(), JsonCodec.TRAIN.<Train>readValue(json).getSeats());
+    }
+
+    @Test(expected = IOException.class)
+    public void seatRowWithALetterIsRefused() throws IOException {
+        JsonCodec.TRAIN.readValue("{\"train_id\":\"T4\",\"seats\":[\"0x0\"]}");
+    }
+
+    @Test
+    public void usersSurviveARoundTripWithTheirTickets() throws IOException {
+        Train train = TestData.train("T5", 1, 2, "alpha", "beta");
+        Ticket ticket = new Ticket("K1", "U1", "alpha", "beta", "2021-09-01", train);
+        ticket.setRow(0);
+        ticket.setSeat(1);
+        List<Ticket> tickets = new ArrayList<>(List.of(ticket));
+        User user = new User("alice", null, "hash", tickets, "U1");
+
+        List<User> read = JsonCodec.USER_LIST.readValue(JsonCodec.WRITER.writeValueAsString(List.of(user)));
+        assertEquals(1, read.size());
+        User alice = read.get(0);
+        assertEquals("alice", alice.getUsername());
+        assertEquals("U1", alice.getUserId());
+        assertEquals("hash", alice.getHashedPassword());
+        Ticket readTicket = alice.getTicketsBooked().get(0);
+        assertEquals("K1", readTicket.getTicketId());
+        assertEquals("2021-09-01", readTicket.getDateOfTravel());
+        assertEquals(Integer.valueOf(0), readTicket.getRow());
+        assertEquals(Integer.valueOf(1), readTicket.getSeat());
+        assertEquals("T5", readTicket.getTrain().getTrainId());
+    }
+}
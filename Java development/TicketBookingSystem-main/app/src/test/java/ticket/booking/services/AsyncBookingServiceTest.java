@@ -0,0 +1,80 @@
+package ticket.booking.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.TestData;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.*;
+
+public class AsyncBookingServiceTest {
+
+    private BookingFixture fixture;
+    private AsyncBookingService async;
+
+    @Before
+    public void setUp() throws IOException {
+        fixture = new BookingFixture(TestData.train("T1", 2, 2, "alpha", "beta"));
+        async = new AsyncBookingService(fixture.service);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        async.close();
+        fixture.close();
+    }
+
+    @Test
+    public void retryWithTheSameKeyGetsTheFirstResult() {
+        String alice = async.signUp("alice", "secret", "k1").join().orElseThrow();
+        Optional<Ticket> first = async.book(alice, "T1", 0, 0, "k1").join();
+        Optional<Ticket> retry = async.book(alice, "T1", 0, 0, "k1").join();
+        assertTrue(first.isPresent());
+        assertSame(first.get(), retry.get());
+        assertEquals(1, fixture.service.getUserById(alice).get().getTicketsBooked().size());
+    }
+
+    @Test
+    public void usersPickingTheSameKeyGetTheirOwnResults() {
+        String alice = async.signUp("alice", "secret", "same").join().orElseThrow();
+        String bob = async.signUp("bob", "secret", "same").join().orElseThrow();
+        assertNotEquals(alice, bob);
+
+        Ticket aliceTicket = async.book(alice, "T1", 0, 0, "same").join().orElseThrow();
+        Ticket bobTicket = async.book(bob, "T1", 1, 1, "same").join().orElseThrow();
+        assertEquals(alice, aliceTicket.getUserId());
+        assertEquals(bob, bobTicket.getUserId());
+        assertEquals(1, (int) bobTicket.getRow());
+    }
+
+    @Test
+    public void ticketThatCannotBeWrittenIsTakenBackWithItsSeat() throws IOException {
+        String alice = async.signUp("alice", "secret", null).join().orElseThrow();
+        // the bucket directory turns into a file, so writing the user fails
+        Path buckets = fixture.dir.resolve("users").resolve("buckets");
+        TestData.deleteRecursively(buckets);
+        Files.createFile(buckets);
+        try {
+            async.book(alice, "T1", 1, 0, "k").join();
+            fail("the ticket was never written");
+        } catch (CompletionException expected) {
+            assertTrue(expected.getCause() instanceof IOException);
+        }
+        assertEquals(Train.SEAT_FREE, fixture.trains.seat("T1", 1, 0));
+        assertTrue(fixture.service.getUserById(alice).get().getTicketsBooked().isEmpty());
+
+        // storage is back, the retry with the same key books for real
+        Files.delete(buckets);
+        Files.createDirectories(buckets);
+        assertTrue(async.book(alice, "T1", 1, 0, "k").join().isPresent());
+        assertEquals(Train.SEAT_BOOKED, fixture.trains.seat("T1", 1, 0));
+    }
+}
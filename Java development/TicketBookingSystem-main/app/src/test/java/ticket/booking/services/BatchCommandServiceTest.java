@@ -0,0 +1,144 @@
+package ticket.booking.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.TestData;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BatchCommandServiceTest {
+
+    private static final int SESSIONS = 8;
+
+    private BookingFixture fixture;
+
+    @Before
+    public void setUp() throws IOException {
+        fixture = new BookingFixture(TestData.train("T1", SESSIONS, 3, "alpha", "beta"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    @Test
+    public void commandsRunInFileOrderAndBadLinesFailOrAreSkipped() throws IOException {
+        String report = run("""
+                # a comment and a blank line
+
+                signup alice pw
+                login alice pw
+                search alpha beta
+                book T1 0 0
+                book T1 0 0
+                book T1 0
+                frobnicate T1
+                cancel last
+                book T1 0 1
+                """, false);
+
+        assertEquals(Train.SEAT_FREE, fixture.trains.seat("T1", 0, 0));
+        assertEquals(Train.SEAT_BOOKED, fixture.trains.seat("T1", 0, 1));
+        assertEquals(1, tickets("alice").size());
+        assertTrue(report, report.contains("Line 9: unknown command frobnicate"));
+        assertTrue(report, report.contains("book T1 0 failed: book takes 3 arguments, got 2"));
+        // the taken seat and the missing argument
+        assertArrayEquals(new int[]{4, 2}, countAndFailed(report, "book"));
+        assertArrayEquals(new int[]{1, 0}, countAndFailed(report, "cancel"));
+        assertArrayEquals(new int[]{1, 0}, countAndFailed(report, "search"));
+        assertTrue(report, report.contains("8 commands (2 failed) from 1 sessions"));
+    }
+
+    @Test
+    public void everySessionIsItsOwnUser() throws IOException {
+        String report = run("""
+                @alice signup alice pw
+                @bob signup bob pw
+                @alice login alice pw
+                @bob login bob pw
+                @alice book T1 0 0
+                @bob book T1 0 1
+                @bob cancel last
+                @carol book T1 1 1
+                @
+                """, false);
+
+        assertEquals(1, tickets("alice").size());
+        assertTrue(tickets("bob").isEmpty());
+        // carol never logged in
+        assertEquals(Train.SEAT_FREE, fixture.trains.seat("T1", 1, 1));
+        assertArrayEquals(new int[]{3, 1}, countAndFailed(report, "book"));
+        assertTrue(report, report.contains("from 3 sessions"));
+    }
+
+    @Test
+    public void parallelSessionsEachKeepTheOrderOfTheirCommands() throws IOException {
+        StringBuilder commands = new StringBuilder();
+        for (int s = 0; s < SESSIONS; s++) {
+            commands.append("@u").append(s).append(" signup u").append(s).append(" pw\n");
+            commands.append("@u").append(s).append(" login u").append(s).append(" pw\n");
+        }
+        // interleaved across sessions, each one books a seat, gives it back and books the next
+        for (int seat = 0; seat < 3; seat++) {
+            for (int s = 0; s < SESSIONS; s++) {
+                commands.append("@u").append(s).append(" book T1 ").append(s).append(' ').append(seat).append('\n');
+                if (seat < 2) {
+                    commands.append("@u").append(s).append(" cancel last\n");
+                }
+            }
+        }
+        String report = run(commands.toString(), true);
+
+        for (int s = 0; s < SESSIONS; s++) {
+            assertEquals(Train.SEAT_FREE, fixture.trains.seat("T1", s, 0));
+            assertEquals(Train.SEAT_FREE, fixture.trains.seat("T1", s, 1));
+            assertEquals(Train.SEAT_BOOKED, fixture.trains.seat("T1", s, 2));
+            List<Ticket> tickets = tickets("u" + s);
+            assertEquals(1, tickets.size());
+            assertEquals(Integer.valueOf(2), tickets.get(0).getSeat());
+        }
+        assertArrayEquals(new int[]{3 * SESSIONS, 0}, countAndFailed(report, "book"));
+        assertArrayEquals(new int[]{2 * SESSIONS, 0}, countAndFailed(report, "cancel"));
+        assertTrue(report, report.contains("from " + SESSIONS + " sessions in "));
+        assertTrue(report, report.contains(", sessions in parallel"));
+    }
+
+    // Runs the commands and returns what was printed
+    private String run(String commands, boolean parallel) throws IOException {
+        PrintStream console = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true));
+        try {
+            new BatchCommandService(fixture.service, parallel).run(new BufferedReader(new StringReader(commands)));
+        } finally {
+            System.setOut(console);
+        }
+        return printed.toString();
+    }
+
+    private List<Ticket> tickets(String username) {
+        return fixture.service.getUserByUsername(username).orElseThrow().getTicketsBooked();
+    }
+
+    // count and failed columns of the command's row in the report, {0, 0} if it has none
+    private static int[] countAndFailed(String report, String command) {
+        for (String line : report.split("\n")) {
+            String[] columns = line.trim().split("\\s+");
+            if (columns.length == 8 && columns[0].equals(command)) {
+                return new int[]{Integer.parseInt(columns[1]), Integer.parseInt(columns[2])};
+            }
+        }
+        return new int[]{0, 0};
+    }
+}
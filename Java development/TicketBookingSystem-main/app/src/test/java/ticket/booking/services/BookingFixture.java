@@ -0,0 +1,66 @@
+package ticket.booking.services;
+
+import ticket.booking.MemoryTrainRepository;
+import ticket.booking.TestData;
+import ticket.booking.entities.Train;
+import ticket.booking.entities.User;
+import ticket.booking.replication.Journal;
+import ticket.booking.replication.JournalingRepositories;
+import ticket.booking.repository.JsonTicketRepository;
+import ticket.booking.repository.JsonUserRepository;
+import ticket.booking.repository.Repositories;
+import ticket.booking.storage.UserBucketStore;
+import ticket.booking.utils.UserServiceUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.UUID;
+
+// A booking service with its trains in memory and its users, tickets and waitlists in
+// a scratch directory. Timer threads are daemons and die with the test run.
+final class BookingFixture implements AutoCloseable {
+
+    final Path dir;
+    final MemoryTrainRepository trains;
+    final JsonTicketRepository tickets;
+    final WaitlistService waitlists;
+    final UserBookingService service;
+
+    BookingFixture(Train... trains) throws IOException {
+        this(null, trains);
+    }
+
+    // Recording the changes the service makes in the journal, if there is one. Tickets
+    // written straight to the tickets field are not recorded.
+    BookingFixture(Journal journal, Train... trains) throws IOException {
+        dir = Files.createTempDirectory("booking");
+        this.trains = new MemoryTrainRepository(trains);
+        UserBucketStore userStore = new UserBucketStore(dir.resolve("users"));
+        tickets = new JsonTicketRepository(userStore);
+        waitlists = new WaitlistService(dir.resolve("waitlists.json").toFile());
+        Repositories repositories = new Repositories(this.trains, new JsonUserRepository(userStore), tickets);
+        service = new UserBookingService(journal == null ? repositories : JournalingRepositories.wrap(repositories, journal), waitlists);
+    }
+
+    // A session of a newly signed up user, logged in
+    UserBookingService signedIn(String username) throws IOException {
+        User user = new User(username, "secret", UserServiceUtil.hashPassword("secret"), new ArrayList<>(), UUID.randomUUID().toString());
+        if (!service.signUp(user)) {
+            throw new IllegalStateException(username + " is taken");
+        }
+        UserBookingService session = service.newSession();
+        session.setUser(service.getUserById(user.getUserId()).orElseThrow());
+        return session;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            service.getTrainService().close();
+        } finally {
+            TestData.deleteRecursively(dir);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package ticket.booking.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.TestData;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+import ticket.booking.replication.Journal;
+import ticket.booking.services.ConsistencyReport.Inconsistency;
+import ticket.booking.utils.UserServiceUtil;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+// Seats and tickets made to disagree the way a crash between their two writes would:
+// seats are changed through the engine and tickets written straight to the repository
+public class ConsistencyCheckerTest {
+
+    private Journal journal;
+    private BookingFixture fixture;
+    private Train first;
+    private TrainService trainService;
+
+    @Before
+    public void setUp() throws IOException {
+        journal = new Journal();
+        first = TestData.train("T1", 2, 2, "alpha", "beta");
+        fixture = new BookingFixture(journal, first, TestData.train("T2", 2, 2, "gamma", "delta"));
+        trainService = fixture.service.getTrainService();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    @Test
+    public void orphanSeatIsFoundAndFreed() throws IOException {
+        UserBookingService alice = fixture.signedIn("alice");
+        assertTrue(alice.bookTrainSeat(first, 0, 0));
+        assertTrue(trainService.occupySeat("T1", 1, 1));
+
+        ConsistencyReport report = new ConsistencyChecker(fixture.service, null, true).checkAll(true);
+
+        assertEquals(1, report.getConfirmed().size());
+        Inconsistency orphan = report.getConfirmed().get(0);
+        assertEquals(Inconsistency.ORPHAN_SEAT, orphan.getType());
+        assertEquals("T1", orphan.getTrainId());
+        assertEquals(1, orphan.getRow());
+        assertEquals(1, orphan.getSeat());
+        assertEquals(1, report.getRepaired());
+        assertEquals(Train.SEAT_FREE, fixture.trains.seat("T1", 1, 1));
+        assertEquals(Train.SEAT_BOOKED, fixture.trains.seat("T1", 0, 0));
+        assertTrue(new ConsistencyChecker(fixture.service, null, false).checkAll(true).isConsistent());
+    }
+
+    @Test
+    public void phantomTicketsOnFreeHeldMissingAndDoubleSoldSeats() throws IOException {
+        UserBookingService alice = fixture.signedIn("alice");
+        assertTrue(alice.bookTrainSeat(first, 0, 0));
+        String bob = fixture.signedIn("bob").getUserByUsername("bob").orElseThrow().getUserId();
+        assertTrue(trainService.holdSeatAsync("T1", 1, 0).join());
+        Ticket onFree = plant(UserServiceUtil.generateTicketId(), bob, 0, 1);
+        Ticket onHeld = plant(UserServiceUtil.generateTicketId(), bob, 1, 0);
+        Ticket onMissing = plant(UserServiceUtil.generateTicketId(), bob, 5, 0);
+        Ticket soldTwice = plant(UserServiceUtil.generateTicketId(), bob, 0, 0);
+
+        Map<String, String> reasons = reasonsByTicket(new ConsistencyChecker(fixture.service, null, false).checkAll(true));
+        String aliceTicket = alice.getUserByUsername("alice").orElseThrow().getTicketsBooked().get(0).getTicketId();
+        assertEquals(Map.of(onFree.getTicketId(), "the seat is free",
+                onHeld.getTicketId(), "the seat is held, not booked",
+                onMissing.getTicketId(), "the train has no such seat",
+                soldTwice.getTicketId(), "the seat was sold on ticket " + aliceTicket + " before"), reasons);
+
+        ConsistencyReport repaired = new ConsistencyChecker(fixture.service, null, true).checkAll(true);
+        // the free seat is booked for its ticket, the held one waits for its hold to end
+        assertEquals(3, repaired.getRepaired());
+        assertEquals(Train.SEAT_BOOKED, fixture.trains.seat("T1", 0, 1));
+        assertEquals(Train.SEAT_HELD, fixture.trains.seat("T1", 1, 0));
+        assertEquals(List.of(onFree.getTicketId(), onHeld.getTicketId()), fixture.tickets.findByUserId(bob).stream()
+                .map(Ticket::getTicketId).collect(Collectors.toList()));
+        assertEquals(1, fixture.tickets.findByUserId(alice.getUserByUsername("alice").orElseThrow().getUserId()).size());
+    }
+
+    @Test
+    public void seatSoldTwiceStaysWithTheOldestNumericId() throws IOException {
+        String bob = fixture.signedIn("bob").getUserByUsername("bob").orElseThrow().getUserId();
+        assertTrue(trainService.occupySeat("T1", 1, 1));
+        // an id that is not a number says nothing about when it was issued, a shorter number is older
+        plant("legacy", bob, 1, 1);
+        plant("1700000000001", bob, 1, 1);
+        plant("999999999999", bob, 1, 1);
+        plant("1700000000000", bob, 1, 1);
+
+        Map<String, String> reasons = reasonsByTicket(new ConsistencyChecker(fixture.service, null, false).checkAll(true));
+
+        String before = "the seat was sold on ticket 999999999999 before";
+        assertEquals(Map.of("legacy", before, "1700000000001", before, "1700000000000", before), reasons);
+    }
+
+    @Test
+    public void laterPassesCheckOnlyTheTrainsTheJournalSaysChanged() throws IOException {
+        ConsistencyChecker checker = new ConsistencyChecker(fixture.service, journal, false);
+        ConsistencyReport report = checker.checkChanges();
+        assertTrue(report.isFull());
+        assertEquals(2, report.getTrainsChecked());
+        assertTrue(report.isConsistent());
+
+        UserBookingService alice = fixture.signedIn("alice");
+        assertTrue(alice.bookTrainSeat(first, 1, 0));
+        report = checker.checkChanges();
+        assertFalse(report.isFull());
+        assertEquals(1, report.getTrainsChecked());
+        assertEquals(1, report.getTicketsIndexed());
+        assertTrue(report.isConsistent());
+
+        // a ticket recorded in the journal is indexed, one written behind its back is not
+        String aliceId = alice.getUserByUsername("alice").orElseThrow().getUserId();
+        Ticket recorded = ticket(UserServiceUtil.generateTicketId(), aliceId, "T2", 0, 1);
+        fixture.service.getTicketRepository().save(recorded);
+        fixture.service.getTicketRepository().flush();
+        plant(UserServiceUtil.generateTicketId(), aliceId, 0, 1);
+        report = checker.checkChanges();
+        assertFalse(report.isFull());
+        assertEquals(1, report.getTrainsChecked());
+        assertEquals(2, report.getTicketsIndexed());
+        // found once, so not reported yet
+        assertTrue(report.getConfirmed().isEmpty());
+        assertEquals(1, report.getSuspected());
+
+        // nothing changed, the suspect's train is checked again and it is still there
+        report = checker.checkChanges();
+        assertEquals(1, report.getTrainsChecked());
+        assertEquals(0, report.getSuspected());
+        assertEquals(List.of(recorded.getTicketId()), report.getConfirmed().stream()
+                .map(inconsistency -> inconsistency.getTicket().getTicketId()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void whatIsGoneByTheNextPassIsNeverReported() throws IOException {
+        ConsistencyChecker checker = new ConsistencyChecker(fixture.service, journal, true);
+        checker.checkChanges();
+        // a booking caught between its seat and its ticket
+        assertTrue(trainService.occupySeat("T2", 1, 1));
+
+        ConsistencyReport report = checker.checkChanges();
+        assertTrue(report.getConfirmed().isEmpty());
+        assertEquals(1, report.getSuspected());
+        assertEquals(Train.SEAT_BOOKED, fixture.trains.seat("T2", 1, 1));
+
+        assertTrue(trainService.releaseSeat("T2", 1, 1));
+        report = checker.checkChanges();
+        assertTrue(report.isConsistent());
+        assertEquals(0, report.getRepaired());
+
+        // checkAll(false) waits for a second pass the same way
+        assertTrue(trainService.occupySeat("T2", 0, 0));
+        assertEquals(1, checker.checkAll(false).getSuspected());
+        report = checker.checkChanges();
+        assertEquals(1, report.getConfirmed().size());
+        assertEquals(1, report.getRepaired());
+        assertEquals(Train.SEAT_FREE, fixture.trains.seat("T2", 0, 0));
+    }
+
+    // A ticket on train T1 written without the journal, as if its seat was never booked
+    private Ticket plant(String ticketId, String userId, int row, int seat) throws IOException {
+        Ticket ticket = ticket(ticketId, userId, "T1", row, seat);
+        fixture.tickets.save(ticket);
+        fixture.tickets.flush();
+        return ticket;
+    }
+
+    private Ticket ticket(String ticketId, String userId, String trainId, int row, int seat) {
+        Train train = trainService.getTrainById(trainId).orElseThrow();
+        Ticket ticket = new Ticket(ticketId, userId, train.getStations().getFirst(), train.getStations().getLast(),
+                "2024-01-01", train);
+        ticket.setRow(row);
+        ticket.setSeat(seat);
+        return ticket;
+    }
+
+    private static Map<String, String> reasonsByTicket(ConsistencyReport report) {
+        assertTrue(report.getConfirmed().stream().allMatch(found -> found.getType().equals(Inconsistency.PHANTOM_TICKET)));
+        return report.getConfirmed().stream()
+                .collect(Collectors.toMap(found -> found.getTicket().getTicketId(), Inconsistency::getReason));
+    }
+}
@@ -0,0 +1,113 @@
+package ticket.booking.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.MemoryTrainRepository;
+import ticket.booking.TestData;
+import ticket.booking.entities.Train;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class SeatHoldServiceTest {
+
+    private static final long TTL_MILLIS = 300;
+
+    private MemoryTrainRepository trains;
+    private TrainService trainService;
+    private SeatHoldService holds;
+
+    @Before
+    public void setUp() {
+        trains = new MemoryTrainRepository(TestData.train("T1", 2, 2, "alpha", "beta"));
+        trainService = new TrainService(trains);
+        holds = new SeatHoldService(trainService, TTL_MILLIS);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        holds.close();
+        trainService.close();
+    }
+
+    @Test
+    public void heldSeatIsNobodyElsesUntilReleased() {
+        SeatHold hold = holds.hold("U1", "T1", 0, 0).orElseThrow();
+        assertEquals(Train.SEAT_HELD, trains.seat("T1", 0, 0));
+        assertTrue(holds.hold("U2", "T1", 0, 0).isEmpty());
+
+        assertTrue(holds.release(hold));
+        assertFalse(holds.release(hold));
+        assertFalse(holds.confirm(hold));
+        assertEquals(Train.SEAT_FREE, trains.seat("T1", 0, 0));
+        assertEquals(0, holds.activeHolds());
+    }
+
+    @Test
+    public void confirmedSeatIsBooked() {
+        SeatHold hold = holds.hold("U1", "T1", 1, 1).orElseThrow();
+        assertTrue(holds.confirm(hold));
+        assertEquals(Train.SEAT_BOOKED, trains.seat("T1", 1, 1));
+        assertEquals(0, holds.activeHolds());
+    }
+
+    @Test(timeout = 10_000)
+    public void holdRunsOutAndFreesTheSeat() throws InterruptedException {
+        SeatHold hold = holds.hold("U1", "T1", 0, 1).orElseThrow();
+        awaitSeat(0, 1, Train.SEAT_FREE);
+        assertFalse(holds.confirm(hold));
+        assertEquals(0, holds.activeHolds());
+    }
+
+    @Test
+    public void failedConfirmKeepsTheHold() {
+        SeatHold hold = holds.hold("U1", "T1", 0, 0).orElseThrow();
+        trains.failNext();
+        assertFalse(holds.confirm(hold));
+        assertEquals(1, holds.activeHolds());
+        assertEquals(Train.SEAT_HELD, trains.seat("T1", 0, 0));
+
+        // the holder can try again while the hold lasts
+        assertTrue(holds.confirm(hold));
+        assertEquals(Train.SEAT_BOOKED, trains.seat("T1", 0, 0));
+    }
+
+    @Test(timeout = 10_000)
+    public void failedReleaseIsRetriedByTheTimer() throws InterruptedException {
+        SeatHold hold = holds.hold("U1", "T1", 1, 0).orElseThrow();
+        trains.failNext();
+        assertFalse(holds.release(hold));
+        assertEquals(1, holds.activeHolds());
+        assertEquals(Train.SEAT_HELD, trains.seat("T1", 1, 0));
+
+        awaitSeat(1, 0, Train.SEAT_FREE);
+        while (holds.activeHolds() > 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void confirmingThroughTheBookingServiceIssuesTheTicket() throws IOException {
+        Train train = TestData.train("T1", 1, 1, "alpha", "beta");
+        try (BookingFixture fixture = new BookingFixture(train)) {
+            UserBookingService alice = fixture.signedIn("alice");
+            UserBookingService bob = fixture.signedIn("bob");
+            Optional<SeatHold> hold = alice.holdSeat(train, 0, 0);
+            assertTrue(hold.isPresent());
+            // only the holder confirms
+            assertFalse(bob.confirmHold(hold.get()));
+            assertTrue(alice.confirmHold(hold.get()));
+            assertEquals(1, alice.getUserByUsername("alice").get().getTicketsBooked().size());
+            assertEquals(Train.SEAT_BOOKED, fixture.trains.seat("T1", 0, 0));
+        }
+    }
+
+    private void awaitSeat(int row, int seat, int value) throws InterruptedException {
+        while (trains.seat("T1", row, seat) != value) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ticket.booking.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.MemoryTrainRepository;
+import ticket.booking.TestData;
+import ticket.booking.entities.Train;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TimetableImportServiceTest {
+
+    private Path dir;
+    private TrainService trainService;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("timetable");
+        trainService = new TrainService(new MemoryTrainRepository());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        trainService.close();
+        TestData.deleteRecursively(dir);
+    }
+
+    @Test
+    public void rowNeedsSixOrSevenFields() {
+        assertEquals("expected 6 or 7 fields but found 5", rejection("T1,101,alpha;beta,08:00;09:00,3"));
+        assertEquals("expected 6 or 7 fields but found 8", rejection("T1,101,alpha;beta,08:00;09:00,3,4,S1:SL:3,extra"));
+        Train train = TimetableImportService.parseRow("T1,101,alpha;beta,08:00;09:00,3,4");
+        assertEquals(3, train.getSeats().size());
+        assertEquals(4, train.getSeats().get(0).size());
+    }
+
+    @Test
+    public void stationMayAppearOnlyOnceWhateverItsCase() {
+        assertEquals("station alpha appears twice on the route", rejection("T1,101,alpha;beta;ALPHA,08:00;09:00;10:00,1,1"));
+        Train train = TimetableImportService.parseRow("T1,101,Alpha;Beta,08:00 AM;09:00 AM,1,1");
+        assertEquals(List.of("alpha", "beta"), train.getStations());
+    }
+
+    @Test
+    public void timesMayGoBackwardsOnlyWithinMaxJourneyDays() {
+        // past midnight twice is a journey of three days
+        Train overnight = TimetableImportService.parseRow("T1,101,alpha;beta;gamma;delta,22:00;02:00;01:00;03:00,1,1");
+        assertEquals("01:00", overnight.getStationTimes().get("gamma"));
+        assertEquals("times go backwards 3 times, more than a 3 day journey",
+                rejection("T1,101,alpha;beta;gamma;delta,10:00;09:00;08:00;07:00,1,1"));
+        // the same time twice is a day later too
+        assertEquals("times go backwards 3 times, more than a 3 day journey",
+                rejection("T1,101,alpha;beta;gamma;delta,08:00;08:00;08:00;08:00,1,1"));
+    }
+
+    @Test
+    public void coachRowsMustAddUpToTheRowsOfTheTrain() {
+        assertEquals("coaches have 4 rows but the train has 3", rejection("T1,101,alpha;beta,08:00;09:00,3,4,S1:SL:2;B1:3A:2"));
+        assertEquals("bad coach 'S1:SL', expected coach:class:rows", rejection("T1,101,alpha;beta,08:00;09:00,3,4,S1:SL"));
+        Train train = TimetableImportService.parseRow("T1,101,alpha;beta,08:00;09:00,4,4,S1:SL:2;B1:3A:2");
+        assertEquals("SL", train.travelClassOfRow(1));
+        assertEquals("3A", train.travelClassOfRow(2));
+    }
+
+    @Test
+    public void repeatedTrainIdKeepsTheFirstRowAcrossChunks() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("train_id,train_no,stations,station_times,rows,seats_per_row,coaches");
+        // more than one chunk of rows, the repeats land in the second one
+        for (int i = 0; i < 10_050; i++) {
+            lines.add("T" + i + ",N" + i + ",alpha;beta,08:00;09:00,1,2");
+        }
+        lines.add("t7,REPEATED,alpha;beta,08:00;09:00,1,2");
+        lines.add("T10049,REPEATED,alpha;beta,08:00;09:00,1,2");
+        lines.add("");
+        lines.add("T-bad,101,alpha,08:00,1,2");
+        Path csv = dir.resolve("timetable.csv");
+        Files.write(csv, lines);
+
+        assertEquals(10_050, new TimetableImportService(trainService).importCsv(csv));
+        assertEquals("N7", trainService.getTrainById("T7").orElseThrow().getTrainNo());
+        assertEquals("N10049", trainService.getTrainById("T10049").orElseThrow().getTrainNo());
+        assertTrue(trainService.getTrainById("T-bad").isEmpty());
+    }
+
+    private static String rejection(String line) {
+        try {
+            TimetableImportService.parseRow(line);
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+        fail("accepted " + line);
+        return null;
+    }
+}
@@ -0,0 +1,34 @@
+package ticket.booking.services;
+
+import org.junit.Test;
+import ticket.booking.MemoryTrainRepository;
+import ticket.booking.TestData;
+import ticket.booking.entities.Train;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class TrainServiceTest {
+
+    @Test
+    public void closeWritesWhatIsQueuedThenRefusesSeatChanges() throws Exception {
+        MemoryTrainRepository trains = new MemoryTrainRepository(TestData.train("T1", 4, 4, "alpha", "beta"));
+        TrainService trainService = new TrainService(trains);
+        List<CompletableFuture<Boolean>> queued = new ArrayList<>();
+        for (int row = 0; row < 4; row++) {
+            queued.add(trainService.bookSeatAsync("T1", row, row));
+        }
+
+        trainService.close();
+        for (CompletableFuture<Boolean> change : queued) {
+            assertTrue(change.isDone());
+            assertTrue(change.join());
+        }
+        assertFalse(trains.isDirty("T1"));
+        assertFalse(trainService.occupySeat("T1", 0, 1));
+        assertEquals(Train.SEAT_FREE, trains.seat("T1", 0, 1));
+    }
+}
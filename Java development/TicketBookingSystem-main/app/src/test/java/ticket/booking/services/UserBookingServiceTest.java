@@ -0,0 +1,122 @@
+package ticket.booking.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.TestData;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class UserBookingServiceTest {
+
+    private BookingFixture fixture;
+    private Train train;
+
+    @Before
+    public void setUp() throws IOException {
+        train = TestData.train("T1", 2, 2, "alpha", "beta");
+        fixture = new BookingFixture(train);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    @Test
+    public void bookingIssuesOneTicketPerSeat() throws Exception {
+        UserBookingService alice = fixture.signedIn("alice");
+        UserBookingService bob = fixture.signedIn("bob");
+
+        assertTrue(alice.bookTrainSeat(train, 0, 1));
+        assertFalse(bob.bookTrainSeat(train, 0, 1));
+        assertFalse(bob.bookTrainSeat(train, 5, 0));
+
+        List<Ticket> tickets = alice.getUserByUsername("alice").get().getTicketsBooked();
+        assertEquals(1, tickets.size());
+        assertEquals(0, (int) tickets.get(0).getRow());
+        assertEquals(1, (int) tickets.get(0).getSeat());
+        assertTrue(bob.getUserByUsername("bob").get().getTicketsBooked().isEmpty());
+        assertEquals(Train.SEAT_BOOKED, fixture.trains.seat("T1", 0, 1));
+    }
+
+    @Test
+    public void seatIsBookedByTheEngineWithoutTheBookingLock() throws Exception {
+        UserBookingService alice = fixture.signedIn("alice");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> booked;
+            synchronized (fixture.service.getLock()) {
+                booked = executor.submit(() -> alice.bookTrainSeat(train, 1, 1));
+                // the seat is taken while another session holds the lock, only the ticket waits
+                while (fixture.trains.seat("T1", 1, 1) != Train.SEAT_BOOKED) {
+                    Thread.onSpinWait();
+                }
+                assertTrue(fixture.service.isBeingIssued("t1", 1, 1));
+                assertFalse(booked.isDone());
+            }
+            assertTrue(booked.get());
+            assertFalse(fixture.service.isBeingIssued("T1", 1, 1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void ticketWhoseSeatCannotBeFreedIsKept() throws Exception {
+        UserBookingService alice = fixture.signedIn("alice");
+        assertTrue(alice.bookTrainSeat(train, 1, 0));
+        String ticketId = alice.getUserByUsername("alice").get().getTicketsBooked().get(0).getTicketId();
+
+        fixture.trains.failNext();
+        assertFalse(alice.cancelBooking(ticketId));
+        assertEquals(Train.SEAT_BOOKED, fixture.trains.seat("T1", 1, 0));
+        assertEquals(1, alice.getUserByUsername("alice").get().getTicketsBooked().size());
+        assertEquals(1, fixture.tickets.findByUserId(alice.getUserByUsername("alice").get().getUserId()).size());
+
+        assertTrue(alice.cancelBooking(ticketId));
+        assertEquals(Train.SEAT_FREE, fixture.trains.seat("T1", 1, 0));
+        assertTrue(alice.getUserByUsername("alice").get().getTicketsBooked().isEmpty());
+    }
+
+    @Test
+    public void concurrentSessionsNeverShareASeat() throws Exception {
+        List<UserBookingService> sessions = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            sessions.add(fixture.signedIn("user" + i));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(sessions.size());
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (UserBookingService session : sessions) {
+                results.add(executor.submit(() -> {
+                    int booked = 0;
+                    for (int row = 0; row < 2; row++) {
+                        for (int seat = 0; seat < 2; seat++) {
+                            if (session.bookTrainSeat(train, row, seat)) {
+                                booked++;
+                            }
+                        }
+                    }
+                    return booked;
+                }));
+            }
+            int booked = 0;
+            for (Future<Integer> result : results) {
+                booked += result.get();
+            }
+            assertEquals(4, booked);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
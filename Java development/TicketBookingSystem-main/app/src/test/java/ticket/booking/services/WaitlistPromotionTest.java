@@ -0,0 +1,76 @@
+package ticket.booking.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.TestData;
+import ticket.booking.entities.Ticket;
+import ticket.booking.entities.Train;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WaitlistPromotionTest {
+
+    private BookingFixture fixture;
+    private Train train;
+    private UserBookingService alice;
+    private UserBookingService bob;
+
+    @Before
+    public void setUp() throws IOException {
+        train = TestData.train("T1", 1, 2, "alpha", "beta");
+        fixture = new BookingFixture(train);
+        alice = fixture.signedIn("alice");
+        bob = fixture.signedIn("bob");
+        assertTrue(alice.bookTrainSeat(train, 0, 0));
+        assertTrue(alice.bookTrainSeat(train, 0, 1));
+        assertEquals(1, bob.joinWaitlist(train));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    @Test
+    public void cancelledSeatGoesToTheFirstWaitingUser() throws IOException {
+        assertTrue(alice.cancelBooking(ticketOf(alice, "alice", 0)));
+
+        List<Ticket> promoted = bob.getUserByUsername("bob").get().getTicketsBooked();
+        assertEquals(1, promoted.size());
+        assertEquals(0, (int) promoted.get(0).getSeat());
+        assertEquals(Train.SEAT_BOOKED, fixture.trains.seat("T1", 0, 0));
+        assertEquals(-1, waitlistPosition("bob"));
+    }
+
+    @Test
+    public void userKeepsTheirPlaceWhenTheFreedSeatCannotBeTaken() throws IOException {
+        // the freed seat is gone again before the waiting user gets it, e.g. booked by someone else
+        fixture.trains.refuseNext(Train.SEAT_FREE, Train.SEAT_BOOKED);
+        assertTrue(alice.cancelBooking(ticketOf(alice, "alice", 0)));
+
+        assertTrue(bob.getUserByUsername("bob").get().getTicketsBooked().isEmpty());
+        assertEquals(Train.SEAT_FREE, fixture.trains.seat("T1", 0, 0));
+        assertEquals(1, waitlistPosition("bob"));
+
+        // still first in line, so the next seat freed is theirs
+        assertTrue(alice.cancelBooking(ticketOf(alice, "alice", 1)));
+        List<Ticket> promoted = bob.getUserByUsername("bob").get().getTicketsBooked();
+        assertEquals(1, promoted.size());
+        assertEquals(1, (int) promoted.get(0).getSeat());
+        assertEquals(-1, waitlistPosition("bob"));
+    }
+
+    private int waitlistPosition(String username) {
+        return fixture.waitlists.position("T1", bob.getUserByUsername(username).get().getUserId());
+    }
+
+    private static String ticketOf(UserBookingService session, String username, int seat) {
+        return session.getUserByUsername(username).get().getTicketsBooked().stream()
+                .filter(ticket -> ticket.getSeat() == seat)
+                .findFirst().orElseThrow().getTicketId();
+    }
+}
@@ -0,0 +1,82 @@
+package ticket.booking.session;
+
+import org.junit.Test;
+import ticket.booking.metrics.Counter;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BoundedCacheTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toNanos(1);
+
+    // Integer keys hash to themselves, so multiples of 16 all land in segment 0
+
+    @Test
+    public void fullSegmentDropsItsLeastRecentlyUsedEntry() {
+        Counter evicted = new Counter("test.evicted");
+        // two entries per segment
+        BoundedCache<Integer, String> cache = new BoundedCache<>(32, HOUR, evicted);
+        cache.put(0, "a");
+        cache.put(16, "b");
+        assertEquals("a", cache.get(0));
+        cache.put(32, "c");
+
+        assertEquals("a", cache.get(0));
+        assertNull(cache.get(16));
+        assertEquals("c", cache.get(32));
+        assertEquals(2, cache.size());
+        assertEquals(1, evicted.getCount());
+    }
+
+    @Test
+    public void otherSegmentsKeepTheirEntries() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>(16, HOUR, new Counter("test.evicted"));
+        for (int key = 0; key < 16; key++) {
+            cache.put(key, "v" + key);
+        }
+        assertEquals(16, cache.size());
+        cache.put(16, "v16");
+        assertEquals(16, cache.size());
+        assertNull(cache.get(0));
+        assertEquals("v1", cache.get(1));
+    }
+
+    @Test
+    public void removedEntryIsNotCountedAsEvicted() {
+        Counter evicted = new Counter("test.evicted");
+        BoundedCache<String, String> cache = new BoundedCache<>(100, HOUR, evicted);
+        cache.put("token", "user");
+        cache.remove("token");
+        assertNull(cache.get("token"));
+        assertEquals(0, cache.size());
+        assertEquals(0, evicted.getCount());
+    }
+
+    @Test
+    public void idleEntriesExpire() throws InterruptedException {
+        Counter evicted = new Counter("test.evicted");
+        BoundedCache<Integer, String> cache = new BoundedCache<>(100, TimeUnit.MILLISECONDS.toNanos(20), evicted);
+        cache.put(0, "passed by");
+        cache.put(1, "swept");
+        Thread.sleep(50);
+
+        assertNull(cache.get(0));
+        assertEquals(1, cache.size());
+        // nobody touches the segment of 1 any more, only the sweep finds it
+        cache.expireIdle();
+        assertEquals(0, cache.size());
+        assertEquals(2, evicted.getCount());
+    }
+
+    @Test
+    public void useKeepsAnEntryFromExpiring() throws InterruptedException {
+        BoundedCache<String, String> cache = new BoundedCache<>(100, TimeUnit.MILLISECONDS.toNanos(200), new Counter("test.evicted"));
+        cache.put("token", "user");
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(60);
+            assertEquals("user", cache.get("token"));
+        }
+    }
+}
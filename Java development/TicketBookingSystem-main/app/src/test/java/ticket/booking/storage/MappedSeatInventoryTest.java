@@ -0,0 +1,182 @@
+package ticket.booking.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.TestData;
+import ticket.booking.entities.Train;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MappedSeatInventoryTest {
+
+    // the first record starts right after the header, its live flag follows the record magic
+    private static final int FIRST_RECORD_LIVE = 64 + 4;
+
+    private Path dir;
+    private Path file;
+    private MappedSeatInventory inventory;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("inventory");
+        file = dir.resolve("seats.bin");
+        inventory = new MappedSeatInventory(file);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        inventory.close();
+        TestData.deleteRecursively(dir);
+    }
+
+    @Test
+    public void trainsAreAppendedAndServedFromTheMapping() throws IOException {
+        inventory.write("T1", seats(2, 3, Train.SEAT_FREE));
+        inventory.write("T2", seats(1, 2, Train.SEAT_BOOKED));
+
+        assertEquals(2, inventory.trainCount());
+        assertTrue(inventory.contains("t1"));
+        assertNull(inventory.seats("T3"));
+        List<List<Integer>> first = inventory.seats("T1");
+        assertEquals(seats(2, 3, Train.SEAT_FREE), first);
+        assertEquals(seats(1, 2, Train.SEAT_BOOKED), inventory.seats("T2"));
+
+        // the lists read the file, and writing them writes it
+        assertTrue(inventory.compareAndSet("T1", 1, 2, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        assertEquals(Train.SEAT_BOOKED, (int) first.get(1).get(2));
+        first.get(0).set(0, Train.SEAT_HELD);
+        assertFalse(inventory.compareAndSet("T1", 0, 0, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        assertEquals(List.of(Train.SEAT_HELD, Train.SEAT_FREE, Train.SEAT_FREE), List.copyOf(first.get(0)));
+
+        assertFalse(inventory.compareAndSet("T1", 2, 0, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        assertFalse(inventory.compareAndSet("T3", 0, 0, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        try {
+            first.get(0).get(3);
+            fail("read a seat the train does not have");
+        } catch (IndexOutOfBoundsException expected) {
+            // the row has three seats
+        }
+    }
+
+    @Test
+    public void sameLayoutIsWrittenInPlaceAndANewOneGetsANewRecord() throws IOException {
+        inventory.write("T1", seats(2, 3, Train.SEAT_FREE));
+        List<List<Integer>> before = inventory.seats("T1");
+        long used = inventory.usedBytes();
+
+        inventory.write("T1", seats(2, 3, Train.SEAT_BOOKED));
+        assertEquals(used, inventory.usedBytes());
+        assertEquals(0, inventory.deadBytes());
+        assertEquals(seats(2, 3, Train.SEAT_BOOKED), before);
+
+        inventory.write("T1", seats(3, 4, Train.SEAT_FREE));
+        assertTrue(inventory.usedBytes() > used);
+        assertEquals(used - 64, inventory.deadBytes());
+        assertEquals(1, inventory.trainCount());
+        // lists handed out earlier follow the train to its new record
+        assertEquals(seats(3, 4, Train.SEAT_FREE), before);
+    }
+
+    @Test
+    public void reopenedFileHasTheLiveRecordsAndTheirSeats() throws IOException {
+        inventory.write("T1", seats(2, 3, Train.SEAT_FREE));
+        inventory.write("T2", seats(1, 2, Train.SEAT_FREE));
+        inventory.write("T1", seats(1, 5, Train.SEAT_FREE));
+        assertTrue(inventory.compareAndSet("T1", 0, 4, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        long used = inventory.usedBytes();
+        long dead = inventory.deadBytes();
+        inventory.close();
+
+        inventory = new MappedSeatInventory(file);
+        assertEquals(2, inventory.trainCount());
+        assertEquals(used, inventory.usedBytes());
+        assertEquals(dead, inventory.deadBytes());
+        assertEquals(List.of(List.of(0, 0, 0, 0, Train.SEAT_BOOKED)), inventory.seats("T1"));
+        assertEquals(seats(1, 2, Train.SEAT_FREE), inventory.seats("T2"));
+    }
+
+    @Test
+    public void aCrashBeforeTheOldRecordWasMarkedDeadKeepsTheNewOne() throws IOException {
+        inventory.write("T1", seats(2, 3, Train.SEAT_FREE));
+        inventory.write("T1", seats(1, 2, Train.SEAT_BOOKED));
+        long dead = inventory.deadBytes();
+        inventory.close();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1}), FIRST_RECORD_LIVE);
+        }
+
+        inventory = new MappedSeatInventory(file);
+        assertEquals(seats(1, 2, Train.SEAT_BOOKED), inventory.seats("T1"));
+        assertEquals(dead, inventory.deadBytes());
+        inventory.close();
+        // and it is marked dead now
+        inventory = new MappedSeatInventory(file);
+        assertEquals(dead, inventory.deadBytes());
+    }
+
+    @Test
+    public void deadRecordsAreCopiedAwayOnceTheyAreMostOfTheFile() throws IOException {
+        inventory.write("T1", seats(1, 4, Train.SEAT_FREE));
+        inventory.write("T2", seats(300, 300, Train.SEAT_FREE));
+        List<List<Integer>> second = inventory.seats("T2");
+        assertTrue(inventory.compareAndSet("T2", 299, 299, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        long used = inventory.usedBytes();
+
+        // the old record is more than half of what is in use now
+        inventory.write("T2", seats(300, 250, Train.SEAT_HELD));
+        assertEquals(0, inventory.deadBytes());
+        assertTrue(inventory.usedBytes() < used);
+        assertFalse(Files.exists(dir.resolve("seats.bin.compact")));
+        assertEquals(250, second.get(299).size());
+        assertEquals(Train.SEAT_HELD, (int) second.get(299).get(249));
+        assertTrue(inventory.compareAndSet("T1", 0, 3, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        long compacted = inventory.usedBytes();
+        inventory.close();
+
+        inventory = new MappedSeatInventory(file);
+        assertEquals(compacted, inventory.usedBytes());
+        assertEquals(List.of(List.of(0, 0, 0, Train.SEAT_BOOKED)), inventory.seats("T1"));
+        assertEquals(seats(300, 250, Train.SEAT_HELD), inventory.seats("T2"));
+    }
+
+    @Test
+    public void compactKeepsSeatsWrittenSinceTheLastCheckpoint() throws IOException {
+        inventory.write("T1", seats(2, 2, Train.SEAT_FREE));
+        inventory.write("T2", seats(2, 2, Train.SEAT_FREE));
+        inventory.write("T1", seats(1, 1, Train.SEAT_FREE));
+        assertTrue(inventory.deadBytes() > 0);
+        assertTrue(inventory.compareAndSet("T2", 1, 1, Train.SEAT_FREE, Train.SEAT_BOOKED));
+
+        inventory.compact();
+        assertEquals(0, inventory.deadBytes());
+        assertEquals(List.of(List.of(0, 0), List.of(0, Train.SEAT_BOOKED)), inventory.seats("T2"));
+        assertTrue(inventory.compareAndSet("T1", 0, 0, Train.SEAT_FREE, Train.SEAT_BOOKED));
+        inventory.close();
+
+        inventory = new MappedSeatInventory(file);
+        assertEquals(List.of(List.of(Train.SEAT_BOOKED)), inventory.seats("T1"));
+        assertEquals(List.of(List.of(0, 0), List.of(0, Train.SEAT_BOOKED)), inventory.seats("T2"));
+    }
+
+    private static List<List<Integer>> seats(int rows, int seatsPerRow, int value) {
+        List<List<Integer>> seats = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            List<Integer> seatRow = new ArrayList<>();
+            for (int seat = 0; seat < seatsPerRow; seat++) {
+                seatRow.add(value);
+            }
+            seats.add(seatRow);
+        }
+        return seats;
+    }
+}
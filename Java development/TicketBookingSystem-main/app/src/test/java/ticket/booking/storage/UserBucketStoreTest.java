@@ -0,0 +1,139 @@
+package ticket.booking.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ticket.booking.TestData;
+import ticket.booking.entities.User;
+import ticket.booking.serialization.JsonCodec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class UserBucketStoreTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("users");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        TestData.deleteRecursively(dir);
+    }
+
+    @Test
+    public void userGoesToTheBucketOfItsIdAndItsNameToTheIndexBucketOfTheName() throws IOException {
+        UserBucketStore store = store(10);
+        store.add(user("alice", "U1"));
+
+        assertEquals(Math.floorMod("U1".hashCode(), UserBucketStore.BUCKET_COUNT), UserBucketStore.bucketOf("U1"));
+        List<User> bucket = JsonCodec.USER_LIST.readValue(bucketFile("buckets", UserBucketStore.bucketOf("U1")).toFile());
+        assertEquals("alice", bucket.get(0).getUsername());
+        Map<String, String> index = JsonCodec.STRING_MAP.readValue(bucketFile("index", UserBucketStore.bucketOf("alice")).toFile());
+        assertEquals(Map.of("alice", "U1"), index);
+        try (var files = Files.list(dir.resolve("buckets"))) {
+            assertEquals(1, files.count());
+        }
+
+        UserBucketStore reopened = store(10);
+        assertTrue(reopened.usernameTaken("alice"));
+        assertFalse(reopened.usernameTaken("bob"));
+        assertEquals("U1", reopened.findByUsername("alice").orElseThrow().getUserId());
+        assertTrue(reopened.findByUsername("bob").isEmpty());
+    }
+
+    @Test
+    public void usersSharingABucketAreAllKept() throws IOException {
+        UserBucketStore store = store(10);
+        String first = idInBucket(7, 0);
+        String second = idInBucket(7, 1);
+        store.add(user("alice", first));
+        store.add(user("bob", second));
+
+        UserBucketStore reopened = store(10);
+        assertEquals("alice", reopened.findById(first).orElseThrow().getUsername());
+        assertEquals("bob", reopened.findById(second).orElseThrow().getUsername());
+    }
+
+    @Test
+    public void dirtyUserStaysCachedUntilItIsWritten() throws IOException {
+        UserBucketStore store = store(2);
+        User alice = user("alice", "U1");
+        store.add(alice);
+        alice.setHashedPassword("changed");
+        store.markDirty(alice);
+        for (int i = 2; i <= 5; i++) {
+            store.add(user("user" + i, "U" + i));
+        }
+        // alice was the least recently used, but her change is not written yet; the
+        // clean users behind her went instead
+        assertEquals(2, store.cachedUsers());
+        assertSame(alice, store.findById("U1").orElseThrow());
+
+        store.flush();
+        assertEquals(2, store.cachedUsers());
+        assertEquals("changed", store(2).findById("U1").orElseThrow().getHashedPassword());
+    }
+
+    @Test
+    public void cleanUsersAreDroppedLeastRecentlyUsedFirst() throws IOException {
+        UserBucketStore store = store(2);
+        User alice = user("alice", "U1");
+        store.add(alice);
+        store.add(user("bob", "U2"));
+        store.findById("U1");
+        store.add(user("carol", "U3"));
+
+        assertEquals(2, store.cachedUsers());
+        // bob went, alice was used after him
+        assertSame(alice, store.findById("U1").orElseThrow());
+        assertEquals("bob", store.findById("U2").orElseThrow().getUsername());
+    }
+
+    @Test
+    public void legacyUsersFileIsMigratedOnFirstStartOnly() throws IOException {
+        Path legacy = dir.resolve("users.json");
+        JsonCodec.FILE_WRITER.writeValue(legacy.toFile(), List.of(user("alice", "U1"), user("bob", "U2")));
+
+        UserBucketStore store = new UserBucketStore(dir.resolve("store"), legacy, 10);
+        assertEquals("U1", store.findByUsername("alice").orElseThrow().getUserId());
+        assertEquals("U2", store.findByUsername("bob").orElseThrow().getUserId());
+
+        // the buckets exist now, so a changed users.json is not read again
+        JsonCodec.FILE_WRITER.writeValue(legacy.toFile(), List.of(user("carol", "U3")));
+        UserBucketStore reopened = new UserBucketStore(dir.resolve("store"), legacy, 10);
+        assertTrue(reopened.findByUsername("carol").isEmpty());
+        assertTrue(reopened.findByUsername("alice").isPresent());
+    }
+
+    private UserBucketStore store(int maxCachedUsers) throws IOException {
+        return new UserBucketStore(dir, dir.resolve("no-legacy-users.json"), maxCachedUsers);
+    }
+
+    private Path bucketFile(String kind, int bucket) {
+        return dir.resolve(kind).resolve(String.format("%03d.json", bucket));
+    }
+
+    // the n-th id found whose bucket is the given one
+    private static String idInBucket(int bucket, int n) {
+        for (int i = 0; ; i++) {
+            String id = "U" + i;
+            if (UserBucketStore.bucketOf(id) == bucket && n-- == 0) {
+                return id;
+            }
+        }
+    }
+
+    private static User user(String username, String userId) {
+        return new User(username, null, "hash", new ArrayList<>(), userId);
+    }
+}
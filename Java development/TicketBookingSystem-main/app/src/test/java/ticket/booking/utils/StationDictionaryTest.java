@@ -0,0 +1,102 @@
+package ticket.booking.utils;
+
+import org.junit.Test;
+import ticket.booking.TestData;
+import ticket.booking.entities.Train;
+import ticket.booking.storage.TrainManifestEntry;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+// The dictionary is shared by the whole JVM, so every test makes up station names of its own
+public class StationDictionaryTest {
+
+    @Test
+    public void everyNameGetsItsOwnIdAndReadsBackTheSame() {
+        String prefix = unique();
+        List<String> names = new ArrayList<>();
+        Set<Integer> ids = new HashSet<>();
+        // more than the first array holds, so it is copied at least once
+        for (int i = 0; i < 3000; i++) {
+            String name = prefix + i;
+            names.add(name);
+            ids.add(StationDictionary.idOf(name));
+        }
+        assertEquals(3000, ids.size());
+        for (String name : names) {
+            int id = StationDictionary.idOf(name);
+            assertSame(name, StationDictionary.nameOf(id));
+            assertEquals(id, StationDictionary.lookup(name));
+        }
+    }
+
+    @Test
+    public void namesDifferingOnlyInCaseAreOneStationSpeltAsFirstSeen() {
+        String name = "Vile Parle " + unique();
+        int id = StationDictionary.idOf(name);
+        int size = StationDictionary.size();
+
+        assertEquals(id, StationDictionary.idOf(name.toLowerCase()));
+        assertEquals(id, StationDictionary.idOf(name.toUpperCase()));
+        assertEquals(id, StationDictionary.lookup(name.toLowerCase()));
+        assertEquals(name, StationDictionary.nameOf(id));
+        assertEquals(size, StationDictionary.size());
+    }
+
+    @Test
+    public void lookupNeverAddsANameAndIsNotServed() {
+        String name = unique();
+        int size = StationDictionary.size();
+        assertEquals(-1, StationDictionary.lookup(name));
+        assertEquals(size, StationDictionary.size());
+        assertFalse(StationDictionary.servesInOrder(new int[]{0, 1}, -1, 1));
+    }
+
+    @Test
+    public void routeOfATrainDecodesToItsStationsAndTimes() {
+        String prefix = unique();
+        String alpha = prefix + "alpha";
+        String beta = prefix + "beta";
+        String gamma = prefix + "gamma";
+        Train train = TestData.train("T1", 1, 1, alpha, beta, gamma);
+
+        assertEquals(List.of(alpha, beta, gamma), train.getStations());
+        assertEquals(Map.of(alpha, "00:00:00", beta, "01:00:00", gamma, "02:00:00"), train.getStationTimes());
+        int a = StationDictionary.lookup(alpha);
+        int c = StationDictionary.lookup(gamma.toUpperCase());
+        assertTrue(train.servesInOrder(a, c));
+        assertFalse(train.servesInOrder(c, a));
+        assertFalse(train.servesInOrder(a, a));
+
+        TrainManifestEntry entry = new TrainManifestEntry();
+        entry.setStations(train.getStations());
+        assertEquals(train.getStations(), entry.getStations());
+        assertTrue(entry.servesInOrder(a, c));
+    }
+
+    @Test
+    public void timesSpeltInAnotherCaseStayWithTheirStation() {
+        String prefix = unique();
+        String alpha = prefix + "alpha";
+        String beta = prefix + "beta";
+        StationDictionary.idOf(alpha);
+        StationDictionary.idOf(beta);
+        Train train = new Train("T2", "NO-T2", List.of(List.of(Train.SEAT_FREE)),
+                Map.of(alpha.toUpperCase(), "08:00:00", beta.toUpperCase(), "09:00:00"),
+                List.of(alpha.toUpperCase(), beta.toUpperCase()));
+
+        assertEquals(List.of(alpha, beta), train.getStations());
+        assertEquals("08:00:00", train.getStationTimes().get(alpha));
+        assertEquals("09:00:00", train.getStationTimes().get(beta));
+    }
+
+    private static String unique() {
+        return "station-" + UUID.randomUUID() + "-";
+    }
+}
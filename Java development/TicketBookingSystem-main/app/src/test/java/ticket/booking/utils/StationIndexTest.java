@@ -0,0 +1,129 @@
+package ticket.booking.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class StationIndexTest {
+
+    private static final StationIndex INDEX = StationIndex.of(List.of(
+            "Bandra", "Borivali", "Dadar", "Delhi", "Dehradun", "Malad", "Mahim", "Kandivali",
+            "Vile Parle", "Andheri", "Andheri East"));
+
+    @Test
+    public void resolveIgnoresCaseSpacesAndPunctuation() {
+        assertEquals(Optional.of("Vile Parle"), INDEX.resolve("vile-parle"));
+        assertEquals(Optional.of("Vile Parle"), INDEX.resolve("VILEPARLE"));
+        assertEquals(Optional.empty(), INDEX.resolve("vile"));
+        assertEquals(Optional.empty(), INDEX.resolve("nowhere"));
+    }
+
+    @Test
+    public void completeListsNamesStartingWithThePrefixAlphabetically() {
+        assertEquals(List.of("Andheri", "Andheri East"), INDEX.complete("and", 10));
+        assertEquals(List.of("Dadar", "Dehradun", "Delhi"), INDEX.complete("d", 10));
+        assertEquals(List.of("Dadar"), INDEX.complete("d", 1));
+        assertEquals(List.of(), INDEX.complete("x", 10));
+    }
+
+    @Test
+    public void similarFindsTyposClosestFirst() {
+        // one letter changed, removed, added, and two swapped
+        assertEquals(List.of("Malad"), INDEX.similar("malaf", 1, 10));
+        assertEquals(List.of("Dadar"), INDEX.similar("dadr", 1, 10));
+        assertEquals(List.of("Borivali"), INDEX.similar("borrivali", 1, 10));
+        assertEquals(List.of("Delhi"), INDEX.similar("dehli", 1, 10));
+        assertEquals(List.of("Mahim", "Malad"), INDEX.similar("mahid", 2, 10));
+        assertEquals(List.of(), INDEX.similar("zzzzz", 2, 10));
+    }
+
+    @Test
+    public void suggestCompletesFirstThenAddsTyposWithoutRepeats() {
+        assertEquals(List.of("Andheri", "Andheri East"), INDEX.suggest("andheri", 5));
+        assertEquals(List.of("Malad"), INDEX.suggest("mala", 5));
+        assertEquals(List.of("Dadar"), INDEX.suggest("dadr", 5));
+        // long names are allowed two typos
+        assertEquals(List.of("Kandivali"), INDEX.suggest("kandevli", 5));
+    }
+
+    @Test
+    public void similarAgreesWithTheEditDistanceOfEveryName() {
+        Random random = new Random(7);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            names.add(randomWord(random, 3 + random.nextInt(8)));
+        }
+        StationIndex index = StationIndex.of(names);
+        for (int i = 0; i < 200; i++) {
+            String typed = i % 2 == 0 ? mistype(random, names.get(random.nextInt(names.size()))) : randomWord(random, 3 + random.nextInt(8));
+            for (int maxEdits = 0; maxEdits <= 2; maxEdits++) {
+                Set<String> expected = new HashSet<>();
+                for (String name : names) {
+                    if (distance(typed, name) <= maxEdits) {
+                        expected.add(name);
+                    }
+                }
+                List<String> found = index.similar(typed, maxEdits, Integer.MAX_VALUE);
+                assertEquals(typed + " within " + maxEdits, expected, new HashSet<>(found));
+                for (int f = 1; f < found.size(); f++) {
+                    assertTrue(distance(typed, found.get(f - 1)) <= distance(typed, found.get(f)));
+                }
+            }
+        }
+    }
+
+    // letters from a small alphabet, so many names are close to each other
+    private static String randomWord(Random random, int length) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            word.append("abcdef".charAt(random.nextInt(6)));
+        }
+        return word.toString();
+    }
+
+    private static String mistype(Random random, String word) {
+        StringBuilder typed = new StringBuilder(word);
+        int at = random.nextInt(typed.length());
+        switch (random.nextInt(4)) {
+            case 0 -> typed.setCharAt(at, 'f');
+            case 1 -> typed.deleteCharAt(at);
+            case 2 -> typed.insert(at, 'a');
+            default -> {
+                if (at + 1 < typed.length()) {
+                    char c = typed.charAt(at);
+                    typed.setCharAt(at, typed.charAt(at + 1));
+                    typed.setCharAt(at + 1, c);
+                }
+            }
+        }
+        return typed.toString();
+    }
+
+    // edits between a and b, two neighbouring letters swapped being one edit
+    private static int distance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(d[i - 1][j - 1] + cost, Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1));
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+}